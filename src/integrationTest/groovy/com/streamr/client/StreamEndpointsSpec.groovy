@@ -10,6 +10,8 @@ import com.streamr.client.exceptions.AuthenticationException
 import com.streamr.client.rest.FieldConfig
 import com.streamr.client.rest.UserInfo
 
+import java.util.concurrent.ExecutionException
+
 class StreamEndpointsSpec extends StreamrIntegrationSpecification {
 
 	private StreamrClient client
@@ -124,7 +126,7 @@ class StreamEndpointsSpec extends StreamrIntegrationSpecification {
         thrown(AuthenticationException)
     }
 
-    void "getStream() throws StreamNotFoundException for non-existent streams"() {
+    void "getStream() throws ResourceNotFoundException for non-existent streams"() {
         when:
         client.getStream("non-existent")
 
@@ -229,4 +231,55 @@ class StreamEndpointsSpec extends StreamrIntegrationSpecification {
         then:
         thrown(AuthenticationException)
     }
+
+    void "createStreamAsync() then getStreamAsync()"() {
+        Stream proto = new Stream(generateResourceName(), "This stream was created from an integration test")
+
+        when:
+        Stream createResult = client.createStreamAsync(proto).get()
+        Stream getResult = client.getStreamAsync(createResult.id).get()
+
+        then:
+        getResult.id == createResult.id
+        getResult.name == proto.name
+    }
+
+    void "getStreamAsync() completes exceptionally with ResourceNotFoundException for non-existent streams"() {
+        when:
+        client.getStreamAsync("non-existent").get()
+
+        then:
+        ExecutionException e = thrown(ExecutionException)
+        e.cause instanceof ResourceNotFoundException
+    }
+
+    void "getPublishersAsync() and isPublisherAsync()"() {
+        Stream proto = new Stream(generateResourceName(), "This stream was created from an integration test")
+        Stream createdResult = client.createStream(proto)
+
+        when:
+        List<String> publishers = client.getPublishersAsync(createdResult.id).get()
+        boolean isValid1 = client.isPublisherAsync(createdResult.id, client.getPublisherId()).get()
+        boolean isValid2 = client.isPublisherAsync(createdResult.id, "wrong-address").get()
+
+        then:
+        publishers == [client.getPublisherId().toString()]
+        isValid1
+        !isValid2
+    }
+
+    void "getSubscribersAsync() and isSubscriberAsync()"() {
+        Stream proto = new Stream(generateResourceName(), "This stream was created from an integration test")
+        Stream createdResult = client.createStream(proto)
+
+        when:
+        List<String> subscribers = client.getSubscribersAsync(createdResult.id).get()
+        boolean isValid1 = client.isSubscriberAsync(createdResult.id, client.getPublisherId()).get()
+        boolean isValid2 = client.isSubscriberAsync(createdResult.id, "wrong-address").get()
+
+        then:
+        subscribers == [client.getPublisherId().toString()]
+        isValid1
+        !isValid2
+    }
 }
@@ -0,0 +1,62 @@
+package com.streamr.client.benchmarks;
+
+import com.streamr.client.protocol.message_layer.MessageID;
+import com.streamr.client.protocol.message_layer.MessageRef;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import com.streamr.client.rest.Stream;
+import com.streamr.client.utils.Address;
+import com.streamr.client.utils.SigningUtil;
+import org.ethereum.crypto.ECKey;
+
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sample data shared by the benchmarks. The payload resembles a typical market data event.
+ */
+final class BenchmarkData {
+    static final String PRIVATE_KEY = "d462a6f2ccd995a346a841d110e8c6954930a1c22851c0032d3116d8ccd2296a";
+    static final ECKey ACCOUNT = ECKey.fromPrivate(new BigInteger(PRIVATE_KEY, 16));
+    static final Address PUBLISHER = new Address(ACCOUNT.getAddress());
+    static final String STREAM_ID = "tagHE6nTQ9SJV2wPoCxBFw";
+    static final String MSG_CHAIN_ID = "k000EDTMtqOTLM8sirFj";
+
+    private BenchmarkData() {}
+
+    static Map<String, Object> payload() {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("eventType", "trade");
+        payload.put("eventTime", 1587141844398L);
+        payload.put("symbol", "ETHBTC");
+        payload.put("tradeId", 172530352);
+        payload.put("price", 0.02415);
+        payload.put("quantity", 0.296);
+        payload.put("buyerOrderId", 687544144);
+        payload.put("sellerOrderId", 687544104);
+        payload.put("maker", false);
+        return payload;
+    }
+
+    static Stream stream() {
+        Stream stream = new Stream("benchmark", "");
+        stream.setId(STREAM_ID);
+        stream.setPartitions(1);
+        return stream;
+    }
+
+    /**
+     * Returns the n:th message of a chain, linked to the previous one.
+     */
+    static StreamMessage message(long n) {
+        MessageID id = new MessageID(STREAM_ID, 0, 1587141844396L + n, 0, PUBLISHER, MSG_CHAIN_ID);
+        MessageRef prev = n == 0 ? null : new MessageRef(1587141844396L + n - 1, 0);
+        return new StreamMessage(id, prev, payload());
+    }
+
+    static StreamMessage signedMessage(long n) {
+        StreamMessage msg = message(n);
+        new SigningUtil(ACCOUNT).signStreamMessage(msg);
+        return msg;
+    }
+}
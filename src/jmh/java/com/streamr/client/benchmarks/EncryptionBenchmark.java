@@ -0,0 +1,47 @@
+package com.streamr.client.benchmarks;
+
+import com.streamr.client.utils.EncryptionUtil;
+import com.streamr.client.utils.GroupKey;
+import com.streamr.client.utils.HttpUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncryptionBenchmark {
+    private GroupKey groupKey;
+    private byte[] plaintext;
+    private String ciphertext;
+
+    @Setup
+    public void setup() {
+        groupKey = GroupKey.generate();
+        plaintext = HttpUtils.mapAdapter.toJson(BenchmarkData.payload()).getBytes(StandardCharsets.UTF_8);
+        ciphertext = EncryptionUtil.encrypt(plaintext, groupKey);
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return EncryptionUtil.encrypt(plaintext, groupKey);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws Exception {
+        return EncryptionUtil.decrypt(ciphertext, groupKey);
+    }
+}
@@ -0,0 +1,62 @@
+package com.streamr.client.benchmarks;
+
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import com.streamr.client.rest.Stream;
+import com.streamr.client.utils.GroupKey;
+import com.streamr.client.utils.MessageCreationUtil;
+import com.streamr.client.utils.SigningUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The publish path up to serialization: chaining, optional encryption and signing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageCreationBenchmark {
+    private MessageCreationUtil unsignedCreationUtil;
+    private MessageCreationUtil signedCreationUtil;
+    private Stream stream;
+    private Map<String, Object> payload;
+    private GroupKey groupKey;
+
+    @Setup
+    public void setup() {
+        unsignedCreationUtil = new MessageCreationUtil(BenchmarkData.PUBLISHER, null);
+        signedCreationUtil = new MessageCreationUtil(BenchmarkData.PUBLISHER, new SigningUtil(BenchmarkData.ACCOUNT));
+        stream = BenchmarkData.stream();
+        payload = BenchmarkData.payload();
+        groupKey = GroupKey.generate();
+    }
+
+    @Benchmark
+    public StreamMessage createStreamMessage() {
+        return unsignedCreationUtil.createStreamMessage(stream, payload, new Date());
+    }
+
+    @Benchmark
+    public StreamMessage createSignedStreamMessage() {
+        return signedCreationUtil.createStreamMessage(stream, payload, new Date());
+    }
+
+    @Benchmark
+    public StreamMessage createEncryptedSignedStreamMessage() {
+        return signedCreationUtil.createStreamMessage(stream, payload, new Date(), null, groupKey, null);
+    }
+}
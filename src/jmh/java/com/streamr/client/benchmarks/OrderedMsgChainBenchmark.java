@@ -0,0 +1,65 @@
+package com.streamr.client.benchmarks;
+
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import com.streamr.client.utils.OrderedMsgChain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds a chain of messages to a fresh OrderedMsgChain, either in order or shuffled within windows of
+ * consecutive messages, which makes the chain queue messages and detect (and later resolve) gaps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderedMsgChainBenchmark {
+    private static final int MESSAGES = 1000;
+
+    @Param({"1", "10"})
+    public int shuffleWindow;
+
+    private List<StreamMessage> messages;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        messages = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            messages.add(BenchmarkData.message(i));
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < MESSAGES; i += shuffleWindow) {
+            Collections.shuffle(messages.subList(i, Math.min(i + shuffleWindow, MESSAGES)), random);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void add(Blackhole blackhole) {
+        OrderedMsgChain chain = new OrderedMsgChain(BenchmarkData.PUBLISHER, BenchmarkData.MSG_CHAIN_ID,
+                blackhole::consume, (from, to, publisherId, msgChainId) -> {}, 5000, 5000, true);
+        for (StreamMessage msg : messages) {
+            chain.add(msg);
+        }
+    }
+}
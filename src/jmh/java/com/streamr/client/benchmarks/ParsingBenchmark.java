@@ -0,0 +1,98 @@
+package com.streamr.client.benchmarks;
+
+import com.streamr.client.protocol.control_layer.BroadcastMessage;
+import com.streamr.client.protocol.control_layer.ControlMessage;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import com.streamr.client.protocol.message_layer.StreamMessageAdapter;
+import com.streamr.client.utils.EncryptionUtil;
+import com.streamr.client.utils.GroupKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and serialization of received and published messages, in JSON (version 32) and in the binary encoding.
+ * The sizes of the encodings on the wire are printed at the end of each fork, as JMH only reports times.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParsingBenchmark {
+    private StreamMessage msg;
+    private String json;
+    private byte[] jsonBytes;
+    private byte[] binary;
+    private byte[] binaryStreamMessage;
+    private int encryptedJsonSize;
+    private int encryptedBinarySize;
+
+    @Setup
+    public void setup() throws Exception {
+        msg = BenchmarkData.signedMessage(1);
+        BroadcastMessage broadcast = new BroadcastMessage("", msg);
+        json = broadcast.toJson();
+        jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+        binary = broadcast.toBinary();
+        binaryStreamMessage = StreamMessageAdapter.serializeBinary(msg);
+
+        // Encrypted content is hex in JSON but raw bytes in the binary encoding
+        StreamMessage encrypted = BenchmarkData.message(1);
+        EncryptionUtil.encryptStreamMessage(encrypted, GroupKey.generate());
+        BroadcastMessage encryptedBroadcast = new BroadcastMessage("", encrypted);
+        encryptedJsonSize = encryptedBroadcast.toJson().getBytes(StandardCharsets.UTF_8).length;
+        encryptedBinarySize = encryptedBroadcast.toBinary().length;
+    }
+
+    @TearDown
+    public void printWireSizes() {
+        System.out.printf("%nBytes on the wire, JSON (v32) vs binary: signed %d vs %d (%.0f%%), encrypted %d vs %d (%.0f%%)%n",
+                jsonBytes.length, binary.length, 100.0 * binary.length / jsonBytes.length,
+                encryptedJsonSize, encryptedBinarySize, 100.0 * encryptedBinarySize / encryptedJsonSize);
+    }
+
+    @Benchmark
+    public ControlMessage controlMessageFromJsonString() throws IOException {
+        return ControlMessage.fromJson(json);
+    }
+
+    @Benchmark
+    public ControlMessage controlMessageFromJsonBytes() throws IOException {
+        return ControlMessage.fromJson(ByteBuffer.wrap(jsonBytes));
+    }
+
+    @Benchmark
+    public ControlMessage controlMessageFromBinary() throws IOException {
+        return ControlMessage.fromBinary(ByteBuffer.wrap(binary));
+    }
+
+    @Benchmark
+    public String streamMessageSerialize() {
+        return StreamMessageAdapter.serialize(msg);
+    }
+
+    @Benchmark
+    public byte[] streamMessageSerializeBinary() {
+        return StreamMessageAdapter.serializeBinary(msg);
+    }
+
+    @Benchmark
+    public StreamMessage streamMessageDeserializeBinary() {
+        return StreamMessageAdapter.deserializeBinary(binaryStreamMessage);
+    }
+}
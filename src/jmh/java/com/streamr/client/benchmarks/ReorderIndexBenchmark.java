@@ -0,0 +1,82 @@
+package com.streamr.client.benchmarks;
+
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import com.streamr.client.utils.ReorderIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds heavily shuffled messages to the reorder queue of a chain and then takes them out in order, comparing the
+ * ReorderIndex to the PriorityQueue it replaced, whose comparator allocated two MessageRefs per comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReorderIndexBenchmark {
+    private static final int MESSAGES = 10000;
+
+    // The number of consecutive messages shuffled together, MESSAGES shuffles all of them
+    @Param({"10", "10000"})
+    public int shuffleWindow;
+
+    private List<StreamMessage> messages;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        messages = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            messages.add(BenchmarkData.message(i));
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < MESSAGES; i += shuffleWindow) {
+            Collections.shuffle(messages.subList(i, Math.min(i + shuffleWindow, MESSAGES)), random);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void priorityQueue(Blackhole blackhole) {
+        PriorityQueue<StreamMessage> queue = new PriorityQueue<>(
+                (o1, o2) -> o1.getMessageRef().compareTo(o2.getMessageRef()));
+        for (StreamMessage msg : messages) {
+            queue.offer(msg);
+        }
+        while (!queue.isEmpty()) {
+            blackhole.consume(queue.poll());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void reorderIndex(Blackhole blackhole) {
+        ReorderIndex index = new ReorderIndex();
+        for (StreamMessage msg : messages) {
+            index.add(msg, 0);
+        }
+        while (!index.isEmpty()) {
+            blackhole.consume(index.poll());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.streamr.client.benchmarks;
+
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import com.streamr.client.utils.SigningUtil;
+import com.streamr.client.utils.VerifiedSignatureCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SigningBenchmark {
+    private SigningUtil signingUtil;
+    private StreamMessage unsigned;
+    private StreamMessage signed;
+    private VerifiedSignatureCache cache;
+
+    @Setup
+    public void setup() {
+        signingUtil = new SigningUtil(BenchmarkData.ACCOUNT);
+        unsigned = BenchmarkData.message(1);
+        signed = BenchmarkData.signedMessage(1);
+        cache = new VerifiedSignatureCache();
+        cache.hasValidSignature(signed);
+    }
+
+    @Benchmark
+    public StreamMessage signStreamMessage() {
+        signingUtil.signStreamMessage(unsigned);
+        return unsigned;
+    }
+
+    @Benchmark
+    public boolean hasValidSignature() {
+        return SigningUtil.hasValidSignature(signed);
+    }
+
+    @Benchmark
+    public boolean hasValidSignatureCached() {
+        return cache.hasValidSignature(signed);
+    }
+}
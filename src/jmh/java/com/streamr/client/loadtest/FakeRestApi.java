@@ -0,0 +1,82 @@
+package com.streamr.client.loadtest;
+
+import com.streamr.client.StreamrRESTClient;
+import com.streamr.client.rest.Stream;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+
+/**
+ * Answers the REST API calls which the clients make while subscribing and validating messages: the stream
+ * metadata, and the publishers and subscribers of the stream. Every address is accepted as a publisher and
+ * a subscriber.
+ */
+public class FakeRestApi {
+    private final HttpServer server;
+    private final String streamJson;
+    private final String publishersJson;
+
+    public FakeRestApi(Stream stream, Collection<String> publisherAddresses) throws IOException {
+        streamJson = StreamrRESTClient.streamJsonAdapter.toJson(stream);
+        StringBuilder sb = new StringBuilder("{\"addresses\":[");
+        for (String address : publisherAddresses) {
+            if (sb.charAt(sb.length() - 1) != '[') {
+                sb.append(',');
+            }
+            sb.append('"').append(address).append('"');
+        }
+        publishersJson = sb.append("]}").toString();
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/v1/streams/", this::handle);
+        server.setExecutor(Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "FakeRestApi");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/api/v1";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        // Paths are of the form /api/v1/streams/<id>[/<resource>[/<address>]]
+        String[] parts = exchange.getRequestURI().getPath().split("/");
+        String resource = parts.length > 5 ? parts[5] : null;
+        if (resource == null) {
+            respond(exchange, 200, streamJson);
+        } else if (resource.equals("publishers")) {
+            respond(exchange, 200, publishersJson);
+        } else if (resource.equals("subscribers")) {
+            respond(exchange, 200, "{\"addresses\":[]}");
+        } else if (resource.equals("publisher") || resource.equals("subscriber")) {
+            respond(exchange, 200, "{}");
+        } else {
+            respond(exchange, 404, "{}");
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
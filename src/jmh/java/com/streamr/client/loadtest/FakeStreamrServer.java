@@ -0,0 +1,343 @@
+package com.streamr.client.loadtest;
+
+import com.streamr.client.protocol.control_layer.BroadcastMessage;
+import com.streamr.client.protocol.control_layer.ControlMessage;
+import com.streamr.client.protocol.control_layer.PublishRequest;
+import com.streamr.client.protocol.control_layer.ResendFromRequest;
+import com.streamr.client.protocol.control_layer.ResendLastRequest;
+import com.streamr.client.protocol.control_layer.ResendRangeRequest;
+import com.streamr.client.protocol.control_layer.ResendResponseNoResend;
+import com.streamr.client.protocol.control_layer.ResendResponseResending;
+import com.streamr.client.protocol.control_layer.ResendResponseResent;
+import com.streamr.client.protocol.control_layer.SubscribeRequest;
+import com.streamr.client.protocol.control_layer.SubscribeResponse;
+import com.streamr.client.protocol.control_layer.UnicastMessage;
+import com.streamr.client.protocol.control_layer.UnsubscribeRequest;
+import com.streamr.client.protocol.control_layer.UnsubscribeResponse;
+import com.streamr.client.protocol.message_layer.MessageRef;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process stand-in for the Streamr websocket API, which speaks version 2 of the control layer. Published
+ * messages are broadcast to the connections subscribed to the stream partition and kept in a bounded history,
+ * from which resend requests are served.
+ *
+ * To exercise the ordering and gap filling of the subscribers, the server can hold back a published message until
+ * the next one in the same stream partition has been broadcast (reordering), or not broadcast it at all (a gap,
+ * which the subscribers fill with a resend request).
+ */
+public class FakeStreamrServer extends WebSocketServer {
+    private static final Logger log = LoggerFactory.getLogger(FakeStreamrServer.class);
+
+    private final double reorderProbability;
+    private final double gapProbability;
+    private final int historySize;
+    private final Random random;
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+    // Connections which requested the binary message layer encoding
+    private final Set<WebSocket> binaryConnections = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong reordered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong resendRequests = new AtomicLong();
+    private final AtomicLong resentMessages = new AtomicLong();
+
+    public FakeStreamrServer(int port, double reorderProbability, double gapProbability, int historySize, long seed) {
+        super(new InetSocketAddress("localhost", port));
+        this.reorderProbability = reorderProbability;
+        this.gapProbability = gapProbability;
+        this.historySize = historySize;
+        this.random = new Random(seed);
+        setReuseAddr(true);
+    }
+
+    /**
+     * Starts the server and waits until it accepts connections.
+     */
+    public void startAndWait() throws InterruptedException {
+        start();
+        if (!started.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Server did not start");
+        }
+    }
+
+    public String getWsUrl() {
+        return "ws://localhost:" + getPort() + "/api/v1/ws";
+    }
+
+    @Override
+    public void onStart() {
+        started.countDown();
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        if (handshake.getResourceDescriptor().contains("messageLayerEncoding=binary")) {
+            binaryConnections.add(conn);
+        }
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        binaryConnections.remove(conn);
+        for (Partition partition : partitions.values()) {
+            partition.subscribers.remove(conn);
+        }
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        ControlMessage request;
+        try {
+            request = ControlMessage.fromJson(message);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (request instanceof PublishRequest) {
+            handlePublish(((PublishRequest) request).getStreamMessage());
+        } else if (request instanceof SubscribeRequest) {
+            SubscribeRequest req = (SubscribeRequest) request;
+            getPartition(req.getStreamId(), req.getStreamPartition()).subscribers.add(conn);
+            conn.send(new SubscribeResponse(req.getRequestId(), req.getStreamId(), req.getStreamPartition()).toJson());
+        } else if (request instanceof UnsubscribeRequest) {
+            UnsubscribeRequest req = (UnsubscribeRequest) request;
+            getPartition(req.getStreamId(), req.getStreamPartition()).subscribers.remove(conn);
+            conn.send(new UnsubscribeResponse(req.getRequestId(), req.getStreamId(), req.getStreamPartition()).toJson());
+        } else if (request instanceof ResendRangeRequest) {
+            ResendRangeRequest req = (ResendRangeRequest) request;
+            List<StreamMessage> messages = getPartition(req.getStreamId(), req.getStreamPartition())
+                    .range(req.getFromMsgRef(), req.getToMsgRef(), req.getPublisherId() != null ? req.getPublisherId().toString() : null, req.getMsgChainId());
+            resend(conn, req.getRequestId(), req.getStreamId(), req.getStreamPartition(), messages);
+        } else if (request instanceof ResendFromRequest) {
+            ResendFromRequest req = (ResendFromRequest) request;
+            List<StreamMessage> messages = getPartition(req.getStreamId(), req.getStreamPartition())
+                    .range(req.getFromMsgRef(), null, req.getPublisherId(), null);
+            resend(conn, req.getRequestId(), req.getStreamId(), req.getStreamPartition(), messages);
+        } else if (request instanceof ResendLastRequest) {
+            ResendLastRequest req = (ResendLastRequest) request;
+            List<StreamMessage> messages = getPartition(req.getStreamId(), req.getStreamPartition()).last(req.getNumberLast());
+            resend(conn, req.getRequestId(), req.getStreamId(), req.getStreamPartition(), messages);
+        } else {
+            throw new IllegalArgumentException("Unexpected control message: " + message);
+        }
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, ByteBuffer message) {
+        throw new IllegalArgumentException("The clients are expected to send text frames");
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+        log.error("Fake server error", ex);
+    }
+
+    /**
+     * Broadcasts the messages which are still held back for reordering.
+     */
+    public void releaseHeldMessages() {
+        for (Partition partition : partitions.values()) {
+            StreamMessage held;
+            synchronized (partition) {
+                held = partition.held;
+                partition.held = null;
+            }
+            if (held != null) {
+                broadcast(partition, held);
+            }
+        }
+    }
+
+    private void handlePublish(StreamMessage msg) {
+        published.incrementAndGet();
+        Partition partition = getPartition(msg.getStreamId(), msg.getStreamPartition());
+        StreamMessage first;
+        StreamMessage second = null;
+        // Decide what to broadcast while holding the lock, so that the reordering state stays consistent,
+        // but broadcast outside of it
+        synchronized (partition) {
+            partition.store(msg);
+            if (random.nextDouble() < gapProbability) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (partition.held != null) {
+                first = msg;
+                second = partition.held;
+                partition.held = null;
+            } else if (random.nextDouble() < reorderProbability) {
+                reordered.incrementAndGet();
+                partition.held = msg;
+                return;
+            } else {
+                first = msg;
+            }
+        }
+        broadcast(partition, first);
+        if (second != null) {
+            broadcast(partition, second);
+        }
+    }
+
+    private void broadcast(Partition partition, StreamMessage msg) {
+        BroadcastMessage broadcast = new BroadcastMessage("", msg);
+        // Serialize once per encoding, not once per subscriber
+        String json = null;
+        byte[] binary = null;
+        for (WebSocket conn : partition.subscribers) {
+            if (binaryConnections.contains(conn)) {
+                if (binary == null) {
+                    binary = toBinary(broadcast);
+                }
+                send(conn, binary);
+            } else {
+                if (json == null) {
+                    json = broadcast.toJson();
+                }
+                send(conn, json);
+            }
+        }
+    }
+
+    private void resend(WebSocket conn, String requestId, String streamId, int streamPartition, List<StreamMessage> messages) {
+        resendRequests.incrementAndGet();
+        if (messages.isEmpty()) {
+            conn.send(new ResendResponseNoResend(requestId, streamId, streamPartition).toJson());
+            return;
+        }
+        conn.send(new ResendResponseResending(requestId, streamId, streamPartition).toJson());
+        for (StreamMessage msg : messages) {
+            UnicastMessage unicast = new UnicastMessage(requestId, msg);
+            if (binaryConnections.contains(conn)) {
+                send(conn, toBinary(unicast));
+            } else {
+                send(conn, unicast.toJson());
+            }
+        }
+        resentMessages.addAndGet(messages.size());
+        conn.send(new ResendResponseResent(requestId, streamId, streamPartition).toJson());
+    }
+
+    private static void send(WebSocket conn, String message) {
+        if (conn.isOpen()) {
+            conn.send(message);
+        }
+    }
+
+    private static void send(WebSocket conn, byte[] message) {
+        if (conn.isOpen()) {
+            conn.send(message);
+        }
+    }
+
+    private static byte[] toBinary(ControlMessage message) {
+        try {
+            return message.toBinary();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Partition getPartition(String streamId, int streamPartition) {
+        return partitions.computeIfAbsent(streamId + "-" + streamPartition, key -> new Partition());
+    }
+
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    public long getReorderedCount() {
+        return reordered.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getResendRequestCount() {
+        return resendRequests.get();
+    }
+
+    public long getResentMessageCount() {
+        return resentMessages.get();
+    }
+
+    private class Partition {
+        final Set<WebSocket> subscribers = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        // Guarded by this
+        final ArrayDeque<StreamMessage> history = new ArrayDeque<>();
+        StreamMessage held;
+
+        // Called while holding the lock
+        void store(StreamMessage msg) {
+            history.addLast(msg);
+            if (history.size() > historySize) {
+                history.removeFirst();
+            }
+        }
+
+        /**
+         * Returns the stored messages between from and to (inclusive), optionally filtered by publisher and chain.
+         */
+        synchronized List<StreamMessage> range(MessageRef from, MessageRef to, String publisherId, String msgChainId) {
+            List<StreamMessage> result = new ArrayList<>();
+            // The gaps to fill are usually recent, so search from the newest message backwards
+            Iterator<StreamMessage> it = history.descendingIterator();
+            while (it.hasNext()) {
+                StreamMessage msg = it.next();
+                MessageRef ref = msg.getMessageRef();
+                if (ref.compareTo(from) < 0) {
+                    // Messages of each chain are stored in order, so once the search is limited to one chain there
+                    // are no older ones to find. The messages of different chains are interleaved in any order.
+                    if (publisherId != null && msgChainId != null
+                            && msg.getPublisherId().toString().equalsIgnoreCase(publisherId)
+                            && msg.getMsgChainId().equals(msgChainId)) {
+                        break;
+                    }
+                    continue;
+                }
+                if ((to == null || ref.compareTo(to) <= 0)
+                        && (publisherId == null || msg.getPublisherId().toString().equalsIgnoreCase(publisherId))
+                        && (msgChainId == null || msg.getMsgChainId().equals(msgChainId))) {
+                    result.add(msg);
+                }
+            }
+            Collections.reverse(result);
+            return result;
+        }
+
+        synchronized List<StreamMessage> last(int n) {
+            List<StreamMessage> result = new ArrayList<>(Math.min(n, history.size()));
+            Iterator<StreamMessage> it = history.descendingIterator();
+            while (it.hasNext() && result.size() < n) {
+                result.add(it.next());
+            }
+            Collections.reverse(result);
+            return result;
+        }
+    }
+}
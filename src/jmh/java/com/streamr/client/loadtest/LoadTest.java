@@ -0,0 +1,273 @@
+package com.streamr.client.loadtest;
+
+import com.streamr.client.MessageHandler;
+import com.streamr.client.StreamrClient;
+import com.streamr.client.authentication.AuthenticationMethod;
+import com.streamr.client.authentication.EthereumAuthenticationMethod;
+import com.streamr.client.options.EncryptionOptions;
+import com.streamr.client.options.SigningOptions;
+import com.streamr.client.options.SigningOptions.SignatureComputationPolicy;
+import com.streamr.client.options.SigningOptions.SignatureVerificationPolicy;
+import com.streamr.client.options.StreamrClientOptions;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import com.streamr.client.rest.Stream;
+import com.streamr.client.subs.Subscription;
+import com.streamr.client.utils.GroupKey;
+import com.streamr.client.utils.InMemoryGroupKeyStore;
+import okhttp3.OkHttpClient;
+import org.apache.commons.codec.binary.Hex;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the end-to-end throughput and latency of StreamrClients publishing to and subscribing from an
+ * in-process FakeStreamrServer. Run with: ./gradlew loadTest [-PloadTestArgs="--publishers=4 --rate=0 ..."],
+ * see LoadTestConfig for the parameters.
+ *
+ * The latency of a message is measured from the publishAsync() call to the subscriber's MessageHandler, so it
+ * includes signing, encryption, queueing, the fake server and the validation, ordering and decryption in the
+ * subscriber. The publish latency is measured from the publishAsync() call until the message has been handed to
+ * the websocket.
+ */
+public class LoadTest {
+    private static final String STREAM_ID = "load-test-stream";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final LoadTestConfig config;
+    private final Stream stream;
+    private final String padding;
+    private final long startNanos = System.nanoTime();
+    private final long warmupEndNanos;
+
+    private final LatencyHistogram endToEndLatency = new LatencyHistogram();
+    private final LatencyHistogram publishLatency = new LatencyHistogram();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong publishFailures = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong firstReceivedNanos = new AtomicLong();
+    private final AtomicLong lastReceivedNanos = new AtomicLong();
+
+    public LoadTest(LoadTestConfig config) {
+        this.config = config;
+        stream = new Stream("Load test stream", "");
+        stream.setId(STREAM_ID);
+        stream.setPartitions(config.partitions);
+        stream.setRequireSignedData(config.signing);
+        stream.setRequireEncryptedData(config.encryption);
+        // The rest of the content is about 30 characters: {"sentAt":123456789.0,"pad":""}
+        padding = repeat('x', Math.max(0, config.messageSize - 30));
+        warmupEndNanos = TimeUnit.SECONDS.toNanos(config.warmupSeconds);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.fromArgs(args);
+        System.out.println("Load test: " + config);
+        new LoadTest(config).run();
+    }
+
+    public void run() throws Exception {
+        List<String> publisherKeys = new ArrayList<>();
+        List<String> publisherAddresses = new ArrayList<>();
+        for (int i = 0; i < config.publishers; i++) {
+            String key = randomPrivateKey();
+            publisherKeys.add(key);
+            publisherAddresses.add(new EthereumAuthenticationMethod(key).getAddress());
+        }
+        GroupKey groupKey = config.encryption ? GroupKey.generate() : null;
+
+        FakeRestApi restApi = new FakeRestApi(stream, publisherAddresses);
+        restApi.start();
+        FakeStreamrServer server = new FakeStreamrServer(0, config.reorderProbability, config.gapProbability,
+                config.historySize, config.seed);
+        server.startAndWait();
+
+        List<StreamrClient> subscribers = new ArrayList<>();
+        List<StreamrClient> publishers = new ArrayList<>();
+        try {
+            List<Subscription> subs = new ArrayList<>();
+            for (int i = 0; i < config.subscribers; i++) {
+                StreamrClient client = createClient(randomPrivateKey(), groupKey, server, restApi);
+                subscribers.add(client);
+                for (int partition = 0; partition < config.partitions; partition++) {
+                    subs.add(client.subscribe(stream, partition, new LatencyRecorder(), null));
+                }
+            }
+            waitUntilSubscribed(subs);
+
+            List<Thread> threads = new ArrayList<>();
+            for (String key : publisherKeys) {
+                StreamrClient client = createClient(key, groupKey, server, restApi);
+                client.connect();
+                publishers.add(client);
+                Thread thread = new Thread(() -> publish(client), "Publisher-" + publishers.size());
+                threads.add(thread);
+            }
+            long publishStart = System.nanoTime();
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            for (StreamrClient client : publishers) {
+                client.getOutboundQueue().flush(TimeUnit.SECONDS.toMillis(30));
+            }
+            long publishNanos = System.nanoTime() - publishStart;
+            server.releaseHeldMessages();
+
+            waitForDelivery(config.subscribers * published.get());
+            report(server, publishNanos);
+        } finally {
+            for (StreamrClient client : publishers) {
+                client.close();
+            }
+            for (StreamrClient client : subscribers) {
+                client.close();
+            }
+            server.stop();
+            restApi.stop();
+        }
+    }
+
+    private StreamrClient createClient(String privateKey, GroupKey groupKey, FakeStreamrServer server, FakeRestApi restApi) {
+        AuthenticationMethod authenticationMethod = new EthereumAuthenticationMethod(privateKey) {
+            // The fake REST API doesn't implement the challenge-response login
+            @Override
+            protected LoginResponse login(String restApiUrl, OkHttpClient httpClient) {
+                return new LoginResponse("session-token", new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)));
+            }
+        };
+        SigningOptions signingOptions = config.signing
+                ? new SigningOptions(SignatureComputationPolicy.ALWAYS, SignatureVerificationPolicy.ALWAYS)
+                : new SigningOptions(SignatureComputationPolicy.NEVER, SignatureVerificationPolicy.NEVER);
+        InMemoryGroupKeyStore keyStore = new InMemoryGroupKeyStore();
+        if (groupKey != null) {
+            // Share the key up front, so that the key exchange doesn't affect the measurements
+            keyStore.add(STREAM_ID, groupKey);
+        }
+        EncryptionOptions encryptionOptions = new EncryptionOptions(keyStore, null, null, false);
+        StreamrClientOptions options = new StreamrClientOptions(authenticationMethod, signingOptions, encryptionOptions,
+                server.getWsUrl(), restApi.getUrl(), config.gapFillTimeoutMillis, config.gapFillTimeoutMillis, false);
+        options.setBinaryMessageLayer(config.binary);
+        return new StreamrClient(options);
+    }
+
+    private void publish(StreamrClient client) {
+        long intervalNanos = config.rate > 0 ? TimeUnit.SECONDS.toNanos(1) / config.rate : 0;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(config.durationSeconds);
+        for (long i = 0; ; i++) {
+            long now = System.nanoTime();
+            if (now >= end) {
+                return;
+            }
+            long next = start + i * intervalNanos;
+            if (next > now) {
+                LockSupport.parkNanos(next - now);
+            }
+            long sentAt = System.nanoTime() - startNanos;
+            Map<String, Object> payload = new LinkedHashMap<>();
+            payload.put("sentAt", sentAt);
+            payload.put("pad", padding);
+            // Without a partition key, each message goes to a random partition
+            client.publishAsync(stream, payload, new Date(), null).whenComplete((result, e) -> {
+                if (e != null) {
+                    publishFailures.incrementAndGet();
+                    return;
+                }
+                published.incrementAndGet();
+                if (sentAt >= warmupEndNanos) {
+                    publishLatency.recordNanos(System.nanoTime() - startNanos - sentAt);
+                }
+            });
+        }
+    }
+
+    private void waitUntilSubscribed(List<Subscription> subs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30000;
+        while (!subs.stream().allMatch(Subscription::isSubscribed)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Subscribing timed out");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Waits until the expected number of messages has been received, or until no messages have been received
+     * for long enough that any remaining gaps would have been filled.
+     */
+    private void waitForDelivery(long expected) throws InterruptedException {
+        long idleLimitNanos = TimeUnit.MILLISECONDS.toNanos(3L * config.gapFillTimeoutMillis + 2000);
+        long lastCount = -1;
+        long lastProgress = System.nanoTime();
+        while (received.get() < expected) {
+            long count = received.get();
+            if (count != lastCount) {
+                lastCount = count;
+                lastProgress = System.nanoTime();
+            } else if (System.nanoTime() - lastProgress > idleLimitNanos) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private void report(FakeStreamrServer server, long publishNanos) {
+        long expected = config.subscribers * published.get();
+        double publishSeconds = publishNanos / 1e9;
+        double receiveSeconds = Math.max(1, lastReceivedNanos.get() - firstReceivedNanos.get()) / 1e9;
+
+        System.out.println();
+        System.out.printf("Published:  %d messages in %.1f s, %.0f msgs/sec (%d failed)%n",
+                published.get(), publishSeconds, published.get() / publishSeconds, publishFailures.get());
+        System.out.printf("Received:   %d of %d messages in %.1f s, %.0f msgs/sec (%d missing)%n",
+                received.get(), expected, receiveSeconds, received.get() / receiveSeconds, expected - received.get());
+        System.out.printf("Server:     %d reordered, %d dropped, %d resend requests, %d messages resent%n",
+                server.getReorderedCount(), server.getDroppedCount(), server.getResendRequestCount(), server.getResentMessageCount());
+        printHistogram("End-to-end latency", endToEndLatency);
+        printHistogram("Publish latency", publishLatency);
+    }
+
+    private static void printHistogram(String name, LatencyHistogram histogram) {
+        System.out.printf("%s (us, %d samples): mean %.0f, p50 %d, p90 %d, p99 %d, p99.9 %d, max %d%n",
+                name, histogram.getCount(), histogram.getMeanMicros(),
+                histogram.getPercentileMicros(50), histogram.getPercentileMicros(90),
+                histogram.getPercentileMicros(99), histogram.getPercentileMicros(99.9),
+                histogram.getMaxMicros());
+    }
+
+    private static String randomPrivateKey() {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        return Hex.encodeHexString(bytes);
+    }
+
+    private static String repeat(char c, int n) {
+        StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private class LatencyRecorder implements MessageHandler {
+        @Override
+        public void onMessage(Subscription sub, StreamMessage message) {
+            long now = System.nanoTime();
+            firstReceivedNanos.compareAndSet(0, now);
+            lastReceivedNanos.set(now);
+            received.incrementAndGet();
+            long sentAt = ((Number) message.getParsedContent().get("sentAt")).longValue();
+            if (sentAt >= warmupEndNanos) {
+                endToEndLatency.recordNanos(now - startNanos - sentAt);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.streamr.client.loadtest;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Parameters of a load test run, parsed from command line arguments of the form --name=value, where the name is
+ * one of the fields below.
+ */
+public class LoadTestConfig {
+    // Each publisher and subscriber is a StreamrClient with its own connection
+    int publishers = 2;
+    int subscribers = 1;
+    int partitions = 4;
+    // Approximate size of the JSON content of each message
+    int messageSize = 256;
+    // Messages per second per publisher, 0 for as fast as the client accepts them
+    int rate = 1000;
+    int durationSeconds = 10;
+    // Latencies of the messages published during the warmup are not recorded
+    int warmupSeconds = 2;
+    boolean signing = false;
+    boolean encryption = false;
+    boolean binary = false;
+    // Probabilities of the server broadcasting a message after the next one, or not at all
+    double reorderProbability = 0;
+    double gapProbability = 0;
+    int gapFillTimeoutMillis = 1000;
+    int historySize = 100000;
+    long seed = 1;
+
+    public static LoadTestConfig fromArgs(String[] args) {
+        LoadTestConfig config = new LoadTestConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected arguments of the form --name=value, got: " + arg);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            config.set(name, value);
+        }
+        return config;
+    }
+
+    private void set(String name, String value) {
+        try {
+            Field field = LoadTestConfig.class.getDeclaredField(name);
+            if (field.getType() == int.class) {
+                field.setInt(this, Integer.parseInt(value));
+            } else if (field.getType() == long.class) {
+                field.setLong(this, Long.parseLong(value));
+            } else if (field.getType() == double.class) {
+                field.setDouble(this, Double.parseDouble(value));
+            } else if (field.getType() == boolean.class) {
+                field.setBoolean(this, Boolean.parseBoolean(value));
+            }
+        } catch (NoSuchFieldException e) {
+            throw new IllegalArgumentException("Unknown parameter: " + name);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Field field : LoadTestConfig.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            try {
+                sb.append(sb.length() == 0 ? "" : " ").append(field.getName()).append('=').append(field.get(this));
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -2,34 +2,60 @@ package com.streamr.client;
 
 import com.squareup.moshi.Moshi;
 import com.streamr.client.authentication.Session;
+import com.streamr.client.metrics.Metrics;
 import com.streamr.client.options.StreamrClientOptions;
 import com.streamr.client.utils.HttpUtils;
+import okhttp3.OkHttpClient;
 
 /**
  * Provides the barebones of a StreamrClient, including
  * holding the config, providing JSON serializers etc.
  */
-public abstract class AbstractStreamrClient {
+public abstract class AbstractStreamrClient implements AutoCloseable {
 
     // Thread safe
     protected static final Moshi MOSHI = HttpUtils.MOSHI;
 
     protected final StreamrClientOptions options;
 
+    // Shared by all REST calls, thread safe
+    protected final OkHttpClient httpClient;
+
     protected final Session session;
 
+    protected final Metrics metrics;
+
     public AbstractStreamrClient(StreamrClientOptions options) {
         this.options = options;
+        this.metrics = options.getMetrics();
+        this.httpClient = options.getHttpClientOptions().buildHttpClient();
 
         // Create Session object based on what kind of authentication method is provided in options
-        session = new Session(options.getRestApiUrl(), options.getAuthenticationMethod());
+        session = new Session(options.getRestApiUrl(), options.getAuthenticationMethod(), httpClient);
     }
 
     public StreamrClientOptions getOptions() {
         return options;
     }
 
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public OkHttpClient getHttpClient() {
+        return httpClient;
+    }
+
     public String getSessionToken() {
         return session.getSessionToken();
     }
+
+    /**
+     * Stops the dispatcher threads and closes the pooled connections of the OkHttpClient. REST calls fail after this.
+     */
+    @Override
+    public void close() {
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+    }
 }
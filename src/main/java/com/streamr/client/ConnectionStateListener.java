@@ -0,0 +1,12 @@
+package com.streamr.client;
+
+import org.java_websocket.enums.ReadyState;
+
+/**
+ * Notified when the state of the client's connection changes, see StreamrClient.getState(). Called on the
+ * websocket threads, so the listener should not block or call connect() or disconnect().
+ */
+@FunctionalInterface
+public interface ConnectionStateListener {
+    void onStateChange(ReadyState previous, ReadyState current);
+}
@@ -3,6 +3,7 @@ package com.streamr.client;
 import com.streamr.client.exceptions.UnableToDecryptException;
 import com.streamr.client.protocol.message_layer.StreamMessage;
 import com.streamr.client.subs.Subscription;
+import com.streamr.client.utils.Address;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,4 +12,12 @@ public interface MessageHandler {
     void onMessage(Subscription sub, StreamMessage message);
     default void done(Subscription sub) {}
     default void onUnableToDecrypt(UnableToDecryptException e) { log.warn("Unable to decrypt", e); }
+    /**
+     * Called when received messages are discarded because they didn't fit in the reorder buffer of their
+     * message chain, see ReorderBufferOptions, or in the delivery lane of the subscription, see DeliveryOptions.
+     */
+    default void onMessagesLost(Subscription sub, Address publisherId, String msgChainId, int count) {
+        log.warn("Discarded {} messages of stream {} publisher {} msgChainId {} because the reorder buffer or the delivery lane was full",
+                count, sub.getStreamId(), publisherId, msgChainId);
+    }
 }
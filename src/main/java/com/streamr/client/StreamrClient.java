@@ -3,10 +3,13 @@ package com.streamr.client;
 import com.streamr.client.authentication.ApiKeyAuthenticationMethod;
 import com.streamr.client.authentication.AuthenticationMethod;
 import com.streamr.client.authentication.EthereumAuthenticationMethod;
+import com.streamr.client.exceptions.AlreadySubscribedException;
 import com.streamr.client.exceptions.ConnectionTimeoutException;
 import com.streamr.client.exceptions.MalformedMessageException;
 import com.streamr.client.exceptions.PartitionNotSpecifiedException;
 import com.streamr.client.exceptions.SubscriptionNotFoundException;
+import com.streamr.client.metrics.Timer;
+import com.streamr.client.options.InboundPipelineOptions;
 import com.streamr.client.options.ResendOption;
 import com.streamr.client.options.StreamrClientOptions;
 import com.streamr.client.protocol.control_layer.*;
@@ -19,9 +22,13 @@ import com.streamr.client.rest.UserInfo;
 import com.streamr.client.subs.*;
 import com.streamr.client.utils.*;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
 import org.java_websocket.client.WebSocketClient;
 import org.java_websocket.enums.ReadyState;
 import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.TextFrame;
 import org.java_websocket.handshake.ServerHandshake;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,15 +37,25 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.nio.channels.NotYetConnectedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 
 /**
@@ -47,9 +64,10 @@ import java.util.stream.Collectors;
 public class StreamrClient extends StreamrRESTClient {
 
     private static final Logger log = LoggerFactory.getLogger(StreamrClient.class);
+    private static final long SOCKET_BUFFER_POLL_MILLIS = 100;
 
-    // Underlying websocket implementation
-    private WebSocketClient websocket;
+    // The websocket connections over which the stream partitions are divided. Publishing uses the first one.
+    private final Connection[] connections;
 
     protected final Subscriptions subs = new Subscriptions();
 
@@ -63,13 +81,33 @@ public class StreamrClient extends StreamrRESTClient {
     private Stream keyExchangeStream;
     private Subscription keyExchangeSub;
 
-    private final HashMap<String, OneTimeResend> secondResends = new HashMap<>();
+    private final Map<String, OneTimeResend> secondResends = new ConcurrentHashMap<>();
+    // The prefetches of validation info in progress by stream id, so that concurrent subscribes fetch it once
+    private final Map<String, CompletableFuture<Void>> validationPrefetches = new ConcurrentHashMap<>();
 
     private ErrorMessageHandler errorMessageHandler;
-    private boolean keepConnected = false;
-    private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+    private volatile boolean keepConnected = false;
     private final Object stateChangeLock = new Object();
-    private int requestCounter = 0;
+    // Notified when the state of a connection changes
+    private final Object stateMonitor = new Object();
+    // Serializes the notifications of the connection state listeners, guards lastState
+    private final Object listenerLock = new Object();
+    private ReadyState lastState = ReadyState.CLOSED;
+    private final List<ConnectionStateListener> connectionStateListeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger requestCounter = new AtomicInteger();
+    private final Object publishOrderLock = new Object();
+    private final OutboundQueue outboundQueue;
+    private final ReorderBufferPool reorderBufferPool;
+    private final ResendLimiter gapFillLimiter;
+    private final SubscribeScheduler subscribeScheduler;
+    // Null if the MessageHandlers are called on the receiving threads
+    private final DeliveryLanes deliveryLanes;
+    private volatile InboundPipeline<Frame, InboundMessage> inboundPipeline;
+    private volatile ForkJoinPool signatureVerificationPool;
+    // Encrypts and signs the messages of publishBatchAsync(), so that they don't compete with the common pool
+    private final ForkJoinPool sealingPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    private final Timer parseTimer;
+    private final Timer validateTimer;
 
     public StreamrClient(StreamrClientOptions options) {
         super(options);
@@ -104,7 +142,13 @@ public class StreamrClient extends StreamrRESTClient {
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-        }, addressValidityUtil, options.getSigningOptions().getVerifySignatures());
+        }, addressValidityUtil, options.getSigningOptions().getVerifySignatures(),
+                new VerifiedSignatureCache(options.getSigningOptions().getVerifiedSignatureCacheSize(),
+                        options.getSigningOptions().getVerifiedSignatureCacheExpirationMillis()));
+        streamMessageValidator.setMetrics(metrics);
+        addressValidityUtil.setMetrics(metrics);
+        parseTimer = metrics.timer("message.parse");
+        validateTimer = metrics.timer("message.validate");
 
         if (options.getAuthenticationMethod() instanceof ApiKeyAuthenticationMethod) {
             try {
@@ -131,6 +175,16 @@ public class StreamrClient extends StreamrRESTClient {
         keyStore = options.getEncryptionOptions().getKeyStore();
 
         msgCreationUtil = new MessageCreationUtil(publisherId, signingUtil);
+        outboundQueue = new OutboundQueue(options.getOutboundQueueOptions(), this::sendBatch);
+        reorderBufferPool = new ReorderBufferPool(options.getReorderBufferOptions());
+        gapFillLimiter = new ResendLimiter(options.getMaxConcurrentGapFills(), options.getResendTimeout());
+        subscribeScheduler = new SubscribeScheduler(options.getMaxInFlightSubscribes(),
+                options.getConnectionTimeoutMillis(), this::send, this::onSubscribeFailed);
+        deliveryLanes = options.getDeliveryOptions().isEnabled() ? new DeliveryLanes(options.getDeliveryOptions(), metrics) : null;
+        connections = new Connection[options.getConnectionCount()];
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = new Connection(i);
+        }
         encryptionUtil = new EncryptionUtil(options.getEncryptionOptions().getRsaPublicKey(),
                 options.getEncryptionOptions().getRsaPrivateKey());
         keyExchangeUtil = new KeyExchangeUtil(keyStore, msgCreationUtil, encryptionUtil, addressValidityUtil,
@@ -141,6 +195,26 @@ public class StreamrClient extends StreamrRESTClient {
                         sub.onNewKeysAdded(publisherId, keys);
                     }
                 });
+
+        metrics.gauge("ordering.queued", () -> sumOverSubscriptions(Subscription::getQueuedMessageCount));
+        metrics.gauge("ordering.queuedBytes", reorderBufferPool::getUsedBytes);
+        metrics.gauge("decryption.queued", () -> sumOverSubscriptions(Subscription::getDecryptionQueueSize));
+        metrics.gauge("groupKeyRequests.pending", () -> sumOverSubscriptions(Subscription::getPendingGroupKeyRequestCount));
+        metrics.gauge("outbound.queued", outboundQueue::getDepth);
+        metrics.gauge("subscribe.queued", subscribeScheduler::getQueuedCount);
+        metrics.gauge("subscribe.inFlight", subscribeScheduler::getInFlightCount);
+        if (deliveryLanes != null) {
+            metrics.gauge("delivery.queued", deliveryLanes::getDepth);
+            metrics.gauge("delivery.lagMillis", deliveryLanes::getLagMillis);
+        }
+    }
+
+    private long sumOverSubscriptions(ToIntFunction<Subscription> value) {
+        long sum = 0;
+        for (Subscription sub : subs.getAll()) {
+            sum += value.applyAsInt(sub);
+        }
+        return sum;
     }
 
     public StreamrClient(AuthenticationMethod authenticationMethod) {
@@ -151,63 +225,28 @@ public class StreamrClient extends StreamrRESTClient {
         this(new StreamrClientOptions());
     }
 
-    private void initWebsocket() {
-        try {
-            this.websocket = new WebSocketClient(new URI(options.getWebsocketApiUrl())) {
-                @Override
-                public void onOpen(ServerHandshake handshakedata) {
-                    log.info("Connection established");
-                    StreamrClient.this.onOpen();
-                    try {
-                        StreamrClient.this.subs.forEach(StreamrClient.this::resubscribe);
-                    } catch (WebsocketNotConnectedException e) {
-                        log.error("Failed to resubscribe", e);
-                    }
-                }
-
-                @Override
-                public void onMessage(String message) {
-                    handleMessage(message);
-                }
-
-                @Override
-                public void onClose(int code, String reason, boolean remote) {
-                    log.info("Connection closed! Code: " + code + ", Reason: " + reason);
-                    if (!keepConnected) {
-                        StreamrClient.this.onClose();
-                    }
-                }
-
-                @Override
-                public void onError(Exception ex) {
-                    log.error("WebSocketClient#onError called", ex);
-                    if (!(ex instanceof IOException)) {
-                        StreamrClient.this.onError(ex);
-                    }
-                }
-
-                @Override
-                public void send(String text) throws NotYetConnectedException {
-                    super.send(text);
-                }
-            };
-        } catch (URISyntaxException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
     /*
      * Connecting and disconnecting
      */
 
+    /**
+     * Called when the state of the client becomes OPEN, that is when all its connections have opened.
+     */
     public void onOpen() {}
+
+    /**
+     * Called when the state of the client becomes CLOSED after disconnect().
+     */
     public void onClose() {
         streamMessageValidator.clearAndClose();
     }
     public void onError(Exception ex) {}
 
+    /**
+     * Returns the websocket of the first connection, which is used for publishing.
+     */
     public WebSocketClient getWebsocket() {
-        return websocket;
+        return connections[0].websocket;
     }
 
     /**
@@ -221,31 +260,23 @@ public class StreamrClient extends StreamrRESTClient {
         synchronized (stateChangeLock) {
             if (!keepConnected) {
                 keepConnected = true;
+                InboundPipelineOptions pipelineOptions = options.getInboundPipelineOptions();
+                if (pipelineOptions.isEnabled() && inboundPipeline == null) {
+                    if (pipelineOptions.getSignatureVerifierThreads() > 0) {
+                        signatureVerificationPool = new ForkJoinPool(pipelineOptions.getSignatureVerifierThreads());
+                    }
+                    inboundPipeline = new InboundPipeline<>(pipelineOptions, this::parseInboundMessage,
+                            msg -> selectLane(msg.message), msg -> handleMessage(msg.message, msg.signatureCheck));
+                }
                 log.info("Connecting to " + options.getWebsocketApiUrl() + "...");
-                executorService.scheduleAtFixedRate(() -> {
-                            if (keepConnected) {
-                                if (getState() != ReadyState.OPEN) {
-                                    boolean isReconnect = this.websocket != null;
-                                    log.info("Not connected. Attempting to " + (isReconnect ? "reconnect" : "connect"));
-                                    if (isReconnect) {
-                                        this.websocket.closeConnection(0, "");
-                                    }
-                                    initWebsocket();
-                                    this.websocket.connect();
-                                }
-                            } else {
-                                if (getState() != ReadyState.CLOSED) {
-                                    log.info("Closing connection");
-                                    websocket.closeConnection(0, "");
-                                    websocket = null;
-                                    executorService.shutdown();
-                                }
-                            }
-                        },
-                        0,
-                        options.getReconnectRetryInterval(),
-                        TimeUnit.MILLISECONDS
-                );
+                for (Connection connection : connections) {
+                    connection.scheduleAttempt();
+                }
+            } else {
+                // Reconnecting, don't wait for the backoff as the caller is waiting
+                for (Connection connection : connections) {
+                    connection.attemptNow();
+                }
             }
         }
 
@@ -286,6 +317,26 @@ public class StreamrClient extends StreamrRESTClient {
         log.info("Connected to " + options.getWebsocketApiUrl());
     }
 
+    /**
+     * Like connect(), but while reconnecting only waits for the given connection to be open. Blocks until it's
+     * open, or throws if it times out, regardless of the state of the other connections.
+     */
+    private void connect(Connection connection) throws ConnectionTimeoutException {
+        if (!keepConnected || keyExchangeStream != null && keyExchangeSub == null) {
+            connect();
+            return;
+        }
+        if (connection.getState() == ReadyState.OPEN) {
+            return;
+        }
+        // Don't wait for the backoff as the caller is waiting
+        connection.attemptNow();
+        waitFor(() -> connection.getState() == ReadyState.OPEN);
+        if (connection.getState() != ReadyState.OPEN) {
+            throw new ConnectionTimeoutException(options.getWebsocketApiUrl());
+        }
+    }
+
     /**
      * Disconnects the websocket. Blocks until disconnected, or throws if the operation times out.
      */
@@ -294,10 +345,37 @@ public class StreamrClient extends StreamrRESTClient {
             return;
         }
 
+        // Give the queued messages a chance to be sent before closing
+        if (!outboundQueue.flush(options.getConnectionTimeoutMillis())) {
+            log.warn("Disconnecting with {} messages still in the outbound queue", outboundQueue.getDepth());
+        }
+
         synchronized (stateChangeLock) {
             keepConnected = false;
+            for (Connection connection : connections) {
+                connection.close();
+            }
         }
+        onConnectionStateChange();
         waitForState(ReadyState.CLOSED);
+        synchronized (stateChangeLock) {
+            if (inboundPipeline != null && !keepConnected) {
+                inboundPipeline.shutdown();
+                // Let the queued verifications run, so that no lane is left waiting for one
+                if (signatureVerificationPool != null) {
+                    signatureVerificationPool.shutdown();
+                }
+                try {
+                    if (!inboundPipeline.awaitTermination(options.getConnectionTimeoutMillis())) {
+                        log.warn("Threads of the inbound pipeline did not exit in {} ms", options.getConnectionTimeoutMillis());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                inboundPipeline = null;
+                signatureVerificationPool = null;
+            }
+        }
         ReadyState state = getState();
         if (state != ReadyState.CLOSED) {
             throw new RuntimeException(String.format(
@@ -307,40 +385,170 @@ public class StreamrClient extends StreamrRESTClient {
         }
     }
 
+    /**
+     * Disconnects, and releases the threads, connections and spill files of the client. The client can't be used
+     * after this.
+     */
+    @Override
+    public void close() {
+        disconnect();
+        // Cancels the gap fills and deletes the reorder buffer spill files
+        subs.forEach(Subscription::clear);
+        outboundQueue.close(new IllegalStateException("The client has been closed"));
+        sealingPool.shutdown();
+        if (deliveryLanes != null) {
+            // The messages already queued are still delivered
+            deliveryLanes.shutdown();
+        }
+        super.close();
+    }
+
     public void setErrorMessageHandler(ErrorMessageHandler errorMessageHandler) {
         this.errorMessageHandler = errorMessageHandler;
     }
 
+    /**
+     * Adds a listener which is notified when the state returned by getState() changes.
+     */
+    public void addConnectionStateListener(ConnectionStateListener listener) {
+        connectionStateListeners.add(listener);
+    }
+
+    public void removeConnectionStateListener(ConnectionStateListener listener) {
+        connectionStateListeners.remove(listener);
+    }
+
+    /**
+     * Called when the state of a connection changes. Wakes up the threads in waitForState(), and notifies the
+     * listeners if the state of the client changed. The listeners are called in the order of the changes, but
+     * not while holding stateMonitor, so a slow listener doesn't hold up the threads waiting for a state.
+     */
+    private void onConnectionStateChange() {
+        synchronized (stateMonitor) {
+            stateMonitor.notifyAll();
+        }
+        synchronized (listenerLock) {
+            ReadyState previous = lastState;
+            ReadyState current = getState();
+            if (previous == current) {
+                return;
+            }
+            lastState = current;
+            log.debug("Connection state changed from {} to {}", previous, current);
+            if (current == ReadyState.OPEN) {
+                onOpen();
+            } else if (current == ReadyState.CLOSED && !keepConnected) {
+                onClose();
+            }
+            for (ConnectionStateListener listener : connectionStateListeners) {
+                try {
+                    listener.onStateChange(previous, current);
+                } catch (RuntimeException e) {
+                    log.error("Connection state listener threw", e);
+                }
+            }
+        }
+    }
+
     private void waitForState(ReadyState target) {
+        waitFor(() -> getState() == target);
+    }
+
+    private void waitFor(BooleanSupplier condition) {
         long maxWaitTime = options.getReconnectRetryInterval() + options.getConnectionTimeoutMillis() + 500;
-        long timeWaited = 0;
-        while (getState() != target && timeWaited < maxWaitTime) {
-            try {
-                Thread.sleep(100);
-                timeWaited += 100;
-            } catch (InterruptedException e) {
-                // ignore
+        long deadline = System.currentTimeMillis() + maxWaitTime;
+        synchronized (stateMonitor) {
+            long remaining = maxWaitTime;
+            while (!condition.getAsBoolean() && remaining > 0) {
+                try {
+                    stateMonitor.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                remaining = deadline - System.currentTimeMillis();
             }
         }
     }
 
     private void send(ControlMessage message) {
         log.trace("[{}] >> {}", publisherId != null ? publisherId.toString().substring(0, 6) : null, message);
-        if (this.websocket != null) {
-            this.websocket.send(message.toJson());
+        WebSocketClient websocket = selectConnection(message).websocket;
+        if (websocket != null) {
+            websocket.send(message.toJson());
         } else {
             log.warn("send: websocket is null, not sending message {}", message);
         }
     }
 
+    /**
+     * Returns OPEN if all the connections are open, CLOSED if all of them are closed, CLOSING if any of them is
+     * closing, and otherwise NOT_YET_CONNECTED.
+     */
     public ReadyState getState() {
-        return this.websocket == null ? ReadyState.CLOSED : this.websocket.getReadyState();
+        int open = 0;
+        int closed = 0;
+        for (Connection connection : connections) {
+            ReadyState state = connection.getState();
+            if (state == ReadyState.OPEN) {
+                open++;
+            } else if (state == ReadyState.CLOSED) {
+                closed++;
+            } else if (state == ReadyState.CLOSING) {
+                return ReadyState.CLOSING;
+            }
+        }
+        if (open == connections.length) {
+            return ReadyState.OPEN;
+        } else if (closed == connections.length) {
+            return ReadyState.CLOSED;
+        } else {
+            return ReadyState.NOT_YET_CONNECTED;
+        }
+    }
+
+    /**
+     * The requests related to a stream partition go over the connection of the stream partition, so that the
+     * responses and the messages of the stream partition arrive over it. The rest go over the first connection.
+     */
+    private Connection selectConnection(ControlMessage message) {
+        if (connections.length == 1) {
+            return connections[0];
+        } else if (message.getType() == SubscribeRequest.TYPE) {
+            SubscribeRequest req = (SubscribeRequest) message;
+            return selectConnection(req.getStreamId(), req.getStreamPartition());
+        } else if (message.getType() == UnsubscribeRequest.TYPE) {
+            UnsubscribeRequest req = (UnsubscribeRequest) message;
+            return selectConnection(req.getStreamId(), req.getStreamPartition());
+        } else if (message.getType() == ResendLastRequest.TYPE) {
+            ResendLastRequest req = (ResendLastRequest) message;
+            return selectConnection(req.getStreamId(), req.getStreamPartition());
+        } else if (message.getType() == ResendFromRequest.TYPE) {
+            ResendFromRequest req = (ResendFromRequest) message;
+            return selectConnection(req.getStreamId(), req.getStreamPartition());
+        } else if (message.getType() == ResendRangeRequest.TYPE) {
+            ResendRangeRequest req = (ResendRangeRequest) message;
+            return selectConnection(req.getStreamId(), req.getStreamPartition());
+        } else {
+            return connections[0];
+        }
+    }
+
+    private Connection selectConnection(String streamId, int partition) {
+        return connections[ConsistentHash.bucket(streamId, partition, connections.length)];
     }
 
     public Address getPublisherId() {
         return publisherId;
     }
 
+    /**
+     * Exposes the hit and miss counts of the cache of verified message signatures.
+     */
+    public VerifiedSignatureCache getVerifiedSignatureCache() {
+        return streamMessageValidator.getVerifiedSignatureCache();
+    }
+
     public GroupKeyStore getKeyStore() {
         return keyStore;
     }
@@ -350,53 +558,151 @@ public class StreamrClient extends StreamrRESTClient {
      */
 
     protected void handleMessage(String rawMessageAsString) {
+        ControlMessage message = parseMessage(new Frame(StandardCharsets.UTF_8.encode(rawMessageAsString), false));
+        if (message != null) {
+            handleMessage(message, null);
+        }
+    }
+
+    private void handleFrame(ByteBuffer payload, boolean binary) {
+        Frame frame = new Frame(payload, binary);
+        InboundPipeline<Frame, InboundMessage> pipeline = inboundPipeline;
+        if (pipeline != null) {
+            pipeline.submit(frame);
+        } else {
+            ControlMessage message = parseMessage(frame);
+            if (message != null) {
+                handleMessage(message, null);
+            }
+        }
+    }
+
+    /**
+     * Runs on the parser threads of the inbound pipeline. Starts verifying the signature right away so that the
+     * signatures of consecutive messages get verified in parallel while the lanes handle the messages in order.
+     * Messages to stream partitions which are not subscribed are dropped without validation, so they are skipped.
+     */
+    private InboundMessage parseInboundMessage(Frame frame) {
+        ControlMessage message = parseMessage(frame);
+        if (message == null) {
+            return null;
+        }
+
+        CompletableFuture<Boolean> signatureCheck = null;
+        ForkJoinPool pool = signatureVerificationPool;
+        if (pool != null) {
+            StreamMessage streamMessage = null;
+            if (message.getType() == BroadcastMessage.TYPE) {
+                streamMessage = ((BroadcastMessage) message).getStreamMessage();
+            } else if (message.getType() == UnicastMessage.TYPE) {
+                streamMessage = ((UnicastMessage) message).getStreamMessage();
+            }
+            if (streamMessage != null && subs.contains(streamMessage.getStreamId(), streamMessage.getStreamPartition())) {
+                signatureCheck = streamMessageValidator.verifySignatureAsync(streamMessage, pool);
+            }
+        }
+        return new InboundMessage(message, signatureCheck);
+    }
+
+    /**
+     * Parses a JSON message from a text frame, or a binary message from a binary frame. The server sends binary
+     * frames only if the binary message layer encoding was requested.
+     */
+    private ControlMessage parseMessage(Frame frame) {
         try {
-            // Handle different message types
-            ControlMessage message = ControlMessage.fromJson(rawMessageAsString);
+            // Parse from a duplicate so that the raw message can still be logged
+            long start = parseTimer.start();
+            ControlMessage message = frame.binary ? ControlMessage.fromBinary(frame.payload.duplicate())
+                    : ControlMessage.fromJson(frame.payload.duplicate());
+            parseTimer.stop(start);
 
             log.trace("[{}] << {}", publisherId != null ? publisherId.toString().substring(0, 6) : null, message);
 
-            if (message != null) {
-                try {
-                    if (message.getType() == BroadcastMessage.TYPE) {
-                        BroadcastMessage msg = (BroadcastMessage) message;
-                        handleMessage(msg.getStreamMessage(), Subscription::handleRealTimeMessage);
-                    } else if (message.getType() == UnicastMessage.TYPE) {
-                        UnicastMessage msg = (UnicastMessage) message;
-                        handleMessage(msg.getStreamMessage(), Subscription::handleResentMessage);
-                    } else if (message.getType() == SubscribeResponse.TYPE) {
-                        handleSubscribeResponse((SubscribeResponse)message);
-                    } else if (message.getType() == UnsubscribeResponse.TYPE) {
-                        handleUnsubcribeResponse((UnsubscribeResponse)message);
-                    } else if (message.getType() == ResendResponseResending.TYPE) {
-                        handleResendResponseResending((ResendResponseResending)message);
-                    } else if (message.getType() == ResendResponseNoResend.TYPE) {
-                        handleResendResponseNoResend((ResendResponseNoResend)message);
-                    } else if (message.getType() == ResendResponseResent.TYPE) {
-                        handleResendResponseResent((ResendResponseResent)message);
-                    } else if (message.getType() == ErrorResponse.TYPE) {
-                        ErrorResponse error = (ErrorResponse) message;
-                        if (this.errorMessageHandler != null) {
-                            this.errorMessageHandler.onErrorMessage(error);
-                        } else {
-                            log.error("Protocol error message: '{}'", error.getErrorMessage());
-                        }
-                    }
-                } catch (Exception e) {
-                    log.error("Error handling message: " + message, e);
+            if (message == null) {
+                log.error("Parsed message was null! Raw message: " + frame);
+            }
+            return message;
+        } catch (Exception e) {
+            log.error("Error while handling message: " + frame, e);
+            return null;
+        }
+    }
+
+    /**
+     * Messages related to the same stream partition must be handled in order, so they go to the same lane of
+     * the inbound pipeline. An ErrorResponse to a subscribe request goes to the lane of the stream partition
+     * being subscribed, after any messages already received for it. Other messages which don't relate to a
+     * stream partition only touch thread-safe state, and go to the first lane.
+     */
+    private int selectLane(ControlMessage message) {
+        if (message.getType() == BroadcastMessage.TYPE) {
+            StreamMessage msg = ((BroadcastMessage) message).getStreamMessage();
+            return laneOf(msg.getStreamId(), msg.getStreamPartition());
+        } else if (message.getType() == UnicastMessage.TYPE) {
+            StreamMessage msg = ((UnicastMessage) message).getStreamMessage();
+            return laneOf(msg.getStreamId(), msg.getStreamPartition());
+        } else if (message.getType() == SubscribeResponse.TYPE) {
+            SubscribeResponse res = (SubscribeResponse) message;
+            return laneOf(res.getStreamId(), res.getStreamPartition());
+        } else if (message.getType() == UnsubscribeResponse.TYPE) {
+            UnsubscribeResponse res = (UnsubscribeResponse) message;
+            return laneOf(res.getStreamId(), res.getStreamPartition());
+        } else if (message instanceof ResendResponse) {
+            ResendResponse res = (ResendResponse) message;
+            return laneOf(res.getStreamId(), res.getStreamPartition());
+        } else if (message.getType() == ErrorResponse.TYPE) {
+            SubscribeRequest request = subscribeScheduler.getInFlight(((ErrorResponse) message).getRequestId());
+            return request != null ? laneOf(request.getStreamId(), request.getStreamPartition()) : 0;
+        } else {
+            return 0;
+        }
+    }
+
+    private static int laneOf(String streamId, int partition) {
+        return 31 * streamId.hashCode() + partition;
+    }
+
+    private void handleMessage(ControlMessage message, CompletableFuture<Boolean> signatureCheck) {
+        try {
+            if (message.getType() == BroadcastMessage.TYPE) {
+                BroadcastMessage msg = (BroadcastMessage) message;
+                handleMessage(msg.getStreamMessage(), signatureCheck, StreamrClient::handleRealTimeMessage);
+            } else if (message.getType() == UnicastMessage.TYPE) {
+                UnicastMessage msg = (UnicastMessage) message;
+                handleMessage(msg.getStreamMessage(), signatureCheck, StreamrClient::handleResentMessage);
+            } else if (message.getType() == SubscribeResponse.TYPE) {
+                handleSubscribeResponse((SubscribeResponse)message);
+            } else if (message.getType() == UnsubscribeResponse.TYPE) {
+                handleUnsubcribeResponse((UnsubscribeResponse)message);
+            } else if (message.getType() == ResendResponseResending.TYPE) {
+                handleResendResponseResending((ResendResponseResending)message);
+            } else if (message.getType() == ResendResponseNoResend.TYPE) {
+                handleResendResponseNoResend((ResendResponseNoResend)message);
+            } else if (message.getType() == ResendResponseResent.TYPE) {
+                handleResendResponseResent((ResendResponseResent)message);
+            } else if (message.getType() == ErrorResponse.TYPE) {
+                ErrorResponse error = (ErrorResponse) message;
+                // The error may be the response to a subscribe request
+                subscribeScheduler.onError(error.getRequestId());
+                if (this.errorMessageHandler != null) {
+                    this.errorMessageHandler.onErrorMessage(error);
+                } else {
+                    log.error("Protocol error message: '{}'", error.getErrorMessage());
                 }
-            } else {
-                log.error("Parsed message was null! Raw message: " + rawMessageAsString);
             }
         } catch (Exception e) {
-            log.error("Error while handling message: " + rawMessageAsString, e);
+            log.error("Error handling message: " + message, e);
         }
     }
 
-    private void handleMessage(StreamMessage message,
+    private void handleMessage(StreamMessage message, CompletableFuture<Boolean> signatureCheck,
                                BiConsumer<Subscription, StreamMessage> subMsgHandler) throws SubscriptionNotFoundException {
-        streamMessageValidator.validate(message);
+        metrics.counter("messages.received", message.getStreamId()).inc();
+        // Look up the subscription first, so that messages to other stream partitions are not validated
         Subscription sub = subs.get(message.getStreamId(), message.getStreamPartition());
+        long start = validateTimer.start();
+        streamMessageValidator.validate(message, signatureCheck);
+        validateTimer.stop(start);
 
         // Only call the handler if we are in subscribed state (and not for example UNSUBSCRIBING)
         if (sub.isSubscribed()) {
@@ -411,6 +717,26 @@ public class StreamrClient extends StreamrRESTClient {
         }
     }
 
+    private static void handleRealTimeMessage(Subscription sub, StreamMessage message) {
+        awaitDeliveryCapacity(sub);
+        // While the delivery lane of the subscription is full, the messages are requested later like a gap
+        sub.offerRealTimeMessage(message);
+    }
+
+    private static void handleResentMessage(Subscription sub, StreamMessage message) {
+        awaitDeliveryCapacity(sub);
+        // While the delivery lane of the subscription is full, the resent messages are kept by the subscription
+        sub.offerResentMessage(message);
+    }
+
+    private static void awaitDeliveryCapacity(Subscription sub) {
+        // Wait here rather than in the handler, which is called while holding the locks of the subscription
+        DeliveryLane lane = sub.getDeliveryLane();
+        if (lane != null) {
+            lane.awaitCapacity();
+        }
+    }
+
     /*
      * Publish
      */
@@ -437,7 +763,36 @@ public class StreamrClient extends StreamrRESTClient {
 
     public void publish(Stream stream, Map<String, Object> payload, Date timestamp, @Nullable String partitionKey, @Nullable GroupKey newGroupKey) {
         // Convenience feature: allow user to call publish() without having had called connect() beforehand.
-        connect();
+        // Unlike publishAsync(), this also waits for the connection to be restored while reconnecting.
+        connect(connections[0]);
+        CompletableFuture<Void> sent = publishAsync(stream, payload, timestamp, partitionKey, newGroupKey);
+        // Surface immediate failures, such as a full queue with the FAIL_FAST policy
+        if (sent.isCompletedExceptionally()) {
+            joinUnwrapped(sent);
+        }
+    }
+
+    public CompletableFuture<Void> publishAsync(Stream stream, Map<String, Object> payload) {
+        return publishAsync(stream, payload, new Date(), null, null);
+    }
+
+    public CompletableFuture<Void> publishAsync(Stream stream, Map<String, Object> payload, Date timestamp, @Nullable String partitionKey) {
+        return publishAsync(stream, payload, timestamp, partitionKey, null);
+    }
+
+    /**
+     * Publishes the message via the outbound queue. If the client is disconnected, the message waits in the queue
+     * until the connection is restored. If the queue is full, the OutboundQueueOptions.FullPolicy determines
+     * whether this call blocks, fails or drops the oldest queued message.
+     *
+     * @return a future which completes when the message has been handed to the websocket
+     */
+    public CompletableFuture<Void> publishAsync(Stream stream, Map<String, Object> payload, Date timestamp, @Nullable String partitionKey, @Nullable GroupKey newGroupKey) {
+        // Convenience feature: allow user to call publish() without having had called connect() beforehand.
+        // While reconnecting, messages are queued instead.
+        if (!keepConnected) {
+            connect();
+        }
 
         GroupKey currentKey = keyStore.getCurrentKey(stream.getId());
 
@@ -462,18 +817,152 @@ public class StreamrClient extends StreamrRESTClient {
             keyExchangeUtil.rekey(stream.getId(), true);
         }
 
-        StreamMessage streamMessage = msgCreationUtil.createStreamMessage(stream, payload, timestamp, partitionKey, currentKey, newGroupKey);
+        String sessionToken = getSessionToken();
+        StreamMessage streamMessage;
+        CompletableFuture<String> request = new CompletableFuture<>();
+        CompletableFuture<Void> sent;
+        synchronized (publishOrderLock) {
+            // Messages are chained in the order they are prepared here, so they are also queued in this order
+            streamMessage = msgCreationUtil.prepareStreamMessage(stream, payload, timestamp, partitionKey);
+            sent = outboundQueue.add(request);
+        }
+        metrics.counter("messages.published", stream.getId()).inc();
+
+        // Encrypt and sign outside the lock so that concurrent publishers can do it in parallel
         try {
-            publish(streamMessage);
-        } catch (WebsocketNotConnectedException e) {
-            // TODO: re-try sending once. Need to implement proper message enqueuing while not connected later.
-            connect();
-            publish(streamMessage);
+            msgCreationUtil.sealStreamMessage(streamMessage, currentKey, newGroupKey);
+            request.complete(new PublishRequest(newRequestId("pub"), streamMessage, sessionToken).toJson());
+        } catch (RuntimeException e) {
+            request.completeExceptionally(e);
+            throw e;
         }
+        return sent;
     }
 
     private void publish(StreamMessage streamMessage) {
-        send(new PublishRequest(newRequestId("pub"), streamMessage, getSessionToken()));
+        PublishRequest request = new PublishRequest(newRequestId("pub"), streamMessage, getSessionToken());
+        log.trace("[{}] >> {}", publisherId != null ? publisherId.toString().substring(0, 6) : null, request);
+        outboundQueue.add(CompletableFuture.completedFuture(request.toJson()));
+    }
+
+    /**
+     * Publishes the payloads to the stream as consecutive messages, and blocks until they have been written
+     * to the websocket. See publishBatchAsync().
+     */
+    public void publishBatch(Stream stream, List<Map<String, Object>> payloads) {
+        joinUnwrapped(publishBatchAsync(stream, payloads));
+    }
+
+    /**
+     * Publishes the payloads to the stream as consecutive messages. The messages are chained on the calling
+     * thread, encrypted and signed in parallel on a pool of the client, and then written to the websocket
+     * back-to-back via the outbound queue, in the order they were published. The outbound queue writes the
+     * messages sealed so far with each flush, so a large batch may be written with several flushes.
+     *
+     * @return a future which completes when the whole batch has been handed to the websocket
+     */
+    public CompletableFuture<Void> publishBatchAsync(Stream stream, List<Map<String, Object>> payloads) {
+        // Convenience feature: allow user to call publish() without having had called connect() beforehand.
+        if (!keepConnected) {
+            connect();
+        }
+
+        GroupKey currentKey = keyStore.getCurrentKey(stream.getId());
+
+        // Check if an automatic rekey is needed
+        if (options.getEncryptionOptions().autoRevoke() && keyExchangeUtil.keyRevocationNeeded(stream.getId())) {
+            keyExchangeUtil.rekey(stream.getId(), true);
+        }
+
+        String sessionToken = getSessionToken();
+        List<CompletableFuture<Void>> sent = new ArrayList<>(payloads.size());
+        synchronized (publishOrderLock) {
+            // Messages are chained in the order they are prepared here, so they are also queued in this order
+            for (Map<String, Object> payload : payloads) {
+                StreamMessage streamMessage = msgCreationUtil.prepareStreamMessage(stream, payload, new Date(), null);
+                sent.add(outboundQueue.add(CompletableFuture.supplyAsync(() -> {
+                    msgCreationUtil.sealStreamMessage(streamMessage, currentKey, null);
+                    return new PublishRequest(newRequestId("pub"), streamMessage, sessionToken).toJson();
+                }, sealingPool)));
+            }
+        }
+        metrics.counter("messages.published", stream.getId()).inc(payloads.size());
+        return CompletableFuture.allOf(sent.toArray(new CompletableFuture<?>[0]));
+    }
+
+    // For tests
+    DeliveryLanes getDeliveryLanes() {
+        return deliveryLanes;
+    }
+
+    /**
+     * Exposes the depth and counters of the queue of messages waiting to be published.
+     */
+    public OutboundQueue getOutboundQueue() {
+        return outboundQueue;
+    }
+
+    private static void joinUnwrapped(CompletableFuture<?> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the already serialized PublishRequests to the websocket with a single flush. Called by the outbound
+     * queue, which retries later if this throws.
+     */
+    private void sendBatch(List<String> requests) {
+        Connection connection = connections[0];
+        WebSocketClient ws = connection.websocket;
+        if (ws == null) {
+            throw new WebsocketNotConnectedException();
+        }
+        waitForSocketBuffer(ws, connection.writeMonitor);
+        log.trace("[{}] >> batch of {} PublishRequests", publisherId != null ? publisherId.toString().substring(0, 6) : null, requests.size());
+
+        List<Framedata> frames = new ArrayList<>(requests.size());
+        for (String request : requests) {
+            TextFrame frame = new TextFrame();
+            frame.setPayload(ByteBuffer.wrap(request.getBytes(StandardCharsets.UTF_8)));
+            frame.setFin(true);
+            // Frames sent by a client must be masked
+            frame.setTransferemasked(true);
+            frames.add(frame);
+        }
+        ws.sendFrame(frames);
+    }
+
+    /**
+     * The websocket buffers written frames without limit, so wait until the websocket thread has written
+     * most of them to the socket. This lets the outbound queue fill up and slow down publishers instead.
+     * The monitor wakes this up on each write to the socket. As it may belong to a websocket which replaced
+     * the given one, the wait is also bounded.
+     */
+    private void waitForSocketBuffer(WebSocketClient ws, SocketWriteMonitor monitor) {
+        WebSocket connection = ws.getConnection();
+        if (!(connection instanceof WebSocketImpl) || monitor == null) {
+            return;
+        }
+        int limit = options.getOutboundQueueOptions().getMaxSocketBufferedFrames();
+        while (connection.isOpen()) {
+            // Read the count first, so that a write after checking the buffer is not missed
+            long writes = monitor.getWriteCount();
+            if (((WebSocketImpl) connection).outQueue.size() <= limit) {
+                return;
+            }
+            try {
+                monitor.awaitWrite(writes, SOCKET_BUFFER_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
     }
 
     public GroupKey rekey(Stream stream) {
@@ -496,30 +985,86 @@ public class StreamrClient extends StreamrRESTClient {
     }
 
     protected Subscription subscribe(Stream stream, int partition, MessageHandler handler, ResendOption resendOption, boolean isExplicitResend) {
-        if (!getState().equals(ReadyState.OPEN)) {
-            connect();
+        connect(selectConnection(stream.getId(), partition));
+
+        if (!KeyExchangeUtil.isKeyExchangeStreamId(stream.getId())) {
+            prefetchValidationInfo(stream.getId());
         }
 
-        SubscribeRequest subscribeRequest = new SubscribeRequest(newRequestId("sub"), stream.getId(), partition, getSessionToken());
+        return createSubscription(stream.getId(), partition, handler, resendOption, isExplicitResend);
+    }
+
+    /**
+     * Subscribes to many stream partitions at once, for example to all the partitions of a stream. The subscribe
+     * requests are sent at the pace allowed by maxInFlightSubscribes, see setSubscribeProgressListener() to follow
+     * their progress.
+     *
+     * @return the subscriptions, in the order of the stream partitions
+     * @throws AlreadySubscribedException if already subscribed to one of the stream partitions, in which case the
+     * stream partitions before it have been subscribed
+     */
+    public List<Subscription> subscribeAll(Collection<StreamPartition> streamPartitions, MessageHandler handler) {
+        return subscribeAll(streamPartitions, handler, null);
+    }
+
+    public List<Subscription> subscribeAll(Collection<StreamPartition> streamPartitions, MessageHandler handler, ResendOption resendOption) {
+        streamPartitions.stream()
+                .map(sp -> selectConnection(sp.getStreamId(), sp.getPartition()))
+                .distinct()
+                .forEach(this::connect);
+
+        // Once per stream rather than per partition
+        streamPartitions.stream()
+                .map(StreamPartition::getStreamId)
+                .distinct()
+                .filter(streamId -> !KeyExchangeUtil.isKeyExchangeStreamId(streamId))
+                .forEach(this::prefetchValidationInfo);
+
+        List<Subscription> result = new ArrayList<>(streamPartitions.size());
+        for (StreamPartition streamPartition : streamPartitions) {
+            result.add(createSubscription(streamPartition.getStreamId(), streamPartition.getPartition(), handler, resendOption, false));
+        }
+        return result;
+    }
+
+    /**
+     * Sets the listener which is called as the subscribe requests succeed or fail, for example to follow the
+     * progress of resubscribing after a reconnect. The subscription of a failed request is left in the FAILED
+     * state until the next reconnect resubscribes it.
+     */
+    public void setSubscribeProgressListener(SubscribeScheduler.ProgressListener listener) {
+        subscribeScheduler.setProgressListener(listener);
+    }
+
+    private Subscription createSubscription(String streamId, int partition, MessageHandler handler, ResendOption resendOption, boolean isExplicitResend) {
+        SubscribeRequest subscribeRequest = new SubscribeRequest(newRequestId("sub"), streamId, partition, getSessionToken());
+
+        LaneMessageHandler laneHandler = null;
+        // The key exchange messages are handled by the client itself
+        if (deliveryLanes != null && (keyExchangeStream == null || !streamId.equals(keyExchangeStream.getId()))) {
+            laneHandler = deliveryLanes.wrap(streamId, partition, handler);
+            handler = laneHandler;
+        }
 
         Subscription sub;
-        BasicSubscription.GroupKeyRequestFunction requestFunction = (publisherId, groupKeyIds) -> sendGroupKeyRequest(stream.getId(), publisherId, groupKeyIds);
+        BasicSubscription.GroupKeyRequestFunction requestFunction = (publisherId, groupKeyIds) -> sendGroupKeyRequest(streamId, publisherId, groupKeyIds);
         if (resendOption == null) {
-            sub = new RealTimeSubscription(stream.getId(), partition, handler, keyStore, keyExchangeUtil,
+            sub = new RealTimeSubscription(streamId, partition, handler, keyStore, keyExchangeUtil,
                     requestFunction, options.getPropagationTimeout(), options.getResendTimeout(),
                     options.getSkipGapsOnFullQueue());
         } else if (isExplicitResend) {
-            sub = new HistoricalSubscription(stream.getId(), partition, handler, keyStore, keyExchangeUtil, resendOption,
+            sub = new HistoricalSubscription(streamId, partition, handler, keyStore, keyExchangeUtil, resendOption,
                     requestFunction, options.getPropagationTimeout(), options.getResendTimeout(),
                     options.getSkipGapsOnFullQueue());
         } else {
-            sub = new CombinedSubscription(stream.getId(), partition, handler, keyStore, keyExchangeUtil, resendOption, requestFunction,
+            sub = new CombinedSubscription(streamId, partition, handler, keyStore, keyExchangeUtil, resendOption, requestFunction,
                     options.getPropagationTimeout(), options.getResendTimeout(), options.getSkipGapsOnFullQueue());
         }
-        sub.setGapHandler((MessageRef from, MessageRef to, Address publisherId, String msgChainId) -> {
+        GapFillCoordinator gapFillCoordinator = new GapFillCoordinator(gapFillLimiter, options.getGapFillCoalesceMillis(),
+                () -> newRequestId("resend"), (requestId, from, to, publisherId, msgChainId) -> {
             ResendRangeRequest req = new ResendRangeRequest(
-                    newRequestId("resend"),
-                    stream.getId(),
+                    requestId,
+                    streamId,
                     partition,
                     from,
                     to,
@@ -530,16 +1075,63 @@ public class StreamrClient extends StreamrRESTClient {
             sub.setResending(true);
             send(req);
         });
-        subs.add(sub);
+        sub.setGapHandler(gapFillCoordinator);
+        sub.setMetrics(metrics);
+        sub.setReorderBufferPool(reorderBufferPool);
+        sub.setAdaptiveTimeoutOptions(options.getAdaptiveTimeoutOptions());
+        if (laneHandler != null) {
+            laneHandler.setSubscription(sub);
+            sub.setDeliveryLane(laneHandler.getLane());
+        }
+        try {
+            subs.add(sub);
+        } catch (AlreadySubscribedException e) {
+            if (laneHandler != null) {
+                deliveryLanes.release(streamId, partition);
+            }
+            sub.clear();
+            throw e;
+        }
         sub.setState(Subscription.State.SUBSCRIBING);
-        send(subscribeRequest);
+        subscribeScheduler.submit(subscribeRequest);
         return sub;
     }
 
+    /**
+     * Fetches the stream metadata and publishers in the background while the subscribe request is in flight,
+     * so that the first messages can be validated without blocking the websocket thread on REST calls.
+     * Failures are not fatal: the validator falls back to fetching the data when it is needed. Nothing is
+     * fetched if the stream metadata is already cached or being fetched.
+     */
+    private void prefetchValidationInfo(String streamId) {
+        if (streamMessageValidator.isStreamCached(streamId)) {
+            return;
+        }
+        CompletableFuture<Void> prefetch = new CompletableFuture<>();
+        if (validationPrefetches.putIfAbsent(streamId, prefetch) != null) {
+            // Already being fetched
+            return;
+        }
+        getStreamAsync(streamId).thenCompose(stream -> {
+            streamMessageValidator.cacheStream(stream);
+            if (stream.requiresSignedData()) {
+                return getPublishersAsync(streamId).thenAccept(publishers -> streamMessageValidator.getAddressValidityUtil()
+                        .cachePublishers(streamId, publishers.stream().map(Address::new).collect(Collectors.toList())));
+            }
+            return CompletableFuture.completedFuture(null);
+        }).whenComplete((result, e) -> {
+            if (e != null) {
+                log.debug("Failed to prefetch validation info for stream " + streamId + ": " + e.getMessage());
+            }
+            validationPrefetches.remove(streamId, prefetch);
+            prefetch.complete(null);
+        });
+    }
+
     private void resubscribe(Subscription sub) {
         SubscribeRequest subscribeRequest = new SubscribeRequest(newRequestId("resub"), sub.getStreamId(), sub.getPartition(), getSessionToken());
         sub.setState(Subscription.State.SUBSCRIBING);
-        send(subscribeRequest);
+        subscribeScheduler.submit(subscribeRequest);
     }
 
     /*
@@ -572,14 +1164,28 @@ public class StreamrClient extends StreamrRESTClient {
         send(unsubscribeRequest);
     }
 
+    private void onSubscribeFailed(SubscribeRequest request) {
+        try {
+            Subscription sub = subs.get(request.getStreamId(), request.getStreamPartition());
+            if (sub.getState() == Subscription.State.SUBSCRIBING) {
+                sub.setState(Subscription.State.FAILED);
+                log.error("Failed to subscribe to stream {} partition {}", request.getStreamId(), request.getStreamPartition());
+            }
+        } catch (SubscriptionNotFoundException e) {
+            // Unsubscribed meanwhile
+        }
+    }
+
     private void handleSubscribeResponse(SubscribeResponse res) throws SubscriptionNotFoundException {
+        subscribeScheduler.onResponse(res.getRequestId());
+        selectConnection(res.getStreamId(), res.getStreamPartition()).onSubscribed();
         Subscription sub = subs.get(res.getStreamId(), res.getStreamPartition());
         sub.setState(Subscription.State.SUBSCRIBED);
         if (sub.hasResendOptions()) {
             ResendOption resendOption = sub.getResendOption();
             ControlMessage req = resendOption.toRequest(newRequestId("resend"), res.getStreamId(), res.getStreamPartition(), this.getSessionToken());
             send(req);
-            OneTimeResend resend = new OneTimeResend(websocket, req, options.getResendTimeout(), sub);
+            OneTimeResend resend = new OneTimeResend(selectConnection(req).websocket, req, options.getResendTimeout(), sub);
             secondResends.put(sub.getId(), resend);
             resend.start();
         }
@@ -588,6 +1194,11 @@ public class StreamrClient extends StreamrRESTClient {
     private void handleUnsubcribeResponse(UnsubscribeResponse res) throws SubscriptionNotFoundException {
         Subscription sub = subs.get(res.getStreamId(), res.getStreamPartition());
         sub.setState(Subscription.State.UNSUBSCRIBED);
+        // Release the memory of the messages waiting for gaps to be filled
+        sub.clear();
+        if (deliveryLanes != null && (keyExchangeStream == null || !sub.getStreamId().equals(keyExchangeStream.getId()))) {
+            deliveryLanes.release(sub.getStreamId(), sub.getPartition());
+        }
     }
 
     private void handleResendResponseResending(ResendResponseResending res) throws SubscriptionNotFoundException {
@@ -598,23 +1209,266 @@ public class StreamrClient extends StreamrRESTClient {
 
     private void handleResendResponseNoResend(ResendResponseNoResend res) throws SubscriptionNotFoundException {
         Subscription sub = subs.get(res.getStreamId(), res.getStreamPartition());
-        sub.endResend();
+        gapFillLimiter.complete(res.getRequestId());
+        sub.offerEndResend();
     }
 
     private void handleResendResponseResent(ResendResponseResent res) throws SubscriptionNotFoundException {
         Subscription sub = subs.get(res.getStreamId(), res.getStreamPartition());
-        sub.endResend();
+        gapFillLimiter.complete(res.getRequestId());
+        sub.offerEndResend();
     }
 
     private void sendGroupKeyRequest(String streamId, Address publisherId, List<String> groupKeyIds) {
-        if (!getState().equals(ReadyState.OPEN)) {
+        // Published like the other messages, over the first connection. This runs on a shared worker thread,
+        // so while reconnecting the request waits in the outbound queue instead of the thread waiting here.
+        if (!keepConnected) {
             connect();
         }
         StreamMessage request = msgCreationUtil.createGroupKeyRequest(publisherId, streamId, encryptionUtil.getPublicKeyAsPemString(), groupKeyIds);
         publish(request);
     }
 
+    /**
+     * The payload of a received websocket frame, and whether it was a binary or a text frame.
+     */
+    private static class Frame {
+        private final ByteBuffer payload;
+        private final boolean binary;
+
+        Frame(ByteBuffer payload, boolean binary) {
+            this.payload = payload;
+            this.binary = binary;
+        }
+
+        @Override
+        public String toString() {
+            return binary ? "binary message of " + payload.remaining() + " bytes" : StandardCharsets.UTF_8.decode(payload.duplicate()).toString();
+        }
+    }
+
+    /**
+     * A parsed message in the inbound pipeline, along with its pending signature verification (if any).
+     */
+    private static class InboundMessage {
+        private final ControlMessage message;
+        private final CompletableFuture<Boolean> signatureCheck;
+
+        InboundMessage(ControlMessage message, CompletableFuture<Boolean> signatureCheck) {
+            this.message = message;
+            this.signatureCheck = signatureCheck;
+        }
+
+        @Override
+        public String toString() {
+            return message.toString();
+        }
+    }
+
+    /**
+     * One of the websocket connections of the client. The subscriptions are resubscribed over the connection of
+     * their stream partition when it opens, and the first connection also carries the published messages.
+     * Publishing and subscribing wait only for the connection they use while reconnecting.
+     *
+     * The messages received over all the connections go through the same inbound pipeline, so a lane which
+     * can't keep up eventually blocks the readers of all the connections, not just the one of its partition.
+     *
+     * While the client is connected, a connection which closes or fails to open is reopened with an exponential
+     * backoff, driven by the callbacks of its websocket. The callbacks of replaced websockets are ignored. The
+     * backoff starts over only once the connection has proven to work, that is when a subscribe over it has
+     * succeeded or it has stayed open for reconnectRetryInterval. A server which accepts the connection and then
+     * closes it right away is therefore not reconnected to in a tight loop.
+     */
+    private class Connection {
+        private final int index;
+        private volatile WebSocketClient websocket;
+        // Creates the socket of the websocket, replaced with it
+        private volatile SocketWriteMonitor writeMonitor;
+        // Guarded by this
+        private final Backoff backoff = new Backoff(options.getInitialReconnectRetryInterval(), options.getReconnectRetryInterval());
+        private ScheduledFuture<?> pendingAttempt = null;
+        private long openedAt = 0;
+        // Set when the websocket has opened and the subscriptions of the connection have been resubscribed
+        private volatile boolean opened = false;
+
+        Connection(int index) {
+            this.index = index;
+        }
+
+        /**
+         * The state of the websocket, except that the connection is open only after its onOpen() has been
+         * handled, so that the subscriptions made after connect() returns are not also resubscribed.
+         */
+        ReadyState getState() {
+            WebSocketClient ws = websocket;
+            if (ws == null) {
+                return ReadyState.CLOSED;
+            }
+            ReadyState state = ws.getReadyState();
+            return state == ReadyState.OPEN && !opened ? ReadyState.NOT_YET_CONNECTED : state;
+        }
+
+        /**
+         * Schedules an attempt to connect, unless one is already scheduled. The first attempt after the
+         * connection has proven to work is made right away, and the following ones after a growing delay.
+         */
+        synchronized void scheduleAttempt() {
+            if (!keepConnected || pendingAttempt != null) {
+                return;
+            }
+            long delay = backoff.nextDelay();
+            if (delay > 0) {
+                log.info("Connection {} retrying in {} ms", index, delay);
+            }
+            pendingAttempt = SharedScheduler.schedule(this::attempt, delay);
+        }
+
+        /**
+         * Replaces the websocket with a new one unless it's open. If the new one fails to open, its onClose()
+         * schedules the next attempt.
+         */
+        private synchronized void attempt() {
+            pendingAttempt = null;
+            WebSocketClient previous = websocket;
+            if (!keepConnected || previous != null && previous.getReadyState() == ReadyState.OPEN) {
+                return;
+            }
+            log.info("Connection {} not connected. Attempting to {}", index, previous != null ? "reconnect" : "connect");
+            opened = false;
+            init();
+            if (previous != null) {
+                previous.closeConnection(0, "");
+            }
+            websocket.connect();
+            onConnectionStateChange();
+        }
+
+        /**
+         * Makes the scheduled attempt to connect right away, for example when connect() is called while waiting
+         * for the backoff.
+         */
+        synchronized void attemptNow() {
+            if (pendingAttempt != null && pendingAttempt.getDelay(TimeUnit.MILLISECONDS) > 0 && pendingAttempt.cancel(false)) {
+                pendingAttempt = SharedScheduler.schedule(this::attempt, 0);
+            }
+        }
+
+        /**
+         * Closes the websocket and cancels the scheduled attempt to connect. Returns false if it was already closed.
+         */
+        synchronized boolean close() {
+            if (pendingAttempt != null) {
+                pendingAttempt.cancel(false);
+                pendingAttempt = null;
+            }
+            backoff.reset();
+            if (getState() == ReadyState.CLOSED) {
+                return false;
+            }
+            log.info("Closing connection {}", index);
+            opened = false;
+            websocket.closeConnection(0, "");
+            websocket = null;
+            return true;
+        }
+
+        private synchronized void onOpened() {
+            openedAt = System.currentTimeMillis();
+        }
+
+        synchronized void onSubscribed() {
+            backoff.reset();
+        }
+
+        private synchronized void onClosed() {
+            if (openedAt > 0 && System.currentTimeMillis() - openedAt >= options.getReconnectRetryInterval()) {
+                backoff.reset();
+            }
+            openedAt = 0;
+        }
+
+        private void init() {
+            try {
+                // Text frames are handed over as bytes and parsed without decoding them to a String first
+                RawTextFrameDraft draft = new RawTextFrameDraft(payload -> handleFrame(payload, false));
+                String url = options.getWebsocketApiUrl();
+                if (options.getBinaryMessageLayer()) {
+                    url += (url.contains("?") ? "&" : "?") + "messageLayerEncoding=binary";
+                }
+                URI uri = new URI(url);
+                // A connection attempt which doesn't get through in time fails, and is retried
+                websocket = new WebSocketClient(uri, draft, null, (int) options.getConnectionTimeoutMillis()) {
+                    @Override
+                    public void onOpen(ServerHandshake handshakedata) {
+                        if (this != Connection.this.websocket) {
+                            return;
+                        }
+                        log.info("Connection {} established", index);
+                        onOpened();
+                        if (index == 0) {
+                            outboundQueue.connectionOpened();
+                        }
+                        // The requests sent over the previous connection won't be answered
+                        subscribeScheduler.reset(req -> selectConnection(req) == Connection.this);
+                        StreamrClient.this.subs.forEach(sub -> {
+                            if (selectConnection(sub.getStreamId(), sub.getPartition()) == Connection.this) {
+                                resubscribe(sub);
+                            }
+                        });
+                        opened = true;
+                        onConnectionStateChange();
+                    }
+
+                    @Override
+                    public void onMessage(String message) {
+                        // Only called for fragmented messages, the rest are passed to handleFrame() by the draft
+                        handleFrame(StandardCharsets.UTF_8.encode(message), false);
+                    }
+
+                    @Override
+                    public void onMessage(ByteBuffer bytes) {
+                        // Binary frames, sent by the server if the binary message layer encoding was requested
+                        handleFrame(bytes, true);
+                    }
+
+                    @Override
+                    public void onClose(int code, String reason, boolean remote) {
+                        log.info("Connection {} closed! Code: {}, Reason: {}", index, code, reason);
+                        if (this != Connection.this.websocket) {
+                            // Replaced by a new websocket
+                            return;
+                        }
+                        opened = false;
+                        onClosed();
+                        subscribeScheduler.reset(req -> selectConnection(req) == Connection.this);
+                        if (keepConnected) {
+                            scheduleAttempt();
+                        }
+                        onConnectionStateChange();
+                    }
+
+                    @Override
+                    public void onError(Exception ex) {
+                        log.error("WebSocketClient#onError called", ex);
+                        if (!(ex instanceof IOException)) {
+                            StreamrClient.this.onError(ex);
+                        }
+                    }
+
+                    @Override
+                    public void send(String text) throws NotYetConnectedException {
+                        super.send(text);
+                    }
+                };
+                writeMonitor = new SocketWriteMonitor(uri, (int) options.getConnectionTimeoutMillis());
+                websocket.setSocketFactory(writeMonitor);
+            } catch (URISyntaxException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
     private String newRequestId(String prefix) {
-        return String.format("%s.%s.%d", prefix, IdGenerator.get(), requestCounter++);
+        return String.format("%s.%s.%d", prefix, IdGenerator.get(), requestCounter.getAndIncrement());
     }
 }
@@ -6,6 +6,7 @@ import com.streamr.client.authentication.AuthenticationMethod;
 import com.streamr.client.exceptions.AmbiguousResultsException;
 import com.streamr.client.exceptions.AuthenticationException;
 import com.streamr.client.exceptions.ResourceNotFoundException;
+import com.streamr.client.metrics.Timer;
 import com.streamr.client.options.StreamrClientOptions;
 import com.streamr.client.rest.*;
 import com.streamr.client.utils.HttpUtils;
@@ -14,9 +15,16 @@ import okhttp3.*;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * This class exposes the RESTful API endpoints.
+ *
+ * Each endpoint has a blocking variant and a non-blocking variant (suffixed with Async). The non-blocking
+ * variants enqueue the request on the shared OkHttpClient and return a CompletableFuture, which is completed
+ * on an OkHttp dispatcher thread. Errors are reported by completing the future exceptionally with the same
+ * exceptions that the blocking variants throw.
  */
 public abstract class StreamrRESTClient extends AbstractStreamrClient {
 
@@ -54,16 +62,23 @@ public abstract class StreamrRESTClient extends AbstractStreamrClient {
             return builder;
         } else {
             String sessionToken = newToken ? session.getNewSessionToken() : session.getSessionToken();
-            builder.removeHeader("Authorization");
-            return builder.addHeader("Authorization", "Bearer " + sessionToken);
+            return addAuthenticationHeader(builder, sessionToken);
         }
     }
 
-    private <T> T execute(Request request, JsonAdapter<T> adapter) throws IOException {
-        OkHttpClient client = new OkHttpClient();
+    private static Request.Builder addAuthenticationHeader(Request.Builder builder, String sessionToken) {
+        if (sessionToken == null) {
+            return builder;
+        }
+        builder.removeHeader("Authorization");
+        return builder.addHeader("Authorization", "Bearer " + sessionToken);
+    }
 
-        // Execute the request and retrieve the response.
-        Response response = client.newCall(request).execute();
+    private <T> T execute(Request request, JsonAdapter<T> adapter) throws IOException {
+        Timer timer = metrics.timer("rest.request");
+        long start = timer.start();
+        // Execute the request on the shared client and retrieve the response.
+        Response response = httpClient.newCall(request).execute();
         try {
             HttpUtils.assertSuccessful(response);
 
@@ -71,6 +86,7 @@ public abstract class StreamrRESTClient extends AbstractStreamrClient {
             return adapter == null ? null : adapter.fromJson(response.body().source());
         } finally {
             response.close();
+            timer.stop(start);
         }
     }
 
@@ -104,6 +120,121 @@ public abstract class StreamrRESTClient extends AbstractStreamrClient {
         return executeWithRetry(builder, adapter, retryIfSessionExpired);
     }
 
+    private <T> CompletableFuture<T> executeAsync(Request request, JsonAdapter<T> adapter) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Timer timer = metrics.timer("rest.request");
+        long start = timer.start();
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                timer.stop(start);
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try {
+                    HttpUtils.assertSuccessful(response);
+
+                    // Deserialize HTTP response to concrete type.
+                    future.complete(adapter == null ? null : adapter.fromJson(response.body().source()));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    response.close();
+                    timer.stop(start);
+                }
+            }
+        });
+        return future;
+    }
+
+    private <T> CompletableFuture<T> executeWithRetryAsync(Request.Builder builder, JsonAdapter<T> adapter, boolean retryIfSessionExpired) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // Logging in doesn't block the caller, nor the dispatcher thread that delivers an authentication failure
+        session.getSessionTokenAsync().thenCompose(sessionToken ->
+                executeAsync(addAuthenticationHeader(builder, sessionToken).build(), adapter).handle((value, error) -> {
+                    if (error == null) {
+                        result.complete(value);
+                    } else if (retryIfSessionExpired && unwrap(error) instanceof AuthenticationException) {
+                        session.getNewSessionTokenAsync(sessionToken)
+                                .thenCompose(newSessionToken -> executeAsync(addAuthenticationHeader(builder, newSessionToken).build(), adapter))
+                                .whenComplete((value2, error2) -> {
+                                    if (error2 == null) {
+                                        result.complete(value2);
+                                    } else {
+                                        result.completeExceptionally(unwrap(error2));
+                                    }
+                                });
+                    } else {
+                        result.completeExceptionally(unwrap(error));
+                    }
+                    return null;
+                })
+        ).whenComplete((ignored, error) -> {
+            // The login or building the request failed
+            if (error != null) {
+                result.completeExceptionally(unwrap(error));
+            }
+        });
+        return result;
+    }
+
+    private <T> CompletableFuture<T> getAsync(String url, JsonAdapter<T> adapter) {
+        Request.Builder builder;
+        try {
+            builder = new Request.Builder().url(parseUrl(url));
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+        return executeWithRetryAsync(builder, adapter, true);
+    }
+
+    private <T> CompletableFuture<T> postAsync(String url, String requestBody, JsonAdapter<T> adapter, boolean retryIfSessionExpired) {
+        Request.Builder builder;
+        try {
+            builder = new Request.Builder()
+                    .url(parseUrl(url))
+                    .post(RequestBody.create(HttpUtils.jsonType, requestBody));
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+        return executeWithRetryAsync(builder, adapter, retryIfSessionExpired);
+    }
+
+    private static HttpUrl parseUrl(String url) {
+        HttpUrl parsed = HttpUrl.parse(url);
+        if (parsed == null) {
+            throw new IllegalArgumentException("Invalid URL: " + url);
+        }
+        return parsed;
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable t) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    }
+
+    /**
+     * Completes with true if the request succeeds and with false if the resource is not found.
+     */
+    private CompletableFuture<Boolean> existsAsync(String url) {
+        return getAsync(url, null).handle((value, error) -> {
+            if (error == null) {
+                return true;
+            } else if (unwrap(error) instanceof ResourceNotFoundException) {
+                return false;
+            } else {
+                throw new CompletionException(unwrap(error));
+            }
+        });
+    }
+
     /*
      * Stream endpoints
      */
@@ -215,4 +346,102 @@ public abstract class StreamrRESTClient extends AbstractStreamrClient {
         HttpUrl url = HttpUrl.parse(options.getRestApiUrl() + "/logout");
         post(url, "", null, false);
     }
+
+    /*
+     * Non-blocking variants of the endpoints
+     */
+
+    public CompletableFuture<Stream> getStreamAsync(String streamId) {
+        if (streamId == null) {
+            throw new IllegalArgumentException("streamId cannot be null!");
+        }
+        return getAsync(options.getRestApiUrl() + "/streams/" + streamId, streamJsonAdapter);
+    }
+
+    public CompletableFuture<Stream> getStreamByNameAsync(String name) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Stream name must be specified!");
+        }
+
+        HttpUrl url;
+        try {
+            url = parseUrl(options.getRestApiUrl() + "/streams")
+                    .newBuilder()
+                    .setQueryParameter("name", name)
+                    .build();
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+
+        return getAsync(url.toString(), streamListJsonAdapter).thenApply(matches -> {
+            if (matches.size() == 1) {
+                return matches.get(0);
+            } else if (matches.isEmpty()) {
+                throw new ResourceNotFoundException("stream by name: " + name);
+            } else {
+                throw new AmbiguousResultsException("Name is not unique! Multiple streams found by name: " + name);
+            }
+        });
+    }
+
+    public CompletableFuture<Stream> createStreamAsync(Stream stream) {
+        if (stream.getName() == null || stream.getName().isEmpty()) {
+            throw new IllegalArgumentException("The stream name must be set!");
+        }
+        return postAsync(options.getRestApiUrl() + "/streams", streamJsonAdapter.toJson(stream), streamJsonAdapter, true);
+    }
+
+    public CompletableFuture<Permission> grantAsync(Stream stream, Permission.Operation operation, String user) {
+        if (stream == null || operation == null || user == null) {
+            throw new IllegalArgumentException("Must give all of stream, operation, and user!");
+        }
+
+        Permission permission = new Permission(operation, user);
+        return postAsync(options.getRestApiUrl() + "/streams/" + stream.getId() + "/permissions",
+                permissionJsonAdapter.toJson(permission), permissionJsonAdapter, true);
+    }
+
+    public CompletableFuture<Permission> grantPublicAsync(Stream stream, Permission.Operation operation) {
+        if (stream == null || operation == null) {
+            throw new IllegalArgumentException("Must give stream and operation!");
+        }
+
+        Permission permission = new Permission(operation);
+        return postAsync(options.getRestApiUrl() + "/streams/" + stream.getId() + "/permissions",
+                permissionJsonAdapter.toJson(permission), permissionJsonAdapter, true);
+    }
+
+    public CompletableFuture<UserInfo> getUserInfoAsync() {
+        return getAsync(options.getRestApiUrl() + "/users/me", userInfoJsonAdapter);
+    }
+
+    public CompletableFuture<List<String>> getPublishersAsync(String streamId) {
+        return getAsync(options.getRestApiUrl() + "/streams/" + streamId + "/publishers", publishersJsonAdapter)
+                .thenApply(Publishers::getAddresses);
+    }
+
+    public CompletableFuture<Boolean> isPublisherAsync(String streamId, Address address) {
+        return isPublisherAsync(streamId, address.toString());
+    }
+
+    public CompletableFuture<Boolean> isPublisherAsync(String streamId, String ethAddress) {
+        return existsAsync(options.getRestApiUrl() + "/streams/" + streamId + "/publisher/" + ethAddress);
+    }
+
+    public CompletableFuture<List<String>> getSubscribersAsync(String streamId) {
+        return getAsync(options.getRestApiUrl() + "/streams/" + streamId + "/subscribers", subscribersJsonAdapter)
+                .thenApply(Subscribers::getAddresses);
+    }
+
+    public CompletableFuture<Boolean> isSubscriberAsync(String streamId, Address address) {
+        return isSubscriberAsync(streamId, address.toString());
+    }
+
+    public CompletableFuture<Boolean> isSubscriberAsync(String streamId, String ethAddress) {
+        return existsAsync(options.getRestApiUrl() + "/streams/" + streamId + "/subscriber/" + ethAddress);
+    }
+
+    public CompletableFuture<Void> logoutAsync() {
+        return postAsync(options.getRestApiUrl() + "/logout", "", null, false);
+    }
 }
@@ -10,9 +10,21 @@ import okio.BufferedSource;
 
 import java.io.IOException;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public abstract class AuthenticationMethod {
 
+    // Used when no OkHttpClient is given, for example when the AuthenticationMethod is used without a StreamrClient
+    private static final OkHttpClient DEFAULT_HTTP_CLIENT = new OkHttpClient();
+    // Runs the blocking logins of newSessionTokenAsync(). Sessions log in one at a time, so this stays small.
+    private static final ExecutorService LOGIN_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "StreamrLogin");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private JsonAdapter<LoginResponse> responseAdapter;
 
     public AuthenticationMethod() {
@@ -23,34 +35,70 @@ public abstract class AuthenticationMethod {
      * Uses the credentials represented by this class to login and obtain a new, valid sessionToken.
      */
     public String newSessionToken(String restApiUrl) {
+        return newSessionToken(restApiUrl, DEFAULT_HTTP_CLIENT);
+    }
+
+    /**
+     * Like newSessionToken(restApiUrl), but makes the login requests with the given OkHttpClient. A StreamrClient
+     * passes its own client, so that the same AuthenticationMethod can be shared by several StreamrClients.
+     */
+    public String newSessionToken(String restApiUrl, OkHttpClient httpClient) {
         try {
-            LoginResponse loginResponse = login(restApiUrl);
+            LoginResponse loginResponse = login(restApiUrl, httpClient);
             return loginResponse.getSessionToken();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Like newSessionToken(restApiUrl, httpClient), but logs in on a thread of its own, so that neither the
+     * caller nor an OkHttp dispatcher thread blocks on the login requests.
+     */
+    public CompletableFuture<String> newSessionTokenAsync(String restApiUrl, OkHttpClient httpClient) {
+        return CompletableFuture.supplyAsync(() -> newSessionToken(restApiUrl, httpClient), LOGIN_EXECUTOR);
+    }
+
     /**
      * Should call the login endpoint(s) with appropriate credentials to get a LoginResponse.
-     * You can use the post(endpoint, requestBody) utility function to do this.
+     * You can use the post(httpClient, endpoint, requestBody) utility function to do this.
      */
-    protected abstract LoginResponse login(String restApiUrl) throws IOException;
+    protected abstract LoginResponse login(String restApiUrl, OkHttpClient httpClient) throws IOException;
+
+    /**
+     * @deprecated Use login(restApiUrl, httpClient), which makes the login requests with the given OkHttpClient.
+     */
+    @Deprecated
+    protected LoginResponse login(String restApiUrl) throws IOException {
+        return login(restApiUrl, DEFAULT_HTTP_CLIENT);
+    }
 
     protected Response post(String endpoint, String requestBody) throws IOException {
-        OkHttpClient client = new OkHttpClient();
+        return post(DEFAULT_HTTP_CLIENT, endpoint, requestBody);
+    }
 
+    protected Response post(OkHttpClient httpClient, String endpoint, String requestBody) throws IOException {
         Request request = new Request.Builder()
                         .url(endpoint)
                         .post(RequestBody.create(HttpUtils.jsonType, requestBody))
                         .build();
 
         // Execute the request and retrieve the response.
-        Response response = client.newCall(request).execute();
-        HttpUtils.assertSuccessful(response);
+        Response response = httpClient.newCall(request).execute();
+        try {
+            HttpUtils.assertSuccessful(response);
+        } catch (IOException | RuntimeException e) {
+            // Release the pooled connection, the caller never gets the response to close
+            response.close();
+            throw e;
+        }
         return response;
     }
 
+    protected static OkHttpClient getDefaultHttpClient() {
+        return DEFAULT_HTTP_CLIENT;
+    }
+
     protected LoginResponse parse(BufferedSource json) throws IOException {
         // Deserialize HTTP response to concrete type.
         return responseAdapter.fromJson(json);
@@ -8,6 +8,7 @@ import java.math.BigInteger;
 import java.util.Date;
 
 import com.streamr.client.utils.SigningUtil;
+import okhttp3.OkHttpClient;
 import okhttp3.Response;
 import org.apache.commons.codec.DecoderException;
 import org.ethereum.crypto.ECKey;
@@ -28,13 +29,13 @@ public class EthereumAuthenticationMethod extends AuthenticationMethod {
     }
 
     @Override
-    protected LoginResponse login(String restApiUrl) throws IOException {
-        Challenge challenge = getChallenge(restApiUrl);
+    protected LoginResponse login(String restApiUrl, OkHttpClient httpClient) throws IOException {
+        Challenge challenge = getChallenge(restApiUrl, httpClient);
         String signature = signChallenge(challenge.challenge);
         ChallengeResponse response = new ChallengeResponse(challenge, signature, address);
         Response resp = null;
         try {
-            resp = post(restApiUrl + "/login/response", challengeResponseAdapter.toJson(response));
+            resp = post(httpClient, restApiUrl + "/login/response", challengeResponseAdapter.toJson(response));
             return parse(resp.body().source());
         } finally {
             if (resp != null) {
@@ -44,9 +45,13 @@ public class EthereumAuthenticationMethod extends AuthenticationMethod {
     }
 
     public Challenge getChallenge(String restApiUrl) throws IOException {
+        return getChallenge(restApiUrl, getDefaultHttpClient());
+    }
+
+    private Challenge getChallenge(String restApiUrl, OkHttpClient httpClient) throws IOException {
         Response response = null;
         try {
-            response = post(restApiUrl + "/login/challenge/"+address, "");
+            response = post(httpClient, restApiUrl + "/login/challenge/"+address, "");
             return challengeAdapter.fromJson(response.body().source());
         } finally {
             if (response != null) {
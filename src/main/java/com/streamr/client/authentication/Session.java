@@ -1,5 +1,11 @@
 package com.streamr.client.authentication;
 
+import okhttp3.OkHttpClient;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 /**
  * Holds credentials for getting new sessionTokens, and holds the current sessionToken.
  * Currently only supports the API key. Support for Ethereum-based authentication needs to
@@ -9,11 +15,20 @@ public class Session {
 
     private final AuthenticationMethod authenticationMethod;
     private final String restApiUrl;
-    private String sessionToken = null;
+    // Null to use the default client of the AuthenticationMethod
+    private final OkHttpClient httpClient;
+    private volatile String sessionToken = null;
+    // The login in progress, shared by all the callers which need a new token meanwhile. Guarded by this.
+    private CompletableFuture<String> login = null;
 
     public Session(String restApiUrl, AuthenticationMethod authenticationMethod) {
+        this(restApiUrl, authenticationMethod, null);
+    }
+
+    public Session(String restApiUrl, AuthenticationMethod authenticationMethod, OkHttpClient httpClient) {
         this.authenticationMethod = authenticationMethod;
         this.restApiUrl = restApiUrl;
+        this.httpClient = httpClient;
     }
 
     public boolean isAuthenticated() {
@@ -21,14 +36,68 @@ public class Session {
     }
 
     public String getSessionToken() {
-        if (sessionToken == null && isAuthenticated()) {
-            sessionToken = authenticationMethod.newSessionToken(restApiUrl);
-        }
-        return sessionToken;
+        String token = sessionToken;
+        return token != null ? token : join(getSessionTokenAsync());
     }
 
     public String getNewSessionToken() {
+        return join(getNewSessionTokenAsync(sessionToken));
+    }
+
+    /**
+     * Completes with the current sessionToken, logging in first if there is none. Completes with null if the
+     * session is not authenticated.
+     */
+    public CompletableFuture<String> getSessionTokenAsync() {
+        String token = sessionToken;
+        if (token != null || !isAuthenticated()) {
+            return CompletableFuture.completedFuture(token);
+        }
+        return login(null);
+    }
+
+    /**
+     * Logs in again, unless the given expired token has already been replaced, or a login is already in progress.
+     */
+    public CompletableFuture<String> getNewSessionTokenAsync(String expiredToken) {
+        if (!isAuthenticated()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return login(expiredToken);
+    }
+
+    private synchronized CompletableFuture<String> login(String expiredToken) {
+        if (login != null && !login.isDone()) {
+            return login;
+        }
+        if (sessionToken != null && !Objects.equals(sessionToken, expiredToken)) {
+            return CompletableFuture.completedFuture(sessionToken);
+        }
         sessionToken = null;
-        return getSessionToken();
+        // Login requests go through the same connection pool as the other REST calls. The returned future
+        // completes only after the new token has been stored.
+        login = authenticationMethod.newSessionTokenAsync(restApiUrl,
+                httpClient != null ? httpClient : AuthenticationMethod.getDefaultHttpClient())
+                .whenComplete((token, error) -> {
+                    synchronized (this) {
+                        if (error == null) {
+                            sessionToken = token;
+                        }
+                        login = null;
+                    }
+                });
+        return login;
+    }
+
+    private static String join(CompletableFuture<String> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            // Throw what newSessionToken() throws
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
     }
 }
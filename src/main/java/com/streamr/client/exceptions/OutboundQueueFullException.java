@@ -0,0 +1,7 @@
+package com.streamr.client.exceptions;
+
+public class OutboundQueueFullException extends RuntimeException {
+    public OutboundQueueFullException(String message) {
+        super(message);
+    }
+}
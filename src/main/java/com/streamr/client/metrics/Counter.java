@@ -0,0 +1,11 @@
+package com.streamr.client.metrics;
+
+public interface Counter {
+    Counter NOOP = n -> {};
+
+    default void inc() {
+        inc(1);
+    }
+
+    void inc(long n);
+}
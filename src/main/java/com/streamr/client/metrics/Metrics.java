@@ -0,0 +1,31 @@
+package com.streamr.client.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics surface of the client. Set an implementation with StreamrClientOptions.setMetrics() to see what
+ * the client is doing, for example SimpleMetrics, or an adapter to the metrics library used by the application.
+ *
+ * The client looks up counters and timers on its hot paths, so implementations should make the lookups cheap.
+ * The default NOOP implementation returns shared no-op instances, which adds almost no overhead.
+ */
+public interface Metrics {
+    Metrics NOOP = new NoOpMetrics();
+
+    Counter counter(String name);
+
+    /**
+     * Returns the counter of the given name for a single stream.
+     */
+    Counter counter(String name, String streamId);
+
+    Timer timer(String name);
+
+    /**
+     * Registers a gauge whose value is read from the supplier when the metric is reported. The supplier may be
+     * called from any thread.
+     */
+    void gauge(String name, LongSupplier value);
+
+    boolean isEnabled();
+}
@@ -0,0 +1,32 @@
+package com.streamr.client.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Discards all metrics. Use Metrics.NOOP instead of creating instances.
+ */
+final class NoOpMetrics implements Metrics {
+
+    @Override
+    public Counter counter(String name) {
+        return Counter.NOOP;
+    }
+
+    @Override
+    public Counter counter(String name, String streamId) {
+        return Counter.NOOP;
+    }
+
+    @Override
+    public Timer timer(String name) {
+        return Timer.NOOP;
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier value) {}
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+}
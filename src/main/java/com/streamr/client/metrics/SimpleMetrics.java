@@ -0,0 +1,134 @@
+package com.streamr.client.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the metrics in memory. The values can be read with the getters, or all at once with toString() for
+ * logging. Per-stream counters are named name[streamId].
+ */
+public class SimpleMetrics implements Metrics {
+    private final Map<String, SimpleCounter> counters = new ConcurrentHashMap<>();
+    // Per-stream counters are kept in nested maps so that looking them up doesn't concatenate strings
+    private final Map<String, Map<String, SimpleCounter>> streamCounters = new ConcurrentHashMap<>();
+    private final Map<String, SimpleTimer> timers = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    @Override
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new SimpleCounter());
+    }
+
+    @Override
+    public Counter counter(String name, String streamId) {
+        return streamCounters.computeIfAbsent(name, n -> new ConcurrentHashMap<>())
+                .computeIfAbsent(streamId, id -> new SimpleCounter());
+    }
+
+    @Override
+    public Timer timer(String name) {
+        return timers.computeIfAbsent(name, n -> new SimpleTimer());
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    public long getCount(String name) {
+        SimpleCounter counter = counters.get(name);
+        return counter == null ? 0 : counter.getCount();
+    }
+
+    public long getCount(String name, String streamId) {
+        Map<String, SimpleCounter> byStream = streamCounters.get(name);
+        SimpleCounter counter = byStream == null ? null : byStream.get(streamId);
+        return counter == null ? 0 : counter.getCount();
+    }
+
+    /**
+     * Returns null if nothing has been recorded with the timer.
+     */
+    public SimpleTimer getTimer(String name) {
+        return timers.get(name);
+    }
+
+    /**
+     * Returns null if there is no gauge with the given name.
+     */
+    public Long getGauge(String name) {
+        LongSupplier gauge = gauges.get(name);
+        return gauge == null ? null : gauge.getAsLong();
+    }
+
+    @Override
+    public String toString() {
+        Map<String, Object> all = new TreeMap<>();
+        counters.forEach((name, counter) -> all.put(name, counter.getCount()));
+        streamCounters.forEach((name, byStream) ->
+                byStream.forEach((streamId, counter) -> all.put(name + "[" + streamId + "]", counter.getCount())));
+        timers.forEach(all::put);
+        gauges.forEach((name, gauge) -> all.put(name, gauge.getAsLong()));
+        return all.toString();
+    }
+
+    public static class SimpleCounter implements Counter {
+        private final LongAdder count = new LongAdder();
+
+        @Override
+        public void inc(long n) {
+            count.add(n);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+    }
+
+    public static class SimpleTimer implements Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        @Override
+        public void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        public double getMeanNanos() {
+            long n = getCount();
+            return n == 0 ? 0 : (double) getTotalNanos() / n;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("{count=%d, mean=%.1fus, max=%.1fus}", getCount(),
+                    getMeanNanos() / TimeUnit.MICROSECONDS.toNanos(1),
+                    (double) getMaxNanos() / TimeUnit.MICROSECONDS.toNanos(1));
+        }
+    }
+}
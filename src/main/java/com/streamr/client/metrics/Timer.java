@@ -0,0 +1,38 @@
+package com.streamr.client.metrics;
+
+/**
+ * Measures the duration of an operation:
+ *
+ * <pre>
+ * long start = timer.start();
+ * doSomething();
+ * timer.stop(start);
+ * </pre>
+ */
+public interface Timer {
+    Timer NOOP = new Timer() {
+        @Override
+        public long start() {
+            return 0;
+        }
+
+        @Override
+        public void stop(long start) {}
+
+        @Override
+        public void record(long nanos) {}
+    };
+
+    /**
+     * Returns the start time to pass to stop(). Timers which are disabled don't need to read the clock.
+     */
+    default long start() {
+        return System.nanoTime();
+    }
+
+    default void stop(long start) {
+        record(System.nanoTime() - start);
+    }
+
+    void record(long nanos);
+}
@@ -0,0 +1,61 @@
+package com.streamr.client.options;
+
+/**
+ * Configures how the gap timeouts adapt to the observed delivery of each publisher. The client tracks how much
+ * the delivery latency of the messages of a publisher varies, how long its out-of-order messages take to arrive,
+ * and how long its gap fills take. The timeouts of its message chains are then set from those estimates: short
+ * for publishers whose messages arrive promptly and in order, longer for jittery ones.
+ *
+ * The propagationTimeout and resendTimeout of StreamrClientOptions are the upper limits of the adapted timeouts,
+ * and are used as such until enough has been observed of a publisher.
+ *
+ * Disabled by default, as it changes when gaps are requested compared to the configured timeouts.
+ */
+public class AdaptiveTimeoutOptions {
+    private boolean enabled = false;
+    private long minPropagationTimeout = 100;
+    private long minResendTimeout = 500;
+
+    public AdaptiveTimeoutOptions() {}
+
+    public AdaptiveTimeoutOptions(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * If false, the default, the configured propagationTimeout and resendTimeout are used for all publishers.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMinPropagationTimeout() {
+        return minPropagationTimeout;
+    }
+
+    /**
+     * The shortest time to wait for the missing messages of a gap before requesting them.
+     */
+    public void setMinPropagationTimeout(long minPropagationTimeout) {
+        this.minPropagationTimeout = minPropagationTimeout;
+    }
+
+    public long getMinResendTimeout() {
+        return minResendTimeout;
+    }
+
+    /**
+     * The shortest time to wait for a gap fill before requesting it again.
+     */
+    public void setMinResendTimeout(long minResendTimeout) {
+        this.minResendTimeout = minResendTimeout;
+    }
+
+    public static AdaptiveTimeoutOptions getDefault() {
+        return new AdaptiveTimeoutOptions();
+    }
+}
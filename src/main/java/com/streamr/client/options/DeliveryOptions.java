@@ -0,0 +1,94 @@
+package com.streamr.client.options;
+
+import com.streamr.client.utils.StreamPartition;
+
+import java.util.function.Function;
+
+/**
+ * Configures the delivery lanes, which call the MessageHandlers of the subscriptions on threads of their own
+ * instead of the threads which receive the messages, so that a slow handler doesn't hold up the other
+ * subscriptions. By default each subscription has a lane of its own, and a laneKey function can be set to share
+ * a lane between a group of subscriptions, whose messages are then delivered one at a time in the order they
+ * were received.
+ *
+ * The messages waiting in a lane are limited by its capacity, and the OverflowPolicy determines what happens
+ * when a message arrives to a full lane.
+ */
+public class DeliveryOptions {
+    private boolean enabled = false;
+    private int capacity = 1000;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private Function<StreamPartition, String> laneKey = null;
+
+    /**
+     * What to do when a message arrives to a full lane.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Block the receiving thread until there is space in the lane. The thread waits before handing the message
+         * to its subscription, so that it doesn't hold the locks of the subscription which a handler may need.
+         */
+        BLOCK,
+        /** Discard the message, and report it to MessageHandler.onMessagesLost() */
+        DROP,
+        /**
+         * Pause the subscription: its real-time messages are discarded until the lane has drained to half of its
+         * capacity. Then the messages missed meanwhile are requested with a resend from the last message queued
+         * for delivery, in the same way as gaps are filled. Discarded messages without a previous message
+         * reference can't be requested, and are reported to MessageHandler.onMessagesLost(). Resent messages
+         * can't be requested again, so the subscription keeps them and queues them once the lane has drained.
+         */
+        PAUSE
+    }
+
+    public DeliveryOptions() {}
+
+    public DeliveryOptions(int capacity, OverflowPolicy overflowPolicy) {
+        this.enabled = true;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * If disabled, the MessageHandlers are called on the threads which receive the messages.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public Function<StreamPartition, String> getLaneKey() {
+        return laneKey;
+    }
+
+    /**
+     * Maps the stream partitions to the lanes which deliver their messages. The subscriptions whose stream
+     * partitions map to the same key share a lane. If not set, each subscription has a lane of its own.
+     */
+    public void setLaneKey(Function<StreamPartition, String> laneKey) {
+        this.laneKey = laneKey;
+    }
+
+    public static DeliveryOptions getDefault() {
+        return new DeliveryOptions();
+    }
+}
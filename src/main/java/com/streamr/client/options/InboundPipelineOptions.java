@@ -0,0 +1,79 @@
+package com.streamr.client.options;
+
+/**
+ * Configures how messages received from the websocket are processed. Raw messages are handed off from the
+ * websocket reader thread to a pool of parser threads, and the parsed messages are then validated and delivered
+ * by a set of lanes. All messages of a stream partition are processed by the same lane, in the order they were
+ * received, while different stream partitions can be processed in parallel. Message signatures are verified in
+ * parallel on a separate fork-join pool as soon as the messages are parsed, and the lanes wait for the results
+ * in order.
+ */
+public class InboundPipelineOptions {
+    private boolean enabled = true;
+    private int parserThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int lanes = Runtime.getRuntime().availableProcessors();
+    private int signatureVerifierThreads = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = 10000;
+
+    public InboundPipelineOptions() {}
+
+    public InboundPipelineOptions(int parserThreads, int lanes, int queueCapacity) {
+        this.parserThreads = parserThreads;
+        this.lanes = lanes;
+        this.queueCapacity = queueCapacity;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * If disabled, messages are parsed, validated and delivered on the websocket reader thread.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getParserThreads() {
+        return parserThreads;
+    }
+
+    public void setParserThreads(int parserThreads) {
+        this.parserThreads = parserThreads;
+    }
+
+    public int getLanes() {
+        return lanes;
+    }
+
+    public void setLanes(int lanes) {
+        this.lanes = lanes;
+    }
+
+    public int getSignatureVerifierThreads() {
+        return signatureVerifierThreads;
+    }
+
+    /**
+     * Parallelism of the fork-join pool which verifies message signatures. 0 verifies the signatures in the lanes.
+     */
+    public void setSignatureVerifierThreads(int signatureVerifierThreads) {
+        this.signatureVerifierThreads = signatureVerifierThreads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Maximum number of messages waiting in each stage. When a stage is full, the previous stage blocks,
+     * which ultimately stops the websocket reader thread from reading more messages.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public static InboundPipelineOptions getDefault() {
+        return new InboundPipelineOptions();
+    }
+}
@@ -0,0 +1,107 @@
+package com.streamr.client.options;
+
+import java.io.File;
+
+/**
+ * Configures the queue of messages waiting to be published. Published messages are written to the websocket
+ * by a background thread. While the client is disconnected, they wait in the queue until the connection
+ * is restored. Optionally, the messages which don't fit in the queue are spilled to a memory-mapped file
+ * instead of applying the FullPolicy, so that long disconnects don't cause data loss or block the publisher.
+ */
+public class OutboundQueueOptions {
+    private int capacity = 10000;
+    private FullPolicy fullPolicy = FullPolicy.BLOCK;
+    private int maxBatchSize = 500;
+    private int maxSocketBufferedFrames = 1000;
+    private File spillFile = null;
+    private int spillFileSizeBytes = 64 * 1024 * 1024;
+
+    /**
+     * What to do when a message is published while the queue is full.
+     */
+    public enum FullPolicy {
+        /** Block the publishing thread until there is space in the queue */
+        BLOCK,
+        /** Fail the publish with an OutboundQueueFullException */
+        FAIL_FAST,
+        /**
+         * Drop the oldest queued message (failing its future with an OutboundQueueFullException) to make space.
+         * The message has already been chained to the next one, so subscribers see a gap which can't be filled.
+         * They request it until giving up and reporting the message as lost.
+         */
+        DROP_OLDEST
+    }
+
+    public OutboundQueueOptions() {}
+
+    public OutboundQueueOptions(int capacity, FullPolicy fullPolicy) {
+        this.capacity = capacity;
+        this.fullPolicy = fullPolicy;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public FullPolicy getFullPolicy() {
+        return fullPolicy;
+    }
+
+    public void setFullPolicy(FullPolicy fullPolicy) {
+        this.fullPolicy = fullPolicy;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Maximum number of queued messages written to the websocket with a single flush.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getMaxSocketBufferedFrames() {
+        return maxSocketBufferedFrames;
+    }
+
+    /**
+     * Maximum number of frames buffered in the websocket waiting to be written to the socket. Sending
+     * from the queue pauses while the websocket has more frames buffered.
+     */
+    public void setMaxSocketBufferedFrames(int maxSocketBufferedFrames) {
+        this.maxSocketBufferedFrames = maxSocketBufferedFrames;
+    }
+
+    public File getSpillFile() {
+        return spillFile;
+    }
+
+    /**
+     * If set, the messages published while the queue is full are written to this file, and sent from there
+     * in order once the queue has been emptied. The file is scratch space: any previous contents are
+     * overwritten, and StreamrClient.close() deletes it.
+     * The FullPolicy is not applied while spilling: if the spill file is full as well, the messages are
+     * rejected with an OutboundQueueFullException.
+     */
+    public void setSpillFile(File spillFile) {
+        this.spillFile = spillFile;
+    }
+
+    public int getSpillFileSizeBytes() {
+        return spillFileSizeBytes;
+    }
+
+    public void setSpillFileSizeBytes(int spillFileSizeBytes) {
+        this.spillFileSizeBytes = spillFileSizeBytes;
+    }
+
+    public static OutboundQueueOptions getDefault() {
+        return new OutboundQueueOptions();
+    }
+}
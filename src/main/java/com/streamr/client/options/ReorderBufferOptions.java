@@ -0,0 +1,78 @@
+package com.streamr.client.options;
+
+import java.io.File;
+
+/**
+ * Configures the buffers in which received messages wait for the missing messages before them. The buffers are
+ * limited by the estimated memory used by the messages, both per message chain and in total over all the chains
+ * of the client. Optionally, the messages which don't fit in memory are spilled to a memory-mapped file per
+ * chain in the spill directory, and read back once the gap has been filled.
+ *
+ * If a message fits neither in memory nor in the spill file, the chain applies skipGapsOnFullQueue: it either
+ * discards the buffered messages and continues from the new message, reporting the discarded messages to
+ * MessageHandler.onMessagesLost(), or throws an IllegalStateException.
+ */
+public class ReorderBufferOptions {
+    private long maxChainBytes = 16 * 1024 * 1024;
+    private long maxTotalBytes = 256 * 1024 * 1024;
+    private File spillDirectory = null;
+    private int spillFileSizeBytes = 64 * 1024 * 1024;
+
+    public ReorderBufferOptions() {}
+
+    public ReorderBufferOptions(long maxChainBytes, long maxTotalBytes) {
+        this.maxChainBytes = maxChainBytes;
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    public long getMaxChainBytes() {
+        return maxChainBytes;
+    }
+
+    /**
+     * Maximum estimated size of the messages buffered in memory for a single message chain. A single message
+     * is always accepted into an empty buffer, even if it is larger.
+     */
+    public void setMaxChainBytes(long maxChainBytes) {
+        this.maxChainBytes = maxChainBytes;
+    }
+
+    public long getMaxTotalBytes() {
+        return maxTotalBytes;
+    }
+
+    /**
+     * Maximum estimated size of the messages buffered in memory over all the message chains of the client.
+     */
+    public void setMaxTotalBytes(long maxTotalBytes) {
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * If set, the messages which don't fit in memory are written to temporary files in this directory.
+     * Each file is deleted when its chain is cleared, that is when the subscription is unsubscribed or the
+     * client is closed, or at the latest when the JVM exits.
+     */
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public int getSpillFileSizeBytes() {
+        return spillFileSizeBytes;
+    }
+
+    /**
+     * Size of the spill file of each message chain. The files are created only for chains which run out of memory.
+     */
+    public void setSpillFileSizeBytes(int spillFileSizeBytes) {
+        this.spillFileSizeBytes = spillFileSizeBytes;
+    }
+
+    public static ReorderBufferOptions getDefault() {
+        return new ReorderBufferOptions();
+    }
+}
@@ -1,8 +1,12 @@
 package com.streamr.client.options;
 
+import com.streamr.client.utils.VerifiedSignatureCache;
+
 public class SigningOptions {
     private final SignatureComputationPolicy publishSigned;
     private final SignatureVerificationPolicy verifySignatures;
+    private final long verifiedSignatureCacheSize;
+    private final long verifiedSignatureCacheExpirationMillis;
 
     public enum SignatureComputationPolicy {
         AUTO,
@@ -17,8 +21,19 @@ public class SigningOptions {
     }
 
     public SigningOptions(SignatureComputationPolicy publishSigned, SignatureVerificationPolicy verifySignatures) {
+        this(publishSigned, verifySignatures, VerifiedSignatureCache.DEFAULT_MAX_SIZE, VerifiedSignatureCache.DEFAULT_EXPIRATION_MILLIS);
+    }
+
+    /**
+     * @param verifiedSignatureCacheSize max number of verified messages remembered, so that duplicates of them don't need to be verified again
+     * @param verifiedSignatureCacheExpirationMillis how long verified messages are remembered
+     */
+    public SigningOptions(SignatureComputationPolicy publishSigned, SignatureVerificationPolicy verifySignatures,
+                          long verifiedSignatureCacheSize, long verifiedSignatureCacheExpirationMillis) {
         this.publishSigned = publishSigned;
         this.verifySignatures = verifySignatures;
+        this.verifiedSignatureCacheSize = verifiedSignatureCacheSize;
+        this.verifiedSignatureCacheExpirationMillis = verifiedSignatureCacheExpirationMillis;
     }
 
     public SignatureComputationPolicy getPublishSigned() {
@@ -29,6 +44,14 @@ public class SigningOptions {
         return verifySignatures;
     }
 
+    public long getVerifiedSignatureCacheSize() {
+        return verifiedSignatureCacheSize;
+    }
+
+    public long getVerifiedSignatureCacheExpirationMillis() {
+        return verifiedSignatureCacheExpirationMillis;
+    }
+
     public static SigningOptions getDefault() {
         return new SigningOptions(SignatureComputationPolicy.AUTO, SignatureVerificationPolicy.AUTO);
     }
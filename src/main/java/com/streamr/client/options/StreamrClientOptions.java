@@ -3,6 +3,7 @@ package com.streamr.client.options;
 import com.streamr.client.authentication.AuthenticationMethod;
 import com.streamr.client.authentication.EthereumAuthenticationMethod;
 import com.streamr.client.exceptions.InvalidOptionsException;
+import com.streamr.client.metrics.Metrics;
 import com.streamr.client.protocol.control_layer.ControlMessage;
 import com.streamr.client.protocol.message_layer.StreamMessage;
 
@@ -11,6 +12,13 @@ public class StreamrClientOptions {
     private AuthenticationMethod authenticationMethod = null;
     private SigningOptions signingOptions = SigningOptions.getDefault();
     private EncryptionOptions encryptionOptions = EncryptionOptions.getDefault();
+    private HttpClientOptions httpClientOptions = HttpClientOptions.getDefault();
+    private InboundPipelineOptions inboundPipelineOptions = InboundPipelineOptions.getDefault();
+    private OutboundQueueOptions outboundQueueOptions = OutboundQueueOptions.getDefault();
+    private ReorderBufferOptions reorderBufferOptions = ReorderBufferOptions.getDefault();
+    private AdaptiveTimeoutOptions adaptiveTimeoutOptions = AdaptiveTimeoutOptions.getDefault();
+    private DeliveryOptions deliveryOptions = DeliveryOptions.getDefault();
+    private Metrics metrics = Metrics.NOOP;
     private boolean publishSignedMsgs = false;
     private String websocketApiUrl = "wss://www.streamr.com/api/v1/ws" +
             "?controlLayerVersion=" + ControlMessage.LATEST_VERSION +
@@ -18,9 +26,15 @@ public class StreamrClientOptions {
     private String restApiUrl = "https://www.streamr.com/api/v1";
     private long connectionTimeoutMillis = 10 * 1000;
     private long reconnectRetryInterval = 10 * 1000;
+    private long initialReconnectRetryInterval = 100;
     private int propagationTimeout = 5000;
     private int resendTimeout = 5000;
     private boolean skipGapsOnFullQueue = true;
+    private int maxConcurrentGapFills = 10;
+    private long gapFillCoalesceMillis = 50;
+    private int maxInFlightSubscribes = 100;
+    private int connectionCount = 1;
+    private boolean binaryMessageLayer = false;
 
     public StreamrClientOptions() {}
 
@@ -85,6 +99,10 @@ public class StreamrClientOptions {
         return connectionTimeoutMillis;
     }
 
+    /**
+     * How long a connection attempt may take before it is given up and retried. connect() and disconnect() wait
+     * for up to reconnectRetryInterval + connectionTimeoutMillis + 500 ms.
+     */
     public void setConnectionTimeoutMillis(long connectionTimeoutMillis) {
         this.connectionTimeoutMillis = connectionTimeoutMillis;
     }
@@ -93,10 +111,26 @@ public class StreamrClientOptions {
         return reconnectRetryInterval;
     }
 
+    /**
+     * Maximum delay between attempts to reconnect. The first attempt after losing the connection is made right
+     * away, and the delay then doubles from initialReconnectRetryInterval up to this. The delays start over once
+     * a subscribe over the connection has succeeded, or the connection has stayed open for this long.
+     */
     public void setReconnectRetryInterval(long reconnectRetryInterval) {
         this.reconnectRetryInterval = reconnectRetryInterval;
     }
 
+    public long getInitialReconnectRetryInterval() {
+        return initialReconnectRetryInterval;
+    }
+
+    /**
+     * Delay before the second attempt to reconnect, see setReconnectRetryInterval().
+     */
+    public void setInitialReconnectRetryInterval(long initialReconnectRetryInterval) {
+        this.initialReconnectRetryInterval = initialReconnectRetryInterval;
+    }
+
     public boolean getPublishSignedMsgs() {
         return publishSignedMsgs;
     }
@@ -109,6 +143,65 @@ public class StreamrClientOptions {
         return encryptionOptions;
     }
 
+    public HttpClientOptions getHttpClientOptions() {
+        return httpClientOptions;
+    }
+
+    public void setHttpClientOptions(HttpClientOptions httpClientOptions) {
+        this.httpClientOptions = httpClientOptions;
+    }
+
+    public InboundPipelineOptions getInboundPipelineOptions() {
+        return inboundPipelineOptions;
+    }
+
+    public void setInboundPipelineOptions(InboundPipelineOptions inboundPipelineOptions) {
+        this.inboundPipelineOptions = inboundPipelineOptions;
+    }
+
+    public OutboundQueueOptions getOutboundQueueOptions() {
+        return outboundQueueOptions;
+    }
+
+    public void setOutboundQueueOptions(OutboundQueueOptions outboundQueueOptions) {
+        this.outboundQueueOptions = outboundQueueOptions;
+    }
+
+    public ReorderBufferOptions getReorderBufferOptions() {
+        return reorderBufferOptions;
+    }
+
+    public void setReorderBufferOptions(ReorderBufferOptions reorderBufferOptions) {
+        this.reorderBufferOptions = reorderBufferOptions;
+    }
+
+    public AdaptiveTimeoutOptions getAdaptiveTimeoutOptions() {
+        return adaptiveTimeoutOptions;
+    }
+
+    public void setAdaptiveTimeoutOptions(AdaptiveTimeoutOptions adaptiveTimeoutOptions) {
+        this.adaptiveTimeoutOptions = adaptiveTimeoutOptions;
+    }
+
+    public DeliveryOptions getDeliveryOptions() {
+        return deliveryOptions;
+    }
+
+    public void setDeliveryOptions(DeliveryOptions deliveryOptions) {
+        this.deliveryOptions = deliveryOptions;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets where the client reports its metrics, for example a SimpleMetrics. By default metrics are not collected.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
     public int getPropagationTimeout() {
         return propagationTimeout;
     }
@@ -125,6 +218,74 @@ public class StreamrClientOptions {
         this.skipGapsOnFullQueue = skipGapsOnFullQueue;
     }
 
+    public int getMaxConcurrentGapFills() {
+        return maxConcurrentGapFills;
+    }
+
+    /**
+     * Maximum number of gap fill resend requests in flight at the same time. Further gap fills wait until
+     * earlier ones complete.
+     */
+    public void setMaxConcurrentGapFills(int maxConcurrentGapFills) {
+        this.maxConcurrentGapFills = maxConcurrentGapFills;
+    }
+
+    public long getGapFillCoalesceMillis() {
+        return gapFillCoalesceMillis;
+    }
+
+    /**
+     * How long gap fill requests of a subscription are collected before sending them, so that the gaps which
+     * many chains detect at about the same time, for example after a reconnect, are requested together.
+     */
+    public void setGapFillCoalesceMillis(long gapFillCoalesceMillis) {
+        this.gapFillCoalesceMillis = gapFillCoalesceMillis;
+    }
+
+    public int getMaxInFlightSubscribes() {
+        return maxInFlightSubscribes;
+    }
+
+    /**
+     * Maximum number of subscribe requests sent without having received their response. Further subscribe
+     * requests, for example when resubscribing to many stream partitions after a reconnect, wait until earlier
+     * ones complete.
+     */
+    public void setMaxInFlightSubscribes(int maxInFlightSubscribes) {
+        this.maxInFlightSubscribes = maxInFlightSubscribes;
+    }
+
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * Number of websocket connections opened to the server. The stream partitions subscribed to are divided
+     * evenly over them with a consistent hash, so that a subscriber of many busy stream partitions isn't limited
+     * by the throughput of a single connection. Published messages are sent over the first connection.
+     * The received messages of all the connections share one inbound pipeline, so they are not isolated from
+     * a slow message handler.
+     */
+    public void setConnectionCount(int connectionCount) {
+        if (connectionCount < 1) {
+            throw new IllegalArgumentException("connectionCount must be at least 1: " + connectionCount);
+        }
+        this.connectionCount = connectionCount;
+    }
+
+    public boolean getBinaryMessageLayer() {
+        return binaryMessageLayer;
+    }
+
+    /**
+     * If true, the client asks the server to send the received messages in binary websocket frames using the
+     * compact binary encoding of StreamMessages. Servers which don't support it keep sending JSON, which
+     * the client handles as usual. Published messages are always sent as JSON.
+     */
+    public void setBinaryMessageLayer(boolean binaryMessageLayer) {
+        this.binaryMessageLayer = binaryMessageLayer;
+    }
+
     private String addMissingQueryString(String url) {
         String[] parts = url.split("\\?");
         if (parts.length == 1) { // no query string
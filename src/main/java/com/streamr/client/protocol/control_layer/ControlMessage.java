@@ -3,14 +3,17 @@ package com.streamr.client.protocol.control_layer;
 import com.squareup.moshi.JsonReader;
 import com.squareup.moshi.JsonWriter;
 import okio.Buffer;
+import okio.BufferedSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 public abstract class ControlMessage {
     private static final ControlMessageAdapter adapter = new ControlMessageAdapter();
+    private static final ControlMessageBinaryAdapter binaryAdapter = new ControlMessageBinaryAdapter();
     private static final Logger log = LoggerFactory.getLogger(ControlMessage.class);
 
     public static final int LATEST_VERSION = 2;
@@ -42,8 +45,37 @@ public abstract class ControlMessage {
         }
     }
 
+    /**
+     * Serializes a BroadcastMessage or UnicastMessage to the binary encoding. See ControlMessageBinaryAdapter.
+     */
+    public byte[] toBinary() throws IOException {
+        Buffer buffer = new Buffer();
+        binaryAdapter.toBinary(buffer, this);
+        return buffer.readByteArray();
+    }
+
+    public static ControlMessage fromBinary(ByteBuffer bytes) throws IOException {
+        Buffer buffer = new Buffer();
+        buffer.write(bytes);
+        return binaryAdapter.fromBinary(buffer);
+    }
+
     public static ControlMessage fromJson(String json) throws IOException {
-        JsonReader reader = JsonReader.of(new Buffer().writeString(json, StandardCharsets.UTF_8));
+        return fromJson(new Buffer().writeString(json, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses the message from UTF-8 bytes without decoding the whole message to a String first.
+     * Only the string fields of the message are decoded. Consumes the remaining bytes of the buffer.
+     */
+    public static ControlMessage fromJson(ByteBuffer utf8) throws IOException {
+        Buffer buffer = new Buffer();
+        buffer.write(utf8);
+        return fromJson(buffer);
+    }
+
+    public static ControlMessage fromJson(BufferedSource utf8) throws IOException {
+        JsonReader reader = JsonReader.of(utf8);
         return adapter.fromJson(reader);
     }
 
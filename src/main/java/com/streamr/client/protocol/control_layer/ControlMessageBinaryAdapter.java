@@ -0,0 +1,50 @@
+package com.streamr.client.protocol.control_layer;
+
+import com.streamr.client.exceptions.UnsupportedMessageException;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import com.streamr.client.protocol.message_layer.StreamMessageAdapter;
+import com.streamr.client.protocol.message_layer.StreamMessageBinaryAdapter;
+import okio.BufferedSink;
+import okio.BufferedSource;
+
+import java.io.IOException;
+
+/**
+ * Binary encoding of the control messages which carry a StreamMessage (BroadcastMessage and UnicastMessage),
+ * sent by the server in binary websocket frames if the client requested the binary message layer encoding.
+ * The format is the control layer version byte, the type byte, the requestId, and the binary StreamMessage.
+ * All other control messages are always sent as JSON.
+ */
+public class ControlMessageBinaryAdapter {
+
+    public ControlMessage fromBinary(BufferedSource source) throws IOException {
+        int version = source.readByte();
+        if (version != ControlMessage.LATEST_VERSION) {
+            throw new UnsupportedMessageException("Unsupported control layer version: " + version);
+        }
+        int type = source.readByte();
+        String requestId = StreamMessageBinaryAdapter.readString(source);
+        StreamMessage streamMessage = StreamMessageAdapter.readBinary(source);
+        if (type == BroadcastMessage.TYPE) {
+            return new BroadcastMessage(requestId, streamMessage);
+        } else if (type == UnicastMessage.TYPE) {
+            return new UnicastMessage(requestId, streamMessage);
+        }
+        throw new UnsupportedMessageException("Unsupported binary control message type: " + type);
+    }
+
+    public void toBinary(BufferedSink sink, ControlMessage message) throws IOException {
+        StreamMessage streamMessage;
+        if (message.getType() == BroadcastMessage.TYPE) {
+            streamMessage = ((BroadcastMessage) message).getStreamMessage();
+        } else if (message.getType() == UnicastMessage.TYPE) {
+            streamMessage = ((UnicastMessage) message).getStreamMessage();
+        } else {
+            throw new UnsupportedMessageException("Binary encoding is not supported for control message type: " + message.getType());
+        }
+        sink.writeByte(ControlMessage.LATEST_VERSION);
+        sink.writeByte(message.getType());
+        StreamMessageBinaryAdapter.writeString(sink, message.getRequestId());
+        StreamMessageAdapter.writeBinary(sink, streamMessage);
+    }
+}
@@ -5,6 +5,7 @@ import com.streamr.client.exceptions.UnsupportedMessageException;
 import com.streamr.client.utils.Address;
 import com.streamr.client.utils.EncryptedGroupKey;
 import com.streamr.client.utils.HttpUtils;
+import okio.Buffer;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -125,8 +126,12 @@ public class StreamMessage implements ITimestamped {
     private final MessageID messageID;
     private MessageRef previousMessageRef;
     private final MessageType messageType;
-    private Map<String, Object> parsedContent; // Might need to change to Object when non-JSON contentTypes are introduced
-    private String serializedContent;
+    private volatile Map<String, Object> parsedContent; // Might need to change to Object when non-JSON contentTypes are introduced
+    // The content is kept in the form it was set in, and converted to the other form only when needed. The
+    // conversions are cached, and volatile so that a message handed to another thread, for example from a
+    // parser thread to a lane, is seen with its cached forms fully constructed.
+    private volatile String serializedContent;
+    private volatile byte[] serializedContentBytes;
     private final ContentType contentType;
     private EncryptionType encryptionType;
     private String groupKeyId;
@@ -274,29 +279,57 @@ public class StreamMessage implements ITimestamped {
     }
 
     public Map<String, Object> getParsedContent() {
-        if (parsedContent == null) {
+        Map<String, Object> parsed = parsedContent;
+        if (parsed == null) {
             if (encryptionType != EncryptionType.NONE) {
                 throw new EncryptedContentNotParsableException(encryptionType);
             }
             if (contentType == ContentType.JSON) {
+                String content = serializedContent;
                 try {
-                    this.parsedContent = HttpUtils.mapAdapter.fromJson(serializedContent);
+                    if (content == null) {
+                        // Parse directly from the bytes, for example after decryption
+                        parsed = HttpUtils.mapAdapter.fromJson(new Buffer().write(serializedContentBytes));
+                    } else {
+                        parsed = HttpUtils.mapAdapter.fromJson(content);
+                    }
                 } catch (IOException e) {
-                    throw new RuntimeException("Failed to parse message content: " + serializedContent);
+                    throw new RuntimeException("Failed to parse message content: " + getSerializedContent());
                 }
+                parsedContent = parsed;
             } else {
                 throw new RuntimeException("Unknown contentType encountered: " + contentType);
             }
         }
-        return parsedContent;
+        return parsed;
     }
 
     public String getSerializedContent() {
-        return serializedContent;
+        String content = serializedContent;
+        if (content == null) {
+            byte[] bytes = serializedContentBytes;
+            if (bytes != null) {
+                content = new String(bytes, StandardCharsets.UTF_8);
+                serializedContent = content;
+            }
+        }
+        return content;
     }
 
+    /**
+     * Returns the content as UTF-8 bytes. The bytes are encoded only once and shared between callers,
+     * so the returned array must not be modified.
+     */
     public byte[] getSerializedContentAsBytes() {
-        return serializedContent.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = serializedContentBytes;
+        if (bytes == null) {
+            String content = serializedContent;
+            if (content != null) {
+                bytes = content.getBytes(StandardCharsets.UTF_8);
+                serializedContentBytes = bytes;
+            }
+        }
+        return bytes;
     }
 
     public void setEncryptionType(EncryptionType encryptionType) {
@@ -324,15 +357,21 @@ public class StreamMessage implements ITimestamped {
 
     public void setSerializedContent(String serializedContent) {
         this.serializedContent = serializedContent;
+        this.serializedContentBytes = null;
     }
 
+    /**
+     * Sets the content as UTF-8 bytes, which are decoded to a String only if getSerializedContent() is called.
+     * The array is not copied, so it must not be modified afterwards.
+     */
     public void setSerializedContent(byte[] serializedContent) {
-        setSerializedContent(new String(serializedContent, StandardCharsets.UTF_8));
+        this.serializedContentBytes = serializedContent;
+        this.serializedContent = null;
     }
 
     public void setParsedContent(Map<String, Object> parsedContent) {
         this.parsedContent = parsedContent;
-        this.serializedContent = HttpUtils.mapAdapter.toJson(parsedContent);
+        setSerializedContent(HttpUtils.mapAdapter.toJson(parsedContent));
     }
 
     public String serialize() {
@@ -351,6 +390,30 @@ public class StreamMessage implements ITimestamped {
         return toBytes().length;
     }
 
+    /**
+     * Returns a rough estimate of the heap memory used by this message, without serializing it. The parsed
+     * content is not included.
+     */
+    public int estimateMemoryBytes() {
+        // The message itself, its MessageID and MessageRefs, and the strings they refer to
+        int size = 256;
+        String content = serializedContent;
+        if (content != null) {
+            size += 2 * content.length();
+        }
+        byte[] bytes = serializedContentBytes;
+        if (bytes != null) {
+            size += bytes.length;
+        }
+        if (signature != null) {
+            size += 2 * signature.length();
+        }
+        if (groupKeyId != null) {
+            size += 2 * groupKeyId.length();
+        }
+        return size;
+    }
+
     public static StreamMessage fromBytes(byte[] bytes) throws IOException {
         return StreamMessage.deserialize(new String(bytes, StandardCharsets.UTF_8));
     }
@@ -360,7 +423,7 @@ public class StreamMessage implements ITimestamped {
         return messageType+"{" +
                 "messageID=" + messageID +
                 ", previousMessageRef=" + previousMessageRef +
-                ", content='" + serializedContent + '\'' +
+                ", content='" + getSerializedContent() + '\'' +
                 ", contentType=" + contentType +
                 ", encryptionType=" + encryptionType +
                 ", groupKeyId='" + groupKeyId + '\'' +
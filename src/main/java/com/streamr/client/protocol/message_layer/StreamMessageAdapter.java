@@ -6,6 +6,8 @@ import com.squareup.moshi.JsonWriter;
 import com.streamr.client.exceptions.MalformedMessageException;
 import com.streamr.client.exceptions.UnsupportedMessageException;
 import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,18 +20,22 @@ import java.util.Map;
  * A JsonAdapter that is able to:
  * - read all versions of Stream Layer protocol
  * - write the latest version of Stream Layer protocol
+ *
+ * Also holds the registry of binary encodings, which are prefixed with their version byte.
  */
 public class StreamMessageAdapter extends JsonAdapter<StreamMessage> {
 
     private static final Logger log = LoggerFactory.getLogger(StreamMessageAdapter.class);
 
     private static final Map<Integer, JsonAdapter<StreamMessage>> adapterByVersion = new HashMap<>();
+    private static final Map<Integer, StreamMessageBinaryAdapter> binaryAdapterByVersion = new HashMap<>();
     private static final StreamMessageAdapter staticAdapter = new StreamMessageAdapter();
 
     static {
         adapterByVersion.put(30, new StreamMessageV30Adapter());
         adapterByVersion.put(31, new StreamMessageV31Adapter());
         adapterByVersion.put(32, new StreamMessageV32Adapter());
+        binaryAdapterByVersion.put(StreamMessageBinaryAdapter.VERSION, new StreamMessageBinaryAdapter());
     }
 
     /**
@@ -57,6 +63,45 @@ public class StreamMessageAdapter extends JsonAdapter<StreamMessage> {
         }
     }
 
+    /**
+     * Serializes the message to the latest binary version
+     */
+    public static byte[] serializeBinary(StreamMessage msg) {
+        Buffer buffer = new Buffer();
+        try {
+            writeBinary(buffer, msg);
+        } catch (IOException e) {
+            // Writing to a Buffer doesn't throw
+            throw new RuntimeException(e);
+        }
+        return buffer.readByteArray();
+    }
+
+    public static void writeBinary(BufferedSink sink, StreamMessage msg) throws IOException {
+        sink.writeByte(StreamMessageBinaryAdapter.VERSION);
+        binaryAdapterByVersion.get(StreamMessageBinaryAdapter.VERSION).write(sink, msg);
+    }
+
+    public static StreamMessage deserializeBinary(byte[] bytes) throws MalformedMessageException {
+        try {
+            return readBinary(new Buffer().write(bytes));
+        } catch (IOException e) {
+            throw new MalformedMessageException("Unable to deserialize binary message", e);
+        }
+    }
+
+    /**
+     * Reads the version byte, then delegates to the correct binary adapter
+     */
+    public static StreamMessage readBinary(BufferedSource source) throws IOException, MalformedMessageException {
+        int version = source.readByte() & 0xFF;
+        StreamMessageBinaryAdapter adapter = binaryAdapterByVersion.get(version);
+        if (adapter == null) {
+            throw new UnsupportedMessageException("Unrecognized binary stream message version: " + version);
+        }
+        return adapter.read(source);
+    }
+
     /**
      * Used when serializing and deserializing Control Layer messages with inline StreamMessages
      */
@@ -0,0 +1,210 @@
+package com.streamr.client.protocol.message_layer;
+
+import com.streamr.client.exceptions.MalformedMessageException;
+import com.streamr.client.protocol.message_layer.StreamMessage.EncryptionType;
+import com.streamr.client.protocol.message_layer.StreamMessage.SignatureType;
+import com.streamr.client.utils.Address;
+import com.streamr.client.utils.EncryptedGroupKey;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary encoding of the fields of a StreamMessage (the same fields as in version 32 of the JSON format).
+ * Numbers are written as unsigned varints and strings as a varint length followed by UTF-8 bytes. Fields
+ * which contain hex, such as encrypted content and signatures, are written as the raw bytes when they can be
+ * restored exactly, which roughly halves their size compared to JSON.
+ *
+ * The version byte is written and read by StreamMessageAdapter.
+ */
+public class StreamMessageBinaryAdapter {
+
+    public static final int VERSION = 1;
+
+    // Kinds of the fields written with writeHexOrString()
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte HEX = 2;
+    private static final byte PREFIXED_HEX = 3;
+
+    public StreamMessage read(BufferedSource source) throws IOException {
+        try {
+            MessageID messageID = new MessageID(
+                    readString(source),
+                    (int) readVarint(source),
+                    readVarint(source),
+                    readVarint(source),
+                    new Address(readHexOrString(source)),
+                    readString(source)
+            );
+            MessageRef previousMessageRef = null;
+            if (source.readByte() != 0) {
+                previousMessageRef = new MessageRef(readVarint(source), readVarint(source));
+            }
+            StreamMessage.MessageType messageType = StreamMessage.MessageType.fromId(source.readByte());
+            StreamMessage.ContentType contentType = StreamMessage.ContentType.fromId(source.readByte());
+            EncryptionType encryptionType = EncryptionType.fromId(source.readByte());
+            String groupKeyId = readNullableString(source);
+            String serializedContent = readHexOrString(source);
+            String serializedNewGroupKey = readNullableString(source);
+            SignatureType signatureType = SignatureType.fromId(source.readByte());
+            String signature = readHexOrString(source);
+
+            return new StreamMessage(
+                    messageID,
+                    previousMessageRef,
+                    messageType,
+                    serializedContent,
+                    contentType,
+                    encryptionType,
+                    groupKeyId,
+                    serializedNewGroupKey != null ? EncryptedGroupKey.deserialize(serializedNewGroupKey) : null,
+                    signatureType,
+                    signature
+            );
+        } catch (EOFException e) {
+            throw new MalformedMessageException("Malformed binary message", e);
+        }
+    }
+
+    public void write(BufferedSink sink, StreamMessage msg) throws IOException {
+        writeString(sink, msg.getStreamId());
+        writeVarint(sink, msg.getStreamPartition());
+        writeVarint(sink, msg.getTimestamp());
+        writeVarint(sink, msg.getSequenceNumber());
+        writeHexOrString(sink, msg.getPublisherId().toString());
+        writeString(sink, msg.getMsgChainId());
+        MessageRef previousMessageRef = msg.getPreviousMessageRef();
+        if (previousMessageRef != null) {
+            sink.writeByte(1);
+            writeVarint(sink, previousMessageRef.getTimestamp());
+            writeVarint(sink, previousMessageRef.getSequenceNumber());
+        } else {
+            sink.writeByte(0);
+        }
+        sink.writeByte(msg.getMessageType().getId());
+        sink.writeByte(msg.getContentType().getId());
+        sink.writeByte(msg.getEncryptionType().getId());
+        writeNullableString(sink, msg.getGroupKeyId());
+        if (msg.getEncryptionType() == EncryptionType.NONE) {
+            // Write the UTF-8 bytes as they are, without checking whether the content happens to look like hex
+            sink.writeByte(STRING);
+            writeBytes(sink, msg.getSerializedContentAsBytes());
+        } else {
+            writeHexOrString(sink, msg.getSerializedContent());
+        }
+        writeNullableString(sink, msg.getNewGroupKey() != null ? msg.getNewGroupKey().serialize() : null);
+        sink.writeByte(msg.getSignatureType().getId());
+        writeHexOrString(sink, msg.getSignature());
+    }
+
+    /**
+     * Writes an unsigned LEB128 varint. Negative values take 10 bytes, but are read back correctly.
+     */
+    public static void writeVarint(BufferedSink sink, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            sink.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        sink.writeByte((int) value);
+    }
+
+    public static long readVarint(BufferedSource source) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = source.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new MalformedMessageException("Malformed varint");
+    }
+
+    public static void writeString(BufferedSink sink, String value) throws IOException {
+        writeBytes(sink, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String readString(BufferedSource source) throws IOException {
+        return source.readUtf8(readVarint(source));
+    }
+
+    private static void writeBytes(BufferedSink sink, byte[] bytes) throws IOException {
+        writeVarint(sink, bytes.length);
+        sink.write(bytes);
+    }
+
+    private static void writeNullableString(BufferedSink sink, String value) throws IOException {
+        if (value == null) {
+            sink.writeByte(0);
+        } else {
+            sink.writeByte(1);
+            writeString(sink, value);
+        }
+    }
+
+    private static String readNullableString(BufferedSource source) throws IOException {
+        return source.readByte() == 0 ? null : readString(source);
+    }
+
+    /**
+     * Writes lower-case hex strings (optionally prefixed with 0x) as raw bytes, and other strings as UTF-8.
+     */
+    private static void writeHexOrString(BufferedSink sink, String value) throws IOException {
+        if (value == null) {
+            sink.writeByte(NULL);
+        } else if (value.startsWith("0x") && isLowerCaseHex(value, 2)) {
+            sink.writeByte(PREFIXED_HEX);
+            writeBytes(sink, decodeHex(value, 2));
+        } else if (isLowerCaseHex(value, 0)) {
+            sink.writeByte(HEX);
+            writeBytes(sink, decodeHex(value, 0));
+        } else {
+            sink.writeByte(STRING);
+            writeString(sink, value);
+        }
+    }
+
+    private static String readHexOrString(BufferedSource source) throws IOException {
+        byte kind = source.readByte();
+        switch (kind) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(source);
+            case HEX:
+                return Hex.encodeHexString(source.readByteArray(readVarint(source)));
+            case PREFIXED_HEX:
+                return "0x" + Hex.encodeHexString(source.readByteArray(readVarint(source)));
+            default:
+                throw new MalformedMessageException("Unknown field kind: " + kind);
+        }
+    }
+
+    private static boolean isLowerCaseHex(String value, int offset) {
+        int length = value.length() - offset;
+        if (length == 0 || length % 2 != 0) {
+            return false;
+        }
+        for (int i = offset; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] decodeHex(String value, int offset) {
+        byte[] bytes = new byte[(value.length() - offset) / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int index = offset + 2 * i;
+            bytes[i] = (byte) ((Character.digit(value.charAt(index), 16) << 4) | Character.digit(value.charAt(index + 1), 16));
+        }
+        return bytes;
+    }
+}
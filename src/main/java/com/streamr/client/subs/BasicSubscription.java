@@ -4,6 +4,10 @@ import com.streamr.client.MessageHandler;
 import com.streamr.client.exceptions.GapDetectedException;
 import com.streamr.client.exceptions.UnableToDecryptException;
 import com.streamr.client.exceptions.UnsupportedMessageException;
+import com.streamr.client.metrics.Counter;
+import com.streamr.client.metrics.Metrics;
+import com.streamr.client.metrics.Timer;
+import com.streamr.client.options.AdaptiveTimeoutOptions;
 import com.streamr.client.protocol.message_layer.MessageRef;
 import com.streamr.client.protocol.message_layer.StreamMessage;
 import com.streamr.client.utils.*;
@@ -11,18 +15,29 @@ import org.slf4j.Logger;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
 import java.util.stream.Collectors;
 
 public abstract class BasicSubscription extends Subscription {
     public static final int MAX_NB_GROUP_KEY_REQUESTS = 10;
 
     protected OrderingUtil orderingUtil;
-    private final ConcurrentHashMap<String, Timer> pendingGroupKeyRequests = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ScheduledFuture<?>> pendingGroupKeyRequests = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, Integer> nbGroupKeyRequestsCalls = new ConcurrentHashMap<>();
-    private final HashSet<String> alreadyFailedToDecrypt = new HashSet<>();
+    private final Set<String> alreadyFailedToDecrypt = ConcurrentHashMap.newKeySet();
+    // Guards the pending group key requests together with the decryption queues. Messages are decrypted on the
+    // lane of this subscription, but the keys which unlock queued messages arrive on the lane of the key exchange
+    // stream. Never held while calling the handler or other subscriptions.
+    private final Object decryptionLock = new Object();
 
     protected final DecryptionQueues decryptionQueues;
     private final GroupKeyRequestFunction groupKeyRequestFunction;
+    private Metrics metrics = Metrics.NOOP;
+    private Timer decryptTimer = Timer.NOOP;
+    private Timer handlerTimer = Timer.NOOP;
+    private Counter lostCounter = Counter.NOOP;
+    private ReorderBufferPool reorderBufferPool = null;
+    private AdaptiveTimeoutOptions adaptiveTimeoutOptions = null;
 
     public BasicSubscription(String streamId, int partition, MessageHandler handler, GroupKeyStore keyStore,
                              KeyExchangeUtil keyExchangeUtil, GroupKeyRequestFunction groupKeyRequestFunction, long propagationTimeout,
@@ -37,6 +52,7 @@ public abstract class BasicSubscription extends Subscription {
                 },
                 this.propagationTimeout, this.resendTimeout, this.skipGapsOnFullQueue
         );
+        configureOrderingUtil();
 
         decryptionQueues = new DecryptionQueues(streamId, partition);
 
@@ -51,12 +67,83 @@ public abstract class BasicSubscription extends Subscription {
 
     @Override
     public void clear() {
-        orderingUtil.clearGaps();
+        clearChains();
+        orderingUtil.getGapHandler().clear();
+    }
+
+    /**
+     * Like clear(), but keeps the requests of the gap handler, for when another subscription takes it over.
+     */
+    void clearChains() {
+        orderingUtil.clear();
+    }
+
+    /**
+     * Removes the messages waiting for gaps to be filled, in order within each chain, and cancels the gap fills.
+     */
+    public List<StreamMessage> drainQueuedMessages() {
+        return orderingUtil.drainQueuedMessages();
     }
 
     public void setGapHandler(OrderedMsgChain.GapHandlerFunction gapHandler) {
+        OrderingUtil previous = orderingUtil;
         orderingUtil = new OrderingUtil(streamId, partition,
                 this::handleInOrder, gapHandler, propagationTimeout, resendTimeout, skipGapsOnFullQueue);
+        configureOrderingUtil();
+        // Set before any messages are handled, so there is nothing queued, but cancel the gap fills and
+        // delete the spill files just in case
+        previous.clear();
+    }
+
+    private void configureOrderingUtil() {
+        orderingUtil.setGapCounter(metrics.counter("ordering.gaps", streamId));
+        orderingUtil.setMessagesLostHandler(this::onMessagesLost);
+        if (reorderBufferPool != null) {
+            orderingUtil.setReorderBufferPool(reorderBufferPool);
+        }
+        orderingUtil.setAdaptiveTimeoutOptions(adaptiveTimeoutOptions);
+    }
+
+    @Override
+    protected void onMessagesLost(Address publisherId, String msgChainId, int count) {
+        lostCounter.inc(count);
+        super.onMessagesLost(publisherId, msgChainId, count);
+    }
+
+    @Override
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        decryptTimer = metrics.timer("message.decrypt");
+        handlerTimer = metrics.timer("message.handler");
+        lostCounter = metrics.counter("ordering.lost", streamId);
+        orderingUtil.setGapCounter(metrics.counter("ordering.gaps", streamId));
+    }
+
+    @Override
+    public void setReorderBufferPool(ReorderBufferPool reorderBufferPool) {
+        this.reorderBufferPool = reorderBufferPool;
+        orderingUtil.setReorderBufferPool(reorderBufferPool);
+    }
+
+    @Override
+    public void setAdaptiveTimeoutOptions(AdaptiveTimeoutOptions adaptiveTimeoutOptions) {
+        this.adaptiveTimeoutOptions = adaptiveTimeoutOptions;
+        orderingUtil.setAdaptiveTimeoutOptions(adaptiveTimeoutOptions);
+    }
+
+    @Override
+    public int getQueuedMessageCount() {
+        return orderingUtil.getQueuedMessageCount();
+    }
+
+    @Override
+    public int getDecryptionQueueSize() {
+        return decryptionQueues.size();
+    }
+
+    @Override
+    public int getPendingGroupKeyRequestCount() {
+        return pendingGroupKeyRequests.size();
     }
 
     public OrderedMsgChain.GapHandlerFunction getGapHandler() {
@@ -64,42 +151,48 @@ public abstract class BasicSubscription extends Subscription {
     }
 
     protected void requestGroupKeyAndQueueMessage(StreamMessage msgToQueue) {
-        Timer t = new Timer(String.format("GroupKeyTimer-%s-%s", msgToQueue.getStreamId(), msgToQueue.getMessageRef().toString()), true);
         String groupKeyId = msgToQueue.getGroupKeyId();
-        nbGroupKeyRequestsCalls.put(groupKeyId, 0);
-
-        TimerTask request = new TimerTask() {
+        Runnable request = new Runnable() {
             @Override
             public void run() {
-                synchronized (BasicSubscription.this) {
-                    if (pendingGroupKeyRequests.containsKey(groupKeyId)) {
-                        if (nbGroupKeyRequestsCalls.get(groupKeyId) < MAX_NB_GROUP_KEY_REQUESTS) {
-                            nbGroupKeyRequestsCalls.put(groupKeyId, nbGroupKeyRequestsCalls.get(groupKeyId) + 1);
-                            groupKeyRequestFunction.apply(msgToQueue.getPublisherId(), Collections.singletonList(msgToQueue.getGroupKeyId()));
-                            getLogger().info("Sent key request for stream {} publisher {}, key id {}",
-                                    streamId, msgToQueue.getPublisherId(), groupKeyId);
-                        } else {
-                            getLogger().warn("Failed to receive group key {} from publisher {} after {} tries.",
-                                    groupKeyId, msgToQueue.getPublisherId(), MAX_NB_GROUP_KEY_REQUESTS);
-                            cancelGroupKeyRequest(groupKeyId);
-                        }
+                synchronized (decryptionLock) {
+                    if (!pendingGroupKeyRequests.containsKey(groupKeyId)) {
+                        return;
+                    }
+                    if (nbGroupKeyRequestsCalls.get(groupKeyId) >= MAX_NB_GROUP_KEY_REQUESTS) {
+                        getLogger().warn("Failed to receive group key {} from publisher {} after {} tries.",
+                                groupKeyId, msgToQueue.getPublisherId(), MAX_NB_GROUP_KEY_REQUESTS);
+                        cancelGroupKeyRequest(groupKeyId);
+                        return;
                     }
+                    nbGroupKeyRequestsCalls.put(groupKeyId, nbGroupKeyRequestsCalls.get(groupKeyId) + 1);
                 }
+                // Send outside the lock, as sending may block, for example while reconnecting
+                groupKeyRequestFunction.apply(msgToQueue.getPublisherId(), Collections.singletonList(msgToQueue.getGroupKeyId()));
+                getLogger().info("Sent key request for stream {} publisher {}, key id {}",
+                        streamId, msgToQueue.getPublisherId(), groupKeyId);
             }
         };
 
-        pendingGroupKeyRequests.put(groupKeyId, t);
-        decryptionQueues.add(msgToQueue);
-        t.schedule(request, 0, propagationTimeout);
+        synchronized (decryptionLock) {
+            // Another message may have requested the key since this one failed to decrypt
+            if (pendingGroupKeyRequests.containsKey(groupKeyId)) {
+                decryptionQueues.add(msgToQueue);
+                return;
+            }
+            nbGroupKeyRequestsCalls.put(groupKeyId, 0);
+            // The first request runs right away, but on a worker thread which waits for the lock to be released
+            pendingGroupKeyRequests.put(groupKeyId, SharedScheduler.scheduleWithFixedDelay(request, 0, propagationTimeout));
+            decryptionQueues.add(msgToQueue);
+        }
     }
 
-    private synchronized void cancelGroupKeyRequest(String groupKeyId) {
-        if (pendingGroupKeyRequests.containsKey(groupKeyId)) {
-            getLogger().trace("Pending group key request canceled for group key {}", groupKeyId);
-            Timer timer = pendingGroupKeyRequests.get(groupKeyId);
-            timer.cancel();
-            timer.purge();
-            pendingGroupKeyRequests.remove(groupKeyId);
+    private void cancelGroupKeyRequest(String groupKeyId) {
+        synchronized (decryptionLock) {
+            if (pendingGroupKeyRequests.containsKey(groupKeyId)) {
+                getLogger().trace("Pending group key request canceled for group key {}", groupKeyId);
+                pendingGroupKeyRequests.remove(groupKeyId).cancel(false);
+            }
         }
     }
 
@@ -124,7 +217,9 @@ public abstract class BasicSubscription extends Subscription {
                 throw new UnableToDecryptException(msg.getSerializedContent());
             }
 
+            long start = decryptTimer.start();
             EncryptionUtil.decryptStreamMessage(msg, groupKey);
+            decryptTimer.stop(start);
             alreadyFailedToDecrypt.remove(msg.getGroupKeyId());
             return true;
         } catch (UnableToDecryptException e) {
@@ -140,20 +235,28 @@ public abstract class BasicSubscription extends Subscription {
     }
 
     private void handleInOrder(StreamMessage msg) {
-        // Is there already a pending request for the key this message was encrypted with?
-        if (msg.getGroupKeyId() != null && pendingGroupKeyRequests.containsKey(msg.getGroupKeyId())) {
-            decryptionQueues.add(msg);
-        } else {
-            // If not, handle normally
-            decryptAndHandle(msg);
+        // Is there already a pending request for the key this message was encrypted with? Holding the lock
+        // ensures that onNewKeysAdded() can't drain the queue between the check and queuing the message.
+        synchronized (decryptionLock) {
+            if (msg.getGroupKeyId() != null && pendingGroupKeyRequests.containsKey(msg.getGroupKeyId())) {
+                decryptionQueues.add(msg);
+                return;
+            }
         }
+        // If not, handle normally
+        decryptAndHandle(msg);
     }
 
     private void decryptAndHandle(StreamMessage msg) {
         try {
             boolean success = tryDecrypt(msg);
             if (success) {
-                handler.onMessage(this, msg);
+                long start = handlerTimer.start();
+                try {
+                    handler.onMessage(this, msg);
+                } finally {
+                    handlerTimer.stop(start);
+                }
 
                 // Handle new key if the message contains one
                 if (msg.getNewGroupKey() != null) {
@@ -174,16 +277,35 @@ public abstract class BasicSubscription extends Subscription {
 
     @Override
     public void onNewKeysAdded(Address publisherId, Collection<GroupKey> groupKeys) {
-        // Cancel any pending request timers for all the received keys
-        groupKeys.forEach(key -> cancelGroupKeyRequest(key.getGroupKeyId()));
-
         Set<String> groupKeyIds = groupKeys.stream().map(GroupKey::getGroupKeyId).collect(Collectors.toSet());
-        Collection<StreamMessage> unlocked = decryptionQueues.drainUnlockedMessages(publisherId, groupKeyIds);
 
-        getLogger().trace("Received keys from publisher {}: {}. Unlocked {} queued messages.",
-                publisherId, groupKeys, unlocked.size());
+        // Stop the pending request timers for all the received keys, but keep the requests pending while the
+        // unlocked messages are handled outside the lock, so that messages arriving meanwhile are queued
+        // behind them instead of overtaking them
+        synchronized (decryptionLock) {
+            groupKeyIds.forEach(groupKeyId -> {
+                ScheduledFuture<?> request = pendingGroupKeyRequests.get(groupKeyId);
+                if (request != null) {
+                    request.cancel(false);
+                }
+            });
+        }
+
+        while (true) {
+            Collection<StreamMessage> unlocked;
+            synchronized (decryptionLock) {
+                unlocked = decryptionQueues.drainUnlockedMessages(publisherId, groupKeyIds);
+                if (unlocked.isEmpty()) {
+                    groupKeyIds.forEach(this::cancelGroupKeyRequest);
+                    return;
+                }
+            }
 
-        unlocked.forEach(this::decryptAndHandle);
+            getLogger().trace("Received keys from publisher {}: {}. Unlocked {} queued messages.",
+                    publisherId, groupKeys, unlocked.size());
+
+            unlocked.forEach(this::decryptAndHandle);
+        }
     }
 
     public abstract Logger getLogger();
@@ -2,6 +2,8 @@ package com.streamr.client.subs;
 
 import com.streamr.client.MessageHandler;
 import com.streamr.client.exceptions.*;
+import com.streamr.client.metrics.Metrics;
+import com.streamr.client.options.AdaptiveTimeoutOptions;
 import com.streamr.client.options.ResendOption;
 import com.streamr.client.protocol.message_layer.StreamMessage;
 import com.streamr.client.utils.*;
@@ -12,6 +14,9 @@ import java.util.Collection;
 public class CombinedSubscription extends Subscription {
 
     private BasicSubscription currentSub;
+    private Metrics metrics = Metrics.NOOP;
+    private ReorderBufferPool reorderBufferPool = null;
+    private AdaptiveTimeoutOptions adaptiveTimeoutOptions = null;
     private final ArrayDeque<StreamMessage> queuedRealtimeMessages = new ArrayDeque<>();
 
     public CombinedSubscription(String streamId, int partition, MessageHandler handler, GroupKeyStore keyStore, KeyExchangeUtil keyExchangeUtil, ResendOption resendOption,
@@ -36,19 +41,37 @@ public class CombinedSubscription extends Subscription {
                         groupKeyRequestFunction, propagationTimeout, resendTimeout, skipGapsOnFullQueue);
 
                 realTime.setGapHandler(currentSub.getGapHandler());
+                realTime.setMetrics(metrics);
+                if (reorderBufferPool != null) {
+                    realTime.setReorderBufferPool(reorderBufferPool);
+                }
                 // set the last received references to the last references of the resent messages
                 realTime.setLastMessageRefs(currentSub.getChains());
+                // carry over the resent messages still waiting for gaps to be filled, so that they are handled
+                // once the real time subscription has filled the gaps
+                for (StreamMessage msg : currentSub.drainQueuedMessages()) {
+                    realTime.handleResentMessage(msg);
+                }
                 // handle the real time messages received during the initial resend
                 while(!queuedRealtimeMessages.isEmpty()) {
                     StreamMessage msg = queuedRealtimeMessages.poll();
                     realTime.handleRealTimeMessage(msg);
                 }
+                // Set only now, as the queued messages would look late
+                realTime.setAdaptiveTimeoutOptions(adaptiveTimeoutOptions);
+                // Cancel the gap fills and delete the spill files of the historical subscription. The gap handler
+                // now belongs to the real time subscription.
+                currentSub.clearChains();
                 currentSub = realTime;
             }
             @Override
             public void onUnableToDecrypt(UnableToDecryptException e) {
                 handler.onUnableToDecrypt(e);
             }
+            @Override
+            public void onMessagesLost(Subscription sub, Address publisherId, String msgChainId, int count) {
+                handler.onMessagesLost(sub, publisherId, msgChainId, count);
+            }
         };
         // starts to request the initial resend
         currentSub = new HistoricalSubscription(streamId, partition, wrapperHandler, keyStore, keyExchangeUtil, resendOption,
@@ -109,4 +132,37 @@ public class CombinedSubscription extends Subscription {
     public void clear() {
         currentSub.clear();
     }
+
+    @Override
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        currentSub.setMetrics(metrics);
+    }
+
+    @Override
+    public void setReorderBufferPool(ReorderBufferPool reorderBufferPool) {
+        this.reorderBufferPool = reorderBufferPool;
+        currentSub.setReorderBufferPool(reorderBufferPool);
+    }
+
+    @Override
+    public void setAdaptiveTimeoutOptions(AdaptiveTimeoutOptions adaptiveTimeoutOptions) {
+        this.adaptiveTimeoutOptions = adaptiveTimeoutOptions;
+        currentSub.setAdaptiveTimeoutOptions(adaptiveTimeoutOptions);
+    }
+
+    @Override
+    public int getQueuedMessageCount() {
+        return currentSub.getQueuedMessageCount();
+    }
+
+    @Override
+    public int getDecryptionQueueSize() {
+        return currentSub.getDecryptionQueueSize();
+    }
+
+    @Override
+    public int getPendingGroupKeyRequestCount() {
+        return currentSub.getPendingGroupKeyRequestCount();
+    }
 }
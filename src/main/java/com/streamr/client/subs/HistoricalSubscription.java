@@ -3,6 +3,7 @@ package com.streamr.client.subs;
 import com.streamr.client.MessageHandler;
 import com.streamr.client.exceptions.GapDetectedException;
 import com.streamr.client.exceptions.UnsupportedMessageException;
+import com.streamr.client.options.AdaptiveTimeoutOptions;
 import com.streamr.client.options.ResendOption;
 import com.streamr.client.protocol.message_layer.StreamMessage;
 import com.streamr.client.utils.Address;
@@ -78,6 +79,12 @@ public class HistoricalSubscription extends BasicSubscription {
         }
     }
 
+    @Override
+    public void setAdaptiveTimeoutOptions(AdaptiveTimeoutOptions adaptiveTimeoutOptions) {
+        // Resent messages are not delivered in real time, so their latency tells nothing about the publisher.
+        // The configured timeouts are used.
+    }
+
     @Override
     public boolean isResending() {
         return true;
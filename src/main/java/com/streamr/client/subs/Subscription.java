@@ -3,14 +3,24 @@ package com.streamr.client.subs;
 import com.streamr.client.MessageHandler;
 import com.streamr.client.exceptions.GapDetectedException;
 import com.streamr.client.exceptions.UnsupportedMessageException;
+import com.streamr.client.metrics.Metrics;
+import com.streamr.client.options.AdaptiveTimeoutOptions;
 import com.streamr.client.options.ResendOption;
 import com.streamr.client.protocol.message_layer.StreamMessage;
 import com.streamr.client.utils.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.UUID;
 
 public abstract class Subscription {
+    private static final Logger log = LoggerFactory.getLogger(Subscription.class);
+
     public static final long DEFAULT_PROPAGATION_TIMEOUT = 5000L;
     public static final long DEFAULT_RESEND_TIMEOUT = 5000L;
     public static final boolean DEFAULT_SKIP_GAPS_ON_FULL_QUEUE = true;
@@ -26,9 +36,20 @@ public abstract class Subscription {
     protected final boolean skipGapsOnFullQueue;
 
     private State state;
+    private DeliveryLane deliveryLane = null;
+    private final Object pauseLock = new Object();
+    // Written under pauseLock
+    private volatile boolean deliveryPaused = false;
+    // The real-time messages discarded while the delivery is paused, by chain. Guarded by pauseLock.
+    private final LinkedHashMap<String, DiscardedMessages> discarded = new LinkedHashMap<>();
+    // The resent messages and ends of resends received while the delivery is paused, in order. Guarded by pauseLock.
+    private final ArrayDeque<Runnable> keptResends = new ArrayDeque<>();
 
+    /**
+     * FAILED means that the subscribe request got an error response or no response at all, see SubscribeScheduler.
+     */
     public enum State {
-        SUBSCRIBING, SUBSCRIBED, UNSUBSCRIBING, UNSUBSCRIBED
+        SUBSCRIBING, SUBSCRIBED, UNSUBSCRIBING, UNSUBSCRIBED, FAILED
     }
 
     public Subscription(String streamId, int partition, MessageHandler handler, GroupKeyStore keyStore, KeyExchangeUtil keyExchangeUtil,
@@ -68,6 +89,128 @@ public abstract class Subscription {
         return state.equals(State.SUBSCRIBED);
     }
 
+    /**
+     * Returns the lane which delivers the messages of the subscription, or null if the messages are delivered
+     * on the threads which receive them.
+     */
+    public DeliveryLane getDeliveryLane() {
+        return deliveryLane;
+    }
+
+    public void setDeliveryLane(DeliveryLane deliveryLane) {
+        this.deliveryLane = deliveryLane;
+    }
+
+    /**
+     * Returns true if the delivery lane of the subscription is full and its real-time messages are discarded
+     * until the lane has drained, see DeliveryOptions.OverflowPolicy.PAUSE.
+     */
+    public boolean isDeliveryPaused() {
+        return deliveryPaused;
+    }
+
+    /**
+     * Called by the delivery lane when it's full, see DeliveryOptions.OverflowPolicy.PAUSE.
+     */
+    public void pauseDelivery() {
+        synchronized (pauseLock) {
+            deliveryPaused = true;
+        }
+    }
+
+    /**
+     * Handles the real-time message, unless the delivery is paused. Then the message is discarded, except that
+     * the first and the last discarded message of each chain are kept for resumeDelivery().
+     */
+    public void offerRealTimeMessage(StreamMessage msg) throws GapDetectedException, UnsupportedMessageException {
+        synchronized (pauseLock) {
+            if (deliveryPaused) {
+                String key = msg.getPublisherId() + "-" + msg.getMsgChainId();
+                DiscardedMessages chain = discarded.computeIfAbsent(key, k -> new DiscardedMessages(msg));
+                chain.last = msg;
+                chain.count++;
+                return;
+            }
+        }
+        handleRealTimeMessage(msg);
+    }
+
+    /**
+     * Handles the resent message, unless the delivery is paused. Then the message is kept until resumeDelivery(),
+     * as a resent message can't be requested again like a real-time one, and waiting for the lane to drain would
+     * hold up the other subscriptions of the receiving thread.
+     */
+    public void offerResentMessage(StreamMessage msg) throws GapDetectedException, UnsupportedMessageException {
+        if (!keepWhilePaused(() -> handleResentMessage(msg))) {
+            handleResentMessage(msg);
+        }
+    }
+
+    /**
+     * Ends the resend, unless the delivery is paused. Then the end is kept in order with the resent messages.
+     */
+    public void offerEndResend() throws GapDetectedException {
+        if (!keepWhilePaused(this::endResend)) {
+            endResend();
+        }
+    }
+
+    private boolean keepWhilePaused(Runnable resend) {
+        synchronized (pauseLock) {
+            if (deliveryPaused) {
+                keptResends.add(resend);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Called by the delivery lane when it has drained. Handles the resent messages kept while paused, and then
+     * the first and the last message discarded from each chain, so that the chain requests the messages between
+     * them and the last message it received like a gap, even if the publisher has gone quiet. The messages
+     * without a previous message reference can't be requested, so the ones discarded before the last one are
+     * reported as lost.
+     */
+    public void resumeDelivery() throws GapDetectedException, UnsupportedMessageException {
+        List<DiscardedMessages> replay;
+        while (true) {
+            Runnable resend;
+            synchronized (pauseLock) {
+                resend = keptResends.poll();
+                if (resend == null) {
+                    deliveryPaused = false;
+                    replay = new ArrayList<>(discarded.values());
+                    discarded.clear();
+                    break;
+                }
+            }
+            // Still paused, so the resent messages arriving meanwhile are kept behind these
+            try {
+                resend.run();
+            } catch (RuntimeException e) {
+                log.error("Failed to handle a resent message of stream " + streamId + " partition " + partition, e);
+            }
+        }
+        for (DiscardedMessages chain : replay) {
+            if (chain.last.getPreviousMessageRef() != null) {
+                if (chain.count > 1) {
+                    handleRealTimeMessage(chain.first);
+                }
+                handleRealTimeMessage(chain.last);
+            } else {
+                handleRealTimeMessage(chain.last);
+                if (chain.count > 1) {
+                    onMessagesLost(chain.last.getPublisherId(), chain.last.getMsgChainId(), chain.count - 1);
+                }
+            }
+        }
+    }
+
+    protected void onMessagesLost(Address publisherId, String msgChainId, int count) {
+        handler.onMessagesLost(this, publisherId, msgChainId, count);
+    }
+
     public abstract boolean isResending();
 
     public abstract void setResending(boolean resending);
@@ -93,4 +236,41 @@ public abstract class Subscription {
     public abstract void onNewKeysAdded(Address publisherId, Collection<GroupKey> groupKeys);
 
     public abstract void clear();
+
+    /**
+     * Sets where the subscription reports the decryption and handler latencies and the detected gaps.
+     */
+    public abstract void setMetrics(Metrics metrics);
+
+    /**
+     * Sets the pool which limits the memory used by the messages waiting for gaps before them to be filled.
+     */
+    public abstract void setReorderBufferPool(ReorderBufferPool reorderBufferPool);
+
+    /**
+     * Sets how the gap timeouts adapt to the observed delivery of each publisher.
+     */
+    public abstract void setAdaptiveTimeoutOptions(AdaptiveTimeoutOptions adaptiveTimeoutOptions);
+
+    /**
+     * Returns the number of messages waiting for gaps before them to be filled.
+     */
+    public abstract int getQueuedMessageCount();
+
+    /**
+     * Returns the number of messages waiting for their group keys.
+     */
+    public abstract int getDecryptionQueueSize();
+
+    public abstract int getPendingGroupKeyRequestCount();
+
+    private static class DiscardedMessages {
+        final StreamMessage first;
+        StreamMessage last;
+        int count = 0;
+
+        DiscardedMessages(StreamMessage first) {
+            this.first = first;
+        }
+    }
 }
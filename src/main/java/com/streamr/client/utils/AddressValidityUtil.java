@@ -1,9 +1,12 @@
 package com.streamr.client.utils;
 
+import com.streamr.client.metrics.Counter;
+import com.streamr.client.metrics.Metrics;
 import org.cache2k.Cache;
 import org.cache2k.Cache2kBuilder;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -17,16 +20,19 @@ public class AddressValidityUtil {
     private static final int CACHE_EXPIRATION = 30; // in minutes
 
     private final HashMap<String, HashSet<Address>> localSubscribersSets = new HashMap<>();
-    private final Cache<String, HashMap<Address, Boolean>> subscribersPerStreamId = new Cache2kBuilder<String, HashMap<Address, Boolean>>() {}
+    private final Cache<String, Map<Address, Boolean>> subscribersPerStreamId = new Cache2kBuilder<String, Map<Address, Boolean>>() {}
             .expireAfterWrite(CACHE_EXPIRATION, TimeUnit.MINUTES).build();
     private final Function<String, List<Address>> getSubscribersFunction;
     private final BiFunction<String, Address, Boolean> isSubscriberFunction;
 
-    private final Cache<String, HashMap<Address, Boolean>> publishersPerStreamId = new Cache2kBuilder<String, HashMap<Address, Boolean>>() {}
+    private final Cache<String, Map<Address, Boolean>> publishersPerStreamId = new Cache2kBuilder<String, Map<Address, Boolean>>() {}
             .expireAfterWrite(CACHE_EXPIRATION, TimeUnit.MINUTES).build();
     private final Function<String, List<Address>> getPublishersFunction;
     private final BiFunction<String, Address, Boolean> isPublisherFunction;
 
+    private Counter cacheHits = Counter.NOOP;
+    private Counter cacheMisses = Counter.NOOP;
+
     /**
      *
      * @param getSubscribersFunction (streamId)
@@ -66,16 +72,38 @@ public class AddressValidityUtil {
         return isValid(streamId, publisherId, this::getPublishers, isPublisherFunction);
     }
 
+    /**
+     * Stores a publisher list fetched ahead of time, replacing any previously cached list for the stream.
+     */
+    public void cachePublishers(String streamId, List<Address> publishers) {
+        Map<Address, Boolean> addresses = new ConcurrentHashMap<>();
+        for (Address address: publishers) {
+            addresses.put(address, true);
+        }
+        safeGetCache(publishersPerStreamId).put(streamId, addresses);
+    }
+
+    /**
+     * Sets where the hits and misses of the cached publisher and subscriber lookups are counted.
+     */
+    public void setMetrics(Metrics metrics) {
+        cacheHits = metrics.counter("addressValidity.cache.hits");
+        cacheMisses = metrics.counter("addressValidity.cache.misses");
+    }
+
     public void clearAndClose() {
         subscribersPerStreamId.clearAndClose();
         publishersPerStreamId.clearAndClose();
     }
 
-    private static boolean isValid(String streamId, Address address, Function<String, HashMap<Address, Boolean>> getAddresses,
+    private boolean isValid(String streamId, Address address, Function<String, Map<Address, Boolean>> getAddresses,
                             BiFunction<String, Address, Boolean> isFunction) {
         // check the local cache
         Boolean valid = getAddresses.apply(streamId).get(address);
-        if (valid == null) { // cache miss
+        if (valid != null) {
+            cacheHits.inc();
+        } else { // cache miss
+            cacheMisses.inc();
             valid = isFunction.apply(streamId, address);
             // update cache
             getAddresses.apply(streamId).put(address, valid);
@@ -83,19 +111,19 @@ public class AddressValidityUtil {
         return valid;
     }
 
-    private HashMap<Address, Boolean> getSubscribers(String streamId) {
+    private Map<Address, Boolean> getSubscribers(String streamId) {
         return getAddresses(streamId, subscribersPerStreamId, getSubscribersFunction);
     }
 
-    private HashMap<Address, Boolean> getPublishers(String streamId) {
+    private Map<Address, Boolean> getPublishers(String streamId) {
         return getAddresses(streamId, publishersPerStreamId, getPublishersFunction);
     }
 
-    private HashMap<Address, Boolean> getAddresses(String streamId, Cache<String, HashMap<Address, Boolean>> cache,
+    private Map<Address, Boolean> getAddresses(String streamId, Cache<String, Map<Address, Boolean>> cache,
                                                   Function<String, List<Address>> getFunction) {
-        HashMap<Address, Boolean> addresses = safeGetCache(cache).get(streamId);
+        Map<Address, Boolean> addresses = safeGetCache(cache).get(streamId);
         if (addresses == null) {
-            addresses = new HashMap<>();
+            addresses = new ConcurrentHashMap<>();
             for (Address address: getFunction.apply(streamId)) {
                 addresses.put(address, true);
             }
@@ -104,9 +132,9 @@ public class AddressValidityUtil {
         return addresses;
     }
 
-    private static Cache<String, HashMap<Address, Boolean>> safeGetCache(Cache<String, HashMap<Address, Boolean>> cache) {
+    private static Cache<String, Map<Address, Boolean>> safeGetCache(Cache<String, Map<Address, Boolean>> cache) {
         if (cache.isClosed()) {
-            cache = new Cache2kBuilder<String, HashMap<Address, Boolean>>() {}
+            cache = new Cache2kBuilder<String, Map<Address, Boolean>>() {}
                     .expireAfterWrite(CACHE_EXPIRATION, TimeUnit.MINUTES).build();
         }
         return cache;
@@ -0,0 +1,51 @@
+package com.streamr.client.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Delays between retries, for example reconnect attempts. The first retry is immediate, after which the delay
+ * doubles from initialDelayMillis up to maxDelayMillis. The delays are randomized by +-20%, so that many clients
+ * which lost their connections at the same time don't all retry at the same time.
+ *
+ * This class is not thread-safe.
+ */
+public class Backoff {
+    private static final double JITTER = 0.2;
+
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private int attempts = 0;
+
+    public Backoff(long initialDelayMillis, long maxDelayMillis) {
+        this.initialDelayMillis = Math.min(initialDelayMillis, maxDelayMillis);
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * Returns the delay before the next retry, and counts it as made.
+     */
+    public long nextDelay() {
+        int attempt = attempts++;
+        if (attempt == 0) {
+            return 0;
+        }
+        long delay = initialDelayMillis;
+        for (int i = 1; i < attempt && delay < maxDelayMillis; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, maxDelayMillis);
+        double jitter = 1 + JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return (long) (delay * jitter);
+    }
+
+    /**
+     * Called when a retry succeeds, so that the next retry is again immediate.
+     */
+    public void reset() {
+        attempts = 0;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+}
@@ -0,0 +1,40 @@
+package com.streamr.client.utils;
+
+/**
+ * Jump consistent hash (Lamping and Veach, "A Fast, Minimal Memory, Consistent Hash Algorithm", 2014). Maps keys
+ * to buckets evenly, and when the number of buckets changes from n to n + 1, only 1 / (n + 1) of the keys move,
+ * all of them to the new bucket. It needs no state besides the number of buckets.
+ */
+public class ConsistentHash {
+
+    private ConsistentHash() {}
+
+    /**
+     * Returns the bucket of the key, between 0 (inclusive) and buckets (exclusive).
+     */
+    public static int bucket(long key, int buckets) {
+        if (buckets < 1) {
+            throw new IllegalArgumentException("Number of buckets must be positive: " + buckets);
+        }
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+    /**
+     * Returns the bucket of the stream partition.
+     */
+    public static int bucket(String streamId, int partition, int buckets) {
+        // Spread the bits of the 32-bit hash over the 64-bit key, as the jumps depend mostly on the high bits
+        long key = 31L * streamId.hashCode() + partition;
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return bucket(key, buckets);
+    }
+}
@@ -5,6 +5,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Utility class for queuing encrypted messages while waiting for their
@@ -16,6 +17,8 @@ public class DecryptionQueues {
     private final Map<Address, Map<String, ArrayDeque<StreamMessage>>> msgChainsByPublisher = new HashMap<>();
     private final String streamId;
     private final int partition;
+    // Kept separately so that it can be read from other threads
+    private final AtomicInteger size = new AtomicInteger();
 
     public DecryptionQueues(String streamId, int partition) {
         this.streamId = streamId;
@@ -39,6 +42,7 @@ public class DecryptionQueues {
 
     public void add(StreamMessage msg) {
         getQueue(msg.getPublisherId(), msg.getMsgChainId()).offer(msg);
+        size.incrementAndGet();
         log.trace("Message added to encryption queue: stream {}, partition {}, publisher {}, msgChain {}, ref {}",
                 msg.getStreamId(), msg.getStreamPartition(), msg.getPublisherId(), msg.getMsgChainId(), msg.getMessageRef());
     }
@@ -79,10 +83,18 @@ public class DecryptionQueues {
             msgChainsByPublisher.remove(publisherId);
         }
 
+        size.addAndGet(-unlockedMessages.size());
         return unlockedMessages;
     }
 
     public boolean isEmpty() {
         return msgChainsByPublisher.isEmpty();
     }
+
+    /**
+     * Returns the number of queued messages.
+     */
+    public int size() {
+        return size.get();
+    }
 }
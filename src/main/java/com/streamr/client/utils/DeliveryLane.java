@@ -0,0 +1,197 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.metrics.Metrics;
+import com.streamr.client.metrics.Timer;
+import com.streamr.client.options.DeliveryOptions;
+import com.streamr.client.subs.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the deliveries of messages to MessageHandlers one at a time in the order they were queued, on a thread
+ * of the executor while there are deliveries queued. The queued messages are limited by the capacity, and the
+ * OverflowPolicy applies when a message is offered to a full lane. Notifications, such as done(), are queued
+ * in order with the messages but don't count toward the capacity.
+ *
+ * Messages are offered by the message handlers of the subscriptions, which are called while holding the locks of
+ * the subscription and its message chains. A handler running on the lane may need those locks too, for example
+ * to unsubscribe, so offer() never waits. Instead, the receiving thread calls awaitCapacity() before passing a
+ * message to its subscription. A message which fills a gap may release more messages queued behind it, so the
+ * lane may exceed its capacity by those.
+ */
+public class DeliveryLane {
+    private static final Logger log = LoggerFactory.getLogger(DeliveryLane.class);
+
+    private final String name;
+    private final int capacity;
+    private final DeliveryOptions.OverflowPolicy overflowPolicy;
+    private final Executor executor;
+    private final Metrics metrics;
+    private final Timer waitTimer;
+
+    // Guarded by this
+    private final ArrayDeque<Delivery> queue = new ArrayDeque<>();
+    private int queuedMessages = 0;
+    private final List<Subscription> paused = new ArrayList<>();
+    private boolean draining = false;
+    private Thread drainThread = null;
+
+    public DeliveryLane(String name, int capacity, DeliveryOptions.OverflowPolicy overflowPolicy, Executor executor, Metrics metrics) {
+        this.name = name;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.executor = executor;
+        this.metrics = metrics;
+        this.waitTimer = metrics.timer("delivery.wait");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Waits until the lane has room for a message, with the BLOCK policy. Must be called without holding the
+     * locks of the subscriptions. The handlers of the lane itself never wait.
+     */
+    public synchronized void awaitCapacity() {
+        if (Thread.currentThread() == drainThread || overflowPolicy != DeliveryOptions.OverflowPolicy.BLOCK) {
+            return;
+        }
+        while (queuedMessages >= capacity) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Queues the delivery of a message of the subscription, without waiting. Returns false if the lane is full
+     * and the message was dropped. With the PAUSE policy, the message is queued even if the lane is full, and the
+     * subscription is paused. With the BLOCK policy, the message is queued even if the lane is full, see
+     * awaitCapacity().
+     */
+    public synchronized boolean offer(Subscription sub, Runnable delivery) {
+        if (queuedMessages >= capacity && Thread.currentThread() != drainThread) {
+            if (overflowPolicy == DeliveryOptions.OverflowPolicy.DROP) {
+                metrics.counter("delivery.dropped", sub.getStreamId()).inc();
+                return false;
+            } else if (overflowPolicy == DeliveryOptions.OverflowPolicy.PAUSE && !sub.isDeliveryPaused()) {
+                log.warn("Delivery lane {} is full, pausing the subscription to stream {} partition {}",
+                        name, sub.getStreamId(), sub.getPartition());
+                metrics.counter("delivery.paused", sub.getStreamId()).inc();
+                sub.pauseDelivery();
+                paused.add(sub);
+            }
+        }
+        queuedMessages++;
+        enqueue(new Delivery(delivery, true));
+        return true;
+    }
+
+    /**
+     * Queues a notification, which is run in order with the messages regardless of the capacity.
+     */
+    public synchronized void add(Runnable notification) {
+        enqueue(new Delivery(notification, false));
+    }
+
+    /**
+     * Returns the number of messages waiting for delivery.
+     */
+    public synchronized int getDepth() {
+        return queuedMessages;
+    }
+
+    /**
+     * Returns how long the oldest message or notification waiting for delivery has waited, or 0 if none are.
+     */
+    public synchronized long getLagMillis() {
+        Delivery oldest = queue.peek();
+        return oldest == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.queuedAt);
+    }
+
+    private void enqueue(Delivery delivery) {
+        queue.add(delivery);
+        if (!draining) {
+            draining = true;
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // The client has been closed
+                log.debug("Delivery lane {} has been shut down, dropping {} deliveries", name, queue.size());
+                queue.clear();
+                queuedMessages = 0;
+                draining = false;
+            }
+        }
+    }
+
+    private void drain() {
+        synchronized (this) {
+            drainThread = Thread.currentThread();
+        }
+        while (true) {
+            Delivery delivery;
+            List<Subscription> resumed = null;
+            synchronized (this) {
+                delivery = queue.poll();
+                if (delivery == null) {
+                    draining = false;
+                    drainThread = null;
+                    return;
+                }
+                if (delivery.isMessage) {
+                    queuedMessages--;
+                    notifyAll();
+                    if (!paused.isEmpty() && queuedMessages <= capacity / 2) {
+                        resumed = new ArrayList<>(paused);
+                        paused.clear();
+                    }
+                }
+            }
+            if (resumed != null) {
+                resume(resumed);
+            }
+            waitTimer.record(System.nanoTime() - delivery.queuedAt);
+            try {
+                delivery.task.run();
+            } catch (RuntimeException e) {
+                log.error("Error in the message handler of delivery lane " + name, e);
+            }
+        }
+    }
+
+    // Outside the lock, as resuming hands the kept messages to the subscriptions, which queue them on this lane
+    private void resume(List<Subscription> subs) {
+        for (Subscription sub : subs) {
+            log.info("Delivery lane {} has drained, resuming the subscription to stream {} partition {}",
+                    name, sub.getStreamId(), sub.getPartition());
+            try {
+                sub.resumeDelivery();
+            } catch (RuntimeException e) {
+                log.error("Failed to resume the subscription to stream " + sub.getStreamId() + " partition " + sub.getPartition(), e);
+            }
+        }
+    }
+
+    private static class Delivery {
+        final Runnable task;
+        final boolean isMessage;
+        final long queuedAt = System.nanoTime();
+
+        Delivery(Runnable task, boolean isMessage) {
+            this.task = task;
+            this.isMessage = isMessage;
+        }
+    }
+}
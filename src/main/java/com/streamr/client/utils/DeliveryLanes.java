@@ -0,0 +1,108 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.MessageHandler;
+import com.streamr.client.metrics.Metrics;
+import com.streamr.client.options.DeliveryOptions;
+
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The delivery lanes of a client by lane key, see DeliveryOptions. A lane is created when the first subscription
+ * using it is made, and forgotten when the last one is unsubscribed. The lanes run on a cached thread pool, so
+ * a lane occupies a thread only while it has messages to deliver, and a handler which blocks doesn't hold up
+ * the other lanes.
+ */
+public class DeliveryLanes {
+    private final DeliveryOptions options;
+    private final Metrics metrics;
+    private final ExecutorService executor;
+
+    // Guarded by this
+    private final HashMap<String, LaneRef> lanes = new HashMap<>();
+
+    public DeliveryLanes(DeliveryOptions options, Metrics metrics) {
+        this.options = options;
+        this.metrics = metrics;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "streamr-delivery-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns a handler which calls the given handler on the lane of the stream partition.
+     */
+    public synchronized LaneMessageHandler wrap(String streamId, int partition, MessageHandler handler) {
+        String key = getLaneKey(streamId, partition);
+        LaneRef ref = lanes.computeIfAbsent(key, k ->
+                new LaneRef(new DeliveryLane(k, options.getCapacity(), options.getOverflowPolicy(), executor, metrics)));
+        ref.users++;
+        return new LaneMessageHandler(handler, ref.lane);
+    }
+
+    /**
+     * Called when a subscription made with a handler from wrap() is unsubscribed. The queued messages are still
+     * delivered.
+     */
+    public synchronized void release(String streamId, int partition) {
+        String key = getLaneKey(streamId, partition);
+        LaneRef ref = lanes.get(key);
+        if (ref != null && --ref.users == 0) {
+            lanes.remove(key);
+        }
+    }
+
+    /**
+     * Stops the threads of the lanes once they have delivered the messages already queued.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public synchronized int getLaneCount() {
+        return lanes.size();
+    }
+
+    /**
+     * Returns the number of messages waiting for delivery in all the lanes.
+     */
+    public synchronized long getDepth() {
+        long depth = 0;
+        for (LaneRef ref : lanes.values()) {
+            depth += ref.lane.getDepth();
+        }
+        return depth;
+    }
+
+    /**
+     * Returns the longest time a message has been waiting for delivery in any lane.
+     */
+    public synchronized long getLagMillis() {
+        long lag = 0;
+        for (LaneRef ref : lanes.values()) {
+            lag = Math.max(lag, ref.lane.getLagMillis());
+        }
+        return lag;
+    }
+
+    private String getLaneKey(String streamId, int partition) {
+        if (options.getLaneKey() != null) {
+            return options.getLaneKey().apply(new StreamPartition(streamId, partition));
+        }
+        return streamId + "-" + partition;
+    }
+
+    private static class LaneRef {
+        final DeliveryLane lane;
+        int users = 0;
+
+        LaneRef(DeliveryLane lane) {
+            this.lane = lane;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.protocol.message_layer.MessageRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Supplier;
+
+/**
+ * Collects the gap fill requests of the message chains of a subscription and turns them into as few resend
+ * requests as possible. When many publishers lose messages at the same time, for example on a reconnect, each
+ * of their chains requests a gap fill at about the same time. Instead of sending a resend request for each
+ * right away:
+ *
+ * - the requests made within coalesceMillis of each other are sent together, and a chain which requests again
+ *   before that replaces its earlier request,
+ * - gaps already covered by a resend in flight for the same chain are not requested again, and
+ * - the number of resends in flight over all the subscriptions of the client is limited by a ResendLimiter.
+ *   While the limit has been reached, the pending requests wait until the limiter has room for them.
+ *
+ * The gaps of different chains are never merged, as their timestamps come from the clocks of different
+ * publishers, and a resend of all publishers would ask the storage for far more than is missing.
+ *
+ * Use the coordinator as the GapHandlerFunction of the subscription.
+ */
+public class GapFillCoordinator implements OrderedMsgChain.GapHandlerFunction {
+    private static final Logger log = LoggerFactory.getLogger(GapFillCoordinator.class);
+
+    private final ResendLimiter limiter;
+    private final long coalesceMillis;
+    private final Supplier<String> requestIds;
+    private final ResendRangeSender sender;
+
+    // Guarded by this. The latest request of each chain which has not been sent yet.
+    private final LinkedHashMap<ChainId, Gap> pending = new LinkedHashMap<>();
+    private final List<Gap> inFlight = new ArrayList<>();
+    private ScheduledFuture<?> flush = null;
+    private boolean waitingForLimiter = false;
+
+    public GapFillCoordinator(ResendLimiter limiter, long coalesceMillis, Supplier<String> requestIds, ResendRangeSender sender) {
+        this.limiter = limiter;
+        this.coalesceMillis = coalesceMillis;
+        this.requestIds = requestIds;
+        this.sender = sender;
+    }
+
+    @Override
+    public void apply(MessageRef from, MessageRef to, Address publisherId, String msgChainId) {
+        request(from, to, publisherId, msgChainId);
+    }
+
+    @Override
+    public boolean tryApply(MessageRef from, MessageRef to, Address publisherId, String msgChainId) {
+        return request(from, to, publisherId, msgChainId);
+    }
+
+    /**
+     * Requests the gap of a chain to be filled.
+     *
+     * @return false if the gap is already covered by a resend in flight, so nothing was requested
+     */
+    public synchronized boolean request(MessageRef from, MessageRef to, Address publisherId, String msgChainId) {
+        Gap gap = new Gap(from, to, publisherId, msgChainId);
+        for (Gap sent : inFlight) {
+            if (sent.covers(gap)) {
+                log.debug("Gap {}..{} of publisher {} msgChainId {} is already being filled", from, to, publisherId, msgChainId);
+                return false;
+            }
+        }
+        pending.put(new ChainId(publisherId, msgChainId), gap);
+        if (flush == null && !waitingForLimiter) {
+            flush = SharedScheduler.schedule(this::flush, coalesceMillis);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of gaps waiting to be requested.
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Drops the pending gaps and releases the limiter permits of the resends in flight, as their responses are
+     * no longer handled once the subscription has been cleared.
+     */
+    @Override
+    public void clear() {
+        List<Gap> sent;
+        synchronized (this) {
+            if (flush != null) {
+                flush.cancel(false);
+                flush = null;
+            }
+            waitingForLimiter = false;
+            pending.clear();
+            sent = new ArrayList<>(inFlight);
+            inFlight.clear();
+        }
+        // Outside the lock, as completing a resend calls back to this and to the coordinators waiting for a permit
+        for (Gap gap : sent) {
+            limiter.complete(gap.requestId);
+        }
+    }
+
+    void flush() {
+        List<Gap> toSend = new ArrayList<>();
+        synchronized (this) {
+            flush = null;
+            waitingForLimiter = false;
+            // Resends sent by earlier flushes may cover gaps requested after them
+            pending.values().removeIf(gap -> inFlight.stream().anyMatch(sent -> sent.covers(gap)));
+            Iterator<Gap> it = pending.values().iterator();
+            while (it.hasNext()) {
+                Gap gap = it.next();
+                String requestId = requestIds.get();
+                // If the limit has been reached, flush again with whatever is still pending once a resend completes
+                if (!limiter.tryAcquire(requestId, () -> onDone(requestId), this::onLimiterAvailable)) {
+                    waitingForLimiter = true;
+                    break;
+                }
+                gap.requestId = requestId;
+                inFlight.add(gap);
+                toSend.add(gap);
+                it.remove();
+            }
+        }
+        // Send outside the lock, as sending may block
+        for (Gap gap : toSend) {
+            try {
+                sender.send(gap.requestId, gap.from, gap.to, gap.publisherId, gap.msgChainId);
+            } catch (RuntimeException e) {
+                // Nothing will answer the request, so free its permit. The chain requests the gap again later.
+                log.warn("Failed to send resend request {} for publisher {} msgChainId {}", gap.requestId, gap.publisherId, gap.msgChainId, e);
+                limiter.complete(gap.requestId);
+            }
+        }
+    }
+
+    private synchronized void onLimiterAvailable() {
+        if (flush == null) {
+            // On a worker thread, as sending may block and this is called by whoever completes a resend
+            flush = SharedScheduler.schedule(this::flush, 0);
+        }
+    }
+
+    private synchronized void onDone(String requestId) {
+        inFlight.removeIf(gap -> gap.requestId.equals(requestId));
+    }
+
+    @FunctionalInterface
+    public interface ResendRangeSender {
+        /**
+         * Sends a resend range request for the messages of one chain.
+         */
+        void send(String requestId, MessageRef from, MessageRef to, Address publisherId, String msgChainId);
+    }
+
+    static class Gap {
+        final MessageRef from;
+        final MessageRef to;
+        final Address publisherId;
+        final String msgChainId;
+        String requestId;
+
+        Gap(MessageRef from, MessageRef to, Address publisherId, String msgChainId) {
+            this.from = from;
+            this.to = to;
+            this.publisherId = publisherId;
+            this.msgChainId = msgChainId;
+        }
+
+        boolean covers(Gap other) {
+            return Objects.equals(publisherId, other.publisherId) && Objects.equals(msgChainId, other.msgChainId)
+                    && from.compareTo(other.from) <= 0 && to.compareTo(other.to) >= 0;
+        }
+    }
+
+    private static final class ChainId {
+        private final Address publisherId;
+        private final String msgChainId;
+
+        ChainId(Address publisherId, String msgChainId) {
+            this.publisherId = publisherId;
+            this.msgChainId = msgChainId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ChainId)) return false;
+            ChainId other = (ChainId) o;
+            return Objects.equals(publisherId, other.publisherId) && Objects.equals(msgChainId, other.msgChainId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(publisherId) + Objects.hashCode(msgChainId);
+        }
+    }
+}
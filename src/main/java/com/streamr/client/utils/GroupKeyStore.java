@@ -4,14 +4,14 @@ import com.streamr.client.exceptions.KeyAlreadyExistsException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class GroupKeyStore {
 
     private static final Logger log = LoggerFactory.getLogger(GroupKeyStore.class);
 
-    private final Map<String, GroupKey> currentKey = new HashMap<>();
+    private final Map<String, GroupKey> currentKey = new ConcurrentHashMap<>();
 
     /**
      * Returns the most recently added key for streamId.
@@ -2,18 +2,17 @@ package com.streamr.client.utils;
 
 import com.streamr.client.exceptions.KeyAlreadyExistsException;
 
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * A simple GroupKeyStore implementation that stores the added keys in a HashMap.
+ * A simple GroupKeyStore implementation that stores the added keys in a ConcurrentHashMap.
  */
 public class InMemoryGroupKeyStore extends GroupKeyStore {
 
-    private final Map<String, Map<String, GroupKey>> keysByStreamId = new HashMap<>();
-    private final Set<String> containedGroupKeyIds = new HashSet<>();
+    private final Map<String, Map<String, GroupKey>> keysByStreamId = new ConcurrentHashMap<>();
+    private final Set<String> containedGroupKeyIds = ConcurrentHashMap.newKeySet();
 
     @Override
     public GroupKey get(String streamId, String groupKeyId) {
@@ -31,11 +30,7 @@ public class InMemoryGroupKeyStore extends GroupKeyStore {
 
     @Override
     public void storeKey(String streamId, GroupKey key) throws KeyAlreadyExistsException {
-        Map<String, GroupKey> keyByGroupKeyId = keysByStreamId.get(streamId);
-        if (keyByGroupKeyId == null) {
-            keyByGroupKeyId = new HashMap<>();
-            keysByStreamId.put(streamId, keyByGroupKeyId);
-        }
+        Map<String, GroupKey> keyByGroupKeyId = keysByStreamId.computeIfAbsent(streamId, id -> new ConcurrentHashMap<>());
         keyByGroupKeyId.put(key.getGroupKeyId(), key);
         containedGroupKeyIds.add(key.getGroupKeyId());
     }
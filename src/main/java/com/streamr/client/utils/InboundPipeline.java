@@ -0,0 +1,208 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.options.InboundPipelineOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Processes raw messages in stages so that the thread calling submit() (the websocket reader) only needs to
+ * enqueue them:
+ *
+ * 1. Parsing runs on a pool of parser threads. Parsed messages are collected back into arrival order.
+ * 2. A dispatcher thread routes each parsed message to a lane chosen by the lane selector.
+ * 3. Each lane is a single thread which runs the handler (validation, ordering, decryption and delivery)
+ *    for its messages in arrival order.
+ *
+ * Messages which map to the same lane are therefore handled in the order they were submitted. All queues
+ * are bounded, so a slow lane eventually blocks submit().
+ *
+ * @param <R> type of the raw messages
+ * @param <T> type of the parsed messages
+ */
+public class InboundPipeline<R, T> {
+    private static final Logger log = LoggerFactory.getLogger(InboundPipeline.class);
+    private static final AtomicInteger pipelineCounter = new AtomicInteger();
+
+    private final Function<R, T> parser;
+    private final ToIntFunction<T> laneSelector;
+    private final Consumer<T> handler;
+    private final ExecutorService parserPool;
+    private final BlockingQueue<FutureTask<T>> inArrivalOrder;
+    private final Thread dispatcher;
+    private final List<Lane> lanes;
+    // How often a submit() blocked on a full pipeline checks whether the pipeline has been shut down
+    private static final long SUBMIT_POLL_MILLIS = 100;
+    private volatile boolean running = true;
+
+    /**
+     * @param parser converts a raw message to T. Should return null for messages that can't be parsed.
+     * @param laneSelector (message) returns a hash which determines the lane of the message
+     * @param handler called for each parsed message on the thread of its lane
+     */
+    public InboundPipeline(InboundPipelineOptions options, Function<R, T> parser, ToIntFunction<T> laneSelector, Consumer<T> handler) {
+        if (options.getParserThreads() < 1 || options.getLanes() < 1 || options.getQueueCapacity() < 1) {
+            throw new IllegalArgumentException("Parser threads, lanes and queue capacity must be positive!");
+        }
+        this.parser = parser;
+        this.laneSelector = laneSelector;
+        this.handler = handler;
+
+        String name = "streamr-inbound-" + pipelineCounter.incrementAndGet();
+        parserPool = Executors.newFixedThreadPool(options.getParserThreads(), daemonThreadFactory(name + "-parser"));
+        inArrivalOrder = new ArrayBlockingQueue<>(options.getQueueCapacity());
+
+        lanes = new ArrayList<>(options.getLanes());
+        for (int i = 0; i < options.getLanes(); i++) {
+            Lane lane = new Lane(name + "-lane-" + i, options.getQueueCapacity());
+            lanes.add(lane);
+            lane.start();
+        }
+
+        dispatcher = new Thread(this::dispatch, name + "-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Enqueues a raw message for processing. Blocks if the pipeline is full, until there is space or the
+     * pipeline is shut down.
+     */
+    public void submit(R raw) {
+        FutureTask<T> task = new FutureTask<>(() -> parser.apply(raw));
+        try {
+            // Reserve the slot before parsing starts so that the parsed results can be dispatched in arrival order
+            do {
+                if (!running) {
+                    log.warn("Pipeline is shut down, dropping message: " + raw);
+                    return;
+                }
+            } while (!inArrivalOrder.offer(task, SUBMIT_POLL_MILLIS, TimeUnit.MILLISECONDS));
+            parserPool.execute(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // The parser pool has been shut down
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Stops all the threads of the pipeline. Messages still in the pipeline are dropped.
+     */
+    public void shutdown() {
+        running = false;
+        parserPool.shutdownNow();
+        dispatcher.interrupt();
+        // Wakes up the producers blocked on a full pipeline
+        inArrivalOrder.clear();
+        for (Lane lane : lanes) {
+            lane.interrupt();
+        }
+    }
+
+    /**
+     * Waits for the threads of the pipeline to exit after shutdown(). A lane exits once its handler returns.
+     *
+     * @return true if all the threads exited within the timeout
+     */
+    public boolean awaitTermination(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        List<Thread> threads = new ArrayList<>(lanes);
+        threads.add(dispatcher);
+        for (Thread thread : threads) {
+            thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            if (thread.isAlive()) {
+                return false;
+            }
+        }
+        return parserPool.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns the number of messages currently waiting in the pipeline.
+     */
+    public int size() {
+        int size = inArrivalOrder.size();
+        for (Lane lane : lanes) {
+            size += lane.queue.size();
+        }
+        return size;
+    }
+
+    private void dispatch() {
+        while (running) {
+            try {
+                FutureTask<T> task = inArrivalOrder.take();
+                T message;
+                try {
+                    message = task.get();
+                } catch (ExecutionException e) {
+                    log.error("Error while parsing message", e.getCause());
+                    continue;
+                }
+                if (message != null) {
+                    lanes.get(Math.floorMod(laneSelector.applyAsInt(message), lanes.size())).queue.put(message);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                log.error("Error while dispatching message", e);
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + counter.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private class Lane extends Thread {
+        private final BlockingQueue<T> queue;
+
+        Lane(String name, int capacity) {
+            super(name);
+            setDaemon(true);
+            queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                T message;
+                try {
+                    message = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    handler.accept(message);
+                } catch (Exception e) {
+                    log.error("Error while handling message: " + message, e);
+                }
+            }
+        }
+    }
+}
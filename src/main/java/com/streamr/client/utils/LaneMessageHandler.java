@@ -0,0 +1,89 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.MessageHandler;
+import com.streamr.client.exceptions.UnableToDecryptException;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import com.streamr.client.subs.Subscription;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Calls the wrapped MessageHandler on a DeliveryLane. The messages dropped because the lane was full are
+ * reported to onMessagesLost() by chain, once per run of drops rather than for each message.
+ */
+public class LaneMessageHandler implements MessageHandler {
+    private final MessageHandler handler;
+    private final DeliveryLane lane;
+    // The subscription paused by the PAUSE policy: the one the client looks up for the real-time messages
+    private volatile Subscription subscription;
+    // Guarded by itself
+    private final LinkedHashMap<String, LostMessages> lost = new LinkedHashMap<>();
+
+    public LaneMessageHandler(MessageHandler handler, DeliveryLane lane) {
+        this.handler = handler;
+        this.lane = lane;
+    }
+
+    public void setSubscription(Subscription subscription) {
+        this.subscription = subscription;
+    }
+
+    public DeliveryLane getLane() {
+        return lane;
+    }
+
+    @Override
+    public void onMessage(Subscription sub, StreamMessage message) {
+        Subscription owner = subscription != null ? subscription : sub;
+        if (!lane.offer(owner, () -> handler.onMessage(sub, message))) {
+            synchronized (lost) {
+                if (lost.isEmpty()) {
+                    lane.add(this::reportLost);
+                }
+                String key = message.getPublisherId() + "-" + message.getMsgChainId();
+                lost.computeIfAbsent(key, k -> new LostMessages(sub, message.getPublisherId(), message.getMsgChainId())).count++;
+            }
+        }
+    }
+
+    @Override
+    public void done(Subscription sub) {
+        lane.add(() -> handler.done(sub));
+    }
+
+    @Override
+    public void onUnableToDecrypt(UnableToDecryptException e) {
+        lane.add(() -> handler.onUnableToDecrypt(e));
+    }
+
+    @Override
+    public void onMessagesLost(Subscription sub, Address publisherId, String msgChainId, int count) {
+        lane.add(() -> handler.onMessagesLost(sub, publisherId, msgChainId, count));
+    }
+
+    private void reportLost() {
+        List<LostMessages> report;
+        synchronized (lost) {
+            report = new ArrayList<>(lost.values());
+            lost.clear();
+        }
+        for (LostMessages l : report) {
+            handler.onMessagesLost(l.sub, l.publisherId, l.msgChainId, l.count);
+        }
+    }
+
+    private static class LostMessages {
+        final Subscription sub;
+        final Address publisherId;
+        final String msgChainId;
+        int count = 0;
+
+        LostMessages(Subscription sub, Address publisherId, String msgChainId) {
+            this.sub = sub;
+            this.publisherId = publisherId;
+            this.msgChainId = msgChainId;
+        }
+    }
+}
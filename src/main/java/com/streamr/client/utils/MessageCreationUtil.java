@@ -13,6 +13,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.interfaces.RSAPublicKey;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -24,6 +25,10 @@ import java.util.stream.Collectors;
  *
  * Does NOT:
  * - Manage encryption keys
+ *
+ * Creating a StreamMessage is split into two steps: prepareStreamMessage() links the message to its chain, and
+ * sealStreamMessage() encrypts and signs it. Preparing must be done in the order the messages are published,
+ * but sealing is thread-safe and can be done for many messages in parallel.
  */
 public class MessageCreationUtil {
     private final Address publisherId;
@@ -32,7 +37,7 @@ public class MessageCreationUtil {
 
     private final HashMap<String, MessageRef> refsPerStreamAndPartition = new HashMap<>();
 
-    private final HashMap<String, Integer> cachedHashes = new HashMap<>();
+    private final Map<String, Integer> cachedHashes = new ConcurrentHashMap<>();
 
     public MessageCreationUtil(Address publisherId, SigningUtil signingUtil) {
         this.publisherId = publisherId;
@@ -49,11 +54,27 @@ public class MessageCreationUtil {
     }
 
     public StreamMessage createStreamMessage(Stream stream, Map<String, Object> payload, Date timestamp, @Nullable String partitionKey, @Nullable GroupKey groupKey, @Nullable GroupKey newGroupKey) {
+        StreamMessage streamMessage = prepareStreamMessage(stream, payload, timestamp, partitionKey);
+        sealStreamMessage(streamMessage, groupKey, newGroupKey);
+        return streamMessage;
+    }
+
+    /**
+     * Creates a StreamMessage which is linked to the previous message in its chain, but not encrypted or signed.
+     * The message must be passed to sealStreamMessage() before publishing.
+     */
+    public StreamMessage prepareStreamMessage(Stream stream, Map<String, Object> payload, Date timestamp, @Nullable String partitionKey) {
         int streamPartition = getStreamPartition(stream.getPartitions(), partitionKey);
 
         Pair<MessageID, MessageRef> pair = createMsgIdAndRef(stream.getId(), streamPartition, timestamp.getTime());
-        StreamMessage streamMessage = new StreamMessage(pair.getLeft(), pair.getRight(), payload);
+        return new StreamMessage(pair.getLeft(), pair.getRight(), payload);
+    }
 
+    /**
+     * Encrypts (if groupKey is given) and signs (if this instance has a SigningUtil) a message created by
+     * prepareStreamMessage(). Can be called from multiple threads at the same time.
+     */
+    public void sealStreamMessage(StreamMessage streamMessage, @Nullable GroupKey groupKey, @Nullable GroupKey newGroupKey) {
         // Encrypt content if the GroupKey is provided
         if (groupKey != null) {
             try {
@@ -72,7 +93,6 @@ public class MessageCreationUtil {
         if (signingUtil != null) {
             signingUtil.signStreamMessage(streamMessage);
         }
-        return streamMessage;
     }
 
     public StreamMessage createGroupKeyRequest(Address publisherAddress, String streamId, String rsaPublicKey, List<String> groupKeyIds) {
@@ -208,7 +228,7 @@ public class MessageCreationUtil {
         }
     }
 
-    private Pair<MessageID, MessageRef> createMsgIdAndRef(String streamId, int streamPartition, long timestamp) {
+    private synchronized Pair<MessageID, MessageRef> createMsgIdAndRef(String streamId, int streamPartition, long timestamp) {
         String key = streamId + streamPartition;
         long sequenceNumber = getNextSequenceNumber(key, timestamp);
         MessageID msgId = new MessageID(streamId, streamPartition, timestamp, sequenceNumber, publisherId, msgChainId);
@@ -1,20 +1,29 @@
 package com.streamr.client.utils;
 
 import com.streamr.client.exceptions.GapFillFailedException;
+import com.streamr.client.metrics.Counter;
+import com.streamr.client.options.ReorderBufferOptions;
 import com.streamr.client.protocol.message_layer.MessageRef;
 import com.streamr.client.protocol.message_layer.StreamMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class OrderedMsgChain {
     private static final Logger log = LoggerFactory.getLogger(OrderedMsgChain.class);
     private static final int MAX_GAP_REQUESTS = 10;
-
-    static final int MAX_QUEUE_SIZE = 10000;
+    // The delay between gap fill requests doubles from resendTimeout up to 2^MAX_BACKOFF_SHIFT times resendTimeout
+    private static final int MAX_BACKOFF_SHIFT = 2;
+    // The delays are randomized by up to this fraction, so that chains which detected their gaps at the same
+    // time, for example after a reconnect, don't retry in lockstep
+    private static final double BACKOFF_JITTER = 0.2;
+    // Used by the chains which are not part of a client, so all the chains created by a client share its pool
+    private static final ReorderBufferPool DEFAULT_POOL = new ReorderBufferPool(ReorderBufferOptions.getDefault());
 
     private final Address publisherId;
     private final String msgChainId;
@@ -23,12 +32,18 @@ public class OrderedMsgChain {
     private final Function<GapFillFailedException, Void> gapFillFailedHandler;
     private final long propagationTimeout;
     private final long resendTimeout;
-    private final PriorityQueue<StreamMessage> queue;
+    private ReorderBuffer queue = new ReorderBuffer(DEFAULT_POOL);
     private MessageRef lastReceived = null;
-    private Timer gap = null;
+    private ScheduledFuture<?> gap = null;
     private int gapRequestCount = 0;
     private final boolean skipGapsOnFullQueue;
     private final GapFillFailedException gapException = null;
+    private volatile Counter gapCounter = Counter.NOOP;
+    private MessagesLostHandler messagesLostHandler = null;
+    // If set, the timeouts adapt to the observed delivery of the publisher, and the timeouts above are the maximums
+    private PublisherLatency latency = null;
+    private long gapDetectedAt;
+    private long firstGapRequestAt;
 
     public OrderedMsgChain(Address publisherId,
                            String msgChainId,
@@ -46,12 +61,6 @@ public class OrderedMsgChain {
         this.propagationTimeout = propagationTimeout;
         this.resendTimeout = resendTimeout;
         this.skipGapsOnFullQueue = skipGapsOnFullQueue;
-        queue = new PriorityQueue<>(new Comparator<StreamMessage>() {
-            @Override
-            public int compare(StreamMessage o1, StreamMessage o2) {
-                return o1.getMessageRef().compareTo(o2.getMessageRef());
-            }
-        });
     }
     public OrderedMsgChain(Address publisherId,
                            String msgChainId,
@@ -66,11 +75,16 @@ public class OrderedMsgChain {
     }
 
     public synchronized void add(StreamMessage unorderedMsg) {
-        MessageRef ref = unorderedMsg.getMessageRef();
-        if (lastReceived != null && ref.compareTo(lastReceived) <= 0) {
-            log.debug("Already received message: " + ref + ", lastReceivedMsgRef: " + lastReceived + ". Ignoring message.");
+        if (lastReceived != null && compareToLastReceived(unorderedMsg) <= 0) {
+            if (log.isDebugEnabled()) {
+                log.debug("Already received message: " + unorderedMsg.getMessageRef() + ", lastReceivedMsgRef: " + lastReceived + ". Ignoring message.");
+            }
             return;
         }
+        // Messages received while a gap fill is in progress may have been resent, and are not counted
+        if (latency != null && gapRequestCount == 0) {
+            latency.recordArrival(unorderedMsg.getTimestamp(), System.currentTimeMillis());
+        }
         if (isNextMessage(unorderedMsg)) {
             process(unorderedMsg);
             checkQueue();
@@ -78,28 +92,26 @@ public class OrderedMsgChain {
             if (gap == null) {
                 scheduleGap();
             }
-            // Prevent memory exhaustion under unusual conditions by limiting the queue size
-            if (queue.size() < MAX_QUEUE_SIZE) {
-                queue.offer(unorderedMsg);
-            } else {
-
-
+            // Prevent memory exhaustion under unusual conditions by limiting the size of the queue, see ReorderBufferOptions
+            if (!queue.offer(unorderedMsg)) {
                 // Form diagnosis string
-                List<StreamMessage> queueAsArrayList = new ArrayList<>(queue);
                 String diagnosisString = String.format(
-                        "Queue for %s::%d was (%s, ..., %s) and new message is %s",
+                        "Queue for %s::%d had %d messages starting from %s and new message is %s",
                         unorderedMsg.getStreamId(),
                         unorderedMsg.getStreamPartition(),
-                        queueAsArrayList.get(0).getMessageRef(),
-                        queueAsArrayList.get(queueAsArrayList.size() - 1).getMessageRef(),
+                        queue.size(),
+                        queue.peek().getMessageRef(),
                         unorderedMsg.getMessageRef()
                 );
 
                 if (skipGapsOnFullQueue) {
                     log.warn("Queue is full. Emptying and processing new message. " + diagnosisString);
                     clearGap();
-                    queue.clear();
+                    int lost = queue.clear();
                     process(unorderedMsg);
+                    if (messagesLostHandler != null) {
+                        messagesLostHandler.onMessagesLost(publisherId, msgChainId, lost);
+                    }
                 } else {
                     throw new IllegalStateException("Queue is full! Message." + diagnosisString);
                 }
@@ -109,9 +121,9 @@ public class OrderedMsgChain {
 
     synchronized void clearGap() {
         if (gap != null) {
-            gap.cancel();
-            gap.purge();
+            gap.cancel(false);
             gap = null;
+            gapRequestCount = 0;
             if (gapException != null) {
                 throw gapException;
             }
@@ -138,13 +150,99 @@ public class OrderedMsgChain {
         return lastReceived;
     }
 
+    /**
+     * Returns the number of messages waiting for the missing messages before them.
+     */
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the estimated memory used by the queued messages, not counting the spilled ones.
+     */
+    public synchronized long getQueueMemoryBytes() {
+        return queue.getMemoryBytes();
+    }
+
+    /**
+     * Returns the number of queued messages which have been spilled to disk.
+     */
+    public synchronized int getSpilledCount() {
+        return queue.getSpilledCount();
+    }
+
+    /**
+     * Sets the pool which limits the memory used by the queue. Must be called before any messages are queued.
+     */
+    public synchronized void setReorderBufferPool(ReorderBufferPool pool) {
+        if (queue.getPool() == pool) {
+            return;
+        }
+        if (!queue.isEmpty()) {
+            throw new IllegalStateException("Can't change the reorder buffer pool while messages are queued");
+        }
+        queue = new ReorderBuffer(pool);
+    }
+
+    /**
+     * Sets the handler which is called when queued messages are discarded because the queue is full.
+     */
+    public synchronized void setMessagesLostHandler(MessagesLostHandler messagesLostHandler) {
+        this.messagesLostHandler = messagesLostHandler;
+    }
+
+    /**
+     * Discards the queued messages, deletes the spill file and cancels the gap fill, if any.
+     *
+     * @return the number of discarded messages
+     */
+    synchronized int clear() {
+        clearGap();
+        return queue.close();
+    }
+
+    /**
+     * Removes the queued messages in order, deletes the spill file and cancels the gap fill, if any.
+     */
+    synchronized List<StreamMessage> drain() {
+        clearGap();
+        List<StreamMessage> drained = new ArrayList<>(queue.size());
+        StreamMessage msg;
+        while ((msg = queue.poll()) != null) {
+            drained.add(msg);
+        }
+        queue.close();
+        return drained;
+    }
+
+    /**
+     * Sets the delivery statistics of the publisher, from which the timeouts are derived. If null, the timeouts
+     * given to the constructor are used.
+     */
+    public synchronized void setPublisherLatency(PublisherLatency latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Sets the counter which is incremented when a gap is detected.
+     */
+    public void setGapCounter(Counter gapCounter) {
+        this.gapCounter = gapCounter;
+    }
+
     private boolean isNextMessage(StreamMessage msg) {
         boolean isFirstMessage = lastReceived == null;
         return isFirstMessage
             // is chained and next
             || (msg.getPreviousMessageRef() != null && msg.getPreviousMessageRef().compareTo(lastReceived) == 0)
             // is unchained and newer
-            || (msg.getPreviousMessageRef() == null && msg.getMessageRef().compareTo(lastReceived) > 0);
+            || (msg.getPreviousMessageRef() == null && compareToLastReceived(msg) > 0);
+    }
+
+    // Like msg.getMessageRef().compareTo(lastReceived), but without allocating a MessageRef
+    private int compareToLastReceived(StreamMessage msg) {
+        int result = Long.compare(msg.getTimestamp(), lastReceived.getTimestamp());
+        return result != 0 ? result : Long.compare(msg.getSequenceNumber(), lastReceived.getSequenceNumber());
     }
 
     private void checkQueue() {
@@ -154,9 +252,12 @@ public class OrderedMsgChain {
                 queue.poll();
 
                 // If the next message is found in the queue, any gap must have been filled, so clear the timer
+                if (gap != null) {
+                    recordGapFilled();
+                }
                 clearGap();
                 process(msg);
-            } else if (msg != null && lastReceived != null && msg.getMessageRef().compareTo(lastReceived) <= 0) {
+            } else if (msg != null && lastReceived != null && compareToLastReceived(msg) <= 0) {
                 // If there are old (already received) messages in the queue for any reason, remove them
                 queue.poll();
             } else {
@@ -171,70 +272,127 @@ public class OrderedMsgChain {
         inOrderHandler.accept(msg);
     }
 
+    private void recordGapFilled() {
+        if (latency == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (gapRequestCount == 0) {
+            // The first queued message has been taken from the queue already
+            latency.recordGapHealed(now - gapDetectedAt, queue.size() + 1);
+        } else {
+            latency.recordGapFilled(now - firstGapRequestAt, firstGapRequestAt - gapDetectedAt);
+        }
+    }
+
     private void scheduleGap() {
+        gapCounter.inc();
         gapRequestCount = 0;
-        gap = new Timer(true);
-        TimerTask task = new TimerTask() {
-            @Override
-            public void run() {
-                synchronized (OrderedMsgChain.this) {
-                    // Make sure nothing further can be processed from the queue
-                    checkQueue();
-
-                    // Make sure a gapfill is still scheduled and there is a queued message
-                    if (gap == null || queue.isEmpty()) {
-                        return;
-                    }
+        gapDetectedAt = System.currentTimeMillis();
+        GapFillTask task = new GapFillTask();
+        task.schedule(latency != null ? latency.getPropagationTimeout() : propagationTimeout);
+    }
 
-                    MessageRef from = new MessageRef(lastReceived.getTimestamp(), lastReceived.getSequenceNumber() + 1);
-                    MessageRef to = queue.peek().getPreviousMessageRef();
+    /**
+     * Returns the delay before the next gap fill request, after gapRequestCount requests have been made.
+     */
+    private long getRetryDelay() {
+        long timeout = latency != null ? latency.getResendTimeout() : resendTimeout;
+        long delay = timeout << Math.min(Math.max(gapRequestCount - 1, 0), MAX_BACKOFF_SHIFT);
+        double jitter = 1 + BACKOFF_JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return (long) (delay * jitter);
+    }
 
-                    // Sanity check
-                    if (from.compareTo(to) > 0) {
-                        throw new IllegalStateException(String.format("From (%s) is after to (%s)!", from.toString(), to.toString()));
-                    }
+    /**
+     * Requests the gap to be filled, and reschedules itself with a backoff until the gap is filled or
+     * MAX_GAP_REQUESTS have been made.
+     */
+    private class GapFillTask implements Runnable {
+        // Guarded by the chain, which is locked while scheduling, so it's set before the task runs
+        private ScheduledFuture<?> future;
+
+        void schedule(long delay) {
+            future = SharedScheduler.schedule(this, delay);
+            gap = future;
+        }
+
+        @Override
+        public void run() {
+            synchronized (OrderedMsgChain.this) {
+                // Make sure nothing further can be processed from the queue
+                checkQueue();
+
+                // Make sure this gapfill is still scheduled and there is a queued message
+                if (gap != future || queue.isEmpty()) {
+                    return;
+                }
+
+                MessageRef from = new MessageRef(lastReceived.getTimestamp(), lastReceived.getSequenceNumber() + 1);
+                MessageRef to = queue.peek().getPreviousMessageRef();
+
+                // Sanity check
+                if (from.compareTo(to) > 0) {
+                    throw new IllegalStateException(String.format("From (%s) is after to (%s)!", from.toString(), to.toString()));
+                }
 
-                    // Request gapfill or fail if max requests reached
-                    if (gapRequestCount < MAX_GAP_REQUESTS) {
-                        gapRequestCount++;
-                        if (gapHandler != null) {
-                            gapHandler.apply(from, to, publisherId, msgChainId);
+                // Request gapfill or fail if max requests reached
+                if (gapRequestCount < MAX_GAP_REQUESTS) {
+                    boolean requested = true;
+                    if (gapHandler != null) {
+                        requested = gapHandler.tryApply(from, to, publisherId, msgChainId);
+                    } else {
+                        log.error(String.format("Failed to request gapfill because the gapHandler is null. streamId %s, streamPartition %d, publisherId %s, msgChainId %s.",
+                                queue.peek().getStreamId(), queue.peek().getStreamPartition(), publisherId, msgChainId));
+                    }
+                    // A request which was not made because the gap is already being filled doesn't count
+                    if (requested && gapRequestCount++ == 0) {
+                        firstGapRequestAt = System.currentTimeMillis();
+                    }
+                    schedule(getRetryDelay());
+                } else {
+                    try {
+                        if (gapFillFailedHandler != null) {
+                            gapFillFailedHandler.apply(new GapFillFailedException(from, to, publisherId, msgChainId, MAX_GAP_REQUESTS));
                         } else {
-                            log.error(String.format("Failed to request gapfill because the gapHandler is null. streamId %s, streamPartition %d, publisherId %s, msgChainId %s.",
+                            log.error(String.format("Failed to report failed gapfill because gapFillFailedHandler is null. streamId %s, streamPartition %d, publisherId %s, msgChainId %s.",
                                     queue.peek().getStreamId(), queue.peek().getStreamPartition(), publisherId, msgChainId));
                         }
-                    } else {
-                        try {
-                            if (gapFillFailedHandler != null) {
-                                gapFillFailedHandler.apply(new GapFillFailedException(from, to, publisherId, msgChainId, MAX_GAP_REQUESTS));
-                            } else {
-                                log.error(String.format("Failed to report failed gapfill because gapFillFailedHandler is null. streamId %s, streamPartition %d, publisherId %s, msgChainId %s.",
-                                        queue.peek().getStreamId(), queue.peek().getStreamPartition(), publisherId, msgChainId));
-                            }
-                        } finally {
-                            clearGap();
-
-                            // TODO: make it configurable how to handle this error situation.
-                            // Currently unrecoverable gaps are just ignored, and processing continues from the next
-                            // message after the gap.
-                            log.warn("Unable to fill gap: Max retries reached! Ignoring the error and continuing from the first processable message: " + queue.peek().getMessageRef());
-                            lastReceived = queue.peek().getPreviousMessageRef();
-                            checkQueue();
-                        }
+                    } finally {
+                        clearGap();
+
+                        // TODO: make it configurable how to handle this error situation.
+                        // Currently unrecoverable gaps are just ignored, and processing continues from the next
+                        // message after the gap.
+                        log.warn("Unable to fill gap: Max retries reached! Ignoring the error and continuing from the first processable message: " + queue.peek().getMessageRef());
+                        lastReceived = queue.peek().getPreviousMessageRef();
+                        checkQueue();
                     }
                 }
             }
-        };
-        gap.schedule(task, propagationTimeout, resendTimeout);
-    }
-
-    // Used in unit test only
-    boolean isQueueFull() {
-        return this.queue.size() == MAX_QUEUE_SIZE;
+        }
     }
 
     @FunctionalInterface
     public interface GapHandlerFunction {
         void apply(MessageRef from, MessageRef to, Address publisherId, String msgChainId);
+
+        /**
+         * Like apply(), but returns false if no request was made because the gap is already being filled. Such
+         * calls don't count towards the maximum number of gap fill requests of the chain.
+         */
+        default boolean tryApply(MessageRef from, MessageRef to, Address publisherId, String msgChainId) {
+            apply(from, to, publisherId, msgChainId);
+            return true;
+        }
+
+        /**
+         * Called when the subscription is cleared, to drop the requests which are no longer needed.
+         */
+        default void clear() {}
+    }
+
+    @FunctionalInterface
+    public interface MessagesLostHandler {
+        void onMessagesLost(Address publisherId, String msgChainId, int count);
     }
 }
@@ -1,11 +1,15 @@
 package com.streamr.client.utils;
 
 import com.streamr.client.exceptions.GapFillFailedException;
+import com.streamr.client.metrics.Counter;
+import com.streamr.client.options.AdaptiveTimeoutOptions;
 import com.streamr.client.protocol.message_layer.MessageRef;
 import com.streamr.client.protocol.message_layer.StreamMessage;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -18,7 +22,15 @@ public class OrderingUtil {
     private long propagationTimeout;
     private long resendTimeout;
     private boolean skipGapsOnFullQueue = false;
-    private HashMap<String, OrderedMsgChain> chains = new HashMap<>();
+    // Concurrent so that messages of different publishers and chains can be ordered in parallel. Each chain
+    // synchronizes on itself.
+    private final ConcurrentHashMap<ChainKey, OrderedMsgChain> chains = new ConcurrentHashMap<>();
+    private volatile Counter gapCounter = Counter.NOOP;
+    private volatile ReorderBufferPool reorderBufferPool = null;
+    private volatile OrderedMsgChain.MessagesLostHandler messagesLostHandler = null;
+    private volatile AdaptiveTimeoutOptions adaptiveTimeoutOptions = null;
+    // Shared by the chains of each publisher
+    private final ConcurrentHashMap<Address, PublisherLatency> latencies = new ConcurrentHashMap<>();
 
     public OrderingUtil(
             String streamId,
@@ -62,34 +74,163 @@ public class OrderingUtil {
         }
     }
 
-    private synchronized OrderedMsgChain getChain(Address publisherId, String msgChainId) {
-        String key = publisherId + msgChainId;
-        if (!chains.containsKey(key)) {
-            chains.put(key, new OrderedMsgChain(publisherId, msgChainId, inOrderHandler,
-                    gapHandler, gapFillFailedHandler, propagationTimeout, resendTimeout,
-                    skipGapsOnFullQueue));
+    /**
+     * Cancels the gap fills and discards the queued messages of all chains, deleting their spill files.
+     */
+    public void clear() {
+        for (OrderedMsgChain chain: chains.values()) {
+            chain.clear();
         }
-        return chains.get(key);
+    }
+
+    /**
+     * Cancels the gap fills and removes the queued messages of all chains, in order within each chain.
+     */
+    public List<StreamMessage> drainQueuedMessages() {
+        List<StreamMessage> drained = new ArrayList<>();
+        for (OrderedMsgChain chain : chains.values()) {
+            drained.addAll(chain.drain());
+        }
+        return drained;
+    }
+
+    private OrderedMsgChain getChain(Address publisherId, String msgChainId) {
+        ChainKey key = new ChainKey(publisherId, msgChainId);
+        // Plain get() first, as computeIfAbsent() locks the bin even when the chain exists
+        OrderedMsgChain chain = chains.get(key);
+        if (chain == null) {
+            chain = chains.computeIfAbsent(key, k -> {
+                OrderedMsgChain newChain = new OrderedMsgChain(publisherId, msgChainId, inOrderHandler,
+                        gapHandler, gapFillFailedHandler, propagationTimeout, resendTimeout,
+                        skipGapsOnFullQueue);
+                configure(newChain);
+                return newChain;
+            });
+        }
+        return chain;
     }
 
     public ArrayList<OrderedMsgChain> getChains() {
         return new ArrayList<>(chains.values());
     }
 
+    /**
+     * Returns the number of messages queued in all chains while waiting for gaps to be filled.
+     */
+    public int getQueuedMessageCount() {
+        int count = 0;
+        for (OrderedMsgChain chain : getChains()) {
+            count += chain.getQueueSize();
+        }
+        return count;
+    }
+
+    /**
+     * Sets the counter which is incremented when a gap is detected in any of the chains.
+     */
+    public void setGapCounter(Counter gapCounter) {
+        this.gapCounter = gapCounter;
+        for (OrderedMsgChain chain : chains.values()) {
+            chain.setGapCounter(gapCounter);
+        }
+    }
+
+    /**
+     * Sets the pool which limits the memory used by the queues of the chains. Must be called before any
+     * messages are queued.
+     */
+    public void setReorderBufferPool(ReorderBufferPool reorderBufferPool) {
+        this.reorderBufferPool = reorderBufferPool;
+        for (OrderedMsgChain chain : chains.values()) {
+            chain.setReorderBufferPool(reorderBufferPool);
+        }
+    }
+
+    /**
+     * Sets the handler which is called when the queued messages of a chain are discarded because the queue is full.
+     */
+    public void setMessagesLostHandler(OrderedMsgChain.MessagesLostHandler messagesLostHandler) {
+        this.messagesLostHandler = messagesLostHandler;
+        for (OrderedMsgChain chain : chains.values()) {
+            chain.setMessagesLostHandler(messagesLostHandler);
+        }
+    }
+
+    /**
+     * Sets how the gap timeouts of the chains adapt to the observed delivery of their publishers. If null or not
+     * enabled, the timeouts given to the constructor are used.
+     */
+    public void setAdaptiveTimeoutOptions(AdaptiveTimeoutOptions adaptiveTimeoutOptions) {
+        this.adaptiveTimeoutOptions = adaptiveTimeoutOptions;
+        latencies.clear();
+        for (OrderedMsgChain chain : chains.values()) {
+            chain.setPublisherLatency(getPublisherLatency(chain.getPublisherId()));
+        }
+    }
+
+    /**
+     * Returns the delivery statistics of the publisher, or null if the timeouts are not adaptive.
+     */
+    public PublisherLatency getPublisherLatency(Address publisherId) {
+        AdaptiveTimeoutOptions options = adaptiveTimeoutOptions;
+        if (options == null || !options.isEnabled()) {
+            return null;
+        }
+        return latencies.computeIfAbsent(publisherId, k -> new PublisherLatency(options, propagationTimeout, resendTimeout));
+    }
+
+    private void configure(OrderedMsgChain chain) {
+        chain.setGapCounter(gapCounter);
+        chain.setMessagesLostHandler(messagesLostHandler);
+        chain.setPublisherLatency(getPublisherLatency(chain.getPublisherId()));
+        if (reorderBufferPool != null) {
+            chain.setReorderBufferPool(reorderBufferPool);
+        }
+    }
+
     public OrderedMsgChain.GapHandlerFunction getGapHandler() {
         return gapHandler;
     }
 
-    public synchronized void addChains(ArrayList<OrderedMsgChain> previousChains) {
+    public void addChains(ArrayList<OrderedMsgChain> previousChains) {
         for (OrderedMsgChain chain: previousChains) {
-            String key = chain.getPublisherId() + chain.getMsgChainId();
+            ChainKey key = new ChainKey(chain.getPublisherId(), chain.getMsgChainId());
             OrderedMsgChain newChain = new OrderedMsgChain(chain.getPublisherId(), chain.getMsgChainId(),
                     inOrderHandler, gapHandler, gapFillFailedHandler, propagationTimeout, resendTimeout,
                     skipGapsOnFullQueue);
             newChain.setLastReceived(chain.getLastReceived());
-            chains.put(key, newChain);
-
+            configure(newChain);
+            OrderedMsgChain replaced = chains.put(key, newChain);
+            if (replaced != null) {
+                replaced.clear();
+            }
         }
     }
 
+    private static final class ChainKey {
+        private final Address publisherId;
+        private final String msgChainId;
+        private final int hash;
+
+        ChainKey(Address publisherId, String msgChainId) {
+            this.publisherId = publisherId;
+            this.msgChainId = msgChainId;
+            this.hash = 31 * Objects.hashCode(publisherId) + Objects.hashCode(msgChainId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ChainKey)) return false;
+            ChainKey other = (ChainKey) o;
+            return hash == other.hash
+                    && Objects.equals(publisherId, other.publisherId)
+                    && Objects.equals(msgChainId, other.msgChainId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
 }
@@ -0,0 +1,489 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.exceptions.OutboundQueueFullException;
+import com.streamr.client.options.OutboundQueueOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A bounded FIFO queue of serialized requests waiting to be written to the websocket. A background thread takes
+ * requests from the head of the queue and passes them in batches to the sender function. If the sender throws
+ * (for example because the websocket is not connected), the batch is put back to the head of the queue and
+ * retried after connectionOpened() is called or a retry interval has passed, so requests are not lost
+ * while reconnecting.
+ *
+ * The requests are given as futures so that they can be prepared (signed, encrypted and serialized) in parallel
+ * after being enqueued. They are still sent in the order they were added.
+ *
+ * If a spill file is configured, the requests added while the queue is full are written to the file once they
+ * are ready, and all the following requests go to the file as well until it has been emptied. The requests in
+ * the file are sent after the ones in memory, so the order is preserved.
+ */
+public class OutboundQueue {
+    private static final Logger log = LoggerFactory.getLogger(OutboundQueue.class);
+    private static final long RETRY_INTERVAL_MILLIS = 1000;
+
+    private final int capacity;
+    private final int maxBatchSize;
+    private final OutboundQueueOptions.FullPolicy fullPolicy;
+    private final Consumer<List<String>> sender;
+    private final ThreadPoolExecutor executor;
+    private final SpillFile spillFile;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition wakeUp = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    private int inFlight = 0;
+    private boolean draining = false;
+    // Set by connectionOpened(), so that it's not missed if called while a failed batch is being put back
+    private boolean retryNow = false;
+    private int peakDepth = 0;
+
+    // Futures of the requests in the spill file, in the same order
+    private final ArrayDeque<CompletableFuture<Void>> spilled = new ArrayDeque<>();
+    // Requests waiting to be ready before they can be written to the spill file
+    private int pendingSpill = 0;
+    // Completes when all the pending requests have been written to the spill file, in order
+    private CompletableFuture<Void> spillTail = CompletableFuture.completedFuture(null);
+    // Incremented by clear(), so that spilled requests which were being sent while clearing are not removed twice
+    private int clearCount = 0;
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong spilledCount = new AtomicLong();
+
+    /**
+     * @param sender writes the given requests to the websocket, in order. Should throw if they could not be written.
+     */
+    public OutboundQueue(OutboundQueueOptions options, Consumer<List<String>> sender) {
+        if (options.getCapacity() < 1 || options.getMaxBatchSize() < 1) {
+            throw new IllegalArgumentException("Capacity and max batch size must be positive!");
+        }
+        this.capacity = options.getCapacity();
+        this.maxBatchSize = options.getMaxBatchSize();
+        this.fullPolicy = options.getFullPolicy();
+        this.sender = sender;
+        if (options.getSpillFile() != null) {
+            try {
+                spillFile = new SpillFile(options.getSpillFile(), options.getSpillFileSizeBytes());
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to open outbound queue spill file " + options.getSpillFile(), e);
+            }
+        } else {
+            spillFile = null;
+        }
+
+        executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "streamr-outbound-queue");
+            t.setDaemon(true);
+            return t;
+        });
+        // Let the thread die when there's nothing to send, so that discarded clients don't leak threads
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Adds a request to the tail of the queue. If the queue is full, the FullPolicy determines what happens.
+     *
+     * @return a future which completes when the request has been handed to the websocket
+     */
+    public CompletableFuture<Void> add(CompletableFuture<String> request) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        List<Entry> droppedEntries = new ArrayList<>();
+        lock.lock();
+        try {
+            if (spillFile != null && (isSpilling() || depth() >= capacity)) {
+                pendingSpill++;
+                peakDepth = Math.max(peakDepth, depth());
+                // Chain the writes so that the requests are written to the file in the order they were added
+                spillTail = spillTail.thenCompose(v -> request.<Void>handle((json, err) -> {
+                    spill(json, err, result);
+                    return null;
+                }));
+                return result;
+            }
+
+            while (depth() >= capacity) {
+                if (fullPolicy == OutboundQueueOptions.FullPolicy.BLOCK) {
+                    try {
+                        notFull.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        result.completeExceptionally(e);
+                        return result;
+                    }
+                } else if (fullPolicy == OutboundQueueOptions.FullPolicy.DROP_OLDEST && !queue.isEmpty()) {
+                    droppedEntries.add(queue.pollFirst());
+                    droppedCount.incrementAndGet();
+                } else {
+                    // FAIL_FAST, or DROP_OLDEST while everything in the queue is already being sent
+                    rejectedCount.incrementAndGet();
+                    result.completeExceptionally(new OutboundQueueFullException("Outbound queue is full (capacity " + capacity + ")"));
+                    return result;
+                }
+            }
+
+            queue.addLast(new Entry(request, result));
+            peakDepth = Math.max(peakDepth, depth());
+            startDraining();
+        } finally {
+            lock.unlock();
+        }
+
+        for (Entry dropped : droppedEntries) {
+            dropped.sent.completeExceptionally(new OutboundQueueFullException("Dropped from the outbound queue to make space for newer messages"));
+        }
+        return result;
+    }
+
+    /**
+     * Wakes up the sender if it's waiting to retry, for example when the websocket connection is (re)opened.
+     */
+    public void connectionOpened() {
+        lock.lock();
+        try {
+            retryNow = true;
+            wakeUp.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until all the queued requests have been sent, or the timeout expires.
+     *
+     * @return true if the queue was emptied
+     */
+    public boolean flush(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        lock.lock();
+        try {
+            while (depth() > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                drained.await(remaining, TimeUnit.MILLISECONDS);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return depth() == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all requests which are not currently being sent, and fails their futures with the given cause.
+     */
+    public void clear(Throwable cause) {
+        List<Entry> removed;
+        List<CompletableFuture<Void>> removedFromSpill;
+        lock.lock();
+        try {
+            removed = new ArrayList<>(queue);
+            queue.clear();
+            removedFromSpill = new ArrayList<>(spilled);
+            spilled.clear();
+            if (spillFile != null) {
+                spillFile.clear();
+            }
+            clearCount++;
+            notFull.signalAll();
+            if (inFlight == 0) {
+                drained.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Entry entry : removed) {
+            entry.sent.completeExceptionally(cause);
+        }
+        for (CompletableFuture<Void> sent : removedFromSpill) {
+            sent.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Fails the requests which are not being sent, and closes and deletes the spill file. After this, the
+     * requests which don't fit in memory are rejected.
+     */
+    public void close(Throwable cause) {
+        clear(cause);
+        lock.lock();
+        try {
+            if (spillFile != null) {
+                spillFile.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests currently waiting in the queue or being sent.
+     */
+    public int getDepth() {
+        lock.lock();
+        try {
+            return depth();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the highest depth the queue has had.
+     */
+    public int getPeakDepth() {
+        lock.lock();
+        try {
+            return peakDepth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * Returns the number of requests which have been written to the spill file.
+     */
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    /**
+     * Returns the number of requests dropped because of the DROP_OLDEST policy.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Returns the number of requests rejected because the queue was full.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    private int depth() {
+        return queue.size() + inFlight + pendingSpill + spilled.size();
+    }
+
+    private boolean isSpilling() {
+        return pendingSpill > 0 || !spilled.isEmpty();
+    }
+
+    private void startDraining() {
+        if (!draining) {
+            draining = true;
+            executor.execute(this::drain);
+        }
+    }
+
+    private void spill(String json, Throwable err, CompletableFuture<Void> result) {
+        Throwable failure = null;
+        lock.lock();
+        try {
+            pendingSpill--;
+            if (err != null) {
+                // Preparing the request failed, there's nothing to send
+                failure = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+            } else if (spillFile.append(json)) {
+                spilled.addLast(result);
+                spilledCount.incrementAndGet();
+                startDraining();
+            } else {
+                rejectedCount.incrementAndGet();
+                failure = new OutboundQueueFullException("Outbound queue and spill file are full (" + spillFile.getUsedBytes() + " bytes)");
+            }
+            if (depth() == 0) {
+                drained.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (failure != null) {
+            result.completeExceptionally(failure);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            List<Entry> batch = new ArrayList<>();
+            lock.lock();
+            try {
+                if (queue.isEmpty()) {
+                    if (!spilled.isEmpty()) {
+                        // The in-memory requests have been sent, continue from the spill file
+                        List<String> requests = spillFile.peek(maxBatchSize);
+                        int clearCountBefore = clearCount;
+                        boolean interrupted;
+                        lock.unlock();
+                        try {
+                            interrupted = !drainSpilled(requests, clearCountBefore);
+                        } finally {
+                            lock.lock();
+                        }
+                        if (interrupted) {
+                            // Stop, the next add() starts draining again
+                            draining = false;
+                            return;
+                        }
+                        continue;
+                    }
+                    draining = false;
+                    drained.signalAll();
+                    return;
+                }
+                // Take the head even if it is not ready yet, and the following requests that are ready
+                do {
+                    batch.add(queue.pollFirst());
+                } while (batch.size() < maxBatchSize && !queue.isEmpty() && queue.peekFirst().request.isDone());
+                inFlight = batch.size();
+            } finally {
+                lock.unlock();
+            }
+
+            List<Entry> ready = new ArrayList<>(batch.size());
+            List<String> requests = new ArrayList<>(batch.size());
+            for (Entry entry : batch) {
+                try {
+                    requests.add(entry.request.join());
+                    ready.add(entry);
+                } catch (CompletionException e) {
+                    // Preparing the request failed, there's nothing to send
+                    entry.sent.completeExceptionally(e.getCause() != null ? e.getCause() : e);
+                }
+            }
+
+            boolean success = true;
+            if (!requests.isEmpty()) {
+                try {
+                    sender.accept(requests);
+                } catch (Exception e) {
+                    log.debug("Failed to send {} queued requests, retrying later: {}", requests.size(), e.toString());
+                    success = false;
+                }
+            }
+
+            lock.lock();
+            try {
+                inFlight = 0;
+                if (success) {
+                    notFull.signalAll();
+                } else {
+                    // Put the batch back to the head of the queue in the original order and wait before retrying
+                    for (int i = ready.size() - 1; i >= 0; i--) {
+                        queue.addFirst(ready.get(i));
+                    }
+                    try {
+                        awaitRetry();
+                    } catch (InterruptedException e) {
+                        // Stop instead of retrying without waiting, the next add() starts draining again
+                        Thread.currentThread().interrupt();
+                        draining = false;
+                        return;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (success) {
+                sentCount.addAndGet(ready.size());
+                for (Entry entry : ready) {
+                    entry.sent.complete(null);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if interrupted while waiting to retry
+     */
+    private boolean drainSpilled(List<String> requests, int clearCountBefore) {
+        boolean success = true;
+        try {
+            sender.accept(requests);
+        } catch (Exception e) {
+            log.debug("Failed to send {} spilled requests, retrying later: {}", requests.size(), e.toString());
+            success = false;
+        }
+
+        List<CompletableFuture<Void>> sent = new ArrayList<>(requests.size());
+        lock.lock();
+        try {
+            if (success) {
+                // Nothing else removes records from the file while they are being sent, unless the queue was cleared
+                if (clearCount == clearCountBefore) {
+                    spillFile.remove(requests.size());
+                    for (int i = 0; i < requests.size(); i++) {
+                        sent.add(spilled.pollFirst());
+                    }
+                }
+                notFull.signalAll();
+            } else {
+                try {
+                    awaitRetry();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        sentCount.addAndGet(sent.size());
+        for (CompletableFuture<Void> future : sent) {
+            future.complete(null);
+        }
+        return true;
+    }
+
+    /**
+     * Waits for connectionOpened() or the retry interval. Must be called with the lock held.
+     */
+    private void awaitRetry() throws InterruptedException {
+        if (!retryNow) {
+            wakeUp.await(RETRY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        retryNow = false;
+    }
+
+    private static class Entry {
+        private final CompletableFuture<String> request;
+        private final CompletableFuture<Void> sent;
+
+        Entry(CompletableFuture<String> request, CompletableFuture<Void> sent) {
+            this.request = request;
+            this.sent = sent;
+        }
+    }
+}
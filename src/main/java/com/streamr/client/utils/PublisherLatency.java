@@ -0,0 +1,112 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.options.AdaptiveTimeoutOptions;
+
+/**
+ * Tracks how the messages of a publisher are delivered, and derives the gap timeouts of its message chains from it.
+ *
+ * The propagation timeout is how long a chain waits for the messages missing before a received message, before
+ * requesting them. Missing messages which arrive by themselves are late by at most as much as the delivery latency
+ * varies, so the timeout is a multiple of the spread of the latencies: their 99th percentile, or their average
+ * plus four mean deviations, minus the smallest latency. As the latency is measured from the timestamps set by the
+ * publisher, subtracting the smallest latency also cancels out the difference between the clocks. The time it
+ * took the gaps which were filled without a request to fill is taken into account as well. A gap which had to be
+ * requested might have healed by itself had the chain waited longer, so the time it waited is recorded as one of
+ * those heal times. Otherwise only the gaps which healed within the timeout would be seen, and the timeout would
+ * be biased low, possibly staying at its minimum. This way the timeout grows if more than 1% of the gaps have to
+ * be requested.
+ *
+ * The resend timeout is how long a chain waits for a gap fill before requesting it again. It is a multiple of the
+ * 95th percentile, or the average plus four mean deviations, of the time the earlier gap fills took.
+ *
+ * The timeouts are limited by the minimums of the AdaptiveTimeoutOptions and the configured maximums, and are the
+ * maximums until enough samples have been recorded.
+ *
+ * This class is thread-safe, as the chains of a publisher share it.
+ */
+public class PublisherLatency {
+    static final int WINDOW_SIZE = 256;
+    static final int MIN_ARRIVAL_SAMPLES = 32;
+    static final int MIN_FILL_SAMPLES = 4;
+    // Headroom on top of the estimates, so that a somewhat slower delivery than seen so far doesn't cause a resend
+    static final double SAFETY_FACTOR = 2.0;
+
+    private final AdaptiveTimeoutOptions options;
+    private final long maxPropagationTimeout;
+    private final long maxResendTimeout;
+    private final RollingStats arrivalLatency = new RollingStats(WINDOW_SIZE);
+    private final RollingStats healTime = new RollingStats(WINDOW_SIZE);
+    private final RollingStats reorderDepth = new RollingStats(WINDOW_SIZE);
+    private final RollingStats fillTime = new RollingStats(WINDOW_SIZE);
+
+    public PublisherLatency(AdaptiveTimeoutOptions options, long maxPropagationTimeout, long maxResendTimeout) {
+        this.options = options;
+        this.maxPropagationTimeout = maxPropagationTimeout;
+        this.maxResendTimeout = maxResendTimeout;
+    }
+
+    /**
+     * Records the arrival of a message which was delivered in real time, as opposed to resent.
+     *
+     * @param timestamp the timestamp of the message, set by the publisher
+     * @param now the time the message was received
+     */
+    public synchronized void recordArrival(long timestamp, long now) {
+        arrivalLatency.record(now - timestamp);
+    }
+
+    /**
+     * Records a gap which was filled before its messages were requested.
+     *
+     * @param millis the time from detecting the gap to it being filled
+     * @param queuedMessages the number of messages received after the gap before it was filled
+     */
+    public synchronized void recordGapHealed(long millis, int queuedMessages) {
+        healTime.record(millis);
+        reorderDepth.record(queuedMessages);
+    }
+
+    /**
+     * Records a gap which was filled after its messages were requested.
+     *
+     * @param millis the time from the first request to the gap being filled
+     * @param waitedMillis the time from detecting the gap to the first request, a lower bound of the time the gap
+     *                     would have taken to heal without the request
+     */
+    public synchronized void recordGapFilled(long millis, long waitedMillis) {
+        fillTime.record(millis);
+        healTime.record(waitedMillis);
+    }
+
+    public synchronized long getPropagationTimeout() {
+        if (arrivalLatency.getCount() < MIN_ARRIVAL_SAMPLES) {
+            return maxPropagationTimeout;
+        }
+        long min = arrivalLatency.getPercentile(0);
+        double spread = Math.max(arrivalLatency.getPercentile(0.99) - min,
+                arrivalLatency.getAverage() + 4 * arrivalLatency.getDeviation() - min);
+        spread = Math.max(spread, healTime.getPercentile(0.99));
+        return clamp(spread, options.getMinPropagationTimeout(), maxPropagationTimeout);
+    }
+
+    public synchronized long getResendTimeout() {
+        if (fillTime.getCount() < MIN_FILL_SAMPLES) {
+            return maxResendTimeout;
+        }
+        double estimate = Math.max(fillTime.getPercentile(0.95), fillTime.getAverage() + 4 * fillTime.getDeviation());
+        return clamp(estimate, options.getMinResendTimeout(), maxResendTimeout);
+    }
+
+    /**
+     * Returns the given percentile of the number of messages which arrived after a missing message before it
+     * arrived, over the recent gaps which were filled without a request.
+     */
+    public synchronized long getReorderDepth(double fraction) {
+        return reorderDepth.getPercentile(fraction);
+    }
+
+    private static long clamp(double estimate, long min, long max) {
+        // The configured maximum wins, even if it's below the minimum
+        return Math.min(max, Math.max(min, (long) (SAFETY_FACTOR * estimate)));
+    }
+}
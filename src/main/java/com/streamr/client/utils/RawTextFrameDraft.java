@@ -0,0 +1,45 @@
+package com.streamr.client.utils;
+
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.framing.Framedata;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * A websocket draft which hands the payload of each complete text frame to the given handler as raw UTF-8 bytes,
+ * instead of decoding it to a String and calling WebSocketClient.onMessage(String). This allows parsing the
+ * messages directly from the bytes. Fragmented text messages and all other frames are processed as usual.
+ *
+ * The payload buffer is allocated for each frame, so the handler can pass it on to other threads.
+ */
+public class RawTextFrameDraft extends Draft_6455 {
+    private final Consumer<ByteBuffer> textFrameHandler;
+
+    public RawTextFrameDraft(Consumer<ByteBuffer> textFrameHandler) {
+        this.textFrameHandler = textFrameHandler;
+    }
+
+    @Override
+    public void processFrame(WebSocketImpl webSocketImpl, Framedata frame) throws InvalidDataException {
+        if (frame.getOpcode() == Opcode.TEXT && frame.isFin()) {
+            try {
+                textFrameHandler.accept(frame.getPayloadData());
+            } catch (RuntimeException e) {
+                // Report like errors thrown from onMessage(String), without closing the connection
+                webSocketImpl.getWebSocketListener().onWebsocketError(webSocketImpl, e);
+            }
+        } else {
+            super.processFrame(webSocketImpl, frame);
+        }
+    }
+
+    @Override
+    public Draft copyInstance() {
+        return new RawTextFrameDraft(textFrameHandler);
+    }
+}
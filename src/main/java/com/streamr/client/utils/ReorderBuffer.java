@@ -0,0 +1,179 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.options.ReorderBufferOptions;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The messages of an OrderedMsgChain which wait for the missing messages before them, ordered by their MessageRef.
+ * The messages are kept in memory within the limits of the ReorderBufferPool, and the rest are spilled to a file
+ * if a spill directory is configured. The spilled messages are read back into memory in the order they were
+ * spilled as soon as there is space. While there are spilled messages, new messages are spilled as well, so that
+ * the messages which arrived first are the first ones in memory.
+ *
+ * If one of the missing messages ends up in the spill file while the memory is full of later messages, it is
+ * requested again with the gap fill, and the spilled copy is discarded as a duplicate once read back.
+ *
+ * This class is not thread-safe.
+ */
+class ReorderBuffer {
+    private static final Logger log = LoggerFactory.getLogger(ReorderBuffer.class);
+    // Rough overhead of a deserialized message on top of its JSON, see StreamMessage.estimateMemoryBytes()
+    private static final int MESSAGE_OVERHEAD_BYTES = 256;
+
+    private final ReorderBufferPool pool;
+    // The weight of each message is the size reserved from the pool for it, which stays the same even if the
+    // message is modified
+    private final ReorderIndex memory = new ReorderIndex();
+    private long memoryBytes = 0;
+    private SpillFile spillFile = null;
+    private boolean spillFileFailed = false;
+
+    ReorderBuffer(ReorderBufferPool pool) {
+        this.pool = pool;
+    }
+
+    ReorderBufferPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Adds the message to memory, or to the spill file if it doesn't fit in memory.
+     *
+     * @return false if the message fits in neither
+     */
+    boolean offer(StreamMessage msg) {
+        int size = msg.estimateMemoryBytes();
+        if (!hasSpilled() && tryReserve(size)) {
+            addToMemory(msg, size);
+            return true;
+        }
+        return spill(msg);
+    }
+
+    StreamMessage peek() {
+        refill();
+        return memory.peek();
+    }
+
+    StreamMessage poll() {
+        refill();
+        if (memory.isEmpty()) {
+            return null;
+        }
+        int size = memory.peekWeight();
+        memoryBytes -= size;
+        pool.release(size);
+        return memory.poll();
+    }
+
+    /**
+     * Removes all the messages.
+     *
+     * @return the number of removed messages
+     */
+    int clear() {
+        int count = size();
+        memory.clear();
+        pool.release(memoryBytes);
+        memoryBytes = 0;
+        if (spillFile != null) {
+            spillFile.clear();
+        }
+        return count;
+    }
+
+    /**
+     * Removes all the messages, and unmaps and deletes the spill file if there is one. A new spill file is
+     * created if messages are spilled again.
+     *
+     * @return the number of removed messages
+     */
+    int close() {
+        int count = clear();
+        if (spillFile != null) {
+            spillFile.close();
+            spillFile = null;
+        }
+        return count;
+    }
+
+    int size() {
+        return memory.size() + getSpilledCount();
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    int getSpilledCount() {
+        return spillFile == null ? 0 : spillFile.size();
+    }
+
+    long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    private boolean hasSpilled() {
+        return spillFile != null && !spillFile.isEmpty();
+    }
+
+    private boolean tryReserve(int size) {
+        if (memory.isEmpty()) {
+            // Always accept one message, so that even messages larger than the limits can be processed
+            pool.reserve(size);
+            return true;
+        }
+        return memoryBytes + size <= pool.getOptions().getMaxChainBytes() && pool.tryReserve(size);
+    }
+
+    private void addToMemory(StreamMessage msg, int size) {
+        memory.add(msg, size);
+        memoryBytes += size;
+    }
+
+    /**
+     * Moves spilled messages to memory while they fit.
+     */
+    private void refill() {
+        while (hasSpilled()) {
+            String json = spillFile.peek(1).get(0);
+            // Estimated without deserializing, so that a message which doesn't fit is not parsed repeatedly
+            int size = 2 * json.length() + MESSAGE_OVERHEAD_BYTES;
+            if (!tryReserve(size)) {
+                return;
+            }
+            addToMemory(StreamMessage.deserialize(json), size);
+            spillFile.remove(1);
+        }
+    }
+
+    private boolean spill(StreamMessage msg) {
+        if (spillFile == null && !openSpillFile()) {
+            return false;
+        }
+        return spillFile.append(msg.serialize());
+    }
+
+    private boolean openSpillFile() {
+        ReorderBufferOptions options = pool.getOptions();
+        if (options.getSpillDirectory() == null || spillFileFailed) {
+            return false;
+        }
+        try {
+            File file = File.createTempFile("streamr-reorder-", ".spill", options.getSpillDirectory());
+            // Deleted by close(), this is in case the chain is never cleared
+            file.deleteOnExit();
+            spillFile = new SpillFile(file, options.getSpillFileSizeBytes());
+            return true;
+        } catch (IOException e) {
+            log.error("Failed to create a reorder buffer spill file in " + options.getSpillDirectory(), e);
+            spillFileFailed = true;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.options.ReorderBufferOptions;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the memory used by the ReorderBuffers of all the message chains of a client against the limits in the
+ * ReorderBufferOptions.
+ */
+public class ReorderBufferPool {
+    private final ReorderBufferOptions options;
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    public ReorderBufferPool(ReorderBufferOptions options) {
+        this.options = options;
+    }
+
+    public ReorderBufferOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Reserves the bytes if they fit within the total limit.
+     *
+     * @return false if the bytes don't fit
+     */
+    boolean tryReserve(long bytes) {
+        while (true) {
+            long used = usedBytes.get();
+            if (used + bytes > options.getMaxTotalBytes()) {
+                return false;
+            }
+            if (usedBytes.compareAndSet(used, used + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reserves the bytes even if they exceed the total limit.
+     */
+    void reserve(long bytes) {
+        usedBytes.addAndGet(bytes);
+    }
+
+    void release(long bytes) {
+        usedBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * Returns the estimated size of the messages currently buffered in memory.
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+}
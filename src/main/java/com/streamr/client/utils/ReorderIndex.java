@@ -0,0 +1,157 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.protocol.message_layer.StreamMessage;
+
+import java.util.Arrays;
+
+/**
+ * A min-heap of messages keyed by their (timestamp, sequenceNumber), which are kept in primitive arrays next to
+ * the messages, so that ordering them doesn't allocate MessageRefs. The first message is available in constant
+ * time. Each message also carries an int weight, which the ReorderBuffer uses for the memory it has
+ * reserved for the message.
+ *
+ * A heap was chosen over a sorted array because inserting into a sorted array moves on average half of the
+ * entries, which is slow for large, heavily shuffled queues. Messages which arrive in order are still cheap to
+ * add, as they stay at the bottom of the heap.
+ *
+ * This class is not thread-safe.
+ */
+public class ReorderIndex {
+    private static final int INITIAL_CAPACITY = 16;
+    // Larger arrays are released when the index becomes empty, so that a burst doesn't hold on to the memory
+    private static final int RETAINED_CAPACITY = 1024;
+
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private long[] sequenceNumbers = new long[INITIAL_CAPACITY];
+    private StreamMessage[] messages = new StreamMessage[INITIAL_CAPACITY];
+    private int[] weights = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    public void add(StreamMessage msg, int weight) {
+        if (size == messages.length) {
+            grow();
+        }
+        // Sift up from the end
+        long timestamp = msg.getTimestamp();
+        long sequenceNumber = msg.getSequenceNumber();
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (compare(timestamp, sequenceNumber, parent) >= 0) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        set(i, timestamp, sequenceNumber, msg, weight);
+    }
+
+    /**
+     * Returns the message with the smallest key, or null if empty.
+     */
+    public StreamMessage peek() {
+        return size == 0 ? null : messages[0];
+    }
+
+    public int peekWeight() {
+        checkNotEmpty();
+        return weights[0];
+    }
+
+    /**
+     * Removes and returns the message with the smallest key, or null if empty.
+     */
+    public StreamMessage poll() {
+        if (size == 0) {
+            return null;
+        }
+        StreamMessage first = messages[0];
+        int last = --size;
+        if (last > 0) {
+            siftDownLast(last);
+        }
+        messages[last] = null;
+        if (size == 0) {
+            shrink();
+        }
+        return first;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(messages, 0, size, null);
+        size = 0;
+        shrink();
+    }
+
+    /**
+     * Moves the entry at index last to the root and sifts it down.
+     */
+    private void siftDownLast(int last) {
+        long timestamp = timestamps[last];
+        long sequenceNumber = sequenceNumbers[last];
+        StreamMessage msg = messages[last];
+        int weight = weights[last];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && compare(timestamps[right], sequenceNumbers[right], child) < 0) {
+                child = right;
+            }
+            if (compare(timestamp, sequenceNumber, child) <= 0) {
+                break;
+            }
+            move(child, i);
+            i = child;
+        }
+        set(i, timestamp, sequenceNumber, msg, weight);
+    }
+
+    private int compare(long timestamp, long sequenceNumber, int index) {
+        int result = Long.compare(timestamp, timestamps[index]);
+        return result != 0 ? result : Long.compare(sequenceNumber, sequenceNumbers[index]);
+    }
+
+    private void move(int from, int to) {
+        set(to, timestamps[from], sequenceNumbers[from], messages[from], weights[from]);
+    }
+
+    private void set(int index, long timestamp, long sequenceNumber, StreamMessage msg, int weight) {
+        timestamps[index] = timestamp;
+        sequenceNumbers[index] = sequenceNumber;
+        messages[index] = msg;
+        weights[index] = weight;
+    }
+
+    private void grow() {
+        int capacity = messages.length * 2;
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        sequenceNumbers = Arrays.copyOf(sequenceNumbers, capacity);
+        messages = Arrays.copyOf(messages, capacity);
+        weights = Arrays.copyOf(weights, capacity);
+    }
+
+    private void shrink() {
+        if (messages.length > RETAINED_CAPACITY) {
+            timestamps = new long[INITIAL_CAPACITY];
+            sequenceNumbers = new long[INITIAL_CAPACITY];
+            messages = new StreamMessage[INITIAL_CAPACITY];
+            weights = new int[INITIAL_CAPACITY];
+        }
+    }
+
+    private void checkNotEmpty() {
+        if (size == 0) {
+            throw new IllegalStateException("The index is empty");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.streamr.client.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Limits the number of gap fill resends which a client has in flight at the same time. A resend stays in flight
+ * until its response arrives, or until it times out in case the response is lost, for example on a disconnect.
+ */
+public class ResendLimiter {
+    private final int maxInFlight;
+    private final long timeoutMillis;
+    // Guarded by this
+    private final HashMap<String, InFlight> inFlight = new HashMap<>();
+    private final List<Runnable> waiters = new ArrayList<>();
+
+    public ResendLimiter(int maxInFlight, long timeoutMillis) {
+        this.maxInFlight = maxInFlight;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Registers a resend as in flight if the limit allows.
+     *
+     * @param onDone called when the resend completes or times out
+     * @return false if the limit has been reached
+     */
+    public boolean tryAcquire(String requestId, Runnable onDone) {
+        return tryAcquire(requestId, onDone, null);
+    }
+
+    /**
+     * Registers a resend as in flight if the limit allows, or else waits for room.
+     *
+     * @param onDone called when the resend completes or times out
+     * @param onAvailable if the limit has been reached, called once when one of the resends in flight completes
+     *                    or times out, on the thread which completes it
+     * @return false if the limit has been reached
+     */
+    public synchronized boolean tryAcquire(String requestId, Runnable onDone, Runnable onAvailable) {
+        if (inFlight.size() >= maxInFlight) {
+            if (onAvailable != null) {
+                waiters.add(onAvailable);
+            }
+            return false;
+        }
+        ScheduledFuture<?> timeout = SharedScheduler.schedule(() -> complete(requestId), timeoutMillis);
+        inFlight.put(requestId, new InFlight(onDone, timeout));
+        return true;
+    }
+
+    /**
+     * Called when the response to a resend request has been received. Unknown request ids are ignored.
+     */
+    public void complete(String requestId) {
+        InFlight done;
+        List<Runnable> available;
+        synchronized (this) {
+            done = inFlight.remove(requestId);
+            if (done == null) {
+                return;
+            }
+            available = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        done.timeout.cancel(false);
+        done.onDone.run();
+        available.forEach(Runnable::run);
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private static class InFlight {
+        final Runnable onDone;
+        final ScheduledFuture<?> timeout;
+
+        InFlight(Runnable onDone, ScheduledFuture<?> timeout) {
+            this.onDone = onDone;
+            this.timeout = timeout;
+        }
+    }
+}
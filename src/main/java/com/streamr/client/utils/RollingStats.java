@@ -0,0 +1,68 @@
+package com.streamr.client.utils;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the distribution of a quantity, such as a delay, from its samples: an exponentially weighted moving
+ * average and mean deviation, like the round-trip time estimate of TCP (RFC 6298), which follow changes quickly,
+ * and percentiles over a window of the latest samples, which capture the tail.
+ *
+ * This class is not thread-safe.
+ */
+public class RollingStats {
+    private static final double AVERAGE_GAIN = 0.125;
+    private static final double DEVIATION_GAIN = 0.25;
+
+    private final long[] window;
+    private int next = 0;
+    private long count = 0;
+    private double average = 0;
+    private double deviation = 0;
+
+    public RollingStats(int windowSize) {
+        window = new long[windowSize];
+    }
+
+    public void record(long value) {
+        window[next] = value;
+        next = (next + 1) % window.length;
+        if (count == 0) {
+            average = value;
+        } else {
+            deviation += DEVIATION_GAIN * (Math.abs(value - average) - deviation);
+            average += AVERAGE_GAIN * (value - average);
+        }
+        count++;
+    }
+
+    /**
+     * Returns the number of samples recorded, including the ones no longer in the window.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public double getAverage() {
+        return average;
+    }
+
+    public double getDeviation() {
+        return deviation;
+    }
+
+    /**
+     * Returns the smallest sample in the window which is greater than or equal to the given fraction of the
+     * samples in the window, or 0 if there are no samples. getPercentile(0) is the minimum.
+     */
+    public long getPercentile(double fraction) {
+        int n = (int) Math.min(count, window.length);
+        if (n == 0) {
+            return 0;
+        }
+        // Until the window is full, the samples are at its beginning
+        long[] sorted = Arrays.copyOf(window, n);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(fraction * n) - 1;
+        return sorted[Math.max(0, Math.min(index, n - 1))];
+    }
+}
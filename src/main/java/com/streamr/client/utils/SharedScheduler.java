@@ -0,0 +1,95 @@
+package com.streamr.client.utils;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A scheduler shared by all clients, subscriptions and message chains for their timeouts, such as gap fill
+ * and group key requests. The number of threads doesn't depend on the number of chains, unlike with a
+ * java.util.Timer per timeout. Cancelled tasks are removed from the queue right away, so scheduling and
+ * cancelling timeouts is cheap even when most of them never fire.
+ *
+ * The timer thread only hands the due tasks over to a bounded pool of worker threads. The tasks may block, for
+ * example while waiting for a lock held by a message handler, without delaying the other timeouts of the process.
+ * When all the workers are busy, due tasks wait in a bounded queue, and beyond that they are handed over again
+ * after a short delay, so a burst of timeouts doesn't start a thread per timeout.
+ */
+public final class SharedScheduler {
+    static final int MAX_WORKERS = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+    private static final int WORKER_QUEUE_CAPACITY = 10000;
+    private static final long REJECTED_RETRY_MILLIS = 100;
+
+    private static final ScheduledThreadPoolExecutor TIMER = createTimer();
+    private static final ThreadPoolExecutor WORKERS = createWorkers();
+
+    private SharedScheduler() {}
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, daemonThreadFactory("StreamrScheduler-"));
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    private static ThreadPoolExecutor createWorkers() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_WORKERS, MAX_WORKERS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(WORKER_QUEUE_CAPACITY), daemonThreadFactory("StreamrWorker-"),
+                (task, workers) -> TIMER.schedule(() -> workers.execute(task), REJECTED_RETRY_MILLIS, TimeUnit.MILLISECONDS));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // For tests
+    static ScheduledThreadPoolExecutor getTimer() {
+        return TIMER;
+    }
+
+    // For tests
+    static ThreadPoolExecutor getWorkers() {
+        return WORKERS;
+    }
+
+    /**
+     * Runs the task on a worker thread after the delay. Cancelling the returned future prevents the run only if
+     * the task hasn't been handed to a worker yet, so a task which must not run after being cancelled should
+     * check for that itself.
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return TIMER.schedule(() -> WORKERS.execute(task), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs the task on a worker thread after initialDelay, and then repeatedly every delayMillis, like
+     * java.util.Timer.schedule(task, delay, period). A run is skipped if the previous one is still running.
+     * Cancel with cancel(false) on the returned future.
+     */
+    public static ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long initialDelayMillis, long delayMillis) {
+        AtomicBoolean running = new AtomicBoolean();
+        Runnable run = () -> {
+            try {
+                task.run();
+            } finally {
+                running.set(false);
+            }
+        };
+        return TIMER.scheduleWithFixedDelay(() -> {
+            if (running.compareAndSet(false, true)) {
+                WORKERS.execute(run);
+            }
+        }, initialDelayMillis, delayMillis, TimeUnit.MILLISECONDS);
+    }
+}
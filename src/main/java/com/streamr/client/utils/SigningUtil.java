@@ -30,6 +30,10 @@ public class SigningUtil {
     }
 
     public static String sign(String data, ECKey account){
+        return sign(data.getBytes(StandardCharsets.UTF_8), account);
+    }
+
+    public static String sign(byte[] data, ECKey account){
         ECKey.ECDSASignature sig = account.sign(calculateMessageHash(data));
         return "0x" + Hex.encodeHexString(ByteUtil.merge(
                 ByteUtil.bigIntegerToBytes(sig.r, 32),
@@ -41,7 +45,7 @@ public class SigningUtil {
         if (msg.getSignature() == null) {
             return false;
         }
-        String payload = getPayloadToSignOrVerify(msg, msg.getSignatureType());
+        byte[] payload = getPayloadToSignOrVerify(msg, msg.getSignatureType());
         try {
             return verify(payload, msg.getSignature(), msg.getPublisherId());
         } catch (SignatureException | DecoderException e) {
@@ -49,14 +53,17 @@ public class SigningUtil {
         }
     }
 
-    private static String getPayloadToSignOrVerify(StreamMessage msg, StreamMessage.SignatureType signatureType) {
+    /**
+     * Returns the UTF-8 bytes of the payload. The content is appended as bytes, so that it doesn't need to be
+     * decoded to a String (for example after decryption) or encoded again for each message.
+     */
+    static byte[] getPayloadToSignOrVerify(StreamMessage msg, StreamMessage.SignatureType signatureType) {
         if (signatureType == StreamMessage.SignatureType.ETH_LEGACY) {
             StringBuilder sb = new StringBuilder(msg.getStreamId());
             sb.append(msg.getStreamPartition());
             sb.append(msg.getTimestamp());
             sb.append(msg.getPublisherId());
-            sb.append(msg.getSerializedContent());
-            return sb.toString();
+            return ByteUtil.merge(sb.toString().getBytes(StandardCharsets.UTF_8), msg.getSerializedContentAsBytes());
         } else if (signatureType == StreamMessage.SignatureType.ETH) {
             StringBuilder sb = new StringBuilder(msg.getStreamId());
             sb.append(msg.getStreamPartition());
@@ -68,23 +75,23 @@ public class SigningUtil {
                 sb.append(msg.getPreviousMessageRef().getTimestamp());
                 sb.append(msg.getPreviousMessageRef().getSequenceNumber());
             }
-            sb.append(msg.getSerializedContent());
+            byte[] prefix = sb.toString().getBytes(StandardCharsets.UTF_8);
             if (msg.getNewGroupKey() != null) {
-                sb.append(msg.getNewGroupKey().serialize());
+                byte[] suffix = msg.getNewGroupKey().serialize().getBytes(StandardCharsets.UTF_8);
+                return ByteUtil.merge(prefix, msg.getSerializedContentAsBytes(), suffix);
             }
-            return sb.toString();
+            return ByteUtil.merge(prefix, msg.getSerializedContentAsBytes());
         }
         throw new UnsupportedSignatureTypeException(signatureType);
     }
 
-    private static byte[] calculateMessageHash(String message){
-        byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+    private static byte[] calculateMessageHash(byte[] messageBytes){
         String prefix = SIGN_MAGIC + messageBytes.length;
         byte[] toHash = ByteUtil.merge(prefix.getBytes(), messageBytes);
         return HashUtil.sha3(toHash);
     }
 
-    private static boolean verify(String data, String signature, Address address) throws SignatureException, DecoderException {
+    private static boolean verify(byte[] data, String signature, Address address) throws SignatureException, DecoderException {
         return recoverAddress(calculateMessageHash(data), signature).equals(address);
     }
 
@@ -0,0 +1,135 @@
+package com.streamr.client.utils;
+
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+
+/**
+ * Creates the socket of a websocket connection so that the writes to it can be waited on. The websocket client
+ * buffers the frames without limit and writes them to the socket on its own thread, and awaitWrite() lets
+ * another thread wait for that thread to make progress instead of polling the buffer.
+ *
+ * The websocket client doesn't add TLS to sockets created by a factory, so for wss URLs the socket is
+ * connected here and wrapped in a TLS socket whose encrypted output goes through the monitored stream.
+ */
+public class SocketWriteMonitor extends SocketFactory {
+    private final URI uri;
+    private final int connectTimeoutMillis;
+
+    // Guarded by this
+    private long writeCount = 0;
+    private boolean closed = false;
+
+    public SocketWriteMonitor(URI uri, int connectTimeoutMillis) {
+        this.uri = uri;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        Socket socket = new MonitoredSocket();
+        if ("wss".equals(uri.getScheme())) {
+            int port = uri.getPort() != -1 ? uri.getPort() : 443;
+            socket.connect(new InetSocketAddress(uri.getHost(), port), connectTimeoutMillis);
+            return ((SSLSocketFactory) SSLSocketFactory.getDefault()).createSocket(socket, uri.getHost(), port, true);
+        }
+        return socket;
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return createSocket(new InetSocketAddress(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return createSocket(new InetSocketAddress(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return createSocket(new InetSocketAddress(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return createSocket(new InetSocketAddress(address, port));
+    }
+
+    private Socket createSocket(InetSocketAddress address) throws IOException {
+        Socket socket = new MonitoredSocket();
+        socket.connect(address, connectTimeoutMillis);
+        return socket;
+    }
+
+    /**
+     * Returns the number of writes to the sockets created by this factory.
+     */
+    public synchronized long getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * Waits until the write count is greater than the given count, a socket is closed, or the timeout expires.
+     */
+    public synchronized void awaitWrite(long count, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (writeCount <= count && !closed) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return;
+            }
+            wait(remaining);
+        }
+    }
+
+    private synchronized void onWrite() {
+        writeCount++;
+        notifyAll();
+    }
+
+    private synchronized void onClose() {
+        closed = true;
+        notifyAll();
+    }
+
+    private class MonitoredSocket extends Socket {
+        private OutputStream outputStream;
+
+        @Override
+        public synchronized OutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new FilterOutputStream(super.getOutputStream()) {
+                    @Override
+                    public void write(int b) throws IOException {
+                        out.write(b);
+                        onWrite();
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        // FilterOutputStream would write the bytes one by one
+                        out.write(b, off, len);
+                        onWrite();
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                onClose();
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.streamr.client.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A FIFO of strings stored in a memory-mapped file, used by the OutboundQueue to hold the messages which don't
+ * fit in memory. Each record is stored as its length followed by its UTF-8 bytes. Records are appended at the
+ * write position and removed from the read position. When a record doesn't fit at the end of the file, the
+ * unread records are moved to the start of the file to make space.
+ *
+ * The file is scratch space: its contents are not recovered, but overwritten when a SpillFile is created, and
+ * close() unmaps and deletes it. This class is not thread-safe.
+ */
+public class SpillFile {
+    private static final Logger log = LoggerFactory.getLogger(SpillFile.class);
+
+    private final File file;
+    private MappedByteBuffer buffer;
+    private int readPosition = 0;
+    private int writePosition = 0;
+    private int count = 0;
+
+    public SpillFile(File file, int sizeBytes) throws IOException {
+        this.file = file;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(sizeBytes);
+            // The mapping stays valid after the channel is closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, sizeBytes);
+        }
+    }
+
+    /**
+     * Appends the record to the end of the file.
+     *
+     * @return false if there is not enough space in the file
+     */
+    public boolean append(String record) {
+        if (buffer == null) {
+            return false;
+        }
+        byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+        int recordSize = Integer.BYTES + bytes.length;
+        if (writePosition + recordSize > buffer.capacity()) {
+            compact();
+            if (writePosition + recordSize > buffer.capacity()) {
+                return false;
+            }
+        }
+        buffer.putInt(writePosition, bytes.length);
+        ByteBuffer target = buffer.duplicate();
+        target.position(writePosition + Integer.BYTES);
+        target.put(bytes);
+        writePosition += recordSize;
+        count++;
+        return true;
+    }
+
+    /**
+     * Returns up to max records from the head of the file without removing them.
+     */
+    public List<String> peek(int max) {
+        List<String> records = new ArrayList<>(Math.min(max, count));
+        int position = readPosition;
+        for (int i = 0; i < max && i < count; i++) {
+            int length = buffer.getInt(position);
+            byte[] bytes = new byte[length];
+            ByteBuffer source = buffer.duplicate();
+            source.position(position + Integer.BYTES);
+            source.get(bytes);
+            records.add(new String(bytes, StandardCharsets.UTF_8));
+            position += Integer.BYTES + length;
+        }
+        return records;
+    }
+
+    /**
+     * Removes n records from the head of the file.
+     */
+    public void remove(int n) {
+        if (n > count) {
+            throw new IllegalArgumentException("Can't remove " + n + " records, the file contains " + count);
+        }
+        for (int i = 0; i < n; i++) {
+            readPosition += Integer.BYTES + buffer.getInt(readPosition);
+        }
+        count -= n;
+        if (count == 0) {
+            readPosition = 0;
+            writePosition = 0;
+        }
+    }
+
+    public void clear() {
+        readPosition = 0;
+        writePosition = 0;
+        count = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Discards the records, unmaps the file and deletes it. Nothing can be appended after this.
+     */
+    public void close() {
+        clear();
+        if (buffer == null) {
+            return;
+        }
+        unmap(buffer);
+        buffer = null;
+        if (!file.delete() && file.exists()) {
+            log.warn("Failed to delete spill file {}", file);
+        }
+    }
+
+    /**
+     * Returns the number of bytes used by the records in the file.
+     */
+    public int getUsedBytes() {
+        return writePosition - readPosition;
+    }
+
+    /**
+     * Releases the mapping right away instead of when the buffer is garbage collected, so that the file can be
+     * deleted on all platforms. There is no public API for this, so it's done with Unsafe.invokeCleaner() on
+     * Java 9+, and with the cleaner of the buffer on Java 8.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            try {
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (NoSuchMethodException e) {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (Exception e) {
+            // The mapping is released when the buffer is garbage collected
+            log.debug("Failed to unmap spill file: {}", e.toString());
+        }
+    }
+
+    private void compact() {
+        if (readPosition == 0) {
+            return;
+        }
+        ByteBuffer source = buffer.duplicate();
+        source.position(readPosition).limit(writePosition);
+        ByteBuffer target = buffer.duplicate();
+        target.position(0);
+        // The source and target regions may overlap, so copy through a temporary array
+        byte[] unread = new byte[writePosition - readPosition];
+        source.get(unread);
+        target.put(unread);
+        writePosition -= readPosition;
+        readPosition = 0;
+    }
+}
@@ -1,6 +1,8 @@
 package com.streamr.client.utils;
 
 import com.streamr.client.exceptions.ValidationException;
+import com.streamr.client.metrics.Counter;
+import com.streamr.client.metrics.Metrics;
 import com.streamr.client.options.SigningOptions.SignatureVerificationPolicy;
 import com.streamr.client.protocol.message_layer.AbstractGroupKeyMessage;
 import com.streamr.client.protocol.message_layer.StreamMessage;
@@ -8,23 +10,41 @@ import com.streamr.client.rest.Stream;
 import org.cache2k.Cache;
 import org.cache2k.Cache2kBuilder;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 
 public class StreamMessageValidator {
     private static final int STREAM_EXPIRATION = 15;
+    private static final long SIGNATURE_CHECK_TIMEOUT_MILLIS = 10000;
     private Cache<String, Stream> streamsPerStreamId = new Cache2kBuilder<String, Stream>() {}
         .expireAfterWrite(STREAM_EXPIRATION, TimeUnit.MINUTES).build();
     private final Function<String, Stream> getStreamFunction;
     private final AddressValidityUtil addressValidityUtil;
     private final SignatureVerificationPolicy signatureVerificationPolicy;
+    private final VerifiedSignatureCache verifiedSignatureCache;
+    private Counter streamCacheHits = Counter.NOOP;
+    private Counter streamCacheMisses = Counter.NOOP;
 
     public StreamMessageValidator(Function<String, Stream> getStreamFunction,
                                   AddressValidityUtil addressValidityUtil,
-                                  SignatureVerificationPolicy signatureVerificationPolicy) {
+                                  SignatureVerificationPolicy signatureVerificationPolicy,
+                                  VerifiedSignatureCache verifiedSignatureCache) {
         this.getStreamFunction = getStreamFunction;
         this.addressValidityUtil = addressValidityUtil;
         this.signatureVerificationPolicy = signatureVerificationPolicy;
+        this.verifiedSignatureCache = verifiedSignatureCache;
+    }
+
+    public StreamMessageValidator(Function<String, Stream> getStreamFunction,
+                                  AddressValidityUtil addressValidityUtil,
+                                  SignatureVerificationPolicy signatureVerificationPolicy) {
+        this(getStreamFunction, addressValidityUtil, signatureVerificationPolicy, new VerifiedSignatureCache());
     }
 
     private Cache<String, Stream> safeGetStreamCache() {
@@ -39,30 +59,66 @@ public class StreamMessageValidator {
      * Validates the message using the protocol rules and throws if the message fails validation.
      */
     public void validate(StreamMessage msg) throws ValidationException {
+        validate(msg, null);
+    }
+
+    /**
+     * Validates the message like validate(msg), but uses the result of a signature verification started earlier
+     * with verifySignatureAsync(msg, executor) instead of verifying the signature on the calling thread.
+     * If signatureCheck is null, the signature is verified on the calling thread when needed.
+     */
+    public void validate(StreamMessage msg, CompletableFuture<Boolean> signatureCheck) throws ValidationException {
         if (msg == null) {
             throw new IllegalArgumentException("StreamMessage was null!");
         }
 
         switch (msg.getMessageType()) {
             case STREAM_MESSAGE:
-                validateStreamMessage(msg);
+                validateStreamMessage(msg, signatureCheck);
                 break;
             case GROUP_KEY_REQUEST:
-                validateGroupKeyRequest(msg);
+                validateGroupKeyRequest(msg, signatureCheck);
                 break;
             case GROUP_KEY_ANNOUNCE:
-                validateGroupKeyAnnounce(msg);
+                validateGroupKeyAnnounce(msg, signatureCheck);
                 break;
             case GROUP_KEY_RESPONSE:
             case GROUP_KEY_ERROR_RESPONSE:
-                validateGroupKeyResponse(msg);
+                validateGroupKeyResponse(msg, signatureCheck);
                 break;
             default:
                 throw new ValidationException(msg, ValidationException.Reason.INVALID_MESSAGE);
         }
     }
 
-    private void validateStreamMessage(StreamMessage msg) {
+    /**
+     * Starts verifying the signature of the message on the given executor. Signature verification is the most
+     * expensive part of validation, and this allows verifying the signatures of many messages in parallel while
+     * still calling validate(msg, signatureCheck) for each message in order. Returns null if the signature of the
+     * message will not be checked, or if the executor has been shut down, in which case validate() verifies it.
+     */
+    public CompletableFuture<Boolean> verifySignatureAsync(StreamMessage msg, Executor executor) {
+        if (msg.getSignature() == null) {
+            return null;
+        }
+        // Signatures on key exchange messages are checked regardless of policy setting
+        if (signatureVerificationPolicy == SignatureVerificationPolicy.NEVER && msg.getMessageType() == StreamMessage.MessageType.STREAM_MESSAGE) {
+            return null;
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return verifiedSignatureCache.hasValidSignature(msg);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    private void validateStreamMessage(StreamMessage msg, CompletableFuture<Boolean> signatureCheck) {
         Stream stream = getStream(msg.getStreamId());
 
         // Checks against stream metadata
@@ -76,7 +132,7 @@ public class StreamMessageValidator {
             throw new ValidationException(msg, ValidationException.Reason.INVALID_MESSAGE, "Partition " + msg.getStreamPartition() + " is out of range (0.." + (stream.getPartitions()-1) + ")");
         }
 
-        assertValidSignatureAccordingToPolicy(msg);
+        assertValidSignatureAccordingToPolicy(msg, signatureCheck);
 
         // Check publisher. Note that this can only be checked on signed messages.
         if (msg.getSignature() != null) {
@@ -89,19 +145,38 @@ public class StreamMessageValidator {
         }
     }
 
-    private void assertValidSignature(StreamMessage msg) throws ValidationException {
+    private void assertValidSignature(StreamMessage msg, CompletableFuture<Boolean> signatureCheck) throws ValidationException {
         boolean valid;
         try {
-            valid = SigningUtil.hasValidSignature(msg);
+            valid = signatureCheck != null ? awaitSignatureCheck(msg, signatureCheck) : verifiedSignatureCache.hasValidSignature(msg);
             if (!valid) {
                 throw new ValidationException(msg, ValidationException.Reason.INVALID_SIGNATURE);
             }
+        } catch (CompletionException e) {
+            throw new ValidationException(msg, ValidationException.Reason.INVALID_SIGNATURE, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
         } catch (Exception e) {
             throw new ValidationException(msg, ValidationException.Reason.INVALID_SIGNATURE, e.getMessage());
         }
     }
 
-    private void assertValidSignatureAccordingToPolicy(StreamMessage msg) throws ValidationException {
+    /**
+     * Waits for a signature check started by verifySignatureAsync(). If it doesn't complete in time, for example
+     * because its executor was shut down with the task still queued, the signature is verified on this thread.
+     */
+    private boolean awaitSignatureCheck(StreamMessage msg, CompletableFuture<Boolean> signatureCheck) throws Exception {
+        try {
+            return signatureCheck.get(SIGNATURE_CHECK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return verifiedSignatureCache.hasValidSignature(msg);
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    private void assertValidSignatureAccordingToPolicy(StreamMessage msg, CompletableFuture<Boolean> signatureCheck) throws ValidationException {
         if (signatureVerificationPolicy == SignatureVerificationPolicy.NEVER) {
             // Always pass
             return;
@@ -112,11 +187,11 @@ public class StreamMessageValidator {
         }
 
         if (msg.getSignature() != null) {
-            assertValidSignature(msg);
+            assertValidSignature(msg, signatureCheck);
         }
     }
 
-    private void validateGroupKeyRequest(StreamMessage streamMessage) {
+    private void validateGroupKeyRequest(StreamMessage streamMessage, CompletableFuture<Boolean> signatureCheck) {
         if (streamMessage.getSignature() == null) {
             throw new ValidationException(streamMessage, ValidationException.Reason.UNSIGNED_NOT_ALLOWED);
         }
@@ -124,7 +199,7 @@ public class StreamMessageValidator {
         assertKeyExchangeStream(streamMessage);
 
         // Signatures on key exchange messages are checked regardless of policy setting
-        assertValidSignature(streamMessage);
+        assertValidSignature(streamMessage, signatureCheck);
 
         AbstractGroupKeyMessage request = AbstractGroupKeyMessage.deserialize(streamMessage.getSerializedContent(), streamMessage.getMessageType());
         Address sender = streamMessage.getPublisherId();
@@ -141,7 +216,7 @@ public class StreamMessageValidator {
         }
     }
 
-    private void validateGroupKeyResponse(StreamMessage streamMessage) {
+    private void validateGroupKeyResponse(StreamMessage streamMessage, CompletableFuture<Boolean> signatureCheck) {
         if (streamMessage.getSignature() == null) {
             throw new ValidationException(streamMessage, ValidationException.Reason.UNSIGNED_NOT_ALLOWED, "Received unsigned group key response (it must be signed to avoid MitM attacks)");
         }
@@ -149,7 +224,7 @@ public class StreamMessageValidator {
         assertKeyExchangeStream(streamMessage);
 
         // Signatures on key exchange messages are checked regardless of policy setting
-        assertValidSignature(streamMessage);
+        assertValidSignature(streamMessage, signatureCheck);
 
         AbstractGroupKeyMessage response = AbstractGroupKeyMessage.deserialize(streamMessage.getSerializedContent(), streamMessage.getMessageType());
         Address sender = streamMessage.getPublisherId();
@@ -166,17 +241,17 @@ public class StreamMessageValidator {
         }
     }
 
-    private void validateGroupKeyAnnounce(StreamMessage streamMessage) {
+    private void validateGroupKeyAnnounce(StreamMessage streamMessage, CompletableFuture<Boolean> signatureCheck) {
         // Announce messages can appear in key exchange streams and normal streams and are validated differently
         if (KeyExchangeUtil.isKeyExchangeStreamId(streamMessage.getStreamId())) {
             // Validate using the same logic as GroupKeyResponse
-            validateGroupKeyResponse(streamMessage);
+            validateGroupKeyResponse(streamMessage, signatureCheck);
         } else {
             // Validate like a StreamMessage (except always reject unsigned)
             if (streamMessage.getSignature() == null) {
                 throw new ValidationException(streamMessage, ValidationException.Reason.UNSIGNED_NOT_ALLOWED, "Received unsigned group key response (it must be signed to avoid MitM attacks)");
             }
-            validateStreamMessage(streamMessage);
+            validateStreamMessage(streamMessage, signatureCheck);
         }
 
     }
@@ -190,14 +265,49 @@ public class StreamMessageValidator {
     private Stream getStream(String streamId) {
         Stream s = safeGetStreamCache().get(streamId);
         if (s == null) {
+            streamCacheMisses.inc();
             s = getStreamFunction.apply(streamId);
             safeGetStreamCache().put(streamId, s);
+        } else {
+            streamCacheHits.inc();
         }
         return s;
     }
 
+    /**
+     * Sets where the hits and misses of the stream metadata cache are counted.
+     */
+    public void setMetrics(Metrics metrics) {
+        streamCacheHits = metrics.counter("validator.streamCache.hits");
+        streamCacheMisses = metrics.counter("validator.streamCache.misses");
+    }
+
+    /**
+     * Stores stream metadata fetched ahead of time, so that validating the first messages of the stream
+     * doesn't need to block on a REST call.
+     */
+    public void cacheStream(Stream stream) {
+        safeGetStreamCache().put(stream.getId(), stream);
+    }
+
+    /**
+     * Returns true if the metadata of the stream is cached, so validating its messages doesn't need a REST call.
+     */
+    public boolean isStreamCached(String streamId) {
+        return safeGetStreamCache().containsKey(streamId);
+    }
+
+    public VerifiedSignatureCache getVerifiedSignatureCache() {
+        return verifiedSignatureCache;
+    }
+
+    public AddressValidityUtil getAddressValidityUtil() {
+        return addressValidityUtil;
+    }
+
     public void clearAndClose() {
         safeGetStreamCache().clearAndClose();
         addressValidityUtil.clearAndClose();
+        verifiedSignatureCache.clearAndClose();
     }
 }
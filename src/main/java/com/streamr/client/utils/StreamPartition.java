@@ -2,12 +2,15 @@ package com.streamr.client.utils;
 
 public class StreamPartition {
 
-    private String streamId;
-    private int partition;
+    private final String streamId;
+    private final int partition;
+    // Computed once, as StreamPartitions are used as keys to look up the subscription of each received message
+    private final int hash;
 
     public StreamPartition(String streamId, int partition) {
         this.streamId = streamId;
         this.partition = partition;
+        this.hash = 31 * streamId.hashCode() + partition;
     }
 
     public String getStreamId() {
@@ -20,14 +23,18 @@ public class StreamPartition {
 
     @Override
     public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
         return obj instanceof StreamPartition
-                && ((StreamPartition) obj).getStreamId().equals(streamId)
-                && ((StreamPartition) obj).getPartition() == partition;
+                && ((StreamPartition) obj).hash == hash
+                && ((StreamPartition) obj).getPartition() == partition
+                && ((StreamPartition) obj).getStreamId().equals(streamId);
     }
 
     @Override
     public int hashCode() {
-        return (this.getStreamId() + "-" + getPartition()).hashCode();
+        return hash;
     }
 
     @Override
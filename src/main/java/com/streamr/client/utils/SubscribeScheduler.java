@@ -0,0 +1,289 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.protocol.control_layer.SubscribeRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Paces the subscribe requests of a client, so that subscribing to thousands of stream partitions, for example
+ * when resubscribing after a reconnect, doesn't flood the connection. At most maxInFlight requests are sent
+ * without having received their response, and the rest wait in a queue in the order they were made. A request
+ * succeeds when its SubscribeResponse arrives. A request which gets no response in timeoutMillis is sent again,
+ * ahead of the queued ones, and fails after MAX_ATTEMPTS tries. A request answered with an ErrorResponse fails
+ * right away. The failed requests are passed to the onFailed callback.
+ *
+ * The progress is reported to a ProgressListener over each batch, which lasts until no requests are queued or
+ * in flight.
+ */
+public class SubscribeScheduler {
+    private static final Logger log = LoggerFactory.getLogger(SubscribeScheduler.class);
+
+    public static final int MAX_ATTEMPTS = 3;
+
+    private final int maxInFlight;
+    private final long timeoutMillis;
+    private final Consumer<SubscribeRequest> sender;
+    private final Consumer<SubscribeRequest> onFailed;
+    private volatile ProgressListener progressListener = null;
+
+    // Guarded by this
+    private final ArrayDeque<SubscribeRequest> queue = new ArrayDeque<>();
+    private final HashMap<String, InFlight> inFlight = new HashMap<>();
+    // The number of times the queued and in flight requests have been sent, by request id
+    private final HashMap<String, Integer> attempts = new HashMap<>();
+    private int batchCompleted = 0;
+    private int batchFailed = 0;
+    private int batchTotal = 0;
+    private long batchStartedAt = 0;
+
+    public SubscribeScheduler(int maxInFlight, long timeoutMillis, Consumer<SubscribeRequest> sender) {
+        this(maxInFlight, timeoutMillis, sender, request -> {});
+    }
+
+    public SubscribeScheduler(int maxInFlight, long timeoutMillis, Consumer<SubscribeRequest> sender,
+                              Consumer<SubscribeRequest> onFailed) {
+        this.maxInFlight = maxInFlight;
+        this.timeoutMillis = timeoutMillis;
+        this.sender = sender;
+        this.onFailed = onFailed;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Queues the request, and sends it right away if there is room in flight.
+     */
+    public void submit(SubscribeRequest request) {
+        synchronized (this) {
+            if (batchTotal == 0) {
+                batchStartedAt = System.currentTimeMillis();
+            }
+            queue.add(request);
+            batchTotal++;
+        }
+        sendQueued();
+    }
+
+    /**
+     * Called when the SubscribeResponse to a request arrives. Responses to other requests are ignored.
+     */
+    public void onResponse(String requestId) {
+        InFlight request = removeInFlight(requestId);
+        if (request != null) {
+            complete(true, true);
+        }
+    }
+
+    /**
+     * Called when an ErrorResponse arrives. The request with the same id, if any, fails without being retried.
+     */
+    public void onError(String requestId) {
+        InFlight request = removeInFlight(requestId);
+        if (request != null) {
+            log.warn("Subscribe request {} for stream {} partition {} failed with an error response", requestId,
+                    request.request.getStreamId(), request.request.getStreamPartition());
+            fail(request.request, true);
+        }
+    }
+
+    private InFlight removeInFlight(String requestId) {
+        InFlight request;
+        synchronized (this) {
+            request = inFlight.remove(requestId);
+            if (request != null) {
+                attempts.remove(requestId);
+            }
+        }
+        if (request != null) {
+            request.timeout.cancel(false);
+        }
+        return request;
+    }
+
+    /**
+     * Discards the queued and in flight requests, for example when the connection is lost, as the subscriptions
+     * are resubscribed on reconnect.
+     */
+    public void reset() {
+        reset(request -> true);
+    }
+
+    /**
+     * Discards the queued and in flight requests which match the filter, for example the ones sent over a
+     * connection which was lost.
+     */
+    public synchronized void reset(Predicate<SubscribeRequest> filter) {
+        int removed = 0;
+        for (Iterator<InFlight> it = inFlight.values().iterator(); it.hasNext();) {
+            InFlight request = it.next();
+            if (filter.test(request.request)) {
+                request.timeout.cancel(false);
+                it.remove();
+                attempts.remove(request.request.getRequestId());
+                removed++;
+            }
+        }
+        for (Iterator<SubscribeRequest> it = queue.iterator(); it.hasNext();) {
+            SubscribeRequest request = it.next();
+            if (filter.test(request)) {
+                it.remove();
+                attempts.remove(request.getRequestId());
+                removed++;
+            }
+        }
+        batchTotal -= removed;
+        if (batchTotal <= batchCompleted + batchFailed) {
+            batchCompleted = 0;
+            batchFailed = 0;
+            batchTotal = 0;
+        }
+    }
+
+    /**
+     * Returns the request with the given id if it has been sent and is waiting for its response, otherwise null.
+     */
+    public synchronized SubscribeRequest getInFlight(String requestId) {
+        InFlight request = inFlight.get(requestId);
+        return request != null ? request.request : null;
+    }
+
+    public synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private void onTimeout(String requestId) {
+        InFlight timedOut;
+        boolean retry = false;
+        synchronized (this) {
+            timedOut = inFlight.remove(requestId);
+            if (timedOut != null) {
+                if (attempts.get(requestId) < MAX_ATTEMPTS) {
+                    // Ahead of the queued ones, as it has already waited its turn
+                    queue.addFirst(timedOut.request);
+                    retry = true;
+                } else {
+                    attempts.remove(requestId);
+                }
+            }
+        }
+        if (timedOut == null) {
+            return;
+        }
+        if (retry) {
+            log.warn("No response to subscribe request {} in {} ms, sending it again", requestId, timeoutMillis);
+            sendQueued();
+        } else {
+            log.warn("No response to subscribe request {} for stream {} partition {} after {} tries", requestId,
+                    timedOut.request.getStreamId(), timedOut.request.getStreamPartition(), MAX_ATTEMPTS);
+            fail(timedOut.request, true);
+        }
+    }
+
+    private void fail(SubscribeRequest request, boolean sendNext) {
+        try {
+            onFailed.accept(request);
+        } catch (RuntimeException e) {
+            log.error("Error in the failed subscribe request callback", e);
+        }
+        complete(false, sendNext);
+    }
+
+    private void complete(boolean success, boolean sendNext) {
+        int completed;
+        int failed;
+        int remaining;
+        long elapsed;
+        synchronized (this) {
+            if (success) {
+                batchCompleted++;
+            } else {
+                batchFailed++;
+            }
+            completed = batchCompleted;
+            failed = batchFailed;
+            remaining = batchTotal - batchCompleted - batchFailed;
+            elapsed = System.currentTimeMillis() - batchStartedAt;
+            if (remaining == 0) {
+                batchCompleted = 0;
+                batchFailed = 0;
+                batchTotal = 0;
+            }
+        }
+        if (remaining == 0 && completed + failed > 1) {
+            log.info("Completed {} subscribe requests in {} ms, {} of them failed", completed + failed, elapsed, failed);
+        }
+        ProgressListener listener = progressListener;
+        if (listener != null) {
+            listener.onProgress(completed, failed, remaining);
+        }
+        if (sendNext) {
+            sendQueued();
+        }
+    }
+
+    private void sendQueued() {
+        List<SubscribeRequest> toSend = new ArrayList<>();
+        synchronized (this) {
+            while (!queue.isEmpty() && inFlight.size() < maxInFlight) {
+                SubscribeRequest request = queue.poll();
+                String requestId = request.getRequestId();
+                attempts.merge(requestId, 1, Integer::sum);
+                inFlight.put(requestId, new InFlight(request,
+                        SharedScheduler.schedule(() -> onTimeout(requestId), timeoutMillis)));
+                toSend.add(request);
+            }
+        }
+        // Send outside the lock, as sending may block
+        for (SubscribeRequest request : toSend) {
+            try {
+                sender.accept(request);
+            } catch (RuntimeException e) {
+                // Most likely disconnected, in which case the subscription is resubscribed on reconnect
+                log.error("Failed to send subscribe request " + request.getRequestId(), e);
+                InFlight failed = removeInFlight(request.getRequestId());
+                if (failed != null) {
+                    // Counted as failed, but not passed to onFailed, as the subscription is resubscribed on
+                    // reconnect. Don't send the next ones from here, as they would most likely fail as well.
+                    complete(false, false);
+                }
+            }
+        }
+    }
+
+    private static class InFlight {
+        final SubscribeRequest request;
+        final ScheduledFuture<?> timeout;
+
+        InFlight(SubscribeRequest request, ScheduledFuture<?> timeout) {
+            this.request = request;
+            this.timeout = timeout;
+        }
+    }
+
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * Called when a subscribe request succeeds or fails.
+         *
+         * @param completed the number of requests in the current batch which have succeeded
+         * @param failed the number of requests in the current batch which have failed, see SubscribeScheduler
+         * @param remaining the number of requests of the batch still queued or in flight, 0 when the batch is done
+         */
+        void onProgress(int completed, int failed, int remaining);
+    }
+}
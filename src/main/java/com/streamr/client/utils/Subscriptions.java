@@ -4,63 +4,102 @@ import com.streamr.client.exceptions.AlreadySubscribedException;
 import com.streamr.client.exceptions.SubscriptionNotFoundException;
 import com.streamr.client.subs.Subscription;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.function.Consumer;
 
+/**
+ * Subscriptions by stream and partition. The subscriptions are added and removed from the threads which subscribe
+ * and unsubscribe, while the threads which deliver messages look them up, so:
+ *
+ * - get() and getAllForStreamId() don't lock, as they're called for received messages,
+ * - add() and remove() lock each other out, and update the indexes without copying all the subscriptions, and
+ * - getAll() and forEach() iterate over an immutable snapshot of all the subscriptions, built when needed after a
+ *   change, so the subscriptions can be added and removed while iterating, for example when resubscribing on
+ *   reconnect.
+ */
 public class Subscriptions {
 
-    private final Map<String, Map<Integer, Subscription>> subsByStreamIdAndPartition = new HashMap<>();
+    private final ConcurrentHashMap<StreamPartition, Subscription> subsByStreamPartition = new ConcurrentHashMap<>();
+    // The subscriptions of each stream by partition, for the key exchange which handles all the partitions at once
+    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Integer, Subscription>> subsByStreamId = new ConcurrentHashMap<>();
+    // Guarded by this. In the order the subscriptions were added.
+    private final LinkedHashSet<Subscription> inOrder = new LinkedHashSet<>();
+    // Replaced, never modified. Null after a change until getAll() is called.
+    private volatile List<Subscription> snapshot = Collections.emptyList();
 
     /**
      *
      * @throws AlreadySubscribedException if there is already a subscription for the stream-partition
      */
-    public void add(Subscription sub) throws AlreadySubscribedException {
-        Map<Integer, Subscription> subsByStreamId = subsByStreamIdAndPartition.get(sub.getStreamId());
-        if (subsByStreamId == null) {
-            subsByStreamId = new HashMap<>();
-            subsByStreamIdAndPartition.put(sub.getStreamId(), subsByStreamId);
-        }
-        if (subsByStreamId.containsKey(sub.getPartition())) {
+    public synchronized void add(Subscription sub) throws AlreadySubscribedException {
+        StreamPartition key = new StreamPartition(sub.getStreamId(), sub.getPartition());
+        if (subsByStreamPartition.putIfAbsent(key, sub) != null) {
             throw new AlreadySubscribedException(sub);
-        } else {
-            subsByStreamId.put(sub.getPartition(), sub);
         }
+        subsByStreamId.computeIfAbsent(sub.getStreamId(), streamId -> new ConcurrentSkipListMap<>())
+                .put(sub.getPartition(), sub);
+        inOrder.add(sub);
+        snapshot = null;
     }
 
     public Subscription get(String streamId, int partition) throws SubscriptionNotFoundException {
-        Map<Integer, Subscription> subsByStreamId = subsByStreamIdAndPartition.get(streamId);
-        if (subsByStreamId == null) {
-            throw new SubscriptionNotFoundException(streamId, partition);
-        }
-        Subscription result = subsByStreamId.get(partition);
+        Subscription result = subsByStreamPartition.get(new StreamPartition(streamId, partition));
         if (result == null) {
             throw new SubscriptionNotFoundException(streamId, partition);
         }
         return result;
     }
 
+    public boolean contains(String streamId, int partition) {
+        return subsByStreamPartition.containsKey(new StreamPartition(streamId, partition));
+    }
+
+    /**
+     * Returns the subscriptions to the partitions of the stream, ordered by partition. The returned collection is
+     * a live view, which can be iterated while subscriptions are added and removed.
+     */
     public Collection<Subscription> getAllForStreamId(String streamId) {
-        Map<Integer, Subscription> subsByStreamId = subsByStreamIdAndPartition.get(streamId);
-        return subsByStreamId == null ? new HashSet<>() : subsByStreamId.values();
+        ConcurrentSkipListMap<Integer, Subscription> subs = subsByStreamId.get(streamId);
+        return subs == null ? Collections.emptyList() : Collections.unmodifiableCollection(subs.values());
     }
 
-    public void remove(Subscription sub) throws SubscriptionNotFoundException {
-        Map<Integer, Subscription> subsByStreamId = subsByStreamIdAndPartition.get(sub.getStreamId());
-        if (subsByStreamId == null) {
+    public synchronized void remove(Subscription sub) throws SubscriptionNotFoundException {
+        Subscription removed = subsByStreamPartition.remove(new StreamPartition(sub.getStreamId(), sub.getPartition()));
+        if (removed == null) {
             throw new SubscriptionNotFoundException(sub.getStreamId(), sub.getPartition());
         }
-        if (subsByStreamId.containsKey(sub.getPartition())) {
-            subsByStreamId.remove(sub.getPartition());
-        } else {
-            throw new SubscriptionNotFoundException(sub.getStreamId(), sub.getPartition());
+        ConcurrentSkipListMap<Integer, Subscription> streamSubs = subsByStreamId.get(removed.getStreamId());
+        streamSubs.remove(removed.getPartition());
+        if (streamSubs.isEmpty()) {
+            subsByStreamId.remove(removed.getStreamId());
         }
+        inOrder.remove(removed);
+        snapshot = null;
     }
 
     public void forEach(Consumer<Subscription> f) {
-        subsByStreamIdAndPartition.values().forEach(map -> map.values().forEach(f));
+        getAll().forEach(f);
+    }
+
+    /**
+     * Returns an immutable snapshot of all the subscriptions, in the order they were added.
+     */
+    public List<Subscription> getAll() {
+        List<Subscription> result = snapshot;
+        if (result == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    snapshot = Collections.unmodifiableList(new ArrayList<>(inOrder));
+                }
+                result = snapshot;
+            }
+        }
+        return result;
     }
 }
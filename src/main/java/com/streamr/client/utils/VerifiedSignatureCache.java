@@ -0,0 +1,158 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.cache2k.Cache;
+import org.cache2k.Cache2kBuilder;
+import org.ethereum.util.ByteUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the messages whose signatures have already been verified, so that duplicates of a message (from
+ * resends, gap fills, or overlapping historical and real-time delivery) don't need the expensive public key
+ * recovery again.
+ *
+ * Entries are keyed by the message identity (stream partition, publisherId, msgChainId and MessageRef). The value
+ * is a hash of the signed payload and the signature, so a duplicate is only accepted if it is identical to the
+ * message that was verified. Only valid signatures are cached.
+ */
+public class VerifiedSignatureCache {
+    public static final long DEFAULT_MAX_SIZE = 10000;
+    public static final long DEFAULT_EXPIRATION_MILLIS = 15 * 60 * 1000;
+
+    private final long maxSize;
+    private final long expirationMillis;
+    private volatile Cache<MessageKey, String> verified;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public VerifiedSignatureCache(long maxSize, long expirationMillis) {
+        this.maxSize = maxSize;
+        this.expirationMillis = expirationMillis;
+        verified = buildCache();
+    }
+
+    public VerifiedSignatureCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_EXPIRATION_MILLIS);
+    }
+
+    private Cache<MessageKey, String> buildCache() {
+        return new Cache2kBuilder<MessageKey, String>() {}
+                .entryCapacity(maxSize)
+                .expireAfterWrite(expirationMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    private Cache<MessageKey, String> safeGetCache() {
+        Cache<MessageKey, String> cache = verified;
+        if (cache.isClosed()) {
+            synchronized (this) {
+                if (verified.isClosed()) {
+                    verified = buildCache();
+                }
+                cache = verified;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the cached result if an identical message has already been verified, otherwise
+     * verifies the signature with SigningUtil.hasValidSignature(msg) and caches the result if it is valid.
+     */
+    public boolean hasValidSignature(StreamMessage msg) {
+        if (msg.getSignature() == null) {
+            return false;
+        }
+
+        Cache<MessageKey, String> cache = safeGetCache();
+        MessageKey key = new MessageKey(msg);
+        String digest = digest(msg);
+        if (digest.equals(cache.peek(key))) {
+            hits.incrementAndGet();
+            return true;
+        }
+
+        misses.incrementAndGet();
+        boolean valid = SigningUtil.hasValidSignature(msg);
+        if (valid) {
+            cache.put(key, digest);
+        }
+        return valid;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the fraction of lookups which were served from the cache, or 0 if there have been no lookups.
+     */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public void clear() {
+        safeGetCache().clear();
+    }
+
+    /**
+     * Releases the cache. It is rebuilt empty if the signatures are verified again, for example after reconnecting.
+     */
+    public void clearAndClose() {
+        safeGetCache().clearAndClose();
+    }
+
+    private static String digest(StreamMessage msg) {
+        return DigestUtils.sha256Hex(ByteUtil.merge(
+                new byte[]{msg.getSignatureType().getId()},
+                SigningUtil.getPayloadToSignOrVerify(msg, msg.getSignatureType()),
+                msg.getSignature().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static final class MessageKey {
+        private final String streamId;
+        private final int streamPartition;
+        private final long timestamp;
+        private final long sequenceNumber;
+        private final Address publisherId;
+        private final String msgChainId;
+
+        MessageKey(StreamMessage msg) {
+            streamId = msg.getStreamId();
+            streamPartition = msg.getStreamPartition();
+            timestamp = msg.getTimestamp();
+            sequenceNumber = msg.getSequenceNumber();
+            publisherId = msg.getPublisherId();
+            msgChainId = msg.getMsgChainId();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            MessageKey that = (MessageKey) o;
+            return streamPartition == that.streamPartition &&
+                    timestamp == that.timestamp &&
+                    sequenceNumber == that.sequenceNumber &&
+                    streamId.equals(that.streamId) &&
+                    publisherId.equals(that.publisherId) &&
+                    msgChainId.equals(that.msgChainId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(streamId, streamPartition, timestamp, sequenceNumber, publisherId, msgChainId);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.streamr.client
 
 import com.streamr.client.exceptions.GapDetectedException
 import com.streamr.client.exceptions.UnableToDecryptException
+import com.streamr.client.metrics.SimpleMetrics
 import com.streamr.client.protocol.StreamrSpecification
 import com.streamr.client.protocol.message_layer.MessageRef
 import com.streamr.client.protocol.message_layer.StreamMessage
@@ -10,6 +11,11 @@ import com.streamr.client.subs.BasicSubscription.GroupKeyRequestFunction
 import com.streamr.client.subs.RealTimeSubscription
 import com.streamr.client.subs.Subscription
 import com.streamr.client.utils.*
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
 
 /**
  * BasicSubscription is abstract, but contains most of the code for RealtimeSubscription and
@@ -69,6 +75,101 @@ class BasicSubscriptionSpec extends StreamrSpecification {
         received[0] == msg
     }
 
+    void "while the delivery is paused, the first and the last real-time message of each chain are kept and handled on resume"() {
+        sub.pauseDelivery()
+
+        when:
+        (1..4).each { sub.offerRealTimeMessage(createMessage(it, 0, it - 1, 0)) }
+
+        then:
+        received.isEmpty()
+
+        when:
+        sub.resumeDelivery()
+
+        then:
+        // The one after the first message is missing, so the last one waits for the gap to be filled
+        received*.timestamp == [1L]
+        sub.getQueuedMessageCount() == 1
+        !sub.isDeliveryPaused()
+    }
+
+    void "while the delivery is paused, resent messages and the ends of resends are kept and handled in order on resume"() {
+        int done = 0
+        sub = createSub(new MessageHandler() {
+            @Override
+            void onMessage(Subscription s, StreamMessage message) {
+                received.add(message)
+            }
+
+            @Override
+            void done(Subscription s) {
+                done++
+            }
+        })
+        sub.pauseDelivery()
+
+        when:
+        sub.startResend()
+        (1..3).each { sub.offerResentMessage(createMessage(it, 0, it == 1 ? null : it - 1, 0)) }
+        sub.offerEndResend()
+        sub.offerRealTimeMessage(createMessage(4, 0, 3, 0))
+
+        then:
+        received.isEmpty()
+        done == 0
+
+        when:
+        sub.resumeDelivery()
+
+        then:
+        received*.timestamp == [1L, 2L, 3L, 4L]
+        done == 1
+        !sub.isResending()
+    }
+
+    void "unchained messages discarded while the delivery is paused are reported as lost, except the last one"() {
+        List<Integer> lost = []
+        sub = createSub(new MessageHandler() {
+            @Override
+            void onMessage(Subscription s, StreamMessage message) {
+                received.add(message)
+            }
+
+            @Override
+            void onMessagesLost(Subscription s, Address publisherId, String msgChainId, int count) {
+                lost.add(count)
+            }
+        })
+        sub.pauseDelivery()
+
+        when:
+        (1..3).each { sub.offerRealTimeMessage(createMessage(it, 0, null, null)) }
+        sub.resumeDelivery()
+
+        then:
+        received*.timestamp == [3L]
+        lost == [2]
+    }
+
+    void "records the handler time also when the handler throws"() {
+        SimpleMetrics metrics = new SimpleMetrics()
+        sub = createSub(new MessageHandler() {
+            @Override
+            void onMessage(Subscription sub, StreamMessage message) {
+                throw new RuntimeException("handler failed")
+            }
+        })
+        sub.setMetrics(metrics)
+
+        when:
+        sub.handleRealTimeMessage(msg)
+
+        then:
+        thrown(RuntimeException)
+        metrics.getTimer("message.handler").getCount() == 1
+    }
+
     void "calls the handler once for each message in order"() {
         ArrayList<StreamMessage> msgs = new ArrayList<>()
         for (int i=0;i<5;i++) {
@@ -134,6 +235,25 @@ class BasicSubscriptionSpec extends StreamrSpecification {
         ex.getMsgChainId() == msg1.getMsgChainId()
     }
 
+    void "clear() clears the gap handler"() {
+        int cleared = 0
+        sub.setGapHandler(new OrderedMsgChain.GapHandlerFunction() {
+            @Override
+            void apply(MessageRef from, MessageRef to, Address publisherId, String msgChainId) {}
+
+            @Override
+            void clear() {
+                cleared++
+            }
+        })
+
+        when:
+        sub.clear()
+
+        then:
+        cleared == 1
+    }
+
     void "does not throw if different publishers"() {
         StreamMessage msg1 = createMessage(1, 0, null, 0, getPublisherId(1))
         StreamMessage msg4 = createMessage(4, 0, 3, 0, getPublisherId(2))
@@ -289,6 +409,62 @@ class BasicSubscriptionSpec extends StreamrSpecification {
         nbCalls == BasicSubscription.MAX_NB_GROUP_KEY_REQUESTS
     }
 
+    void "calls key request function without holding the subscription lock"() {
+        GroupKey groupKey = GroupKey.generate()
+        EncryptionUtil.encryptStreamMessage(msg, groupKey)
+
+        List<Boolean> heldLock = new CopyOnWriteArrayList<>()
+        RealTimeSubscription sub
+        sub = new RealTimeSubscription(msg.getStreamId(), 0, defaultHandler, keyStore, keyExchangeUtil,
+                new GroupKeyRequestFunction() {
+                    @Override
+                    void apply(Address publisherId, List<String> groupKeyIds) {
+                        heldLock.add(Thread.holdsLock(sub))
+                    }
+                }, 60000, 5000, false)
+
+        when:
+        sub.handleRealTimeMessage(msg)
+
+        then:
+        1 * keyStore.get(msg.getStreamId(), groupKey.getGroupKeyId()) >> null
+        new PollingConditions(timeout: 5).eventually {
+            assert heldLock == [false]
+        }
+    }
+
+    void "subscriptions which pass new keys to each other from their handlers at the same time don't deadlock"() {
+        RealTimeSubscription sub0
+        RealTimeSubscription sub1
+        List<StreamMessage> handled = new CopyOnWriteArrayList<>()
+        CountDownLatch bothInHandlers = new CountDownLatch(2)
+        Closure<MessageHandler> passKeysTo = { Closure<RealTimeSubscription> other ->
+            return new MessageHandler() {
+                @Override
+                void onMessage(Subscription s, StreamMessage message) {
+                    bothInHandlers.countDown()
+                    bothInHandlers.await(5, TimeUnit.SECONDS)
+                    // What KeyExchangeUtil does when a message carries a new group key
+                    other().onNewKeysAdded(message.getPublisherId(), [GroupKey.generate()])
+                    handled.add(message)
+                }
+            }
+        }
+        sub0 = createSub(passKeysTo { sub1 })
+        sub1 = createSub(passKeysTo { sub0 })
+
+        when:
+        Thread thread0 = Thread.start { sub0.handleRealTimeMessage(createMessage(1, 0, null, null)) }
+        Thread thread1 = Thread.start { sub1.handleRealTimeMessage(createMessage(2, 0, null, null)) }
+        thread0.join(5000)
+        thread1.join(5000)
+
+        then:
+        !thread0.isAlive()
+        !thread1.isAlive()
+        handled.size() == 2
+    }
+
     void "queues messages when not able to decrypt and handles them once the key is updated"() {
         StreamMessage msg1 = createMessage(1, [foo: 'bar1'])
         StreamMessage msg2 = createMessage(2, [foo: 'bar2'])
@@ -45,4 +45,35 @@ class CombinedSubscriptionSpec extends StreamrSpecification {
         ex.getPublisherId() == msg1.getPublisherId()
         ex.getMsgChainId() == msg1.getMsgChainId()
     }
+
+    void "carries the resent messages waiting for a gap over to the real time subscription"() {
+        StreamMessage msg1 = createMessage(1, 0, null, 0)
+        StreamMessage msg2 = createMessage(2, 0, 1, 0)
+        StreamMessage msg3 = createMessage(3, 0, 2, 0)
+        List<StreamMessage> received = []
+        CombinedSubscription sub = new CombinedSubscription(msg1.getStreamId(), 0, new MessageHandler() {
+            @Override
+            void onMessage(Subscription sub, StreamMessage message) {
+                received.add(message)
+            }
+        }, Mock(GroupKeyStore), Mock(KeyExchangeUtil), new ResendLastOption(10), null, 5000L, 5000L, false)
+        sub.setGapHandler({ MessageRef from, MessageRef to, Address publisherId, String msgChainId -> } as OrderedMsgChain.GapHandlerFunction)
+
+        when:
+        sub.handleResentMessage(msg1)
+        // msg2 is missing, so msg3 waits for it
+        sub.handleResentMessage(msg3)
+        sub.endResend()
+        then:
+        received == [msg1]
+        sub.getQueuedMessageCount() == 1
+
+        when:
+        sub.handleRealTimeMessage(msg2)
+        then:
+        received == [msg1, msg2, msg3]
+
+        cleanup:
+        sub.clear()
+    }
 }
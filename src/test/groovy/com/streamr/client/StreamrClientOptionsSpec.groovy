@@ -2,11 +2,14 @@ package com.streamr.client
 
 import com.streamr.client.exceptions.InvalidRSAKeyException
 import com.streamr.client.options.EncryptionOptions
+import com.streamr.client.options.HttpClientOptions
 import com.streamr.client.options.SigningOptions
 import com.streamr.client.options.StreamrClientOptions
 import com.streamr.client.protocol.control_layer.ControlMessage
 import com.streamr.client.protocol.message_layer.StreamMessage
 import com.streamr.client.utils.EncryptionUtil
+import okhttp3.OkHttpClient
+import okhttp3.Protocol
 import spock.lang.Specification
 
 class StreamrClientOptionsSpec extends Specification {
@@ -83,4 +86,31 @@ class StreamrClientOptionsSpec extends Specification {
         then:
         options.getWebsocketApiUrl() == "wss://www.streamr.com/api/v1/ws?controlLayerVersion=${ControlMessage.LATEST_VERSION}&messageLayerVersion=${StreamMessage.LATEST_VERSION}"
     }
+
+    void "http client is built from the HttpClientOptions"() {
+        HttpClientOptions httpOptions = new HttpClientOptions(5, 30000, 32, 8)
+        httpOptions.setReadTimeoutMillis(2000)
+
+        when:
+        OkHttpClient client = httpOptions.buildHttpClient()
+
+        then:
+        client.dispatcher().getMaxRequests() == 32
+        client.dispatcher().getMaxRequestsPerHost() == 8
+        client.readTimeoutMillis() == 2000
+        client.protocols() == [Protocol.HTTP_2, Protocol.HTTP_1_1]
+    }
+
+    void "http2 can be disabled"() {
+        HttpClientOptions httpOptions = new HttpClientOptions()
+        httpOptions.setHttp2Enabled(false)
+
+        expect:
+        httpOptions.buildHttpClient().protocols() == [Protocol.HTTP_1_1]
+    }
+
+    void "by default has http client options"() {
+        expect:
+        new StreamrClientOptions().getHttpClientOptions() != null
+    }
 }
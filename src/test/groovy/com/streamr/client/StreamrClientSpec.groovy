@@ -3,6 +3,8 @@ package com.streamr.client
 
 import com.streamr.client.authentication.AuthenticationMethod
 import com.streamr.client.authentication.EthereumAuthenticationMethod
+import com.streamr.client.exceptions.AlreadySubscribedException
+import com.streamr.client.metrics.SimpleMetrics
 import com.streamr.client.options.*
 import com.streamr.client.protocol.StreamrSpecification
 import com.streamr.client.protocol.control_layer.*
@@ -11,12 +13,22 @@ import com.streamr.client.protocol.message_layer.MessageRef
 import com.streamr.client.protocol.message_layer.StreamMessage
 import com.streamr.client.rest.Stream
 import com.streamr.client.subs.Subscription
+import com.streamr.client.utils.ConsistentHash
 import com.streamr.client.utils.EncryptionUtil
 import com.streamr.client.utils.GroupKey
 import com.streamr.client.utils.InMemoryGroupKeyStore
 import com.streamr.client.utils.KeyExchangeUtil
+import com.streamr.client.utils.StreamPartition
+import com.streamr.client.utils.SubscribeScheduler
+import okhttp3.OkHttpClient
+import org.java_websocket.enums.ReadyState
 import spock.util.concurrent.PollingConditions
 
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
 class StreamrClientSpec extends StreamrSpecification {
 
     private static TestWebSocketServer server = new TestWebSocketServer("localhost", 6000)
@@ -59,10 +71,35 @@ class StreamrClientSpec extends StreamrSpecification {
     void setup() {
         server.clear()
 
+        client = new TestingStreamrClient(createOptions())
+        connectClient()
+    }
+
+    /**
+     * Connects the client and responds to its subscribe request to the key exchange stream, so that the request
+     * is neither retried nor counted by the subscribe progress listener of a test case.
+     */
+    void connectClient() {
+        CountDownLatch subscribed = new CountDownLatch(1)
+        client.setSubscribeProgressListener({ int completed, int failed, int remaining -> subscribed.countDown() } as SubscribeScheduler.ProgressListener)
+        client.connect()
+        // The client subscribes to key exchange stream on connect
+        new PollingConditions().eventually {
+            assert server.receivedControlMessages.size() == 1
+        }
+        assert server.receivedControlMessages[0].message instanceof SubscribeRequest
+        server.respondTo(server.receivedControlMessages[0])
+        assert subscribed.await(5, TimeUnit.SECONDS)
+        client.setSubscribeProgressListener(null)
+        // Remove that SubscribeRequest so that it doesn't need to be considered in each test case
+        server.clear()
+    }
+
+    StreamrClientOptions createOptions() {
         AuthenticationMethod authenticationMethod = new EthereumAuthenticationMethod(publisherPrivateKey) {
             // Override login so that this doesn't call the REST API
             @Override
-            protected AuthenticationMethod.LoginResponse login(String restApiUrl) throws IOException {
+            protected AuthenticationMethod.LoginResponse login(String restApiUrl, OkHttpClient httpClient) throws IOException {
                 return new AuthenticationMethod.LoginResponse("sessionToken", new Date() + 365)
             }
         }
@@ -73,26 +110,23 @@ class StreamrClientSpec extends StreamrSpecification {
         StreamrClientOptions options = new StreamrClientOptions(authenticationMethod, SigningOptions.getDefault(), encryptionOptions, server.getWsUrl(), "dont-call-this-rest-api-url", gapFillTimeout, retryResendAfter, false)
         options.reconnectRetryInterval = 1000
         options.connectionTimeoutMillis = 1000
-
-        client = new TestingStreamrClient(options)
-        client.connect()
-
-        expect:
-        // The client subscribes to key exchange stream on connect
-        new PollingConditions().eventually {
-            server.receivedControlMessages.size() == 1
-        }
-        server.receivedControlMessages[0].message instanceof SubscribeRequest
-
-        cleanup:
-        // Remove that SubscribeRequest so that it doesn't need to be considered in each test case
-        server.clear()
+        return options
     }
 
     void cleanup() {
         client.disconnect()
     }
 
+    /**
+     * Replaces the client with one created with the given options, and connects it like in setup().
+     */
+    void reconnectWith(StreamrClientOptions options) {
+        client.disconnect()
+        server.clear()
+        client = new TestingStreamrClient(options)
+        connectClient()
+    }
+
     StreamMessage createMsg(String streamId, long timestamp, long sequenceNumber, Long prevTimestamp, Long prevSequenceNumber) {
         MessageID msgId = new MessageID(streamId, 0, timestamp, sequenceNumber, publisherId, "msgChainId")
         MessageRef prev = prevTimestamp == null ? null : new MessageRef(prevTimestamp, prevSequenceNumber)
@@ -158,7 +192,8 @@ class StreamrClientSpec extends StreamrSpecification {
         Thread.sleep(2 * gapFillTimeout + 200)
 
         then:
-        new PollingConditions().eventually {
+        // The second request is backed off by up to 20% jitter
+        new PollingConditions(timeout: 2).eventually {
             server.receivedControlMessages.size() == 3
         }
         server.expect(new ResendRangeRequest(server.receivedControlMessages[1].message.requestId, stream.id, 0, new MessageRef(0, 1), new MessageRef(1, 0), publisherId, "msgChainId", client.sessionToken))
@@ -207,6 +242,57 @@ class StreamrClientSpec extends StreamrSpecification {
 
     }
 
+    void "publishAsync() returns a future which completes when the message has been sent"() {
+        when:
+        CompletableFuture<Void> sent = client.publishAsync(stream, [test: "async"])
+        sent.get(5, TimeUnit.SECONDS)
+
+        then:
+        new PollingConditions().eventually {
+            server.receivedControlMessages.size() == 1
+        }
+        ((PublishRequest)server.receivedControlMessages[0].message).streamMessage.getParsedContent() == [test: "async"]
+        client.getOutboundQueue().getSentCount() >= 1
+    }
+
+    void "publishBatch() publishes the messages in chain order"() {
+        List<Map<String, Object>> payloads = (0..<50).collect { [i: it] as Map<String, Object> }
+
+        when:
+        client.publishBatch(stream, payloads)
+
+        then:
+        new PollingConditions().eventually {
+            server.receivedControlMessages.size() == 50
+        }
+        List<StreamMessage> msgs = server.receivedControlMessages.collect { ((PublishRequest) it.message).streamMessage }
+        msgs.collect { it.getParsedContent().i } == (0..<50).toList()
+        msgs[0].previousMessageRef == null
+        for (int i = 1; i < msgs.size(); i++) {
+            assert msgs[i].previousMessageRef.compareTo(msgs[i - 1].messageRef) == 0
+            assert msgs[i].signature != null
+        }
+    }
+
+    void "publishBatchAsync() encrypts the batch with the current key and keeps consecutive batches in order"() {
+        GroupKey groupKey = GroupKey.generate()
+        client.getKeyStore().add(stream.getId(), groupKey)
+
+        when:
+        CompletableFuture<Void> first = client.publishBatchAsync(stream, [[batch: 1], [batch: 1]] as List<Map<String, Object>>)
+        CompletableFuture<Void> second = client.publishBatchAsync(stream, [[batch: 2]] as List<Map<String, Object>>)
+        CompletableFuture.allOf(first, second).get()
+
+        then:
+        new PollingConditions().eventually {
+            server.receivedControlMessages.size() == 3
+        }
+        List<StreamMessage> msgs = server.receivedControlMessages.collect { ((PublishRequest) it.message).streamMessage }
+        msgs.every { it.groupKeyId == groupKey.groupKeyId }
+        msgs[1].previousMessageRef.compareTo(msgs[0].messageRef) == 0
+        msgs[2].previousMessageRef.compareTo(msgs[1].messageRef) == 0
+    }
+
     void "publish() called with the current GroupKey does not rotate the key"() {
         GroupKey groupKey = GroupKey.generate()
         client.getKeyStore().add(stream.getId(), groupKey)
@@ -371,6 +457,414 @@ class StreamrClientSpec extends StreamrSpecification {
         }
     }
 
+    void "client which requests the binary message layer encoding receives binary messages"() {
+        StreamrClientOptions options = createOptions()
+        options.setBinaryMessageLayer(true)
+        reconnectWith(options)
+        subscribeClient()
+
+        expect:
+        server.getBinaryConnectionCount() == 1
+
+        when:
+        server.broadcastMessageToAll(stream, Collections.singletonMap("key", "binary"))
+
+        then:
+        new PollingConditions().eventually {
+            client.getReceivedStreamMessages().size() == 1
+        }
+        client.getReceivedStreamMessages()[0].getParsedContent() == [key: "binary"]
+    }
+
+    void "subscribe() fetches the validation info of a stream only if it's not cached or being fetched"() {
+        Stream fourPartitions = new Stream("", "")
+        fourPartitions.setId("four-partitions")
+        fourPartitions.setPartitions(4)
+        client.streamAsyncResult = new CompletableFuture<Stream>()
+        MessageHandler handler = new MessageHandler() {
+            @Override
+            void onMessage(Subscription sub, StreamMessage message) {}
+        }
+
+        when:
+        (0..2).each { client.subscribe(fourPartitions, it, handler, null) }
+
+        then:
+        client.getStreamAsyncCalls.get() == 1
+
+        when:
+        client.streamAsyncResult.complete(fourPartitions)
+        client.subscribe(fourPartitions, 3, handler, null)
+
+        then:
+        client.getStreamAsyncCalls.get() == 1
+    }
+
+    void "subscribeAll() paces the subscribe requests"() {
+        SimpleMetrics metrics = new SimpleMetrics()
+        StreamrClientOptions options = createOptions()
+        options.setMaxInFlightSubscribes(2)
+        options.setConnectionTimeoutMillis(60000)
+        options.setMetrics(metrics)
+        reconnectWith(options)
+        List<List<Integer>> progress = Collections.synchronizedList([])
+        client.setSubscribeProgressListener({ int completed, int failed, int remaining -> progress.add([completed, failed, remaining]) } as SubscribeScheduler.ProgressListener)
+
+        when:
+        List<Subscription> subs = client.subscribeAll((0..3).collect { new StreamPartition(stream.id, it) }, new MessageHandler() {
+            @Override
+            void onMessage(Subscription sub, StreamMessage message) {}
+        })
+
+        then:
+        subs*.partition == [0, 1, 2, 3]
+        // The requests are sent when submitted, so the counts don't change until the responses arrive
+        metrics.getGauge("subscribe.inFlight") == 2
+        metrics.getGauge("subscribe.queued") == 2
+        new PollingConditions().eventually {
+            server.receivedControlMessages.size() == 2
+        }
+        server.receivedControlMessages*.message*.streamPartition == [0, 1]
+
+        when:
+        server.respondTo(server.receivedControlMessages[0])
+        server.respondTo(server.receivedControlMessages[1])
+
+        then:
+        new PollingConditions().eventually {
+            server.receivedControlMessages.size() == 4
+        }
+        server.receivedControlMessages*.message*.streamPartition == [0, 1, 2, 3]
+        subs[0].isSubscribed()
+        subs[1].isSubscribed()
+
+        when:
+        server.respondTo(server.receivedControlMessages[2])
+        server.respondTo(server.receivedControlMessages[3])
+
+        then:
+        new PollingConditions().eventually {
+            progress.size() == 4
+        }
+        progress.last() == [4, 0, 0]
+        subs.every { it.isSubscribed() }
+    }
+
+    void "a subscribe request answered with an error response fails the subscription"() {
+        List<List<Integer>> progress = Collections.synchronizedList([])
+        client.setSubscribeProgressListener({ int completed, int failed, int remaining -> progress.add([completed, failed, remaining]) } as SubscribeScheduler.ProgressListener)
+        client.setErrorMessageHandler({ ErrorResponse error -> })
+
+        when:
+        Subscription sub = client.subscribe(stream, 0, new MessageHandler() {
+            @Override
+            void onMessage(Subscription s, StreamMessage message) {}
+        }, null)
+        new PollingConditions().eventually {
+            server.receivedControlMessages.size() == 1
+        }
+        client.receiveMessage(new ErrorResponse(server.receivedControlMessages[0].message.requestId, "not allowed", "NOT_PERMITTED"))
+
+        then:
+        new PollingConditions().eventually {
+            sub.getState() == Subscription.State.FAILED
+            progress == [[0, 1, 0]]
+        }
+    }
+
+    void "with several connections, the requests of each stream partition go over the connection of the partition"() {
+        StreamrClientOptions options = createOptions()
+        options.setConnectionCount(3)
+        Stream sharded = new Stream("", "")
+        sharded.setId("sharded-stream")
+        sharded.setPartitions(12)
+        reconnectWith(options)
+        client.addMockStream(sharded)
+        List<StreamMessage> received = []
+
+        when:
+        List<Subscription> subs = client.subscribeAll((0..11).collect { new StreamPartition(sharded.id, it) }, new MessageHandler() {
+            @Override
+            void onMessage(Subscription sub, StreamMessage message) {
+                received.add(message)
+            }
+        })
+
+        then:
+        new PollingConditions().eventually {
+            server.receivedControlMessages.size() == 12
+        }
+        server.getConnections().size() == 3
+        Map<Integer, Set> connectionsByBucket = server.receivedControlMessages.groupBy {
+            ConsistentHash.bucket(sharded.id, it.message.streamPartition, 3)
+        }.collectEntries { bucket, msgs -> [bucket, msgs*.connection as Set] }
+        connectionsByBucket.values().every { it.size() == 1 }
+        (connectionsByBucket.values().sum() as Set).size() == connectionsByBucket.size()
+        connectionsByBucket.size() > 1
+
+        when:
+        server.receivedControlMessages.each { server.respondTo(it) }
+        def req = server.receivedControlMessages.find { it.message.streamPartition == 5 }
+        MessageID msgId = new MessageID(sharded.id, 5, 0, 0, publisherId, "msgChainId")
+        server.sendTo(req.connection, new BroadcastMessage("", new StreamMessage(msgId, null, [hello: "world"])))
+
+        then:
+        new PollingConditions().eventually {
+            subs.every { it.isSubscribed() }
+            received.size() == 1
+        }
+        received[0].streamPartition == 5
+    }
+
+    void "with several connections, onOpen() and onClose() are called once per change of the client's state"() {
+        AtomicInteger opens = new AtomicInteger()
+        AtomicInteger closes = new AtomicInteger()
+        StreamrClientOptions options = createOptions()
+        options.setConnectionCount(3)
+        client.disconnect()
+        server.clear()
+        client = new TestingStreamrClient(options) {
+            @Override
+            void onOpen() {
+                opens.incrementAndGet()
+            }
+
+            @Override
+            void onClose() {
+                closes.incrementAndGet()
+            }
+        }
+
+        when:
+        connectClient()
+
+        then:
+        server.getConnections().size() == 3
+        new PollingConditions().eventually {
+            opens.get() == 1
+        }
+        closes.get() == 0
+
+        when:
+        client.disconnect()
+
+        then:
+        new PollingConditions().eventually {
+            closes.get() == 1
+        }
+        opens.get() == 1
+    }
+
+    void "connection state listener is notified, and a dropped connection is reopened right away"() {
+        List<List<ReadyState>> transitions = Collections.synchronizedList([])
+        client.addConnectionStateListener({ ReadyState previous, ReadyState current ->
+            transitions.add([previous, current])
+        } as ConnectionStateListener)
+
+        when:
+        server.getConnections().each { it.close() }
+
+        then:
+        // Well within reconnectRetryInterval
+        new PollingConditions(timeout: 0.9).eventually {
+            client.getState() == ReadyState.OPEN
+            transitions.size() >= 2
+            transitions.last() == [ReadyState.NOT_YET_CONNECTED, ReadyState.OPEN]
+        }
+        transitions.first()[0] == ReadyState.OPEN
+
+        when:
+        transitions.clear()
+        client.disconnect()
+
+        then:
+        client.getState() == ReadyState.CLOSED
+        new PollingConditions().eventually {
+            transitions.last()[1] == ReadyState.CLOSED
+        }
+    }
+
+    void "a connection which closes before a subscribe over it has succeeded is reopened after the backoff delay"() {
+        StreamrClientOptions options = createOptions()
+        options.setInitialReconnectRetryInterval(500)
+        client.disconnect()
+        server.clear()
+        client = new TestingStreamrClient(options)
+        client.connect()
+        // Like a server which rejects the client, don't respond to the key exchange subscribe
+        new PollingConditions().eventually {
+            server.receivedControlMessages.size() == 1
+        }
+
+        when:
+        long closedAt = System.currentTimeMillis()
+        server.getConnections().each { it.close() }
+
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            client.getState() == ReadyState.OPEN
+            server.receivedControlMessages.size() == 2
+        }
+        // The delay is randomized by 20%
+        System.currentTimeMillis() - closedAt >= 400
+    }
+
+    void "with delivery lanes, a slow handler doesn't hold up the other subscriptions"() {
+        StreamrClientOptions options = createOptions()
+        options.setDeliveryOptions(new DeliveryOptions(10, DeliveryOptions.OverflowPolicy.BLOCK))
+        Stream twoPartitions = new Stream("", "")
+        twoPartitions.setId("two-partitions")
+        twoPartitions.setPartitions(2)
+        reconnectWith(options)
+        client.addMockStream(twoPartitions)
+        CountDownLatch release = new CountDownLatch(1)
+        List<Integer> delivered = Collections.synchronizedList([])
+        List<Subscription> subs = client.subscribeAll([new StreamPartition(twoPartitions.id, 0), new StreamPartition(twoPartitions.id, 1)], new MessageHandler() {
+            @Override
+            void onMessage(Subscription sub, StreamMessage message) {
+                if (message.streamPartition == 0) {
+                    release.await()
+                }
+                delivered.add(message.streamPartition)
+            }
+        })
+        new PollingConditions().eventually {
+            server.receivedControlMessages.size() == 2
+        }
+        server.receivedControlMessages.each { server.respondTo(it) }
+        new PollingConditions().eventually {
+            subs.every { it.isSubscribed() }
+        }
+
+        when:
+        [0, 1].each {
+            MessageID msgId = new MessageID(twoPartitions.id, it, 0, 0, publisherId, "msgChainId")
+            client.receiveMessage(new BroadcastMessage("", new StreamMessage(msgId, null, [hello: "world"])))
+        }
+
+        then:
+        new PollingConditions().eventually {
+            delivered == [1]
+        }
+
+        when:
+        release.countDown()
+
+        then:
+        new PollingConditions().eventually {
+            delivered == [1, 0]
+        }
+    }
+
+    void "with the PAUSE overflow policy, the messages missed while the delivery lane was full are requested"() {
+        StreamrClientOptions options = createOptions()
+        options.setDeliveryOptions(new DeliveryOptions(2, DeliveryOptions.OverflowPolicy.PAUSE))
+        reconnectWith(options)
+        CountDownLatch delivering = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        List<Long> delivered = Collections.synchronizedList([])
+        Subscription sub = client.subscribe(stream, 0, new MessageHandler() {
+            @Override
+            void onMessage(Subscription s, StreamMessage message) {
+                delivering.countDown()
+                release.await()
+                delivered.add(message.timestamp)
+            }
+        }, null)
+        new PollingConditions().eventually {
+            server.receivedControlMessages.size() == 1
+        }
+        server.respondTo(server.receivedControlMessages[0])
+        new PollingConditions().eventually {
+            sub.isSubscribed()
+        }
+        server.clear()
+
+        when:
+        // The first one is being delivered, the next two fill the lane, the fourth pauses the subscription and
+        // the rest are discarded
+        client.receiveMessage(new BroadcastMessage("", createMsg("test-stream", 1, 0, null, null)))
+        delivering.await(1, TimeUnit.SECONDS)
+        (2..7).each {
+            client.receiveMessage(new BroadcastMessage("", createMsg("test-stream", it, 0, it - 1, 0)))
+        }
+
+        then:
+        sub.isDeliveryPaused()
+
+        when:
+        // No more messages arrive, like from a publisher which has gone quiet
+        release.countDown()
+
+        then:
+        // The first and the last discarded message are handled on resume, and the one between them requested
+        new PollingConditions().eventually {
+            server.receivedControlMessages.size() == 1
+        }
+        server.expect(new ResendRangeRequest(server.receivedControlMessages[0].message.requestId, stream.id, 0, new MessageRef(5, 1), new MessageRef(6, 0), publisherId, "msgChainId", client.sessionToken))
+        new PollingConditions().eventually {
+            delivered == [1L, 2L, 3L, 4L, 5L]
+        }
+        !sub.isDeliveryPaused()
+    }
+
+    void "with delivery lanes, a failed subscribeAll() releases the lane of the subscription it couldn't make"() {
+        StreamrClientOptions options = createOptions()
+        options.setDeliveryOptions(new DeliveryOptions(10, DeliveryOptions.OverflowPolicy.BLOCK))
+        reconnectWith(options)
+        Stream twoPartitions = new Stream("", "")
+        twoPartitions.setId("two-partitions")
+        twoPartitions.setPartitions(2)
+        client.addMockStream(twoPartitions)
+        MessageHandler handler = new MessageHandler() {
+            @Override
+            void onMessage(Subscription s, StreamMessage message) {}
+        }
+        Subscription sub = client.subscribe(twoPartitions, 0, handler, null)
+        new PollingConditions().eventually {
+            server.receivedControlMessages.size() == 1
+        }
+        server.respondTo(server.receivedControlMessages[0])
+        new PollingConditions().eventually {
+            sub.isSubscribed()
+        }
+
+        when:
+        client.subscribeAll([new StreamPartition(twoPartitions.id, 0)], handler)
+
+        then:
+        thrown(AlreadySubscribedException)
+
+        when:
+        client.unsubscribe(sub)
+        client.receiveMessage(new UnsubscribeResponse("unsub", twoPartitions.id, 0))
+
+        then:
+        // The lane is forgotten once its only subscription is unsubscribed
+        new PollingConditions().eventually {
+            client.getDeliveryLanes().getLaneCount() == 0
+        }
+    }
+
+    void "client with metrics enabled counts the received messages and the detected gaps"() {
+        SimpleMetrics metrics = new SimpleMetrics()
+        StreamrClientOptions options = createOptions()
+        options.setMetrics(metrics)
+        reconnectWith(options)
+        subscribeClient()
+
+        when:
+        client.receiveMessage(new BroadcastMessage("", createMsg("test-stream", 0, 0, null, null)))
+        client.receiveMessage(new BroadcastMessage("", createMsg("test-stream", 2, 0, 1, 0)))
+
+        then:
+        metrics.getCount("messages.received", "test-stream") == 2
+        metrics.getCount("ordering.gaps", "test-stream") == 1
+        metrics.getGauge("ordering.queued") == 1
+        metrics.getTimer("message.validate").getCount() == 2
+        metrics.getTimer("message.handler").getCount() == 1
+    }
+
     void "error message handler is called"() {
         boolean errorIsHandled = false
         client.setErrorMessageHandler({ ErrorResponse error ->
@@ -0,0 +1,118 @@
+package com.streamr.client
+
+import com.streamr.client.authentication.AuthenticationMethod
+import com.streamr.client.exceptions.ResourceNotFoundException
+import com.streamr.client.options.StreamrClientOptions
+import com.streamr.client.rest.Stream
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import okhttp3.OkHttpClient
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+
+class StreamrRESTClientSpec extends Specification {
+
+    HttpServer server
+    // Path -> [status, body] of the responses, in the order they are returned. The last one is repeated.
+    Map<String, List<List>> responses = [:]
+    List<String> authorizations = []
+    int logins = 0
+    List<String> loginThreads = []
+    StreamrRESTClient client
+
+    void setup() {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0)
+        server.createContext("/", { HttpExchange exchange ->
+            authorizations.add(exchange.requestHeaders.getFirst("Authorization"))
+            List<List> queue = responses[exchange.requestURI.path]
+            List response = queue == null ? [404, ""] : (queue.size() > 1 ? queue.remove(0) : queue[0])
+            byte[] body = ((String) response[1]).getBytes(StandardCharsets.UTF_8)
+            exchange.sendResponseHeaders((int) response[0], body.length == 0 ? -1 : body.length)
+            if (body.length > 0) {
+                exchange.responseBody.write(body)
+            }
+            exchange.close()
+        })
+        server.start()
+
+        AuthenticationMethod auth = new AuthenticationMethod() {
+            @Override
+            protected AuthenticationMethod.LoginResponse login(String restApiUrl, OkHttpClient httpClient) throws IOException {
+                logins++
+                loginThreads.add(Thread.currentThread().getName())
+                return new AuthenticationMethod.LoginResponse("token-" + logins, new Date() + 365)
+            }
+        }
+        StreamrClientOptions options = new StreamrClientOptions(auth)
+        options.setRestApiUrl("http://localhost:" + server.address.port + "/api/v1")
+        client = new StreamrRESTClient(options) {}
+    }
+
+    void cleanup() {
+        client.close()
+        server.stop(0)
+    }
+
+    void "getStreamAsync() completes with the stream"() {
+        responses["/api/v1/streams/stream-id"] = [[200, '{"id":"stream-id","name":"name","partitions":3}']]
+
+        when:
+        Stream stream = client.getStreamAsync("stream-id").get(10, TimeUnit.SECONDS)
+
+        then:
+        stream.id == "stream-id"
+        stream.partitions == 3
+        authorizations == ["Bearer token-1"]
+    }
+
+    void "getStreamAsync() completes exceptionally with ResourceNotFoundException for non-existent streams"() {
+        when:
+        client.getStreamAsync("non-existent").get(10, TimeUnit.SECONDS)
+
+        then:
+        ExecutionException e = thrown(ExecutionException)
+        e.cause instanceof ResourceNotFoundException
+    }
+
+    void "async requests are retried once with a new session token if the session has expired"() {
+        responses["/api/v1/streams/stream-id"] = [[401, ""], [200, '{"id":"stream-id","name":"name"}']]
+
+        when:
+        Stream stream = client.getStreamAsync("stream-id").get(10, TimeUnit.SECONDS)
+
+        then:
+        stream.id == "stream-id"
+        logins == 2
+        authorizations == ["Bearer token-1", "Bearer token-2"]
+    }
+
+    void "concurrent async requests log in once, without blocking the calling thread on the login"() {
+        responses["/api/v1/streams/stream-id"] = [[200, '{"id":"stream-id","name":"name"}']]
+
+        when:
+        List<Stream> streams = (1..3).collect { client.getStreamAsync("stream-id") }.collect { it.get(10, TimeUnit.SECONDS) }
+
+        then:
+        streams*.id == ["stream-id"] * 3
+        logins == 1
+        loginThreads == ["StreamrLogin"]
+    }
+
+    void "isPublisherAsync() completes with false if the publisher is not found"() {
+        responses["/api/v1/streams/stream-id/publisher/0x1"] = [[200, ""]]
+
+        expect:
+        client.isPublisherAsync("stream-id", "0x1").get(10, TimeUnit.SECONDS)
+        !client.isPublisherAsync("stream-id", "0x2").get(10, TimeUnit.SECONDS)
+    }
+
+    void "getPublishersAsync() completes with the addresses"() {
+        responses["/api/v1/streams/stream-id/publishers"] = [[200, '{"addresses":["0x1","0x2"]}']]
+
+        expect:
+        client.getPublishersAsync("stream-id").get(10, TimeUnit.SECONDS) == ["0x1", "0x2"]
+    }
+}
@@ -4,6 +4,7 @@ import com.streamr.client.protocol.control_layer.BroadcastMessage;
 import com.streamr.client.protocol.control_layer.ControlMessage;
 import com.streamr.client.protocol.control_layer.SubscribeRequest;
 import com.streamr.client.protocol.control_layer.SubscribeResponse;
+import com.streamr.client.protocol.control_layer.UnicastMessage;
 import com.streamr.client.protocol.message_layer.StreamMessage;
 import com.streamr.client.rest.Stream;
 import com.streamr.client.utils.Address;
@@ -18,16 +19,21 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class TestWebSocketServer extends WebSocketServer {
     private static final Logger log = LoggerFactory.getLogger(TestWebSocketServer.class);
     private final MessageCreationUtil msgCreationUtil = new MessageCreationUtil(new Address("publisherId"), null);
     private final LinkedList<ReceivedControlMessage> receivedControlMessages = new LinkedList<>();
+    // Connections which requested the binary message layer encoding
+    private final Set<WebSocket> binaryConnections = Collections.newSetFromMap(new ConcurrentHashMap<>());
     private final String wsUrl;
     private int checkedControlMessages = 0;
 
     public TestWebSocketServer(String host, int port) {
         super(new InetSocketAddress(host, port));
+        // The tests restart the server on the same port while the client is reconnecting to it
+        setReuseAddr(true);
         wsUrl = "ws://" + this.getAddress().getHostString() + ":" + this.getAddress().getPort();
     }
 
@@ -35,7 +41,19 @@ public class TestWebSocketServer extends WebSocketServer {
         if (!getConnections().contains(conn)) {
             throw new RuntimeException("Connection does not exist: "+conn);
         }
-        conn.send(message.toJson());
+        send(conn, message);
+    }
+
+    private void send(WebSocket conn, ControlMessage message) {
+        if (binaryConnections.contains(conn) && (message instanceof BroadcastMessage || message instanceof UnicastMessage)) {
+            try {
+                conn.send(message.toBinary());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            conn.send(message.toJson());
+        }
     }
 
     public void broadcastMessageToAll(Stream stream, Map<String, Object> payload) {
@@ -47,7 +65,7 @@ public class TestWebSocketServer extends WebSocketServer {
         BroadcastMessage req = new BroadcastMessage("", streamMessage);
         getConnections().forEach((webSocket -> {
             log.info("send: " + req.toJson());
-            webSocket.send(req.toJson());
+            send(webSocket, req);
         }));
     }
 
@@ -62,6 +80,10 @@ public class TestWebSocketServer extends WebSocketServer {
         }
     }
 
+    public int getBinaryConnectionCount() {
+        return binaryConnections.size();
+    }
+
     public List<ReceivedControlMessage> getReceivedControlMessages() {
         return Collections.unmodifiableList(receivedControlMessages);
     }
@@ -69,12 +91,16 @@ public class TestWebSocketServer extends WebSocketServer {
     @Override
     public void onOpen(WebSocket conn, ClientHandshake handshake) {
         log.info("onOpen");
+        if (handshake.getResourceDescriptor().contains("messageLayerEncoding=binary")) {
+            binaryConnections.add(conn);
+        }
         conn.sendPing();
     }
 
     @Override
     public void onClose(WebSocket conn, int code, String reason, boolean remote) {
         log.info("onClose");
+        binaryConnections.remove(conn);
     }
 
     @Override
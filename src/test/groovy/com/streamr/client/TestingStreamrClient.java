@@ -14,11 +14,16 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TestingStreamrClient extends StreamrClient {
 
     List<StreamMessage> receivedStreamMessages = new ArrayList<>();
     HashMap<String, Stream> mockStreams = new LinkedHashMap<>();
+    // If set, returned by getStreamAsync() instead of calling the REST API
+    CompletableFuture<Stream> streamAsyncResult = null;
+    AtomicInteger getStreamAsyncCalls = new AtomicInteger();
 
     public TestingStreamrClient(StreamrClientOptions options) {
         super(options);
@@ -56,6 +61,12 @@ public class TestingStreamrClient extends StreamrClient {
         mockStreams.put(stream.getId(), stream);
     }
 
+    @Override
+    public CompletableFuture<Stream> getStreamAsync(String streamId) {
+        getStreamAsyncCalls.incrementAndGet();
+        return streamAsyncResult != null ? streamAsyncResult : super.getStreamAsync(streamId);
+    }
+
     @Override
     public Stream getStream(String streamId) throws IOException, ResourceNotFoundException {
         if (mockStreams.containsKey(streamId)) {
@@ -0,0 +1,87 @@
+package com.streamr.client.authentication
+
+import okhttp3.OkHttpClient
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class SessionSpec extends Specification {
+
+    void "sessions sharing an AuthenticationMethod log in with their own http clients"() {
+        List<OkHttpClient> usedClients = []
+        AuthenticationMethod auth = new AuthenticationMethod() {
+            @Override
+            protected AuthenticationMethod.LoginResponse login(String restApiUrl, OkHttpClient httpClient) throws IOException {
+                usedClients.add(httpClient)
+                return new AuthenticationMethod.LoginResponse("token-" + usedClients.size(), new Date())
+            }
+        }
+        OkHttpClient client1 = new OkHttpClient()
+        OkHttpClient client2 = new OkHttpClient()
+        Session session1 = new Session("rest-url", auth, client1)
+        Session session2 = new Session("rest-url", auth, client2)
+
+        when:
+        session1.getSessionToken()
+        session2.getSessionToken()
+        session1.getNewSessionToken()
+
+        then:
+        usedClients == [client1, client2, client1]
+    }
+
+    void "callers which need a token while a login is in progress share that login"() {
+        CountDownLatch release = new CountDownLatch(1)
+        int logins = 0
+        AuthenticationMethod auth = new AuthenticationMethod() {
+            @Override
+            protected AuthenticationMethod.LoginResponse login(String restApiUrl, OkHttpClient httpClient) throws IOException {
+                release.await()
+                logins++
+                return new AuthenticationMethod.LoginResponse("token-" + logins, new Date())
+            }
+        }
+        Session session = new Session("rest-url", auth, new OkHttpClient())
+
+        when:
+        CompletableFuture<String> first = session.getSessionTokenAsync()
+        CompletableFuture<String> second = session.getSessionTokenAsync()
+        CompletableFuture<String> renewed = session.getNewSessionTokenAsync(null)
+        release.countDown()
+
+        then:
+        [first, second, renewed]*.get(10, TimeUnit.SECONDS) == ["token-1"] * 3
+        logins == 1
+
+        when: "the expired token has already been replaced"
+        String token = session.getNewSessionTokenAsync("expired-token").get(10, TimeUnit.SECONDS)
+
+        then:
+        token == "token-1"
+        logins == 1
+
+        when:
+        token = session.getNewSessionTokenAsync("token-1").get(10, TimeUnit.SECONDS)
+
+        then:
+        token == "token-2"
+        logins == 2
+    }
+
+    void "the deprecated login(restApiUrl) logs in with the default http client"() {
+        List<OkHttpClient> usedClients = []
+        AuthenticationMethod auth = new AuthenticationMethod() {
+            @Override
+            protected AuthenticationMethod.LoginResponse login(String restApiUrl, OkHttpClient httpClient) throws IOException {
+                usedClients.add(httpClient)
+                return new AuthenticationMethod.LoginResponse("token", new Date())
+            }
+        }
+
+        expect:
+        auth.login("rest-url").getSessionToken() == "token"
+        usedClients == [AuthenticationMethod.getDefaultHttpClient()]
+    }
+}
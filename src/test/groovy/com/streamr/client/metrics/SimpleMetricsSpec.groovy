@@ -0,0 +1,63 @@
+package com.streamr.client.metrics
+
+import spock.lang.Specification
+
+class SimpleMetricsSpec extends Specification {
+
+    SimpleMetrics metrics = new SimpleMetrics()
+
+    void "counters are created on first use and shared by name"() {
+        when:
+        metrics.counter("a").inc()
+        metrics.counter("a").inc(2)
+
+        then:
+        metrics.getCount("a") == 3
+        metrics.getCount("b") == 0
+    }
+
+    void "per-stream counters are kept separately for each stream"() {
+        when:
+        metrics.counter("received", "stream-1").inc()
+        metrics.counter("received", "stream-2").inc(5)
+
+        then:
+        metrics.getCount("received", "stream-1") == 1
+        metrics.getCount("received", "stream-2") == 5
+        metrics.getCount("received") == 0
+    }
+
+    void "timers record the count, total and max"() {
+        when:
+        metrics.timer("t").record(100)
+        metrics.timer("t").record(300)
+
+        then:
+        metrics.getTimer("t").getCount() == 2
+        metrics.getTimer("t").getTotalNanos() == 400
+        metrics.getTimer("t").getMaxNanos() == 300
+        metrics.getTimer("t").getMeanNanos() == 200
+    }
+
+    void "gauges are read when reported"() {
+        long value = 1
+        metrics.gauge("g", { value })
+
+        when:
+        value = 7
+
+        then:
+        metrics.getGauge("g") == 7
+        metrics.getGauge("missing") == null
+        metrics.toString() == "{g=7}"
+    }
+
+    void "NOOP returns shared no-op instances"() {
+        expect:
+        !Metrics.NOOP.isEnabled()
+        Metrics.NOOP.counter("a").is(Counter.NOOP)
+        Metrics.NOOP.counter("a", "stream").is(Counter.NOOP)
+        Metrics.NOOP.timer("t").is(Timer.NOOP)
+        Timer.NOOP.start() == 0
+    }
+}
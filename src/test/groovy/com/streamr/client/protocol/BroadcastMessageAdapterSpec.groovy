@@ -4,6 +4,9 @@ import com.streamr.client.protocol.control_layer.BroadcastMessage
 import com.streamr.client.protocol.control_layer.ControlMessage
 import spock.lang.Specification
 
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+
 import static com.streamr.client.protocol.StreamMessageExamples.InvalidSignature.helloWorld
 import static com.streamr.client.protocol.StreamMessageExamples.InvalidSignature.helloWorldSerialized32
 
@@ -18,4 +21,16 @@ class BroadcastMessageAdapterSpec extends Specification {
 		serializedMessage | message
 		"[2,0,\"requestId\",${helloWorldSerialized32}]" | new BroadcastMessage("requestId", helloWorld)
 	}
+
+	def "deserialization from UTF-8 bytes"() {
+		String serializedMessage = "[2,0,\"requestId\",${helloWorldSerialized32}]"
+		ByteBuffer utf8 = StandardCharsets.UTF_8.encode(serializedMessage)
+
+		when:
+		ControlMessage message = ControlMessage.fromJson(utf8)
+
+		then:
+		message == new BroadcastMessage("requestId", helloWorld)
+		!utf8.hasRemaining()
+	}
 }
@@ -0,0 +1,108 @@
+package com.streamr.client.protocol
+
+import com.streamr.client.exceptions.MalformedMessageException
+import com.streamr.client.exceptions.UnsupportedMessageException
+import com.streamr.client.protocol.control_layer.BroadcastMessage
+import com.streamr.client.protocol.control_layer.ControlMessage
+import com.streamr.client.protocol.control_layer.UnicastMessage
+import com.streamr.client.protocol.message_layer.MessageID
+import com.streamr.client.protocol.message_layer.MessageRef
+import com.streamr.client.protocol.message_layer.StreamMessage
+import com.streamr.client.protocol.message_layer.StreamMessageAdapter
+import com.streamr.client.utils.EncryptedGroupKey
+import com.streamr.client.utils.EncryptionUtil
+import com.streamr.client.utils.GroupKey
+
+import java.nio.ByteBuffer
+
+class StreamMessageBinaryAdapterSpec extends StreamrSpecification {
+
+	StreamMessage msg
+
+	void setup() {
+		// Message with minimal fields
+		msg = new StreamMessage(
+				new MessageID("streamId", 0, 123L, 0, publisherId, "msgChainId"),
+				null,
+				[:]
+		)
+	}
+
+	void "minimal message survives a round trip"() {
+		expect:
+		StreamMessageAdapter.deserializeBinary(StreamMessageAdapter.serializeBinary(msg)) == msg
+	}
+
+	void "maximal message survives a round trip"() {
+		msg.setPreviousMessageRef(new MessageRef(122L, 0))
+		msg.setEncryptionType(StreamMessage.EncryptionType.AES)
+		msg.setGroupKeyId("groupKeyId")
+		msg.setSerializedContent("encrypted-content")
+		msg.setNewGroupKey(new EncryptedGroupKey("newGroupKeyId", "encryptedGroupKeyHex", "[\"newGroupKeyId\",\"encryptedGroupKeyHex-cached\"]"))
+		msg.setSignatureFields("signature", StreamMessage.SignatureType.ETH)
+
+		expect:
+		StreamMessageAdapter.deserializeBinary(StreamMessageAdapter.serializeBinary(msg)) == msg
+	}
+
+	void "signed example message survives a round trip"() {
+		StreamMessage signed = StreamMessage.deserialize(StreamMessageExamples.InvalidSignature.helloWorldSerialized32)
+
+		expect:
+		StreamMessageAdapter.deserializeBinary(StreamMessageAdapter.serializeBinary(signed)) == signed
+	}
+
+	void "encrypted content and signature are written as raw bytes"() {
+		msg.setParsedContent([foo: "bar", numbers: (1..100).toList()])
+		EncryptionUtil.encryptStreamMessage(msg, GroupKey.generate())
+		msg.setSignatureFields("0x" + "ab" * 65, StreamMessage.SignatureType.ETH)
+		byte[] binary = StreamMessageAdapter.serializeBinary(msg)
+
+		expect:
+		StreamMessageAdapter.deserializeBinary(binary) == msg
+		// The hex content dominates the size, and takes half the space as raw bytes
+		binary.length < msg.serialize().length() * 0.6
+	}
+
+	void "hex strings which can't be restored exactly are written as strings"() {
+		msg.setEncryptionType(StreamMessage.EncryptionType.AES)
+		msg.setGroupKeyId("groupKeyId")
+		msg.setSerializedContent(content)
+
+		expect:
+		StreamMessageAdapter.deserializeBinary(StreamMessageAdapter.serializeBinary(msg)).getSerializedContent() == content
+
+		where:
+		content << ["ABCDEF", "abc", "0x", "", "0xABCD"]
+	}
+
+	void "unknown version throws"() {
+		byte[] binary = StreamMessageAdapter.serializeBinary(msg)
+		binary[0] = 99
+
+		when:
+		StreamMessageAdapter.deserializeBinary(binary)
+
+		then:
+		thrown(UnsupportedMessageException)
+	}
+
+	void "truncated message throws"() {
+		byte[] binary = StreamMessageAdapter.serializeBinary(msg)
+
+		when:
+		StreamMessageAdapter.deserializeBinary(Arrays.copyOf(binary, binary.length - 3))
+
+		then:
+		thrown(MalformedMessageException)
+	}
+
+	void "BroadcastMessage and UnicastMessage survive a round trip in binary"() {
+		BroadcastMessage broadcast = new BroadcastMessage("", msg)
+		UnicastMessage unicast = new UnicastMessage("requestId", msg)
+
+		expect:
+		ControlMessage.fromBinary(ByteBuffer.wrap(broadcast.toBinary())) == broadcast
+		ControlMessage.fromBinary(ByteBuffer.wrap(unicast.toBinary())) == unicast
+	}
+}
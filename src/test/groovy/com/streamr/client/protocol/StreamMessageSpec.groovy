@@ -10,6 +10,8 @@ import com.streamr.client.protocol.message_layer.StreamMessageAdapter
 import com.streamr.client.utils.HttpUtils
 import spock.lang.Specification
 
+import java.nio.charset.StandardCharsets
+
 class StreamMessageSpec extends Specification {
 
 	StreamMessage msg
@@ -40,4 +42,33 @@ class StreamMessageSpec extends Specification {
 		then:
 		thrown EncryptedContentNotParsableException
 	}
+
+	void "content set as bytes is parsed without decoding it to a String first"() {
+		String serializedContent = msg.getSerializedContent()
+		Map<String, Object> mapContent = msg.getParsedContent()
+		StreamMessage other = StreamMessage.deserialize(StreamMessageExamples.InvalidSignature.helloWorldSerialized32)
+
+		when:
+		other.setSerializedContent(serializedContent.getBytes(StandardCharsets.UTF_8))
+
+		then:
+		other.getParsedContent() == mapContent
+		other.getSerializedContent() == serializedContent
+		other == msg
+	}
+
+	void "getSerializedContentAsBytes() encodes the content only once"() {
+		when:
+		byte[] bytes = msg.getSerializedContentAsBytes()
+
+		then:
+		bytes == msg.getSerializedContent().getBytes(StandardCharsets.UTF_8)
+		msg.getSerializedContentAsBytes().is(bytes)
+
+		when:
+		msg.setSerializedContent('{"foo":"bar"}')
+
+		then:
+		msg.getSerializedContentAsBytes() == '{"foo":"bar"}'.getBytes(StandardCharsets.UTF_8)
+	}
 }
@@ -0,0 +1,38 @@
+package com.streamr.client.utils
+
+import spock.lang.Specification
+
+class BackoffSpec extends Specification {
+
+    void "first retry is immediate and the delays double up to the maximum"() {
+        Backoff backoff = new Backoff(100, 1000)
+        when:
+        List<Long> delays = (1..7).collect { backoff.nextDelay() }
+        then:
+        delays[0] == 0
+        delays[1] >= 80 && delays[1] <= 120
+        delays[2] >= 160 && delays[2] <= 240
+        delays[3] >= 320 && delays[3] <= 480
+        delays[4] >= 640 && delays[4] <= 960
+        delays[5] >= 800 && delays[5] <= 1200
+        delays[6] >= 800 && delays[6] <= 1200
+        backoff.getAttempts() == 7
+    }
+
+    void "reset() makes the next retry immediate"() {
+        Backoff backoff = new Backoff(100, 1000)
+        (1..3).each { backoff.nextDelay() }
+        when:
+        backoff.reset()
+        then:
+        backoff.nextDelay() == 0
+        backoff.nextDelay() >= 80
+    }
+
+    void "initial delay is limited by the maximum"() {
+        Backoff backoff = new Backoff(5000, 1000)
+        backoff.nextDelay()
+        expect:
+        backoff.nextDelay() <= 1200
+    }
+}
@@ -0,0 +1,51 @@
+package com.streamr.client.utils
+
+import spock.lang.Specification
+
+class ConsistentHashSpec extends Specification {
+
+    void "buckets are in range"() {
+        expect:
+        (0..999).every {
+            int bucket = ConsistentHash.bucket("stream", it, 7)
+            bucket >= 0 && bucket < 7
+        }
+        ConsistentHash.bucket("stream", 0, 1) == 0
+    }
+
+    void "keys are distributed evenly"() {
+        int[] counts = new int[4]
+        when:
+        (0..3999).each { counts[ConsistentHash.bucket("stream-" + it, 0, 4)]++ }
+        then:
+        counts.every { it > 850 && it < 1150 }
+    }
+
+    void "partitions of a stream are distributed over the buckets"() {
+        expect:
+        (0..15).collect { ConsistentHash.bucket("stream", it, 4) }.toSet().size() == 4
+    }
+
+    void "adding a bucket moves only keys to the new bucket"() {
+        int moved = 0
+        when:
+        (0..3999).each {
+            int before = ConsistentHash.bucket("stream", it, 4)
+            int after = ConsistentHash.bucket("stream", it, 5)
+            if (before != after) {
+                assert after == 4
+                moved++
+            }
+        }
+        then:
+        // About 1 / 5 of the keys
+        moved > 650 && moved < 950
+    }
+
+    void "throws if there are no buckets"() {
+        when:
+        ConsistentHash.bucket(1L, 0)
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
@@ -0,0 +1,184 @@
+package com.streamr.client.utils
+
+import com.streamr.client.MessageHandler
+import com.streamr.client.metrics.Metrics
+import com.streamr.client.metrics.SimpleMetrics
+import com.streamr.client.options.DeliveryOptions
+import com.streamr.client.protocol.message_layer.MessageID
+import com.streamr.client.protocol.message_layer.StreamMessage
+import com.streamr.client.subs.RealTimeSubscription
+import com.streamr.client.subs.Subscription
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class DeliveryLaneSpec extends Specification {
+
+    ExecutorService executor = Executors.newCachedThreadPool()
+    List<Integer> delivered = new CopyOnWriteArrayList<>()
+    CountDownLatch release = new CountDownLatch(1)
+    Subscription sub = new RealTimeSubscription("stream", 0, Mock(MessageHandler), null, null, null)
+
+    void cleanup() {
+        release.countDown()
+        executor.shutdownNow()
+    }
+
+    DeliveryLane createLane(int capacity, DeliveryOptions.OverflowPolicy policy, Metrics metrics = Metrics.NOOP) {
+        return new DeliveryLane("lane", capacity, policy, executor, metrics)
+    }
+
+    // The first delivery waits for release, so that the next ones stay queued
+    void fill(DeliveryLane lane, int count) {
+        lane.offer(sub, { release.await(); delivered.add(0) })
+        new PollingConditions().eventually {
+            lane.getDepth() == 0
+        }
+        (1..count).each { int i -> lane.offer(sub, { delivered.add(i) }) }
+    }
+
+    void "delivers in order on another thread"() {
+        DeliveryLane lane = createLane(10, DeliveryOptions.OverflowPolicy.BLOCK)
+        List<Thread> threads = new CopyOnWriteArrayList<>()
+        when:
+        (1..5).each { int i -> lane.offer(sub, { threads.add(Thread.currentThread()); delivered.add(i) }) }
+        lane.add({ delivered.add(-1) })
+        then:
+        new PollingConditions().eventually {
+            delivered == [1, 2, 3, 4, 5, -1]
+        }
+        !threads.contains(Thread.currentThread())
+    }
+
+    void "DROP policy drops the messages which don't fit"() {
+        SimpleMetrics metrics = new SimpleMetrics()
+        DeliveryLane lane = createLane(2, DeliveryOptions.OverflowPolicy.DROP, metrics)
+        fill(lane, 2)
+        expect:
+        lane.getDepth() == 2
+        !lane.offer(sub, { delivered.add(3) })
+        metrics.getCount("delivery.dropped", "stream") == 1
+        when:
+        release.countDown()
+        then:
+        new PollingConditions().eventually {
+            delivered == [0, 1, 2]
+        }
+    }
+
+    void "BLOCK policy blocks in awaitCapacity() until there is space, but offer() never blocks"() {
+        DeliveryLane lane = createLane(2, DeliveryOptions.OverflowPolicy.BLOCK)
+        fill(lane, 2)
+        CountDownLatch waited = new CountDownLatch(1)
+        Thread blocked = Thread.start {
+            lane.awaitCapacity()
+            waited.countDown()
+        }
+        expect:
+        !waited.await(100, TimeUnit.MILLISECONDS)
+        lane.offer(sub, { delivered.add(3) })
+        lane.getDepth() == 3
+        when:
+        release.countDown()
+        then:
+        waited.await(1, TimeUnit.SECONDS)
+        new PollingConditions().eventually {
+            delivered == [0, 1, 2, 3]
+        }
+    }
+
+    void "PAUSE policy pauses the subscription until the lane has drained to half"() {
+        DeliveryLane lane = createLane(4, DeliveryOptions.OverflowPolicy.PAUSE)
+        fill(lane, 4)
+        when:
+        boolean accepted = lane.offer(sub, { delivered.add(5) })
+        then:
+        accepted
+        sub.isDeliveryPaused()
+        lane.getDepth() == 5
+        when:
+        release.countDown()
+        then:
+        new PollingConditions().eventually {
+            delivered == [0, 1, 2, 3, 4, 5]
+        }
+        !sub.isDeliveryPaused()
+    }
+
+    void "PAUSE and DROP policies never block in awaitCapacity()"() {
+        DeliveryLane pauseLane = createLane(2, DeliveryOptions.OverflowPolicy.PAUSE)
+        DeliveryLane dropLane = createLane(2, DeliveryOptions.OverflowPolicy.DROP)
+        fill(pauseLane, 2)
+        fill(dropLane, 2)
+        when:
+        pauseLane.awaitCapacity()
+        dropLane.awaitCapacity()
+        then:
+        pauseLane.getDepth() == 2
+        dropLane.getDepth() == 2
+    }
+
+    void "a lane drops the deliveries once its executor has been shut down"() {
+        DeliveryLane lane = createLane(2, DeliveryOptions.OverflowPolicy.BLOCK)
+        executor.shutdown()
+        when:
+        lane.offer(sub, { delivered.add(1) })
+        then:
+        lane.getDepth() == 0
+        delivered.isEmpty()
+    }
+
+    void "reports the lag of the oldest queued message"() {
+        DeliveryLane lane = createLane(10, DeliveryOptions.OverflowPolicy.BLOCK)
+        fill(lane, 1)
+        when:
+        Thread.sleep(50)
+        then:
+        lane.getLagMillis() >= 50
+        when:
+        release.countDown()
+        then:
+        new PollingConditions().eventually {
+            lane.getLagMillis() == 0
+        }
+    }
+
+    void "LaneMessageHandler reports the dropped messages per chain to onMessagesLost()"() {
+        List<String> calls = new CopyOnWriteArrayList<>()
+        MessageHandler handler = new MessageHandler() {
+            @Override
+            void onMessage(Subscription s, StreamMessage message) {
+                calls.add("message")
+            }
+            @Override
+            void done(Subscription s) {
+                calls.add("done")
+            }
+            @Override
+            void onMessagesLost(Subscription s, Address publisherId, String msgChainId, int count) {
+                calls.add("lost " + publisherId + " " + msgChainId + " " + count)
+            }
+        }
+        DeliveryLane lane = createLane(1, DeliveryOptions.OverflowPolicy.DROP)
+        LaneMessageHandler laneHandler = new LaneMessageHandler(handler, lane)
+        CountDownLatch delivering = new CountDownLatch(1)
+        StreamMessage msg = new StreamMessage(new MessageID("stream", 0, 0, 0, new Address("publisher"), "chain"), null, [:])
+
+        when:
+        lane.offer(sub, { delivering.countDown(); release.await() })
+        delivering.await(1, TimeUnit.SECONDS)
+        3.times { laneHandler.onMessage(sub, msg) }
+        laneHandler.done(sub)
+        release.countDown()
+
+        then:
+        new PollingConditions().eventually {
+            calls == ["message", "lost publisher chain 2", "done"]
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.streamr.client.utils
+
+import com.streamr.client.protocol.message_layer.MessageRef
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicInteger
+
+class GapFillCoordinatorSpec extends Specification {
+
+    final Address publisher1 = new Address("0x1111")
+    final Address publisher2 = new Address("0x2222")
+    final PollingConditions conditions = new PollingConditions(timeout: 5)
+
+    List<Map> sent = new CopyOnWriteArrayList<>()
+    AtomicInteger requestIds = new AtomicInteger()
+
+    GapFillCoordinator createCoordinator(ResendLimiter limiter) {
+        return new GapFillCoordinator(limiter, 10, { "resend-" + requestIds.incrementAndGet() },
+                new GapFillCoordinator.ResendRangeSender() {
+                    @Override
+                    void send(String requestId, MessageRef from, MessageRef to, Address publisherId, String msgChainId) {
+                        sent.add([requestId: requestId, from: from, to: to, publisherId: publisherId, msgChainId: msgChainId])
+                    }
+                })
+    }
+
+    void "sends the gaps requested together as a resend per chain, even if they overlap"() {
+        GapFillCoordinator coordinator = createCoordinator(new ResendLimiter(10, 60000))
+        when:
+        coordinator.request(new MessageRef(100, 0), new MessageRef(200, 0), publisher1, "chain1")
+        coordinator.request(new MessageRef(150, 0), new MessageRef(300, 0), publisher2, "chain2")
+        coordinator.request(new MessageRef(120, 0), new MessageRef(250, 0), publisher1, "chain1")
+        then:
+        conditions.eventually {
+            assert sent.size() == 2
+        }
+        sent.find { it.publisherId == publisher1 }.subMap(["from", "to", "msgChainId"]) ==
+                [from: new MessageRef(120, 0), to: new MessageRef(250, 0), msgChainId: "chain1"]
+        sent.find { it.publisherId == publisher2 }.subMap(["from", "to", "msgChainId"]) ==
+                [from: new MessageRef(150, 0), to: new MessageRef(300, 0), msgChainId: "chain2"]
+        coordinator.getPendingCount() == 0
+        coordinator.getInFlightCount() == 2
+    }
+
+    void "does not request a gap which is covered by a resend in flight"() {
+        ResendLimiter limiter = new ResendLimiter(10, 60000)
+        GapFillCoordinator coordinator = createCoordinator(limiter)
+        when:
+        coordinator.request(new MessageRef(100, 0), new MessageRef(200, 0), publisher1, "chain1")
+        then:
+        conditions.eventually {
+            assert sent.size() == 1
+        }
+        when: "the chain retries before the response arrives"
+        boolean requested = coordinator.tryApply(new MessageRef(100, 0), new MessageRef(200, 0), publisher1, "chain1")
+        Thread.sleep(100)
+        then:
+        !requested
+        sent.size() == 1
+        when: "the response arrives and the chain retries again"
+        limiter.complete(sent[0].requestId)
+        requested = coordinator.tryApply(new MessageRef(100, 0), new MessageRef(200, 0), publisher1, "chain1")
+        then:
+        requested
+        conditions.eventually {
+            assert sent.size() == 2
+        }
+    }
+
+    void "does not treat a resend of another chain as covering the gap"() {
+        GapFillCoordinator coordinator = createCoordinator(new ResendLimiter(10, 60000))
+        when:
+        coordinator.request(new MessageRef(100, 0), new MessageRef(300, 0), publisher1, "chain1")
+        then:
+        conditions.eventually {
+            assert sent.size() == 1
+        }
+        when:
+        boolean requested = coordinator.tryApply(new MessageRef(150, 0), new MessageRef(200, 0), publisher2, "chain2")
+        then:
+        requested
+        conditions.eventually {
+            assert sent.size() == 2
+        }
+    }
+
+    void "limits the number of resends in flight"() {
+        ResendLimiter limiter = new ResendLimiter(2, 60000)
+        GapFillCoordinator coordinator = createCoordinator(limiter)
+        when:
+        (0..3).each {
+            coordinator.request(new MessageRef(it * 1000, 0), new MessageRef(it * 1000 + 100, 0), publisher1, "chain" + it)
+        }
+        Thread.sleep(100)
+        then:
+        sent.size() == 2
+        limiter.getInFlightCount() == 2
+        coordinator.getPendingCount() == 2
+        when: "a resend completes"
+        limiter.complete(sent[0].requestId)
+        then: "the coordinator is woken up to send the next one"
+        conditions.eventually {
+            assert sent.size() == 3
+        }
+        coordinator.getPendingCount() == 1
+        when:
+        limiter.complete(sent[1].requestId)
+        then:
+        conditions.eventually {
+            assert sent.size() == 4
+        }
+        coordinator.getPendingCount() == 0
+    }
+
+    void "a resend times out if its response is lost"() {
+        ResendLimiter limiter = new ResendLimiter(1, 50)
+        GapFillCoordinator coordinator = createCoordinator(limiter)
+        when:
+        coordinator.request(new MessageRef(100, 0), new MessageRef(200, 0), publisher1, "chain1")
+        coordinator.request(new MessageRef(1000, 0), new MessageRef(1100, 0), publisher2, "chain2")
+        then:
+        conditions.eventually {
+            assert sent.size() == 2
+        }
+        conditions.eventually {
+            assert limiter.getInFlightCount() == 0
+        }
+        coordinator.getInFlightCount() == 0
+    }
+
+    void "clear() drops the pending gaps and releases the permits of the resends in flight"() {
+        ResendLimiter limiter = new ResendLimiter(1, 60000)
+        GapFillCoordinator coordinator = createCoordinator(limiter)
+        when:
+        coordinator.request(new MessageRef(100, 0), new MessageRef(200, 0), publisher1, "chain1")
+        coordinator.request(new MessageRef(1000, 0), new MessageRef(1100, 0), publisher2, "chain2")
+        conditions.eventually {
+            assert sent.size() == 1
+        }
+        coordinator.clear()
+        Thread.sleep(100)
+        then:
+        sent.size() == 1
+        coordinator.getPendingCount() == 0
+        coordinator.getInFlightCount() == 0
+        limiter.getInFlightCount() == 0
+    }
+
+    void "a resend which fails to send releases its permit"() {
+        ResendLimiter limiter = new ResendLimiter(1, 60000)
+        GapFillCoordinator coordinator = new GapFillCoordinator(limiter, 10, { "resend-" + requestIds.incrementAndGet() },
+                new GapFillCoordinator.ResendRangeSender() {
+                    @Override
+                    void send(String requestId, MessageRef from, MessageRef to, Address publisherId, String msgChainId) {
+                        sent.add([requestId: requestId])
+                        throw new IllegalStateException("not connected")
+                    }
+                })
+        when:
+        coordinator.request(new MessageRef(100, 0), new MessageRef(200, 0), publisher1, "chain1")
+        coordinator.request(new MessageRef(1000, 0), new MessageRef(1100, 0), publisher2, "chain2")
+        then: "the second resend gets the permit of the first one"
+        conditions.eventually {
+            assert sent.size() == 2
+        }
+        conditions.eventually {
+            assert limiter.getInFlightCount() == 0
+        }
+        coordinator.getInFlightCount() == 0
+    }
+}
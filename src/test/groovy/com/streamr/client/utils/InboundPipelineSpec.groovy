@@ -0,0 +1,187 @@
+package com.streamr.client.utils
+
+import com.streamr.client.options.InboundPipelineOptions
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.function.Consumer
+import java.util.function.Function
+import java.util.function.ToIntFunction
+
+class InboundPipelineSpec extends Specification {
+
+    InboundPipeline<String, String> pipeline
+
+    void cleanup() {
+        if (pipeline != null) {
+            pipeline.shutdown()
+        }
+    }
+
+    InboundPipeline<String, String> createPipeline(InboundPipelineOptions options, Function<String, String> parser, Consumer<String> handler) {
+        // Messages are of form "key:value", the key selects the lane
+        return new InboundPipeline<String, String>(options, parser, { String msg -> msg.split(":")[0].hashCode() } as ToIntFunction<String>, handler)
+    }
+
+    void "delivers messages with the same key in submission order"() {
+        Map<String, List<String>> received = new ConcurrentHashMap<>()
+        pipeline = createPipeline(new InboundPipelineOptions(4, 3, 100), { String raw ->
+            // Make parsing take a varying amount of time so that parse results complete out of order
+            Thread.sleep((long) (Math.random() * 3))
+            return raw
+        } as Function<String, String>, { String msg ->
+            received.computeIfAbsent(msg.split(":")[0], { new CopyOnWriteArrayList<>() }).add(msg)
+        } as Consumer<String>)
+
+        when:
+        for (int i = 0; i < 200; i++) {
+            pipeline.submit("key" + (i % 5) + ":" + i)
+        }
+
+        then:
+        new PollingConditions().eventually {
+            received.values().sum { it.size() } == 200
+        }
+        received.each { String key, List<String> msgs ->
+            List<Integer> values = msgs.collect { Integer.parseInt(it.split(":")[1]) }
+            assert values == values.sort(false)
+        }
+    }
+
+    void "handles messages on a thread other than the submitting thread"() {
+        Thread handlerThread
+        pipeline = createPipeline(new InboundPipelineOptions(1, 1, 10), { it } as Function<String, String>, { String msg ->
+            handlerThread = Thread.currentThread()
+        } as Consumer<String>)
+
+        when:
+        pipeline.submit("key:1")
+
+        then:
+        new PollingConditions().eventually {
+            handlerThread != null
+        }
+        handlerThread != Thread.currentThread()
+    }
+
+    void "a slow lane does not block other lanes"() {
+        CountDownLatch blocker = new CountDownLatch(1)
+        List<String> received = new CopyOnWriteArrayList<>()
+        pipeline = new InboundPipeline<String, String>(new InboundPipelineOptions(1, 2, 10), { it } as Function<String, String>,
+                { String msg -> msg.startsWith("slow") ? 0 : 1 } as ToIntFunction<String>, { String msg ->
+            if (msg.startsWith("slow")) {
+                blocker.await()
+            }
+            received.add(msg)
+        } as Consumer<String>)
+
+        when:
+        pipeline.submit("slow:1")
+        pipeline.submit("fast:1")
+        pipeline.submit("fast:2")
+
+        then:
+        new PollingConditions().eventually {
+            received == ["fast:1", "fast:2"]
+        }
+
+        when:
+        blocker.countDown()
+
+        then:
+        new PollingConditions().eventually {
+            received == ["fast:1", "fast:2", "slow:1"]
+        }
+    }
+
+    void "skips messages that the parser returns null for or throws on"() {
+        List<String> received = new CopyOnWriteArrayList<>()
+        pipeline = createPipeline(new InboundPipelineOptions(2, 1, 10), { String raw ->
+            if (raw == "key:null") {
+                return null
+            } else if (raw == "key:throw") {
+                throw new RuntimeException("parse error")
+            }
+            return raw
+        } as Function<String, String>, { String msg ->
+            received.add(msg)
+        } as Consumer<String>)
+
+        when:
+        pipeline.submit("key:1")
+        pipeline.submit("key:null")
+        pipeline.submit("key:throw")
+        pipeline.submit("key:2")
+
+        then:
+        new PollingConditions().eventually {
+            received == ["key:1", "key:2"]
+        }
+    }
+
+    void "awaitTermination() returns once the threads have exited after shutdown()"() {
+        CountDownLatch handling = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        pipeline = createPipeline(new InboundPipelineOptions(1, 1, 10), { it } as Function<String, String>, { String msg ->
+            handling.countDown()
+            // Like a handler which doesn't respond to interrupts
+            while (release.getCount() > 0) {
+                try {
+                    release.await()
+                } catch (InterruptedException ignored) {}
+            }
+        } as Consumer<String>)
+
+        when:
+        pipeline.submit("key:1")
+        handling.await()
+        pipeline.shutdown()
+
+        then: "the lane is still running the handler"
+        !pipeline.awaitTermination(50)
+
+        when:
+        release.countDown()
+
+        then:
+        pipeline.awaitTermination(5000)
+    }
+
+    void "a submit() blocked on a full pipeline returns once the pipeline is shut down"() {
+        CountDownLatch release = new CountDownLatch(1)
+        pipeline = createPipeline(new InboundPipelineOptions(1, 1, 1), { it } as Function<String, String>, { String msg ->
+            release.await()
+        } as Consumer<String>)
+
+        when:
+        Thread producer = Thread.start {
+            (1..10).each { pipeline.submit("key:" + it) }
+        }
+        producer.join(200)
+
+        then: "the pipeline is full"
+        producer.isAlive()
+
+        when:
+        pipeline.shutdown()
+        producer.join(5000)
+
+        then:
+        !producer.isAlive()
+
+        cleanup:
+        release.countDown()
+    }
+
+    void "throws on invalid options"() {
+        when:
+        new InboundPipeline<String, String>(new InboundPipelineOptions(0, 1, 10), { it } as Function<String, String>,
+                { 0 } as ToIntFunction<String>, {} as Consumer<String>)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
@@ -55,6 +55,28 @@ class MessageCreationUtilSpec extends StreamrSpecification {
         msg.signature != null
     }
 
+    void "prepareStreamMessage() chains messages and sealStreamMessage() can sign them in any order"() {
+        Date timestamp = new Date()
+
+        when:
+        StreamMessage msg1 = msgCreationUtil.prepareStreamMessage(stream, message, timestamp, null)
+        StreamMessage msg2 = msgCreationUtil.prepareStreamMessage(stream, message, timestamp, null)
+
+        then:
+        msg1.signature == null
+        msg2.sequenceNumber == 1L
+        msg2.previousMessageRef.compareTo(msg1.messageRef) == 0
+
+        when:
+        msgCreationUtil.sealStreamMessage(msg2, null, null)
+        msgCreationUtil.sealStreamMessage(msg1, null, null)
+
+        then:
+        msg1.signature != null
+        msg2.signature != null
+        msg1.signature != msg2.signature
+    }
+
     void "createStreamMessage() doesn't sign messages if SigningUtil is not defined"() {
         MessageCreationUtil msgCreationUtil2 = new MessageCreationUtil(publisherId, null)
 
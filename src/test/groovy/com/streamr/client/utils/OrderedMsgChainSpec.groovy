@@ -1,11 +1,15 @@
 package com.streamr.client.utils
 
 import com.streamr.client.exceptions.GapFillFailedException
+import com.streamr.client.metrics.SimpleMetrics
+import com.streamr.client.options.AdaptiveTimeoutOptions
+import com.streamr.client.options.ReorderBufferOptions
 import com.streamr.client.protocol.StreamrSpecification
 import com.streamr.client.protocol.message_layer.MessageRef
 import com.streamr.client.protocol.message_layer.StreamMessage
 import spock.util.concurrent.PollingConditions
 
+import java.nio.file.Files
 import java.util.function.Consumer
 import java.util.function.Function
 import java.util.stream.Collectors
@@ -20,6 +24,11 @@ class OrderedMsgChainSpec extends StreamrSpecification {
 
     final Address publisherId = new Address("0x12345")
 
+    // Room for 100 messages per chain
+    static final int QUEUE_SIZE = 100
+    final ReorderBufferPool smallPool = new ReorderBufferPool(
+            new ReorderBufferOptions(QUEUE_SIZE * createMessage(1, 0, 0, 0).estimateMemoryBytes(), 1024 * 1024))
+
     void "handles ordered messages in order"() {
         ArrayList<StreamMessage> received = []
         OrderedMsgChain util = new OrderedMsgChain(publisherId, "msgChainId", new Consumer<StreamMessage>() {
@@ -75,6 +84,38 @@ class OrderedMsgChainSpec extends StreamrSpecification {
         then:
         received == [msg1, msg2, msg3, msg4, msg5]
     }
+    void "counts the detected gaps"() {
+        SimpleMetrics metrics = new SimpleMetrics()
+        OrderedMsgChain util = new OrderedMsgChain(publisherId, "msgChainId", {} as Consumer, null, 5000L, 5000L, false)
+        util.setGapCounter(metrics.counter("ordering.gaps"))
+        when:
+        util.add(msg1)
+        util.add(msg3)
+        util.add(msg4)
+        then:
+        metrics.getCount("ordering.gaps") == 1
+        util.getQueueSize() == 2
+        cleanup:
+        util.clearGap()
+    }
+    void "does not start a thread per gap"() {
+        List<OrderedMsgChain> chains = (1..200).collect {
+            new OrderedMsgChain(publisherId, "msgChainId-" + it, {} as Consumer, null, 5000L, 5000L, false)
+        }
+        int threadsBefore = Thread.activeCount()
+        when:
+        chains.each {
+            it.add(msg1)
+            it.add(msg3)
+        }
+        then:
+        chains.every { it.hasGap() }
+        Thread.activeCount() - threadsBefore < 10
+        when:
+        chains.each { it.clearGap() }
+        then:
+        chains.every { !it.hasGap() }
+    }
     void "handles unchained messages in the order in which they arrive if they are newer"() {
         StreamMessage m2 = createMessage(4)
         StreamMessage m3 = createMessage(17)
@@ -144,23 +185,119 @@ class OrderedMsgChainSpec extends StreamrSpecification {
                     expected = e
                     throw e // mimic behavior of default handler
                 }
-            }, 100L, 100L, false)
+            }, 20L, 20L, false)
         } catch (GapFillFailedException e) {
             expected = e
         }
         when:
         util.add(msg1)
         util.add(msg3)
-        Thread.sleep(1200L)
 
         then:
-        expected != null
+        new PollingConditions(timeout: 5).eventually {
+            assert expected != null
+        }
         gapHandlerCount == 10
 
         then: "gap should be cleared"
         !util.hasGap()
     }
 
+    void "retries which the gap handler skips don't count towards MAX_GAP_REQUESTS"() {
+        int skipped = 0
+        GapFillFailedException failed = null
+        OrderedMsgChain util = new OrderedMsgChain(publisherId, "msgChainId", {} as Consumer,
+                new OrderedMsgChain.GapHandlerFunction() {
+                    @Override
+                    void apply(MessageRef from, MessageRef to, Address publisherId, String msgChainId) {}
+
+                    @Override
+                    boolean tryApply(MessageRef from, MessageRef to, Address publisherId, String msgChainId) {
+                        // Already being filled
+                        skipped++
+                        return false
+                    }
+                }, { GapFillFailedException e -> failed = e; null } as Function<GapFillFailedException, Void>, 20L, 20L, false)
+
+        when:
+        util.add(msg1)
+        util.add(msg3)
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            assert skipped > 15
+        }
+        failed == null
+        util.hasGap()
+
+        cleanup:
+        util.clear()
+    }
+
+    void "backs off between gap fill requests"() {
+        int gapHandlerCount = 0
+        OrderedMsgChain util = new OrderedMsgChain(publisherId, "msgChainId", {} as Consumer,
+                new OrderedMsgChain.GapHandlerFunction() {
+                    @Override
+                    void apply(MessageRef from, MessageRef to, Address publisherId, String msgChainId) {
+                        gapHandlerCount++
+                    }
+                }, 10L, 300L, false)
+        when:
+        util.add(msg1)
+        util.add(msg3)
+        // Without backoff, the third request would be made after 610ms. With it, the second request is made
+        // after 250-370ms and the third one after at least 730ms.
+        Thread.sleep(650L)
+        then:
+        gapHandlerCount == 2
+        cleanup:
+        util.clearGap()
+    }
+
+    void "requests a gap fill sooner for a publisher with a steady latency"() {
+        int gapHandlerCount = 0
+        OrderedMsgChain util = new OrderedMsgChain(publisherId, "msgChainId", {} as Consumer,
+                new OrderedMsgChain.GapHandlerFunction() {
+                    @Override
+                    void apply(MessageRef from, MessageRef to, Address publisherId, String msgChainId) {
+                        gapHandlerCount++
+                    }
+                }, 5000L, 5000L, false)
+        PublisherLatency latency = new PublisherLatency(AdaptiveTimeoutOptions.getDefault(), 5000L, 5000L)
+        // The test messages have timestamps close to zero, so their latency is about the current time
+        100.times { latency.recordArrival(0, System.currentTimeMillis()) }
+        util.setPublisherLatency(latency)
+        when:
+        util.add(msg1)
+        util.add(msg3)
+        then:
+        new PollingConditions(timeout: 2).eventually {
+            assert gapHandlerCount == 1
+        }
+        when: "the gap is filled"
+        util.add(msg2)
+        then:
+        !util.hasGap()
+        cleanup:
+        util.clearGap()
+    }
+
+    void "records how long gaps take to heal and to fill"() {
+        PublisherLatency latency = Mock(PublisherLatency)
+        OrderedMsgChain util = new OrderedMsgChain(publisherId, "msgChainId", {} as Consumer, null, 5000L, 5000L, false)
+        util.setPublisherLatency(latency)
+        when:
+        util.add(msg1)
+        util.add(msg3)
+        util.add(msg4)
+        util.add(msg2)
+        then:
+        4 * latency.recordArrival(_, _)
+        1 * latency.getPropagationTimeout() >> 5000L
+        1 * latency.recordGapHealed({ it >= 0 }, 2)
+        0 * latency.recordGapFilled(_, _)
+    }
+
     void "handles unordered messages in order (large randomized test)"() {
         ArrayList<StreamMessage> expected = [msg1]
         ArrayList<StreamMessage> shuffled = []
@@ -218,11 +355,12 @@ class OrderedMsgChainSpec extends StreamrSpecification {
                 received++;
             }
         }, null, 5000L, 5000L, false)
+        util.setReorderBufferPool(smallPool)
 
         when:
         util.add(createMessage(-1))
         // there's a gap between the above and the below messages, so below messages are queued
-        for (int i=1; i<=OrderedMsgChain.MAX_QUEUE_SIZE + 1; i++) {
+        for (int i=1; i<=QUEUE_SIZE + 1; i++) {
             util.add(createMessage(i, 0, i-1, 0))
         }
 
@@ -238,21 +376,128 @@ class OrderedMsgChainSpec extends StreamrSpecification {
                 received++
             }
         }, null, 5000L, 5000L, true)
+        util.setReorderBufferPool(smallPool)
+        int lost = 0
+        util.setMessagesLostHandler({ Address publisherId, String msgChainId, int count -> lost += count } as OrderedMsgChain.MessagesLostHandler)
 
         when:
         util.add(createMessage(-1))
         // there's a gap between the above and the below messages, so below messages are queued
-        for (int i=1; i <= OrderedMsgChain.MAX_QUEUE_SIZE; i++) {
+        for (int i=1; i <= QUEUE_SIZE; i++) {
             util.add(createMessage(i, 0, i-1, 0))
         }
 
-        assert util.isQueueFull()
+        assert util.getQueueSize() == QUEUE_SIZE
 
         received = 0
-        util.add(createMessage(OrderedMsgChain.MAX_QUEUE_SIZE + 100, 0, OrderedMsgChain.MAX_QUEUE_SIZE + 95, 0))
+        util.add(createMessage(QUEUE_SIZE + 100, 0, QUEUE_SIZE + 95, 0))
 
         then:
         received == 1
+        lost == QUEUE_SIZE
+        util.getQueueSize() == 0
+        smallPool.getUsedBytes() == 0
+    }
+
+    void "limits the queue by the total size of the messages in all chains"() {
+        ReorderBufferPool pool = new ReorderBufferPool(new ReorderBufferOptions(1024 * 1024, 150 * createMessage(1, 0, 0, 0).estimateMemoryBytes()))
+        OrderedMsgChain chain1 = new OrderedMsgChain(publisherId, "chain1", {} as Consumer, null, 5000L, 5000L, false)
+        OrderedMsgChain chain2 = new OrderedMsgChain(publisherId, "chain2", {} as Consumer, null, 5000L, 5000L, false)
+        chain1.setReorderBufferPool(pool)
+        chain2.setReorderBufferPool(pool)
+
+        when:
+        chain1.add(createMessage(-1))
+        chain2.add(createMessage(-1))
+        for (int i = 1; i <= 100; i++) {
+            chain1.add(createMessage(i, 0, i - 1, 0))
+        }
+        for (int i = 1; i <= 50; i++) {
+            chain2.add(createMessage(i, 0, i - 1, 0))
+        }
+        then:
+        pool.getUsedBytes() == chain1.getQueueMemoryBytes() + chain2.getQueueMemoryBytes()
+
+        when:
+        chain2.add(createMessage(51, 0, 50, 0))
+        then:
+        thrown(IllegalStateException)
+
+        cleanup:
+        chain1.clear()
+        chain2.clear()
+    }
+
+    void "spills the messages which don't fit in memory and processes them once the gap is filled"() {
+        File spillDirectory = Files.createTempDirectory("reorder-spill").toFile()
+        ReorderBufferOptions options = new ReorderBufferOptions(QUEUE_SIZE * createMessage(1, 0, 0, 0).estimateMemoryBytes(), 1024 * 1024)
+        options.setSpillDirectory(spillDirectory)
+        options.setSpillFileSizeBytes(1024 * 1024)
+        ReorderBufferPool pool = new ReorderBufferPool(options)
+        List<Long> received = []
+        OrderedMsgChain util = new OrderedMsgChain(publisherId, "msgChainId", { StreamMessage msg -> received.add(msg.getTimestamp()) } as Consumer, null, 5000L, 5000L, false)
+        util.setReorderBufferPool(pool)
+
+        when:
+        util.add(createMessage(0, 0, null, null))
+        // message 1 is missing
+        for (int i = 2; i <= 10 * QUEUE_SIZE; i++) {
+            util.add(createMessage(i, 0, i - 1, 0))
+        }
+        then:
+        received == [0L]
+        util.getQueueSize() == 10 * QUEUE_SIZE - 1
+        util.getSpilledCount() > 0
+        util.getQueueMemoryBytes() <= options.getMaxChainBytes()
+
+        when:
+        util.add(createMessage(1, 0, 0, 0))
+        then:
+        received == (0L..10 * QUEUE_SIZE).toList()
+        util.getQueueSize() == 0
+        pool.getUsedBytes() == 0
+
+        cleanup:
+        spillDirectory.deleteDir()
+    }
+
+    void "clear() deletes the spill file and drain() returns the queued messages in order"() {
+        File spillDirectory = Files.createTempDirectory("reorder-spill").toFile()
+        ReorderBufferOptions options = new ReorderBufferOptions(QUEUE_SIZE * createMessage(1, 0, 0, 0).estimateMemoryBytes(), 1024 * 1024)
+        options.setSpillDirectory(spillDirectory)
+        options.setSpillFileSizeBytes(1024 * 1024)
+        ReorderBufferPool pool = new ReorderBufferPool(options)
+        OrderedMsgChain util = new OrderedMsgChain(publisherId, "msgChainId", {} as Consumer, null, 5000L, 5000L, false)
+        util.setReorderBufferPool(pool)
+        util.add(createMessage(0, 0, null, null))
+        for (int i = 2; i <= 2 * QUEUE_SIZE; i++) {
+            util.add(createMessage(i, 0, i - 1, 0))
+        }
+
+        when:
+        List<StreamMessage> drained = util.drain()
+        then:
+        drained*.timestamp == (2L..2 * QUEUE_SIZE).toList()
+        !util.hasGap()
+        spillDirectory.listFiles().length == 0
+
+        when: "the chain spills again"
+        for (int i = 2 * QUEUE_SIZE + 2; i <= 4 * QUEUE_SIZE; i++) {
+            util.add(createMessage(i, 0, i - 1, 0))
+        }
+        then:
+        util.getSpilledCount() > 0
+        spillDirectory.listFiles().length == 1
+
+        when:
+        util.clear()
+        then:
+        util.getQueueSize() == 0
+        pool.getUsedBytes() == 0
+        spillDirectory.listFiles().length == 0
+
+        cleanup:
+        spillDirectory.deleteDir()
     }
 
     // Warning: non-deterministic test. If you see flakiness in this test, it may indicate
@@ -4,6 +4,8 @@ import com.streamr.client.protocol.StreamrSpecification
 import com.streamr.client.protocol.message_layer.MessageRef
 import com.streamr.client.protocol.message_layer.StreamMessage
 
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
 import java.util.function.Consumer
 
 class OrderingUtilSpec extends StreamrSpecification {
@@ -83,4 +85,39 @@ class OrderingUtilSpec extends StreamrSpecification {
         then:
         !called
     }
+    void "keeps the chains apart even if the publisher id and msg chain id concatenate to the same string"() {
+        List<StreamMessage> received = []
+        OrderingUtil util = new OrderingUtil("streamId", 0, { received.add(it) } as Consumer, null, 5000L, 5000L, false)
+        StreamMessage m1 = createMessage(1, 0, null, null, new Address("0xab"), [:], "c")
+        StreamMessage m2 = createMessage(1, 0, null, null, new Address("0xa"), [:], "bc")
+        when:
+        util.add(m1)
+        util.add(m2)
+        then:
+        received == [m1, m2]
+        util.getChains().size() == 2
+    }
+    void "orders the messages of different publishers added from multiple threads"() {
+        int publishers = 8
+        int messagesPerPublisher = 500
+        Map<Address, List<Long>> received = new ConcurrentHashMap<>()
+        OrderingUtil util = new OrderingUtil("streamId", 0, { StreamMessage msg ->
+            received.computeIfAbsent(msg.getPublisherId(), { new CopyOnWriteArrayList<>() }).add(msg.getTimestamp())
+        } as Consumer, null, 5000L, 5000L, false)
+        List<Thread> threads = (1..publishers).collect { int p ->
+            Address publisher = new Address("0x" + p)
+            new Thread({
+                for (long i = 1; i <= messagesPerPublisher; i++) {
+                    util.add(createMessage(i, 0, i > 1 ? i - 1 : null, 0, publisher))
+                }
+            })
+        }
+        when:
+        threads*.start()
+        threads*.join()
+        then:
+        util.getChains().size() == publishers
+        received.size() == publishers
+        received.values().every { it == (1L..messagesPerPublisher).toList() }
+    }
 }
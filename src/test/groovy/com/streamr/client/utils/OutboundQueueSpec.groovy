@@ -0,0 +1,281 @@
+package com.streamr.client.utils
+
+import com.streamr.client.exceptions.OutboundQueueFullException
+import com.streamr.client.options.OutboundQueueOptions
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.function.Consumer
+
+class OutboundQueueSpec extends Specification {
+
+    List<String> sent = new CopyOnWriteArrayList<>()
+    Consumer<List<String>> sender = { List<String> batch -> sent.addAll(batch) } as Consumer
+
+    void "sends requests in the order they were added, even if they are prepared out of order"() {
+        OutboundQueue queue = new OutboundQueue(new OutboundQueueOptions(10, OutboundQueueOptions.FullPolicy.BLOCK), sender)
+        CompletableFuture<String> first = new CompletableFuture<>()
+
+        when:
+        CompletableFuture<Void> sent1 = queue.add(first)
+        CompletableFuture<Void> sent2 = queue.add(CompletableFuture.completedFuture("2"))
+
+        then: "the head of the queue is not ready, so nothing can be sent"
+        sent.isEmpty()
+        !sent2.isDone()
+
+        when:
+        first.complete("1")
+        CompletableFuture.allOf(sent1, sent2).get(1, TimeUnit.SECONDS)
+
+        then:
+        sent == ["1", "2"]
+        queue.getSentCount() == 2
+        queue.getDepth() == 0
+    }
+
+    void "retries sending after connectionOpened() if the sender throws"() {
+        boolean connected = false
+        CountDownLatch attempted = new CountDownLatch(1)
+        OutboundQueue queue = new OutboundQueue(OutboundQueueOptions.getDefault(), { List<String> batch ->
+            if (!connected) {
+                attempted.countDown()
+                throw new IllegalStateException("not connected")
+            }
+            sent.addAll(batch)
+        } as Consumer)
+
+        when:
+        CompletableFuture<Void> sent1 = queue.add(CompletableFuture.completedFuture("1"))
+        CompletableFuture<Void> sent2 = queue.add(CompletableFuture.completedFuture("2"))
+        attempted.await(1, TimeUnit.SECONDS)
+
+        then:
+        !sent1.isDone()
+        queue.getDepth() == 2
+
+        when:
+        connected = true
+        queue.connectionOpened()
+        CompletableFuture.allOf(sent1, sent2).get(1, TimeUnit.SECONDS)
+
+        then:
+        sent == ["1", "2"]
+    }
+
+    void "fails the future of a request which could not be prepared, and sends the rest"() {
+        OutboundQueue queue = new OutboundQueue(OutboundQueueOptions.getDefault(), sender)
+        CompletableFuture<String> failing = new CompletableFuture<>()
+        failing.completeExceptionally(new RuntimeException("signing failed"))
+
+        when:
+        CompletableFuture<Void> sent1 = queue.add(failing)
+        CompletableFuture<Void> sent2 = queue.add(CompletableFuture.completedFuture("2"))
+        sent2.get(1, TimeUnit.SECONDS)
+        sent1.get(1, TimeUnit.SECONDS)
+
+        then:
+        ExecutionException e = thrown(ExecutionException)
+        e.cause.message == "signing failed"
+        sent == ["2"]
+    }
+
+    void "FAIL_FAST rejects requests when the queue is full"() {
+        OutboundQueue queue = new OutboundQueue(new OutboundQueueOptions(2, OutboundQueueOptions.FullPolicy.FAIL_FAST), sender)
+        CompletableFuture<String> blocker = new CompletableFuture<>()
+
+        when:
+        queue.add(blocker)
+        queue.add(CompletableFuture.completedFuture("2"))
+        CompletableFuture<Void> rejected = queue.add(CompletableFuture.completedFuture("3"))
+
+        then:
+        rejected.isCompletedExceptionally()
+        queue.getRejectedCount() == 1
+        queue.getDepth() == 2
+        queue.getPeakDepth() == 2
+
+        cleanup:
+        blocker.complete("1")
+    }
+
+    void "DROP_OLDEST drops the oldest request which is not being sent"() {
+        CountDownLatch taken = new CountDownLatch(1)
+        CountDownLatch latch = new CountDownLatch(1)
+        OutboundQueue queue = new OutboundQueue(new OutboundQueueOptions(2, OutboundQueueOptions.FullPolicy.DROP_OLDEST), { List<String> batch ->
+            taken.countDown()
+            latch.await()
+            sent.addAll(batch)
+        } as Consumer)
+
+        when:
+        CompletableFuture<Void> sent1 = queue.add(CompletableFuture.completedFuture("1"))
+        // Wait for "1" to be taken by the sender, which is now blocked
+        taken.await(1, TimeUnit.SECONDS)
+        CompletableFuture<Void> sent2 = queue.add(CompletableFuture.completedFuture("2"))
+        CompletableFuture<Void> sent3 = queue.add(CompletableFuture.completedFuture("3"))
+
+        then:
+        sent2.isCompletedExceptionally()
+        queue.getDroppedCount() == 1
+
+        when:
+        latch.countDown()
+        CompletableFuture.allOf(sent1, sent3).get(1, TimeUnit.SECONDS)
+
+        then:
+        sent == ["1", "3"]
+    }
+
+    void "BLOCK blocks the adding thread until there is space"() {
+        CompletableFuture<String> blocker = new CompletableFuture<>()
+        OutboundQueue queue = new OutboundQueue(new OutboundQueueOptions(1, OutboundQueueOptions.FullPolicy.BLOCK), sender)
+        queue.add(blocker)
+        CompletableFuture<Void> added = new CompletableFuture<>()
+
+        when:
+        Thread adder = Thread.start {
+            queue.add(CompletableFuture.completedFuture("2"))
+            added.complete(null)
+        }
+
+        then:
+        new PollingConditions().eventually {
+            adder.getState() == Thread.State.WAITING
+        }
+        !added.isDone()
+
+        when:
+        blocker.complete("1")
+        added.get(1, TimeUnit.SECONDS)
+
+        then:
+        new PollingConditions().eventually {
+            sent == ["1", "2"]
+        }
+    }
+
+    void "flush() waits until the queue is empty"() {
+        CompletableFuture<String> request = new CompletableFuture<>()
+        OutboundQueue queue = new OutboundQueue(OutboundQueueOptions.getDefault(), sender)
+        queue.add(request)
+
+        expect:
+        !queue.flush(50)
+
+        when:
+        request.complete("1")
+
+        then:
+        queue.flush(1000)
+        sent == ["1"]
+    }
+
+    void "clear() fails the queued requests"() {
+        List<Thread> senderThreads = new CopyOnWriteArrayList<>()
+        OutboundQueue queue = new OutboundQueue(OutboundQueueOptions.getDefault(), { List<String> batch ->
+            senderThreads.add(Thread.currentThread())
+            throw new IllegalStateException("not connected")
+        } as Consumer)
+        CompletableFuture<Void> sent1 = queue.add(CompletableFuture.completedFuture("1"))
+        // Wait until the failed request is back in the queue, waiting for a retry
+        new PollingConditions().eventually {
+            assert !senderThreads.isEmpty() && senderThreads[0].getState() == Thread.State.TIMED_WAITING
+        }
+
+        when:
+        queue.clear(new OutboundQueueFullException("cleared"))
+        new PollingConditions().eventually {
+            sent1.isCompletedExceptionally()
+        }
+
+        then:
+        queue.getDepth() == 0
+    }
+
+    void "stops retrying when the sending thread is interrupted, and starts again on a later add()"() {
+        List<Thread> senderThreads = new CopyOnWriteArrayList<>()
+        OutboundQueue queue = new OutboundQueue(OutboundQueueOptions.getDefault(), { List<String> batch ->
+            senderThreads.add(Thread.currentThread())
+            throw new IllegalStateException("not connected")
+        } as Consumer)
+
+        when:
+        queue.add(CompletableFuture.completedFuture("1"))
+        new PollingConditions().eventually {
+            assert senderThreads.size() == 1
+        }
+        senderThreads[0].interrupt()
+
+        then: "adding restarts sending once the interrupted thread has stopped"
+        new PollingConditions(timeout: 2).eventually {
+            queue.add(CompletableFuture.completedFuture("2"))
+            assert senderThreads.size() >= 2
+        }
+        // Retrying right away on the interrupt would have made many more attempts
+        senderThreads.size() < 10
+    }
+
+    void "spills the requests which don't fit in memory to a file and sends them in order"() {
+        File file = File.createTempFile("spill", ".dat")
+        file.deleteOnExit()
+        OutboundQueueOptions options = new OutboundQueueOptions(2, OutboundQueueOptions.FullPolicy.FAIL_FAST)
+        options.setSpillFile(file)
+        options.setSpillFileSizeBytes(1024)
+        boolean connected = false
+        OutboundQueue queue = new OutboundQueue(options, { List<String> batch ->
+            if (!connected) {
+                throw new IllegalStateException("not connected")
+            }
+            sent.addAll(batch)
+        } as Consumer)
+
+        when:
+        List<CompletableFuture<Void>> futures = (1..5).collect { queue.add(CompletableFuture.completedFuture(it.toString())) }
+        // Once spilling has started, new requests go to the file even if there is space in memory
+        futures.add(queue.add(CompletableFuture.completedFuture("6")))
+
+        then:
+        futures.every { !it.isDone() }
+        queue.getDepth() == 6
+        queue.getSpilledCount() == 4
+        queue.getRejectedCount() == 0
+
+        when:
+        connected = true
+        queue.connectionOpened()
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(1, TimeUnit.SECONDS)
+
+        then:
+        sent == ["1", "2", "3", "4", "5", "6"]
+        queue.getDepth() == 0
+        queue.getSentCount() == 6
+    }
+
+    void "rejects requests when the spill file is full"() {
+        File file = File.createTempFile("spill", ".dat")
+        file.deleteOnExit()
+        OutboundQueueOptions options = new OutboundQueueOptions(1, OutboundQueueOptions.FullPolicy.BLOCK)
+        options.setSpillFile(file)
+        options.setSpillFileSizeBytes(10)
+        OutboundQueue queue = new OutboundQueue(options, { List<String> batch ->
+            throw new IllegalStateException("not connected")
+        } as Consumer)
+
+        when:
+        queue.add(CompletableFuture.completedFuture("1"))
+        CompletableFuture<Void> spilled = queue.add(CompletableFuture.completedFuture("2"))
+        CompletableFuture<Void> rejected = queue.add(CompletableFuture.completedFuture("too long for the spill file"))
+
+        then:
+        !spilled.isDone()
+        rejected.isCompletedExceptionally()
+        queue.getSpilledCount() == 1
+        queue.getRejectedCount() == 1
+    }
+}
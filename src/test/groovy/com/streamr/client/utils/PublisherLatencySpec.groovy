@@ -0,0 +1,84 @@
+package com.streamr.client.utils
+
+import com.streamr.client.options.AdaptiveTimeoutOptions
+import spock.lang.Specification
+
+class PublisherLatencySpec extends Specification {
+
+    final AdaptiveTimeoutOptions options = AdaptiveTimeoutOptions.getDefault()
+
+    void "uses the maximum timeouts until enough has been observed"() {
+        PublisherLatency latency = new PublisherLatency(options, 5000, 4000)
+        when:
+        (PublisherLatency.MIN_ARRIVAL_SAMPLES - 1).times { latency.recordArrival(it, it + 10) }
+        (PublisherLatency.MIN_FILL_SAMPLES - 1).times { latency.recordGapFilled(100, 100) }
+        then:
+        latency.getPropagationTimeout() == 5000
+        latency.getResendTimeout() == 4000
+    }
+
+    void "propagation timeout is short for a publisher with a steady latency, regardless of clock offset"() {
+        PublisherLatency latency = new PublisherLatency(options, 5000, 5000)
+        when: "the clock of the publisher is an hour behind, and the latency varies between 10 and 30 ms"
+        long offset = 3600 * 1000
+        100.times { latency.recordArrival(it * 1000, it * 1000 + offset + 10 + (it % 3) * 10) }
+        then:
+        latency.getPropagationTimeout() == options.getMinPropagationTimeout()
+    }
+
+    void "propagation timeout is longer for a jittery publisher"() {
+        PublisherLatency latency = new PublisherLatency(options, 5000, 5000)
+        when: "the latency varies between 10 and 1010 ms"
+        Random random = new Random(1)
+        100.times { latency.recordArrival(it * 1000, it * 1000 + 10 + random.nextInt(1000)) }
+        then:
+        latency.getPropagationTimeout() >= 1900
+        latency.getPropagationTimeout() <= 5000
+    }
+
+    void "propagation timeout covers the time the gaps took to heal"() {
+        PublisherLatency latency = new PublisherLatency(options, 5000, 5000)
+        when:
+        100.times { latency.recordArrival(it * 1000, it * 1000 + 10) }
+        10.times { latency.recordGapHealed(300, 5) }
+        then:
+        latency.getPropagationTimeout() == 600
+        latency.getReorderDepth(0.5) == 5
+    }
+
+    void "propagation timeout grows if gaps which might have healed later are requested"() {
+        PublisherLatency latency = new PublisherLatency(options, 5000, 5000)
+        100.times { latency.recordArrival(it * 1000, it * 1000 + 10) }
+        10.times { latency.recordGapHealed(50, 1) }
+        when: "the gaps healed within the timeout"
+        long timeout = latency.getPropagationTimeout()
+        then:
+        timeout == 100
+        when: "some gaps had to be requested after waiting for the timeout"
+        5.times { latency.recordGapFilled(200, timeout) }
+        then:
+        latency.getPropagationTimeout() == 2 * timeout
+    }
+
+    void "resend timeout follows the time the gap fills took"() {
+        PublisherLatency latency = new PublisherLatency(options, 5000, 5000)
+        when:
+        20.times { latency.recordGapFilled(400, 100) }
+        then:
+        latency.getResendTimeout() == 800
+        when: "the gap fills become slow"
+        300.times { latency.recordGapFilled(3000, 100) }
+        then:
+        latency.getResendTimeout() == 5000
+    }
+
+    void "the configured maximums win over the minimums"() {
+        PublisherLatency latency = new PublisherLatency(options, 20, 20)
+        when:
+        100.times { latency.recordArrival(it, it + 10) }
+        20.times { latency.recordGapFilled(1, 100) }
+        then:
+        latency.getPropagationTimeout() == 20
+        latency.getResendTimeout() == 20
+    }
+}
@@ -0,0 +1,70 @@
+package com.streamr.client.utils
+
+import com.streamr.client.protocol.StreamrSpecification
+import com.streamr.client.protocol.message_layer.StreamMessage
+
+class ReorderIndexSpec extends StreamrSpecification {
+
+    void "returns the messages ordered by timestamp and sequence number"() {
+        List<StreamMessage> messages = []
+        for (long timestamp = 0; timestamp < 100; timestamp++) {
+            for (long seq = 0; seq < 10; seq++) {
+                messages.add(createMessage(timestamp, seq))
+            }
+        }
+        List<StreamMessage> shuffled = new ArrayList<>(messages)
+        Collections.shuffle(shuffled, new Random(1))
+        ReorderIndex index = new ReorderIndex()
+
+        when:
+        shuffled.each { index.add(it, 1) }
+        then:
+        index.size() == messages.size()
+        index.peek() == messages[0]
+
+        when:
+        List<StreamMessage> polled = []
+        while (!index.isEmpty()) {
+            polled.add(index.poll())
+        }
+        then:
+        polled == messages
+        index.poll() == null
+        index.peek() == null
+    }
+
+    void "keeps the weight of each message"() {
+        ReorderIndex index = new ReorderIndex()
+        when:
+        index.add(createMessage(3), 30)
+        index.add(createMessage(1), 10)
+        index.add(createMessage(2), 20)
+        then:
+        index.peekWeight() == 10
+        index.poll().getTimestamp() == 1
+        index.peekWeight() == 20
+        index.poll().getTimestamp() == 2
+        index.peekWeight() == 30
+    }
+
+    void "keeps duplicates"() {
+        ReorderIndex index = new ReorderIndex()
+        when:
+        index.add(createMessage(1), 1)
+        index.add(createMessage(1), 1)
+        then:
+        index.size() == 2
+    }
+
+    void "can be reused after being cleared"() {
+        ReorderIndex index = new ReorderIndex()
+        (1..5000).each { index.add(createMessage(it), 1) }
+        when:
+        index.clear()
+        index.add(createMessage(7), 1)
+        then:
+        index.size() == 1
+        index.poll().getTimestamp() == 7
+        index.isEmpty()
+    }
+}
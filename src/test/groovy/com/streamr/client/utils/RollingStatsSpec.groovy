@@ -0,0 +1,43 @@
+package com.streamr.client.utils
+
+import spock.lang.Specification
+
+class RollingStatsSpec extends Specification {
+
+    void "percentiles are computed over the window"() {
+        RollingStats stats = new RollingStats(100)
+        when:
+        (1..100).each { stats.record(it) }
+        then:
+        stats.getCount() == 100
+        stats.getPercentile(0) == 1
+        stats.getPercentile(0.5) == 50
+        stats.getPercentile(0.99) == 99
+        stats.getPercentile(1) == 100
+        when: "older samples leave the window"
+        (101..150).each { stats.record(it) }
+        then:
+        stats.getCount() == 150
+        stats.getPercentile(0) == 51
+        stats.getPercentile(1) == 150
+    }
+
+    void "percentile of an empty window is zero"() {
+        expect:
+        new RollingStats(10).getPercentile(0.5) == 0
+    }
+
+    void "average and deviation follow the samples"() {
+        RollingStats stats = new RollingStats(10)
+        when:
+        100.times { stats.record(50) }
+        then:
+        stats.getAverage() == 50
+        stats.getDeviation() == 0
+        when:
+        100.times { stats.record(it % 2 == 0 ? 40 : 60) }
+        then:
+        Math.abs(stats.getAverage() - 50) < 2
+        Math.abs(stats.getDeviation() - 10) < 2
+    }
+}
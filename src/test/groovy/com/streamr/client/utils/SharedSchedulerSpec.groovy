@@ -0,0 +1,89 @@
+package com.streamr.client.utils
+
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class SharedSchedulerSpec extends Specification {
+
+    void "runs the task repeatedly until cancelled"() {
+        AtomicInteger runs = new AtomicInteger()
+        PollingConditions conditions = new PollingConditions(timeout: 5)
+        when:
+        ScheduledFuture<?> future = SharedScheduler.scheduleWithFixedDelay({ runs.incrementAndGet() } as Runnable, 0, 10)
+        then:
+        conditions.eventually {
+            assert runs.get() >= 3
+        }
+        when:
+        future.cancel(false)
+        int runsAfterCancel = runs.get()
+        Thread.sleep(100)
+        then:
+        runs.get() == runsAfterCancel
+    }
+
+    void "cancelled tasks are removed from the queue"() {
+        List<ScheduledFuture<?>> futures = (1..1000).collect {
+            SharedScheduler.scheduleWithFixedDelay({} as Runnable, 60000, 60000)
+        }
+        when:
+        futures.each { it.cancel(false) }
+        then:
+        futures.every { !SharedScheduler.getTimer().queue.contains(it) }
+    }
+
+    void "a blocking task does not delay the other tasks"() {
+        CountDownLatch release = new CountDownLatch(1)
+        CountDownLatch ran = new CountDownLatch(1)
+        when:
+        (1..3).each { SharedScheduler.schedule({ release.await() } as Runnable, 0) }
+        SharedScheduler.schedule({ ran.countDown() } as Runnable, 10)
+        then:
+        ran.await(5, TimeUnit.SECONDS)
+        cleanup:
+        release.countDown()
+    }
+
+    void "blocking tasks beyond the number of workers wait instead of starting more threads"() {
+        CountDownLatch release = new CountDownLatch(1)
+        int taskCount = SharedScheduler.MAX_WORKERS + 5
+        CountDownLatch ran = new CountDownLatch(taskCount)
+        when:
+        taskCount.times { SharedScheduler.schedule({ release.await(); ran.countDown() } as Runnable, 0) }
+        new PollingConditions(timeout: 5).eventually {
+            assert SharedScheduler.getWorkers().getQueue().size() >= 5
+        }
+        then:
+        SharedScheduler.getWorkers().getPoolSize() <= SharedScheduler.MAX_WORKERS
+        when:
+        release.countDown()
+        then:
+        ran.await(5, TimeUnit.SECONDS)
+        cleanup:
+        release.countDown()
+    }
+
+    void "a repeated task is not run again while the previous run is still running"() {
+        AtomicInteger running = new AtomicInteger()
+        AtomicInteger maxRunning = new AtomicInteger()
+        AtomicInteger runs = new AtomicInteger()
+        when:
+        ScheduledFuture<?> future = SharedScheduler.scheduleWithFixedDelay({
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math.&max)
+            Thread.sleep(50)
+            running.decrementAndGet()
+            runs.incrementAndGet()
+        } as Runnable, 0, 1)
+        new PollingConditions(timeout: 5).eventually {
+            assert runs.get() >= 3
+        }
+        future.cancel(false)
+        then:
+        maxRunning.get() == 1
+    }
+}
@@ -0,0 +1,73 @@
+package com.streamr.client.utils
+
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+class SocketWriteMonitorSpec extends Specification {
+
+    ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())
+    SocketWriteMonitor monitor = new SocketWriteMonitor(new URI("ws://localhost:" + server.getLocalPort()), 1000)
+    Socket socket
+
+    void setup() {
+        socket = monitor.createSocket()
+        socket.connect(server.getLocalSocketAddress(), 1000)
+    }
+
+    void cleanup() {
+        socket.close()
+        server.close()
+    }
+
+    void "counts the writes to the socket"() {
+        when:
+        socket.getOutputStream().write("hello".getBytes())
+        socket.getOutputStream().write(1)
+
+        then:
+        monitor.getWriteCount() == 2
+    }
+
+    void "awaitWrite() returns when the socket is written to"() {
+        CompletableFuture<Void> awaited = CompletableFuture.runAsync {
+            monitor.awaitWrite(0, 10000)
+        }
+
+        when:
+        socket.getOutputStream().write("hello".getBytes())
+
+        then:
+        awaited.get(5, TimeUnit.SECONDS) == null
+    }
+
+    void "awaitWrite() returns right away if there have been more writes than the given count"() {
+        socket.getOutputStream().write("hello".getBytes())
+
+        when:
+        long start = System.currentTimeMillis()
+        monitor.awaitWrite(0, 10000)
+
+        then:
+        System.currentTimeMillis() - start < 5000
+    }
+
+    void "awaitWrite() returns when the socket is closed"() {
+        CompletableFuture<Void> awaited = CompletableFuture.runAsync {
+            monitor.awaitWrite(0, 10000)
+        }
+
+        when:
+        socket.close()
+
+        then:
+        awaited.get(5, TimeUnit.SECONDS) == null
+    }
+
+    void "awaitWrite() returns after the timeout"() {
+        expect:
+        monitor.awaitWrite(0, 10) == null
+        monitor.getWriteCount() == 0
+    }
+}
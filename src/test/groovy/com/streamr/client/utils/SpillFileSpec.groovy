@@ -0,0 +1,92 @@
+package com.streamr.client.utils
+
+import spock.lang.Specification
+
+class SpillFileSpec extends Specification {
+
+    File file
+
+    void setup() {
+        file = File.createTempFile("spill", ".dat")
+        file.deleteOnExit()
+    }
+
+    void "records are read in the order they were appended"() {
+        SpillFile spill = new SpillFile(file, 1024)
+
+        when:
+        spill.append("first")
+        spill.append("ääkköset")
+        spill.append("third")
+
+        then:
+        spill.size() == 3
+        spill.peek(2) == ["first", "ääkköset"]
+        spill.peek(10) == ["first", "ääkköset", "third"]
+
+        when:
+        spill.remove(2)
+
+        then:
+        spill.size() == 1
+        spill.peek(10) == ["third"]
+    }
+
+    void "compacts the unread records to make space"() {
+        // Fits two records of 4 + 10 bytes
+        SpillFile spill = new SpillFile(file, 30)
+
+        when:
+        spill.append("0123456789")
+        spill.append("abcdefghij")
+
+        then:
+        !spill.append("klmnopqrst")
+
+        when:
+        spill.remove(1)
+
+        then:
+        spill.append("klmnopqrst")
+        spill.peek(10) == ["abcdefghij", "klmnopqrst"]
+        spill.getUsedBytes() == 28
+    }
+
+    void "returns false if a record doesn't fit"() {
+        SpillFile spill = new SpillFile(file, 16)
+
+        expect:
+        !spill.append("this record is too long")
+        spill.isEmpty()
+    }
+
+    void "remove() throws if there are not enough records"() {
+        SpillFile spill = new SpillFile(file, 1024)
+        spill.append("first")
+
+        when:
+        spill.remove(2)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    void "close() deletes the file, and nothing can be appended after it"() {
+        SpillFile spill = new SpillFile(file, 1024)
+        spill.append("first")
+
+        when:
+        spill.close()
+
+        then:
+        !file.exists()
+        spill.isEmpty()
+        !spill.append("second")
+
+        when: "closing again"
+        spill.close()
+
+        then:
+        notThrown(Exception)
+    }
+}
@@ -10,6 +10,10 @@ import com.streamr.client.protocol.message_layer.StreamMessage
 import com.streamr.client.rest.Stream
 import org.ethereum.crypto.ECKey
 
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executor
+import java.util.concurrent.ForkJoinPool
+
 class StreamMessageValidatorSpec extends StreamrSpecification {
     StreamMessageValidator validator
 
@@ -119,6 +123,57 @@ class StreamMessageValidatorSpec extends StreamrSpecification {
         e.getReason() == ValidationException.Reason.INVALID_SIGNATURE
     }
 
+    void "passes validation for valid signatures verified asynchronously"() {
+        ForkJoinPool pool = new ForkJoinPool(2)
+
+        when:
+        CompletableFuture<Boolean> signatureCheck = validator.verifySignatureAsync(msgSigned, pool)
+        validator.validate(msgSigned, signatureCheck)
+
+        then:
+        signatureCheck != null
+        notThrown(Exception)
+
+        cleanup:
+        pool.shutdown()
+    }
+
+    void "should throw if the signature verified asynchronously is invalid"() {
+        ForkJoinPool pool = new ForkJoinPool(2)
+
+        when:
+        validator.validate(msgInvalid, validator.verifySignatureAsync(msgInvalid, pool))
+
+        then:
+        ValidationException e = thrown(ValidationException)
+        e.getReason() == ValidationException.Reason.INVALID_SIGNATURE
+
+        cleanup:
+        pool.shutdown()
+    }
+
+    void "does not start asynchronous verification for unsigned messages or if policy is 'never'"() {
+        Executor failingExecutor = { Runnable r -> throw new RuntimeException("should not be called") } as Executor
+
+        expect:
+        validator.verifySignatureAsync(msgUnsigned, failingExecutor) == null
+        getValidator(SignatureVerificationPolicy.NEVER).verifySignatureAsync(msgWrongFormat, failingExecutor) == null
+    }
+
+    void "verifies on the calling thread if the executor has been shut down"() {
+        ForkJoinPool pool = new ForkJoinPool(2)
+        pool.shutdown()
+
+        when:
+        CompletableFuture<Boolean> signatureCheck = validator.verifySignatureAsync(msgInvalid, pool)
+        validator.validate(msgInvalid, signatureCheck)
+
+        then:
+        signatureCheck == null
+        ValidationException e = thrown(ValidationException)
+        e.getReason() == ValidationException.Reason.INVALID_SIGNATURE
+    }
+
     void "should verify if policy is 'auto' and signature is present, even if stream does not require signed data"() {
         validator = getValidator(SignatureVerificationPolicy.AUTO)
         when:
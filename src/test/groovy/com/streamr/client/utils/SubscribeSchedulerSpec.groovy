@@ -0,0 +1,117 @@
+package com.streamr.client.utils
+
+import com.streamr.client.protocol.control_layer.SubscribeRequest
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.function.Consumer
+
+class SubscribeSchedulerSpec extends Specification {
+
+    List<SubscribeRequest> sent = new CopyOnWriteArrayList<>()
+    List<List<Integer>> progress = new CopyOnWriteArrayList<>()
+    List<SubscribeRequest> failed = new CopyOnWriteArrayList<>()
+
+    SubscribeScheduler createScheduler(int maxInFlight, long timeoutMillis) {
+        SubscribeScheduler scheduler = new SubscribeScheduler(maxInFlight, timeoutMillis, { sent.add(it) } as Consumer, { failed.add(it) } as Consumer)
+        scheduler.setProgressListener({ int completed, int failedCount, int remaining -> progress.add([completed, failedCount, remaining]) } as SubscribeScheduler.ProgressListener)
+        return scheduler
+    }
+
+    SubscribeRequest request(int partition) {
+        return new SubscribeRequest("sub-" + partition, "stream", partition, "sessionToken")
+    }
+
+    void "limits the requests in flight and sends the queued ones in order as responses arrive"() {
+        SubscribeScheduler scheduler = createScheduler(2, 60000)
+        when:
+        (0..4).each { scheduler.submit(request(it)) }
+        then:
+        sent*.streamPartition == [0, 1]
+        scheduler.getInFlightCount() == 2
+        scheduler.getQueuedCount() == 3
+        when:
+        scheduler.onResponse("sub-1")
+        scheduler.onResponse("unknown")
+        then:
+        sent*.streamPartition == [0, 1, 2]
+        progress == [[1, 0, 4]]
+        when:
+        ["sub-0", "sub-2", "sub-3", "sub-4"].each { scheduler.onResponse(it) }
+        then:
+        sent*.streamPartition == [0, 1, 2, 3, 4]
+        progress == [[1, 0, 4], [2, 0, 3], [3, 0, 2], [4, 0, 1], [5, 0, 0]]
+        scheduler.getInFlightCount() == 0
+        when: "a new batch starts"
+        scheduler.submit(request(5))
+        scheduler.onResponse("sub-5")
+        then:
+        progress.last() == [1, 0, 0]
+    }
+
+    void "a request which gets no response is sent again ahead of the queued ones, and fails after MAX_ATTEMPTS tries"() {
+        SubscribeScheduler scheduler = createScheduler(1, 50)
+        when:
+        scheduler.submit(request(0))
+        scheduler.submit(request(1))
+        then:
+        sent.size() == 1
+        new PollingConditions(timeout: 5).eventually {
+            assert failed.size() == 1
+        }
+        sent.take(SubscribeScheduler.MAX_ATTEMPTS + 1)*.streamPartition == [0] * SubscribeScheduler.MAX_ATTEMPTS + [1]
+        failed.first().streamPartition == 0
+        progress.first() == [0, 1, 1]
+    }
+
+    void "a request answered with an error fails without being retried"() {
+        SubscribeScheduler scheduler = createScheduler(1, 60000)
+        when:
+        scheduler.submit(request(0))
+        scheduler.submit(request(1))
+        scheduler.onError("sub-0")
+        scheduler.onError("unknown")
+        then:
+        sent*.streamPartition == [0, 1]
+        failed*.streamPartition == [0]
+        progress == [[0, 1, 1]]
+    }
+
+    void "getInFlight() returns only the requests waiting for their response"() {
+        SubscribeScheduler scheduler = createScheduler(1, 60000)
+        when:
+        (0..1).each { scheduler.submit(request(it)) }
+        then:
+        scheduler.getInFlight("sub-0").streamPartition == 0
+        scheduler.getInFlight("sub-1") == null
+        when:
+        scheduler.onResponse("sub-0")
+        then:
+        scheduler.getInFlight("sub-0") == null
+        scheduler.getInFlight("sub-1").streamPartition == 1
+    }
+
+    void "reset() discards the queued and in flight requests"() {
+        SubscribeScheduler scheduler = createScheduler(1, 60000)
+        when:
+        (0..2).each { scheduler.submit(request(it)) }
+        scheduler.reset()
+        scheduler.onResponse("sub-0")
+        then:
+        sent.size() == 1
+        scheduler.getQueuedCount() == 0
+        scheduler.getInFlightCount() == 0
+        progress.isEmpty()
+    }
+
+    void "a request which fails to send does not stay in flight"() {
+        SubscribeScheduler scheduler = new SubscribeScheduler(1, 60000, { throw new RuntimeException("not connected") } as Consumer)
+        when:
+        scheduler.submit(request(0))
+        scheduler.submit(request(1))
+        then:
+        scheduler.getInFlightCount() == 0
+        scheduler.getQueuedCount() == 0
+    }
+}
@@ -1,10 +1,12 @@
 package com.streamr.client.utils
 
+import com.streamr.client.exceptions.AlreadySubscribedException
 import com.streamr.client.exceptions.SubscriptionNotFoundException
 import com.streamr.client.subs.RealTimeSubscription
 import com.streamr.client.subs.Subscription
 import spock.lang.Specification
 
+import java.util.concurrent.atomic.AtomicBoolean
 import java.util.function.Consumer
 
 class SubscriptionsSpec extends Specification {
@@ -73,6 +75,18 @@ class SubscriptionsSpec extends Specification {
 		subs.add(otherSub)
 		then:
 		subs.getAllForStreamId("stream").toList() == [sub0, sub3, sub4]
+
+		when:
+		subs.remove(sub3)
+		then:
+		subs.getAllForStreamId("stream").toList() == [sub0, sub4]
+
+		when:
+		subs.remove(sub0)
+		subs.remove(sub4)
+		then:
+		subs.getAllForStreamId("stream").isEmpty()
+		subs.getAllForStreamId("otherStream").toList() == [otherSub]
 	}
 
 	void "forEach()"() {
@@ -93,4 +107,107 @@ class SubscriptionsSpec extends Specification {
 		called == [sub1, sub2]
 	}
 
+	void "subscriptions can be removed while iterating"() {
+		Subscription sub1 = createSub("stream1", 0)
+		Subscription sub2 = createSub("stream2", 0)
+		subs.add(sub1)
+		subs.add(sub2)
+		when:
+		subs.forEach({ Subscription sub ->
+			subs.remove(sub)
+			subs.add(createSub(sub.getStreamId(), sub.getPartition() + 1))
+		} as Consumer)
+		then:
+		subs.getAll().collect { it.getStreamId() + "-" + it.getPartition() } == ["stream1-1", "stream2-1"]
+	}
+
+	void "concurrent subscribe, unsubscribe and delivery"() {
+		int partitions = 32
+		List<Throwable> errors = Collections.synchronizedList([])
+		AtomicBoolean running = new AtomicBoolean(true)
+		// Create the subscriptions up front, as creating them is slow compared to adding them
+		List<List<Subscription>> subsByWriter = (0..3).collect { writer ->
+			(0..<500).collect { createSub("stream", new Random(writer * 1000 + it).nextInt(partitions)) }
+		}
+
+		List<Thread> readers = (0..3).collect {
+			Thread.start {
+				Random random = new Random(it)
+				try {
+					while (running.get()) {
+						int partition = random.nextInt(partitions)
+						try {
+							Subscription sub = subs.get("stream", partition)
+							assert sub.getPartition() == partition
+						} catch (SubscriptionNotFoundException e) {
+							// expected
+						}
+						subs.forEach({ Subscription sub -> assert sub.getStreamId() == "stream" } as Consumer)
+						List<Integer> streamPartitions = subs.getAllForStreamId("stream")*.getPartition()
+						assert streamPartitions == streamPartitions.toSorted()
+					}
+				} catch (Throwable e) {
+					errors.add(e)
+				}
+			}
+		}
+
+		when:
+		List<Thread> writers = subsByWriter.collect { List<Subscription> toAdd ->
+			Thread.start {
+				try {
+					for (Subscription sub : toAdd) {
+						try {
+							subs.add(sub)
+						} catch (AlreadySubscribedException e) {
+							// expected, another writer has the partition
+							continue
+						}
+						try {
+							subs.remove(sub)
+						} catch (SubscriptionNotFoundException e) {
+							errors.add(new AssertionError("Subscription removed by another thread"))
+						}
+					}
+				} catch (Throwable e) {
+					errors.add(e)
+				}
+			}
+		}
+		writers.each { it.join() }
+		running.set(false)
+		readers.each { it.join() }
+
+		then:
+		errors.isEmpty()
+		subs.getAll().isEmpty()
+		subs.getAllForStreamId("stream").isEmpty()
+		(0..<partitions).every { partition ->
+			try {
+				subs.get("stream", partition)
+				false
+			} catch (SubscriptionNotFoundException e) {
+				true
+			}
+		}
+
+		when: "the snapshot and the lookups agree after concurrent adds"
+		List<Thread> adders = (0..3).collect { writer ->
+			Thread.start {
+				(0..<partitions).each {
+					try {
+						subs.add(createSub("stream", it))
+					} catch (AlreadySubscribedException e) {
+						// expected
+					}
+				}
+			}
+		}
+		adders.each { it.join() }
+
+		then:
+		subs.getAll().size() == partitions
+		subs.getAllForStreamId("stream")*.getPartition() == (0..<partitions).toList()
+		subs.getAll().every { subs.get(it.getStreamId(), it.getPartition()).is(it) }
+	}
 }
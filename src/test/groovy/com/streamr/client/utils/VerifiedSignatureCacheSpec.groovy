@@ -0,0 +1,83 @@
+package com.streamr.client.utils
+
+import com.streamr.client.protocol.message_layer.StreamMessage
+import spock.lang.Specification
+
+class VerifiedSignatureCacheSpec extends Specification {
+
+    static final String SIGNED_MSG = '[31,["tagHE6nTQ9SJV2wPoCxBFw",0,1587141844396,0,"0x6807295093ac5da6fb2a10f7dedc5edd620804fb","k000EDTMtqOTLM8sirFj"],[1587141844312,0],27,0,"{\\"eventType\\":\\"trade\\",\\"eventTime\\":1587141844398,\\"symbol\\":\\"ETHBTC\\",\\"tradeId\\":172530352,\\"price\\":0.02415,\\"quantity\\":0.296,\\"buyerOrderId\\":687544144,\\"sellerOrderId\\":687544104,\\"time\\":1587141844396,\\"maker\\":false,\\"ignored\\":true}",2,"0x6ad42041804c34902aaf7f07780b3e468ec2faec84eda2ff504d5fc26377d5556481d133d7f3f112c63cd48ee9081172013fb0ae1a61b45ee9ca89e057b099591b"]'
+
+    VerifiedSignatureCache cache = new VerifiedSignatureCache()
+
+    void "verifies on the first lookup and hits the cache on duplicates"() {
+        when:
+        boolean first = cache.hasValidSignature(StreamMessage.deserialize(SIGNED_MSG))
+        boolean second = cache.hasValidSignature(StreamMessage.deserialize(SIGNED_MSG))
+
+        then:
+        first
+        second
+        cache.getMisses() == 1
+        cache.getHits() == 1
+        cache.getHitRatio() == 0.5d
+    }
+
+    void "does not accept a message with the same identity and signature but different content"() {
+        StreamMessage tampered = StreamMessage.deserialize(SIGNED_MSG.replace("0.02415", "0.99999"))
+
+        when:
+        cache.hasValidSignature(StreamMessage.deserialize(SIGNED_MSG))
+        boolean valid = cache.hasValidSignature(tampered)
+
+        then:
+        !valid
+        cache.getHits() == 0
+        cache.getMisses() == 2
+    }
+
+    void "does not cache invalid signatures"() {
+        StreamMessage tampered = StreamMessage.deserialize(SIGNED_MSG.replace("0.02415", "0.99999"))
+
+        when:
+        cache.hasValidSignature(tampered)
+        cache.hasValidSignature(tampered)
+
+        then:
+        cache.getHits() == 0
+        cache.getMisses() == 2
+    }
+
+    void "returns false for unsigned messages without counting a lookup"() {
+        StreamMessage unsigned = StreamMessage.deserialize(SIGNED_MSG)
+        unsigned.setSignatureFields(null, StreamMessage.SignatureType.NONE)
+
+        expect:
+        !cache.hasValidSignature(unsigned)
+        cache.getHits() == 0
+        cache.getMisses() == 0
+        cache.getHitRatio() == 0d
+    }
+
+    void "clear() forgets the verified messages"() {
+        when:
+        cache.hasValidSignature(StreamMessage.deserialize(SIGNED_MSG))
+        cache.clear()
+        cache.hasValidSignature(StreamMessage.deserialize(SIGNED_MSG))
+
+        then:
+        cache.getHits() == 0
+        cache.getMisses() == 2
+    }
+
+    void "is rebuilt empty after clearAndClose()"() {
+        when:
+        cache.hasValidSignature(StreamMessage.deserialize(SIGNED_MSG))
+        cache.clearAndClose()
+        boolean valid = cache.hasValidSignature(StreamMessage.deserialize(SIGNED_MSG))
+
+        then:
+        valid
+        cache.getHits() == 0
+        cache.getMisses() == 2
+    }
+}